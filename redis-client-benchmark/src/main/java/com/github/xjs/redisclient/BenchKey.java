@@ -0,0 +1,13 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.AbstractKey;
+
+class BenchKey extends AbstractKey {
+
+    static final BenchKey USER = new BenchKey("user");
+    static final BenchKey SCAN = new BenchKey("scan");
+
+    private BenchKey(String value) {
+        super(value);
+    }
+}
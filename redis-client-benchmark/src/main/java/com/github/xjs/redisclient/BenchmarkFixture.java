@@ -0,0 +1,68 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.testserver.RespServer;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.Closeable;
+
+/**
+ * 基准测试用的RedisClientService，和RedisClientAutoConfiguration的配置一样
+ *
+ * 默认连进程内的测试服务器，加上-Dredis.embedded=false时连spring.redis.host和spring.redis.port指定的redis。
+ */
+final class BenchmarkFixture implements Closeable {
+
+    static final String APP_KEY_PREFIX = "bench";
+
+    private final RespServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    final RedisClientService redisService;
+
+    BenchmarkFixture() {
+        String host;
+        int port;
+        if("false".equalsIgnoreCase(System.getProperty("redis.embedded"))){
+            server = null;
+            host = System.getProperty("spring.redis.host", "127.0.0.1");
+            port = Integer.parseInt(System.getProperty("spring.redis.port", "6379"));
+        }else{
+            server = new RespServer().start();
+            host = server.getHost();
+            port = server.getPort();
+        }
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+        redisService = newService(connectionFactory);
+    }
+
+    /**
+     * 不连接redis，只用来测key和序列化
+     */
+    static RedisClientService offline(){
+        return newService(null);
+    }
+
+    private static RedisClientService newService(LettuceConnectionFactory connectionFactory){
+        RedisTemplate<byte[], byte[]> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setKeySerializer(null);
+        redisTemplate.setValueSerializer(null);
+        redisTemplate.setHashKeySerializer(null);
+        redisTemplate.setHashValueSerializer(null);
+        redisTemplate.setEnableDefaultSerializer(false);
+        if(connectionFactory != null){
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.afterPropertiesSet();
+        }
+        return new RedisClientService(redisTemplate, new RedisClientProperties(), () -> APP_KEY_PREFIX);
+    }
+
+    @Override
+    public void close(){
+        connectionFactory.destroy();
+        if(server != null){
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.xjs.redisclient;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 带GC profiler运行所有基准测试，把每次操作的分配字节数(gc.alloc.rate.norm)和基线比较
+ *
+ * 参数是要运行的基准测试的正则，不传运行全部。
+ * -Dbenchmark.baseline 基线文件，默认是当前目录的alloc-baseline.properties
+ * -Dbenchmark.updateBaseline=true 用本次结果重写基线
+ * -Dbenchmark.threshold 分配量增加超过这个比例算退化，默认0.1
+ * -Dbenchmark.failOnRegression=true 有退化时以非0退出
+ */
+public class BenchmarkMain {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+    /**
+     * 分配量很小的操作，几个字节的抖动不算退化
+     */
+    private static final double ALLOC_SLACK_BYTES = 16;
+
+    public static void main(String[] args) throws Exception {
+        new File("target").mkdirs();
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json");
+        if(args.length == 0){
+            options.include(BenchmarkMain.class.getPackage().getName() + "\\..*Benchmark");
+        }
+        for(String include : args){
+            options.include(include);
+        }
+        Map<String, Double> current = allocations(new Runner(options.build()).run());
+        File baselineFile = new File(System.getProperty("benchmark.baseline", "alloc-baseline.properties"));
+        if(Boolean.getBoolean("benchmark.updateBaseline")){
+            Map<String, Double> merged = load(baselineFile);
+            merged.putAll(current);
+            store(baselineFile, merged);
+            System.out.println("基线已更新:" + baselineFile.getAbsolutePath());
+            return;
+        }
+        int regressions = compare(load(baselineFile), current, Double.parseDouble(System.getProperty("benchmark.threshold", "0.1")));
+        if(regressions > 0 && Boolean.getBoolean("benchmark.failOnRegression")){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return 基准测试名(类名.方法名:参数)到每次操作分配字节数
+     */
+    static Map<String, Double> allocations(Collection<RunResult> results){
+        Map<String, Double> ret = new TreeMap<>();
+        for(RunResult result : results){
+            for(Map.Entry<String, Result> e : result.getAggregatedResult().getSecondaryResults().entrySet()){
+                if(e.getKey().endsWith(ALLOC_METRIC)){
+                    ret.put(name(result), e.getValue().getScore());
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static String name(RunResult result){
+        String benchmark = result.getParams().getBenchmark();
+        StringBuilder sb = new StringBuilder(benchmark.substring(BenchmarkMain.class.getPackage().getName().length() + 1));
+        for(String key : result.getParams().getParamsKeys()){
+            sb.append(':').append(key).append('=').append(result.getParams().getParam(key));
+        }
+        return sb.toString();
+    }
+
+    private static int compare(Map<String, Double> baseline, Map<String, Double> current, double threshold){
+        int regressions = 0;
+        System.out.println();
+        System.out.println(String.format("%-50s %14s %14s %9s", "Benchmark", "baseline(B/op)", "current(B/op)", "delta"));
+        for(Map.Entry<String, Double> e : current.entrySet()){
+            Double base = baseline.get(e.getKey());
+            double now = e.getValue();
+            if(base == null){
+                System.out.println(String.format("%-50s %14s %14.1f %9s", e.getKey(), "-", now, "new"));
+                continue;
+            }
+            String delta = base == 0 ? (now == 0 ? "0.0%" : "+inf") : String.format("%+.1f%%", (now - base) * 100 / base);
+            boolean regressed = now > base * (1 + threshold) + ALLOC_SLACK_BYTES;
+            if(regressed){
+                regressions++;
+            }
+            System.out.println(String.format("%-50s %14.1f %14.1f %9s%s", e.getKey(), base, now, delta, regressed ? "  REGRESSION" : ""));
+        }
+        System.out.println(regressions == 0 ? "分配量没有退化" : regressions + "个基准测试的分配量超过基线" + Math.round(threshold * 100) + "%");
+        return regressions;
+    }
+
+    private static Map<String, Double> load(File file) throws IOException {
+        Map<String, Double> ret = new TreeMap<>();
+        if(!file.exists()){
+            return ret;
+        }
+        Properties properties = new Properties();
+        try(InputStream in = new FileInputStream(file)){
+            properties.load(in);
+        }
+        for(String name : properties.stringPropertyNames()){
+            ret.put(name, Double.parseDouble(properties.getProperty(name)));
+        }
+        return ret;
+    }
+
+    private static void store(File file, Map<String, Double> allocations) throws IOException {
+        try(Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)){
+            writer.write("# bytes allocated per operation (gc.alloc.rate.norm), regenerate with -Dbenchmark.updateBaseline=true\n");
+            for(Map.Entry<String, Double> e : allocations.entrySet()){
+                writer.write(e.getKey().replace(":", "\\:").replace("=", "\\=") + "=" + String.format("%.1f", e.getValue()) + "\n");
+            }
+        }
+    }
+}
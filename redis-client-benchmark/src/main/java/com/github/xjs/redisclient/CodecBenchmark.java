@@ -0,0 +1,54 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisClientService的objectToBytes和bytesToObject，也就是ValueCodec的encode和decode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"long", "string", "pojo", "list", "map"})
+    public String payload;
+
+    private ValueCodec codec;
+    private Object value;
+    private Class<?> valueClass;
+    private byte[] bytes;
+
+    @Setup
+    public void setup(){
+        codec = BenchmarkFixture.offline().getCodec();
+        value = Payloads.of(payload);
+        valueClass = value.getClass();
+        bytes = codec.encode(value);
+    }
+
+    @Benchmark
+    public byte[] encode(){
+        return codec.encode(value);
+    }
+
+    @Benchmark
+    public Object decode(){
+        return codec.decode(bytes, valueClass);
+    }
+}
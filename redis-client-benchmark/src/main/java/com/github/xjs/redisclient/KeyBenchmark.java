@@ -0,0 +1,47 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个命令都要做的key拼接：应用前缀 + KeyPrefix + key，再转成UTF-8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBenchmark {
+
+    @Param({"true", "false"})
+    public boolean appKeyPrefix;
+
+    private RedisClientService redisService;
+    private KeyPrefix prefix;
+    private String key;
+
+    @Setup
+    public void setup(){
+        redisService = BenchmarkFixture.offline();
+        prefix = BenchKey.USER;
+        key = "10086";
+    }
+
+    @Benchmark
+    public byte[] rawKey(){
+        return redisService.rawKey(appKeyPrefix, prefix, key);
+    }
+}
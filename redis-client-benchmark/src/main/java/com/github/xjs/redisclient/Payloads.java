@@ -0,0 +1,98 @@
+package com.github.xjs.redisclient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试用的几种典型value
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    static Object of(String type){
+        switch(type){
+            case "long":
+                return 1234567890123L;
+            case "string":
+                return "the quick brown fox jumps over the lazy dog 0123456789";
+            case "pojo":
+                return user(10086);
+            case "list":
+                List<User> list = new ArrayList<>();
+                for(int i = 0; i < 20; i++){
+                    list.add(user(i));
+                }
+                return list;
+            case "map":
+                Map<String, User> map = new HashMap<>();
+                for(int i = 0; i < 20; i++){
+                    map.put("u" + i, user(i));
+                }
+                return map;
+            default:
+                throw new IllegalArgumentException("不支持的payload:" + type);
+        }
+    }
+
+    static User user(int id){
+        User user = new User();
+        user.setId(id);
+        user.setName("user-" + id);
+        user.setEmail("user" + id + "@example.com");
+        user.setAge(18 + id % 50);
+        user.setCreateTime(1565000000000L + id);
+        return user;
+    }
+
+    public static class User {
+        private long id;
+        private String name;
+        private String email;
+        private int age;
+        private long createTime;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(String email) {
+            this.email = email;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public long getCreateTime() {
+            return createTime;
+        }
+
+        public void setCreateTime(long createTime) {
+            this.createTime = createTime;
+        }
+    }
+}
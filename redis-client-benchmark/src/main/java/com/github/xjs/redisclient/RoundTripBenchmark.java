@@ -0,0 +1,69 @@
+package com.github.xjs.redisclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次完整的命令：拼key、序列化、网络往返、反序列化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private BenchmarkFixture fixture;
+    private RedisClientService redisService;
+    private Payloads.User user;
+
+    @Setup
+    public void setup(){
+        fixture = new BenchmarkFixture();
+        redisService = fixture.redisService;
+        user = Payloads.user(10086);
+        redisService.set(BenchKey.USER, "get", user);
+        Map<String, Object> fields = new HashMap<>();
+        for(int i = 0; i < 20; i++){
+            fields.put("u" + i, Payloads.user(i));
+        }
+        redisService.hmset(BenchKey.USER, "hash", fields);
+    }
+
+    @TearDown
+    public void tearDown(){
+        redisService.delete(BenchKey.USER, "get");
+        redisService.delete(BenchKey.USER, "set");
+        redisService.delete(BenchKey.USER, "hash");
+        fixture.close();
+    }
+
+    @Benchmark
+    public Payloads.User get(){
+        return redisService.get(BenchKey.USER, "get", Payloads.User.class);
+    }
+
+    @Benchmark
+    public Boolean set(){
+        return redisService.set(BenchKey.USER, "set", user);
+    }
+
+    @Benchmark
+    public Map<String, Payloads.User> hgetall(){
+        return redisService.hgetall(BenchKey.USER, "hash", Payloads.User.class);
+    }
+}
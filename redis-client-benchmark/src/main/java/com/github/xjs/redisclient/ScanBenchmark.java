@@ -0,0 +1,76 @@
+package com.github.xjs.redisclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hscan、hscanKeys、sscan把整个集合收集到内存，分配量和集合大小成正比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private BenchmarkFixture fixture;
+    private RedisClientService redisService;
+
+    @Setup
+    public void setup(){
+        fixture = new BenchmarkFixture();
+        redisService = fixture.redisService;
+        Map<String, Object> fields = new HashMap<>();
+        Object[] members = new Object[size];
+        for(int i = 0; i < size; i++){
+            fields.put("field" + i, "value" + i);
+            members[i] = "member" + i;
+        }
+        redisService.delete(BenchKey.SCAN, "hash");
+        redisService.delete(BenchKey.SCAN, "set");
+        redisService.hmset(BenchKey.SCAN, "hash", fields);
+        redisService.sadd(BenchKey.SCAN, "set", members);
+    }
+
+    @TearDown
+    public void tearDown(){
+        redisService.delete(BenchKey.SCAN, "hash");
+        redisService.delete(BenchKey.SCAN, "set");
+        fixture.close();
+    }
+
+    @Benchmark
+    public Map<String, byte[]> hscan(){
+        return redisService.hscan(BenchKey.SCAN, "hash", "*");
+    }
+
+    @Benchmark
+    public List<String> hscanKeys(){
+        return redisService.hscanKeys(BenchKey.SCAN, "hash", "*");
+    }
+
+    @Benchmark
+    public Set<String> sscan(){
+        return redisService.sscan(BenchKey.SCAN, "set", "*", String.class);
+    }
+}
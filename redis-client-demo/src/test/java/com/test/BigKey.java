@@ -0,0 +1,14 @@
+package com.test;
+
+
+import com.github.xjs.redisclient.key.AbstractShardedKey;
+
+public class BigKey extends AbstractShardedKey {
+
+    public BigKey(String value, int shards) {
+        super(value, shards);
+    }
+
+    public static BigKey hash = new BigKey("h:", 8);
+    public static BigKey set = new BigKey("s:", 8);
+}
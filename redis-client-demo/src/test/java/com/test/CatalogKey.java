@@ -0,0 +1,13 @@
+package com.test;
+
+
+import com.github.xjs.redisclient.key.AbstractStaleKey;
+
+public class CatalogKey extends AbstractStaleKey {
+
+    public CatalogKey(String value) {
+        super(value);
+    }
+
+    public static CatalogKey catalog = new CatalogKey("ctl:");
+}
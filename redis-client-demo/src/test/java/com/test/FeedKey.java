@@ -0,0 +1,13 @@
+package com.test;
+
+
+import com.github.xjs.redisclient.key.AbstractDeadlineKey;
+
+public class FeedKey extends AbstractDeadlineKey {
+
+    public FeedKey(String value, long deadlineMillis) {
+        super(value, deadlineMillis);
+    }
+
+    public static FeedKey feed = new FeedKey("fd:", 30);
+}
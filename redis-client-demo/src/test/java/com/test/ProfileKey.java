@@ -0,0 +1,14 @@
+package com.test;
+
+
+import com.github.xjs.redisclient.key.AbstractReplicaReadKey;
+import com.github.xjs.redisclient.replica.ReadPreference;
+
+public class ProfileKey extends AbstractReplicaReadKey {
+
+    public ProfileKey(String value, ReadPreference readPreference) {
+        super(value, readPreference);
+    }
+
+    public static ProfileKey profile = new ProfileKey("pf:", ReadPreference.REPLICA_PREFERRED);
+}
@@ -1,16 +1,72 @@
 package com.test;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.xjs.redisclient.DelayQueueSubscription;
 import com.github.xjs.redisclient.KV;
 import com.github.xjs.redisclient.OnRedisMessageEvent;
+import com.github.xjs.redisclient.RedisAnalyticsBuffer;
+import com.github.xjs.redisclient.RedisClientCache;
+import com.github.xjs.redisclient.RedisClientCacheManager;
+import com.github.xjs.redisclient.RedisClientProperties;
 import com.github.xjs.redisclient.RedisClientService;
+import com.github.xjs.redisclient.RedisCounterBuffer;
+import com.github.xjs.redisclient.RedisDelayQueue;
+import com.github.xjs.redisclient.RedisLargeValues;
+import com.github.xjs.redisclient.RedisLeaderboard;
+import com.github.xjs.redisclient.RedisRateLimiter;
+import com.github.xjs.redisclient.RedisSnapshotTool;
+import com.github.xjs.redisclient.RedisSnapshots;
+import com.github.xjs.redisclient.RedisStreamClient;
+import com.github.xjs.redisclient.RedisWarmup;
+import com.github.xjs.redisclient.RedisWorkQueue;
+import com.github.xjs.redisclient.StreamSubscription;
+import com.github.xjs.redisclient.WorkQueueSubscription;
+import com.github.xjs.redisclient.analytics.DailyKeys;
+import com.github.xjs.redisclient.breaker.CircuitBreakerMetrics;
+import com.github.xjs.redisclient.breaker.CircuitState;
+import com.github.xjs.redisclient.cache.CacheOptions;
+import com.github.xjs.redisclient.hedge.HedgingMetrics;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.lane.LaneMetrics;
+import com.github.xjs.redisclient.large.LargeValueManifest;
+import com.github.xjs.redisclient.leaderboard.LeaderboardEntry;
+import com.github.xjs.redisclient.leaderboard.LeaderboardOptions;
+import com.github.xjs.redisclient.queue.DelayPriority;
+import com.github.xjs.redisclient.queue.DelayedJob;
+import com.github.xjs.redisclient.queue.WorkQueueOptions;
+import com.github.xjs.redisclient.ratelimit.RateLimitRule;
+import com.github.xjs.redisclient.replica.ReadPreference;
+import com.github.xjs.redisclient.snapshot.SnapshotOptions;
+import com.github.xjs.redisclient.snapshot.SnapshotResult;
+import com.github.xjs.redisclient.stream.StreamConsumerOptions;
+import com.github.xjs.redisclient.testserver.RedisServerRule;
+import com.github.xjs.redisclient.testserver.RespServer;
+import com.github.xjs.redisclient.trace.RedisOperation;
+import com.github.xjs.redisclient.warmup.WarmupMetrics;
+import com.github.xjs.redisclient.zset.ScoreCursor;
+import com.github.xjs.redisclient.zset.ScorePage;
+import com.github.xjs.redisclient.zset.ScoredMembers;
+import org.junit.Assume;
+import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.event.EventListener;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
 import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
@@ -19,36 +75,85 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.util.StringUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
 public class RedisClientServiceTest {
 
+    /**
+     * 默认连进程内的测试服务器，-Dredis.embedded=false时连application.yml里配置的redis
+     */
+    @ClassRule
+    public static RedisServerRule redis = new RedisServerRule();
+
     @Autowired
     private RedisClientService redisService;
 
+    @Autowired
+    private RedisStreamClient redisStreamClient;
+
+    @Autowired
+    private RedisWorkQueue redisWorkQueue;
+
+    @Autowired
+    private RedisDelayQueue redisDelayQueue;
+
+    @Autowired
+    private RedisLargeValues redisLargeValues;
+
+    @Autowired
+    private RedisSnapshots redisSnapshots;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
     @Test
     public void testSetObject(){
         redisService.set(UserKey.getById, ""+100,  new User(1, "xjs"));
+        assertTrue(redisService.exists(UserKey.getById, ""+100));
     }
 
     @Test
     public void testGetObject(){
+        redisService.set(UserKey.getById, ""+100,  new User(1, "xjs"));
         User user = redisService.get(UserKey.getById, ""+100,  User.class);
-        System.out.println(user);
+        assertEquals(new User(1, "xjs"), user);
+        assertNull(redisService.get(UserKey.getById, "not-exist",  User.class));
     }
 
     @Test
     public void testSetSimple(){
         redisService.set(UserKey.simple, ""+100, 1);
+        assertTrue(redisService.exists(UserKey.simple, ""+100));
     }
 
     @Test
     public void testGetSimple(){
+        redisService.set(UserKey.simple, ""+100, 1);
         Integer i = redisService.get(UserKey.simple, ""+100,  Integer.class);
-        System.out.println(i);
+        assertEquals(Integer.valueOf(1), i);
     }
 
     @Test
@@ -57,35 +162,51 @@ public class RedisClientServiceTest {
         users.add(new User(1, "xjs"));
         users.add(new User(2, "aaa"));
         redisService.set(UserKey.list, ""+100,  users);
+        assertTrue(redisService.exists(UserKey.list, ""+100));
     }
 
     @Test
     public void testGetList(){
+        List<User> users = new ArrayList<>();
+        users.add(new User(1, "xjs"));
+        users.add(new User(2, "aaa"));
+        redisService.set(UserKey.list, ""+100,  users);
+        //元素带着类型信息，不需要TypeReference
+        List<?> ret = redisService.get(UserKey.list, ""+100, List.class);
+        assertEquals(users, ret);
+    }
+
+    @Test
+    public void testSetGetTypedList(){
+        List<User> users = new ArrayList<>();
+        users.add(new User(1, "xjs"));
+        users.add(new User(2, "aaa"));
         TypeReference<List<User>> tf = new TypeReference<List<User>>(){};
-        List<User> users = (List<User>)redisService.get(UserKey.list, ""+100, tf.getClass());
-        System.out.println(users);
+        redisService.set(UserKey.list, "typed", users, tf);
+        List<User> ret = redisService.get(UserKey.list, "typed", tf);
+        assertEquals(users, ret);
     }
 
     @Test
     public void testSetBytes(){
         redisService.set(UserKey.bytes, ""+100,  new byte[]{1,2,3,4,5});
+        assertTrue(redisService.exists(UserKey.bytes, ""+100));
     }
 
     @Test
     public void testGetBytes(){
+        redisService.set(UserKey.bytes, ""+100,  new byte[]{1,2,3,4,5});
         byte[] bytes = redisService.get(UserKey.bytes, ""+100,  byte[].class);
-        for(int i=0; i<bytes.length; i++){
-            System.out.println((int)bytes[i]);
-        }
+        assertArrayEquals(new byte[]{1,2,3,4,5}, bytes);
     }
 
     @Test
     public void testGetSet(){
         redisService.set(UserKey.getById, ""+100, "helloworld");
         String ret = redisService.getSet(UserKey.getById, ""+100, "java");
-        System.out.println("old value:"+ret);
+        assertEquals("helloworld", ret);
         String newvalue = redisService.get(UserKey.getById, ""+100, String.class);
-        System.out.println("new value:"+newvalue);
+        assertEquals("java", newvalue);
     }
 
     @Test
@@ -94,117 +215,279 @@ public class RedisClientServiceTest {
         kvs[0] = new KV("hello", "world");
         kvs[1] = new KV("yes", "java");
         redisService.mset(UserKey.mset,kvs);
-        List<String> values = redisService.mget(String.class, UserKey.mset, "hello", "yes");
-        System.out.println(values);
+        List<String> values = redisService.mget(String.class, UserKey.mset, "hello", "yes", "not-exist");
+        assertEquals(Arrays.asList("world", "java", null), values);
     }
 
     @Test
     public void testIncr(){
+        redisService.delete(UserKey.incr, "incr");
         Long v = redisService.incr(UserKey.incr, "incr");
-        System.out.println(v);
+        assertEquals(Long.valueOf(1), v);
         redisService.incr(UserKey.incr, "incr", 10);
         redisService.incr(UserKey.incr, "incr", -5);
         int ret = redisService.get(UserKey.incr, "incr", Integer.class);
-        System.out.println(ret);
+        assertEquals(6, ret);
+    }
+
+    @Test
+    public void testGetLong(){
+        redisService.delete(UserKey.incr, "counter");
+        redisService.incr(UserKey.incr, "counter", 10);
+        assertEquals(10, redisService.getLong(UserKey.incr, "counter"));
+        assertEquals(10, redisService.getInt(UserKey.incr, "counter"));
+        assertEquals(-1L, redisService.getLong(UserKey.incr, "not-exist", -1L));
+        redisService.set(UserKey.incr, "flag", true);
+        assertTrue(redisService.getBoolean(UserKey.incr, "flag"));
+        assertTrue(redisService.getBoolean(UserKey.incr, "not-exist", true));
+        assertFalse(redisService.getBoolean(UserKey.incr, "not-exist"));
+    }
+
+    @Test
+    public void testGetBatching() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer server = RedisServerRule.getServer();
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try(RedisClientService batchService = newService(properties -> {
+            properties.getGetBatching().setEnabled(true);
+            //窗口足够长，批次只会因为满了而关闭
+            properties.getGetBatching().setWindowMicros(5000000);
+            properties.getGetBatching().setMaxBatchSize(16);
+        })){
+            for(int i = 0; i < threads; i++){
+                batchService.set(UserKey.getById, "batch-" + i, "value-" + i);
+            }
+            long mgets = server.getCommandCount("MGET");
+            long gets = server.getCommandCount("GET");
+            List<Future<String>> results = getConcurrently(executor, batchService, threads);
+            for(int i = 0; i < threads; i++){
+                assertEquals("value-" + i, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, server.getCommandCount("MGET") - mgets);
+            assertEquals(0, server.getCommandCount("GET") - gets);
+            //MGET失败时，批次里的每个调用方都收到异常
+            server.setCommandError("MGET", "ERR injected failure");
+            try{
+                results = getConcurrently(executor, batchService, threads);
+                for(Future<String> result : results){
+                    try{
+                        result.get(10, TimeUnit.SECONDS);
+                        fail();
+                    }catch(ExecutionException e){
+                        assertTrue(causedBy(e.getCause(), "injected failure"));
+                    }
+                }
+            }finally{
+                server.setCommandError("MGET", null);
+            }
+            //被中断的leader不等窗口，也不空转，发完以后恢复中断标记
+            long start = System.nanoTime();
+            Thread.currentThread().interrupt();
+            try{
+                assertEquals("value-0", batchService.get(UserKey.getById, "batch-0", String.class));
+                assertTrue(Thread.currentThread().isInterrupted());
+            }finally{
+                Thread.interrupted();
+            }
+            //上一个批次只有一个key，没有并发的单个get直接发出去，不等5秒的窗口
+            assertEquals("value-1", batchService.get(UserKey.getById, "batch-1", String.class));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在同一个连接工厂上另建一个RedisClientService，customizer修改它的配置
+     */
+    private RedisClientService newService(Consumer<RedisClientProperties> customizer){
+        RedisTemplate<byte[], byte[]> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setEnableDefaultSerializer(false);
+        redisTemplate.setConnectionFactory(redisConnectionFactory);
+        redisTemplate.afterPropertiesSet();
+        RedisClientProperties properties = new RedisClientProperties();
+        customizer.accept(properties);
+        return new RedisClientService(redisTemplate, properties, null);
+    }
+
+    private static boolean causedBy(Throwable e, String message){
+        for(Throwable t = e; t != null; t = t.getCause()){
+            if(t.getMessage() != null && t.getMessage().contains(message)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Future<String>> getConcurrently(ExecutorService executor, RedisClientService service, int threads) throws Exception{
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for(int i = 0; i < threads; i++){
+            String key = "batch-" + i;
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                return service.get(UserKey.getById, key, String.class);
+            }));
+        }
+        ready.await();
+        go.countDown();
+        return results;
+    }
+
+    @Test
+    public void testCounterBuffer(){
+        redisService.delete(UserKey.incr, "buffered");
+        redisService.delete(UserKey.incr, "buffered-hash");
+        redisService.delete(UserKey.incr, "buffered-zset");
+        RedisCounterBuffer buffer = redisService.counterBuffer(UserKey.incr);
+        for(int i=0;i<100;i++){
+            buffer.incr("buffered");
+            buffer.hincr("buffered-hash", "pv", 2);
+            buffer.zincrby("buffered-zset", "a0", 0.5);
+        }
+        //flush之前没有写到redis
+        assertFalse(redisService.exists(UserKey.incr, "buffered"));
+        buffer.close();
+        assertEquals(100, redisService.getLong(UserKey.incr, "buffered"));
+        assertEquals(Long.valueOf(200), redisService.hget(UserKey.incr, "buffered-hash", "pv", Long.class));
+        assertEquals(50.0, redisService.zscore(UserKey.incr, "buffered-zset", "a0"), 0);
+        assertEquals(0, buffer.getDroppedDeltas());
+    }
+
+    @Test
+    public void testCounterBufferPartialFailure(){
+        redisService.delete(UserKey.incr, "buffered-ok");
+        redisService.set(UserKey.incr, "buffered-wrongtype", "abc");
+        RedisCounterBuffer buffer = redisService.counterBuffer(UserKey.incr);
+        try{
+            buffer.incr("buffered-ok", 3);
+            buffer.hincr("buffered-wrongtype", "pv", 1);
+            buffer.flush();
+            assertEquals(3, redisService.getLong(UserKey.incr, "buffered-ok"));
+            //WRONGTYPE的增量被丢弃，写成功的不会再写一次
+            assertEquals(1, buffer.getDroppedDeltas());
+            buffer.flush();
+            assertEquals(3, redisService.getLong(UserKey.incr, "buffered-ok"));
+            assertEquals("abc", redisService.get(UserKey.incr, "buffered-wrongtype", String.class));
+        }finally{
+            buffer.close();
+        }
+        assertEquals(3, redisService.getLong(UserKey.incr, "buffered-ok"));
     }
 
     @Test
     public void testLockUnlock(){
+        redisService.delete(UserKey.lock, ""+100);
         String lockValue = redisService.lock(UserKey.lock, ""+100, 5);
-        System.out.println("lockValue:" + lockValue);
-        if(!StringUtils.isEmpty(lockValue)){
-            boolean unlock = redisService.unLock(UserKey.lock, ""+100, lockValue);
-            System.out.println("unlock:" + unlock);
-        }
+        assertFalse(StringUtils.isEmpty(lockValue));
+        //锁被占用，不等待
+        assertNull(redisService.lock(UserKey.lock, ""+100, 0));
+        assertFalse(redisService.unLock(UserKey.lock, ""+100, "other"));
+        assertTrue(redisService.unLock(UserKey.lock, ""+100, lockValue));
+        lockValue = redisService.lock(UserKey.lock, ""+100, 0);
+        assertFalse(StringUtils.isEmpty(lockValue));
+        assertTrue(redisService.unLock(UserKey.lock, ""+100, lockValue));
     }
 
     @Test
     public void testHash(){
+        redisService.delete(UserKey.hkey1, ""+100);
+        redisService.delete(UserKey.hkey2, ""+100);
+        redisService.delete(UserKey.hkey3, ""+100);
         redisService.hset(UserKey.hkey1, ""+100, "username", "xjs");
         redisService.hset(UserKey.hkey1, ""+100, "password", new User(100, "hello"));
         String username = redisService.hget(UserKey.hkey1, ""+100, "username", String.class);
         User u = redisService.hget(UserKey.hkey1, ""+100, "password", User.class);
-        System.out.println(username);
-        System.out.println(u);
-        int size = redisService.hlen(UserKey.hkey1, ""+100);
-        System.out.println(size);
+        assertEquals("xjs", username);
+        assertEquals(new User(100, "hello"), u);
+        assertEquals(2, redisService.hlen(UserKey.hkey1, ""+100));
         List<String> keys = redisService.hkeys(UserKey.hkey1, ""+100);
-        System.out.println(keys);
+        assertEquals(new HashSet<>(Arrays.asList("username", "password")), new HashSet<>(keys));
         redisService.hset(UserKey.hkey2, ""+100, "u1", new User(100, "hello"));
         redisService.hset(UserKey.hkey2, ""+100, "u2", new User(101, "world"));
         List<User> users = redisService.hvals(UserKey.hkey2, ""+100, User.class);
-        System.out.println(users);
+        assertEquals(new HashSet<>(Arrays.asList(new User(100, "hello"), new User(101, "world"))), new HashSet<>(users));
         Map<String, User> all = redisService.hgetall(UserKey.hkey2, ""+100,User.class);
-        System.out.println(all);
+        assertEquals(2, all.size());
+        assertEquals(new User(101, "world"), all.get("u2"));
         redisService.hdelete(UserKey.hkey2, ""+100, "u1", "u2");
-        users = redisService.hvals(UserKey.hkey2, ""+100, User.class);
-        System.out.println(users);
-        System.out.println(redisService.hexists(UserKey.hkey2, ""+100, "u1"));
-        System.out.println(redisService.hexists(UserKey.hkey1, ""+100, "username"));
+        assertEquals(0, redisService.hlen(UserKey.hkey2, ""+100));
+        assertFalse(redisService.hexists(UserKey.hkey2, ""+100, "u1"));
+        assertTrue(redisService.hexists(UserKey.hkey1, ""+100, "username"));
         Map<String, Object> map = new HashMap<String, Object>();
         map.put("100", new User(100, "hello"));
         map.put("101", new User(101, "world"));
+        map.put("200", new User(200, "java"));
         redisService.hmset(UserKey.hkey3, ""+100, map);
-        users = redisService.hmget(User.class,UserKey.hkey3, ""+100, "100", "101");
-        System.out.println(users);
+        users = redisService.hmget(User.class,UserKey.hkey3, ""+100, "100", "101", "300");
+        assertEquals(Arrays.asList(new User(100, "hello"), new User(101, "world"), null), users);
         List<String> scanKeys = redisService.hscanKeys(UserKey.hkey3, ""+100,"1*");
-        System.out.println(scanKeys);
+        assertEquals(new HashSet<>(Arrays.asList("100", "101")), new HashSet<>(scanKeys));
         Map<String, byte[]> scans = redisService.hscan(UserKey.hkey3, ""+100,"1*");
-        for(Map.Entry<String, byte[]> entry : scans.entrySet()){
-            System.out.println(entry.getKey() + "：" + ((GenericJackson2JsonRedisSerializer) RedisSerializer.json()).deserialize(entry.getValue(), User.class));
-        }
+        assertEquals(2, scans.size());
+        assertEquals(new User(101, "world"), ((GenericJackson2JsonRedisSerializer) RedisSerializer.json()).deserialize(scans.get("101"), User.class));
     }
 
     @Test
     public void testList(){
+        redisService.delete(UserKey.list1, "list");
         redisService.lpush(UserKey.list1, "list", new User(1,"xjs"));
         User u = redisService.lpop(UserKey.list1, "list", User.class);
-        System.out.println(u);
+        assertEquals(new User(1,"xjs"), u);
+        //list已经空了，lpushx不写
         Long ret = redisService.lpushx(UserKey.list1, "list", new User(1,"xjs"));
-        System.out.println(ret);
+        assertEquals(Long.valueOf(0), ret);
         redisService.lpush(UserKey.list1, "list", "hello", "world", "java", "redis");
         redisService.lset(UserKey.list1, "list", 0, "hello-new");
         String value = redisService.lindex(UserKey.list1, "list", 0, String.class);
-        System.out.println(value);
-        System.out.println(redisService.llen(UserKey.list1, "list"));
+        assertEquals("hello-new", value);
+        assertEquals(4, redisService.llen(UserKey.list1, "list"));
         List<String> list = redisService.lrange(UserKey.list1, "list", 0, 3, String.class);
-        System.out.println(list);
-        int cnt = redisService.lrem(UserKey.list1, "list", 2, new User(1,"xjs"));
-        System.out.println(cnt);
-        redisService.ltrim(UserKey.list1, "list",0,2);
+        assertEquals(Arrays.asList("hello-new", "java", "world", "hello"), list);
+        int cnt = redisService.lrem(UserKey.list1, "list", 2, "java");
+        assertEquals(1, cnt);
+        redisService.ltrim(UserKey.list1, "list",0,1);
+        assertEquals(Arrays.asList("hello-new", "world"), redisService.lrange(UserKey.list1, "list", 0, -1, String.class));
     }
 
     @Test
     public void testSet(){
+        redisService.delete(UserKey.set, "set");
+        redisService.delete(UserKey.set2, "set");
         redisService.sadd(UserKey.set, "set", new User(1,"xjs"));
-        int size = redisService.scard(UserKey.set, "set");
-        System.out.println(size);
+        assertEquals(1, redisService.scard(UserKey.set, "set"));
         List<User>  users = redisService.smembers(UserKey.set, "set", User.class);
-        System.out.println(users);
+        assertEquals(Collections.singletonList(new User(1,"xjs")), users);
         User u = redisService.spop(UserKey.set, "set", User.class);
-        System.out.println(u);
+        assertEquals(new User(1,"xjs"), u);
+        assertEquals(0, redisService.scard(UserKey.set, "set"));
         redisService.sadd(UserKey.set2, "set", "hello", "world", "java", "C++", "php");
-        boolean isMember = redisService.sismember(UserKey.set2, "set", "hello");
-        System.out.println(isMember);
+        assertTrue(redisService.sismember(UserKey.set2, "set", "hello"));
         List<String> values = redisService.srandmember(UserKey.set2, "set", 2, String.class);
-        System.out.println(values);
+        assertEquals(2, values.size());
         redisService.srem(UserKey.set2, "set", "hello");
+        assertFalse(redisService.sismember(UserKey.set2, "set", "hello"));
         values = redisService.smembers(UserKey.set2, "set",  String.class);
-        System.out.println(values);
-        values = redisService.spop(UserKey.set2, "set", 2, String.class);
-        System.out.println(values);
+        assertEquals(new HashSet<>(Arrays.asList("world", "java", "C++", "php")), new HashSet<>(values));
+        List<String> popped = redisService.spop(UserKey.set2, "set", 2, String.class);
+        assertEquals(2, popped.size());
         values = redisService.smembers(UserKey.set2, "set",  String.class);
-        System.out.println(values);
+        assertEquals(2, values.size());
+        assertFalse(values.removeAll(popped));
         for(int i=0;i<100;i++){
             redisService.sadd(UserKey.set2, "set", "value"+i);
         }
         Set<String> set  = redisService.sscan(UserKey.set2, "set", "value*", String.class);
-        System.out.println(set.size());
-        System.out.println(set);
+        assertEquals(100, set.size());
+        assertTrue(set.contains("value99"));
     }
 
     @Test
     public void testZSet(){
+        redisService.delete(UserKey.zset1, "zset");
         List<DefaultTypedTuple<String>> tuples = new ArrayList<>();
         for(int i=0;i<10;i++){
             DefaultTypedTuple<String> tuple1 = new DefaultTypedTuple("a"+i, 1.0+i);
@@ -212,37 +495,31 @@ public class RedisClientServiceTest {
         }
         redisService.zadd(UserKey.zset1, "zset", tuples.toArray(new DefaultTypedTuple[0]));
         Set<String> ret = redisService.zrange(UserKey.zset1, "zset", 1.0, 10.0, String.class);
-        System.out.println(ret);
+        assertEquals(new HashSet<>(Arrays.asList("a0", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8", "a9")), ret);
         Set<ZSetOperations.TypedTuple<String>> tupleRet = redisService.zrangeWithScore(UserKey.zset1, "zset", 1.0, 10.0, String.class);
-        tupleRet.forEach((typle)->{
-            System.out.println(typle.getValue()+"="+typle.getScore());
-        });
-        Long count = redisService.zcard(UserKey.zset1, "zset");
-        System.out.println("count:"+count);
-        count = redisService.zcount(UserKey.zset1, "zset", 1.0, 5.0);
-        System.out.println("count:"+count);
+        assertEquals(10, tupleRet.size());
+        for(ZSetOperations.TypedTuple<String> tuple : tupleRet){
+            assertEquals(1.0 + Integer.parseInt(tuple.getValue().substring(1)), tuple.getScore(), 0);
+        }
+        assertEquals(Long.valueOf(10), redisService.zcard(UserKey.zset1, "zset"));
+        assertEquals(Long.valueOf(5), redisService.zcount(UserKey.zset1, "zset", 1.0, 5.0));
         Double afterIncr = redisService.zincrby(UserKey.zset1, "zset", "a0", 10);
-        System.out.println("afterIncr:"+afterIncr);
-        Long zrank = redisService.zrank(UserKey.zset1, "zset", "a0");
-        System.out.println("zrank="+zrank);
-        Double score = redisService.zscore(UserKey.zset1, "zset", "a0");
-        System.out.println("score="+score);
-        zrank = redisService.zrevRank(UserKey.zset1, "zset", "a0");
-        System.out.println("zrank="+zrank);
+        assertEquals(11.0, afterIncr, 0);
+        assertEquals(Long.valueOf(9), redisService.zrank(UserKey.zset1, "zset", "a0"));
+        assertEquals(11.0, redisService.zscore(UserKey.zset1, "zset", "a0"), 0);
+        assertEquals(Long.valueOf(0), redisService.zrevRank(UserKey.zset1, "zset", "a0"));
         List<String> reverse = redisService.zrevRange(UserKey.zset1, "zset", 0,5, String.class);
-        System.out.println(reverse);
+        assertEquals(Arrays.asList("a0", "a9", "a8", "a7", "a6", "a5"), reverse);
         reverse = redisService.zrevRangeByScore(UserKey.zset1, "zset", 0,5, String.class);
-        System.out.println(reverse);
+        assertEquals(Arrays.asList("a4", "a3", "a2", "a1"), reverse);
         Set<ZSetOperations.TypedTuple<String>> scans = redisService.zscan(UserKey.zset1, "zset", "*", String.class);
-        for (ZSetOperations.TypedTuple<String> scan : scans) {
-            System.out.println(scan.getValue()+"="+scan.getScore());
-        }
+        assertEquals(10, scans.size());
         redisService.zrem(UserKey.zset1, "zset", "a0");
-        System.out.println(redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
+        assertEquals(new HashSet<>(Arrays.asList("a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8", "a9")), redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
         redisService.zremByRank(UserKey.zset1, "zset", 0, 1);
-        System.out.println(redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
+        assertEquals(new HashSet<>(Arrays.asList("a3", "a4", "a5", "a6", "a7", "a8", "a9")), redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
         redisService.zremByScore(UserKey.zset1, "zset", 5.0, 100.0);
-        System.out.println(redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
+        assertEquals(Collections.singleton("a3"), redisService.zrange(UserKey.zset1, "zset", 0, 100, String.class));
     }
 
 //    @EventListener
@@ -251,12 +528,947 @@ public class RedisClientServiceTest {
 //    }
 
     @Test
-    public void testPubSub(){
+    public void testPubSub() throws Exception{
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Object> received = new CopyOnWriteArrayList<>();
+        applicationContext.addApplicationListener((ApplicationListener<OnRedisMessageEvent>) event -> {
+            if("demo:hello".equals(event.getChannel())){
+                received.add(event.getValue());
+                latch.countDown();
+            }
+        });
         redisService.publish(false,null, "demo:hello", new User(1, "xjs"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testStream() throws Exception{
+        //测试服务器没有实现stream
+        Assume.assumeFalse(RedisServerRule.isEnabled());
+        redisService.delete(UserKey.stream, "stream");
+        for(int i=0;i<10;i++){
+            Map<String, Object> body = new HashMap<>();
+            body.put("user", new User(i, "xjs"+i));
+            redisStreamClient.add(UserKey.stream, "stream", body, 1000);
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        List<User> received = new CopyOnWriteArrayList<>();
+        StreamConsumerOptions options = new StreamConsumerOptions();
+        options.setConcurrency(4);
+        redisStreamClient.createGroup(UserKey.stream, "stream", "group");
+        redisStreamClient.add(UserKey.stream, "stream", Collections.singletonMap("user", new User(100, "after group")), 1000);
+        StreamSubscription subscription = redisStreamClient.subscribe(true, UserKey.stream, "stream", "group", "consumer1", options, (record)->{
+            received.add(record.getValue("user", User.class));
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        subscription.stop();
+        //组是在前10条之后建的，只收到后面那条
+        assertEquals(Collections.singletonList(new User(100, "after group")), received);
+    }
+
+    @Test
+    public void testRateLimiter(){
+        redisService.delete(UserKey.rateLimit, "u1");
+        redisService.delete(UserKey.rateLimit, "api");
+        RedisRateLimiter userLimiter = redisService.rateLimiter(UserKey.rateLimit, RateLimitRule.tokenBucket(5, 1000));
+        int passed = 0;
+        for(int i=0;i<10;i++){
+            if(userLimiter.tryAcquire("u1")){
+                passed++;
+            }
+        }
+        //令牌桶容量5，第6次开始拒绝
+        assertEquals(5, passed);
+        RedisRateLimiter apiLimiter = redisService.rateLimiter(UserKey.rateLimit, RateLimitRule.slidingWindowCounter(3, 1000));
+        //u1没有令牌了，api也不扣
+        assertFalse(RedisRateLimiter.tryAcquireAll(1, userLimiter.key("u1"), apiLimiter.key("api")));
+        assertEquals(0, redisService.hlen(UserKey.rateLimit, "api"));
+        for(int i=0;i<3;i++){
+            assertTrue(apiLimiter.tryAcquire("api"));
+        }
+        assertFalse(apiLimiter.tryAcquire("api"));
+    }
+
+    @Test
+    public void testRateLimiterLogAndDuplicateKeys(){
+        redisService.delete(UserKey.rateLimit, "log");
+        redisService.delete(UserKey.rateLimit, "dup");
+        //同一微秒内的申请也各占一个成员
+        RedisRateLimiter logLimiter = redisService.rateLimiter(true, UserKey.rateLimit, RateLimitRule.slidingWindowLog(200, 60000), false);
+        for(int i = 0; i < 100; i++){
+            assertTrue(logLimiter.tryAcquire("log", 2));
+        }
+        assertEquals(200L, (long) redisService.zcard(UserKey.rateLimit, "log"));
+        assertFalse(logLimiter.tryAcquire("log"));
+        //重复的key只扣一次
+        RedisRateLimiter bucket = redisService.rateLimiter(true, UserKey.rateLimit, RateLimitRule.tokenBucket(5, 60000), false);
+        for(int i = 0; i < 5; i++){
+            assertTrue(bucket.tryAcquireAll(1, "dup", "dup"));
+        }
+        assertFalse(bucket.tryAcquireAll(1, "dup", "dup"));
+        RedisRateLimiter other = redisService.rateLimiter(true, UserKey.rateLimit, RateLimitRule.tokenBucket(10, 60000), false);
+        try{
+            RedisRateLimiter.tryAcquireAll(1, bucket.key("dup"), other.key("dup"));
+            fail();
+        }catch(IllegalArgumentException e){
+            //同一个key不能用两个规则
+        }
+    }
+
+    @Test
+    public void testWorkQueue() throws Exception{
+        redisService.delete(UserKey.workQueue, "jobs");
+        for(int i=0;i<10;i++){
+            redisWorkQueue.push(UserKey.workQueue, "jobs", new User(i, "xjs"+i));
+        }
+        assertEquals(Long.valueOf(10), redisWorkQueue.size(UserKey.workQueue, "jobs"));
+        CountDownLatch latch = new CountDownLatch(10);
+        Set<User> received = Collections.synchronizedSet(new HashSet<>());
+        WorkQueueOptions options = new WorkQueueOptions();
+        options.setConcurrency(2);
+        WorkQueueSubscription subscription = redisWorkQueue.subscribe(true, UserKey.workQueue, "jobs", "consumer1", options, (item)->{
+            received.add(item.getValue(User.class));
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        subscription.stop();
+        assertEquals(10, received.size());
+        assertTrue(received.contains(new User(9, "xjs9")));
+        assertEquals(Long.valueOf(0), redisWorkQueue.size(UserKey.workQueue, "jobs"));
+    }
+
+    @Test
+    public void testDelayQueue() throws Exception{
+        for(DelayPriority priority : DelayPriority.values()){
+            redisService.delete(UserKey.delayQueue, "jobs" + priority.getSuffix());
+        }
+        redisDelayQueue.schedule(UserKey.delayQueue, "jobs", new User(1, "low"), 100, DelayPriority.LOW);
+        redisDelayQueue.schedule(UserKey.delayQueue, "jobs", new User(2, "normal"), 100);
+        redisDelayQueue.schedule(UserKey.delayQueue, "jobs", new User(3, "high"), 100, DelayPriority.HIGH);
+        redisDelayQueue.schedule(UserKey.delayQueue, "jobs", new User(4, "cancel"), 100);
+        assertEquals(4, redisDelayQueue.size(UserKey.delayQueue, "jobs"));
+        assertTrue(redisDelayQueue.cancel(UserKey.delayQueue, "jobs", new User(4, "cancel")));
+        assertFalse(redisDelayQueue.cancel(UserKey.delayQueue, "jobs", new User(4, "cancel")));
+        //没到期的不会被取走
+        assertTrue(redisDelayQueue.poll(UserKey.delayQueue, "jobs", 10).isEmpty());
+        Thread.sleep(200);
+        CountDownLatch latch = new CountDownLatch(3);
+        List<String> received = new CopyOnWriteArrayList<>();
+        DelayQueueSubscription subscription = redisDelayQueue.subscribe(UserKey.delayQueue, "jobs", (job)->{
+            received.add(job.getPriority() + ":" + job.getValue(User.class).getName());
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        subscription.stop();
+        //同时到期的按优先级先后处理
+        assertEquals(Arrays.asList("HIGH:high", "NORMAL:normal", "LOW:low"), received);
+        assertEquals(0, redisDelayQueue.size(UserKey.delayQueue, "jobs"));
+    }
+
+    @Test
+    public void testDelayQueueServerClock(){
+        redisService.delete(UserKey.delayQueue, "clock" + DelayPriority.NORMAL.getSuffix());
+        assertTrue(redisDelayQueue.schedule(UserKey.delayQueue, "clock", "later", 60000));
+        assertFalse(redisDelayQueue.schedule(UserKey.delayQueue, "clock", "later", 60000));
+        //到期时间按redis服务端的时间计算
+        RedisConnection connection = redisConnectionFactory.getConnection();
+        long serverNow;
+        try{
+            serverNow = connection.time();
+        }finally{
+            connection.close();
+        }
+        double due = redisService.zscore(UserKey.delayQueue, "clock" + DelayPriority.NORMAL.getSuffix(), "later");
+        assertEquals(serverNow + 60000, due, 1000);
+        assertTrue(redisDelayQueue.poll(UserKey.delayQueue, "clock", 10).isEmpty());
+        redisDelayQueue.schedule(UserKey.delayQueue, "clock", "now", 0);
+        List<DelayedJob> jobs = redisDelayQueue.poll(UserKey.delayQueue, "clock", 10);
+        assertEquals(1, jobs.size());
+        assertEquals("now", jobs.get(0).getValue(String.class));
+        assertEquals(1, redisDelayQueue.size(UserKey.delayQueue, "clock"));
+        //一次取走超过1000个时分段ZREM
+        redisService.delete(UserKey.delayQueue, "bulk" + DelayPriority.NORMAL.getSuffix());
+        for(int i = 0; i < 2500; i++){
+            redisDelayQueue.schedule(UserKey.delayQueue, "bulk", i, 0);
+        }
+        assertEquals(2500, redisDelayQueue.poll(UserKey.delayQueue, "bulk", 5000).size());
+        assertEquals(0, redisDelayQueue.size(UserKey.delayQueue, "bulk"));
+    }
+
+    @Test
+    public void testShardedKey(){
+        redisService.delete(BigKey.hash, "users");
+        redisService.delete(BigKey.set, "ids");
+        Map<String, Object> fields = new HashMap<>();
+        for(int i=0;i<100;i++){
+            fields.put("f"+i, new User(i, "xjs"+i));
+            redisService.sadd(BigKey.set, "ids", i);
+        }
+        redisService.hmset(BigKey.hash, "users", fields);
+        redisService.hset(BigKey.hash, "users", "f100", new User(100, "xjs100"));
+        assertEquals(new User(100, "xjs100"), redisService.hget(BigKey.hash, "users", "f100", User.class));
+        assertEquals(101, redisService.hlen(BigKey.hash, "users"));
+        assertEquals(Arrays.asList(new User(1, "xjs1"), new User(2, "xjs2"), new User(3, "xjs3")), redisService.hmget(User.class, BigKey.hash, "users", "f1", "f2", "f3"));
+        assertEquals(101, redisService.hgetall(BigKey.hash, "users", User.class).size());
+        //f1、f10~f19、f100
+        assertEquals(12, redisService.hscanKeys(BigKey.hash, "users", "f1*").size());
+        assertEquals(100, redisService.scard(BigKey.set, "ids"));
+        assertTrue(redisService.sismember(BigKey.set, "ids", 10));
+        assertEquals(5, redisService.srandmember(BigKey.set, "ids", 5, Integer.class).size());
+        assertTrue(redisService.srem(BigKey.set, "ids", 1, 2, 3));
+        assertEquals(97, redisService.smembers(BigKey.set, "ids", Integer.class).size());
+    }
+
+    @Test
+    public void testCacheManager() throws Exception{
+        CacheOptions options = new CacheOptions();
+        options.setValueType(User.class);
+        options.setNearCacheMaxSize(1000);
+        RedisClientCacheManager cacheManager = new RedisClientCacheManager(redisService);
+        cacheManager.addCache("user", UserKey.cache, options);
+        cacheManager.afterPropertiesSet();
+        RedisClientCache cache = cacheManager.getCache("user");
+        cache.clear();
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<User>> futures = new ArrayList<>();
+        for(int i=0;i<8;i++){
+            futures.add(executor.submit(() -> cache.get(1, () -> {
+                loads.incrementAndGet();
+                Thread.sleep(100);
+                return new User(1, "xjs");
+            })));
+        }
+        for(Future<User> future : futures){
+            assertEquals(new User(1, "xjs"), future.get());
+        }
+        executor.shutdown();
+        //并发的8次读只加载一次
+        assertEquals(1, loads.get());
+        assertEquals(new User(1, "xjs"), redisService.get(UserKey.cache, "1", User.class));
+        Map<Integer, User> users = new HashMap<>();
+        for(int i=2;i<5;i++){
+            users.put(i, new User(i, "xjs"+i));
+        }
+        cache.putAll(users);
+        cache.put(5, null);
+        Map<Integer, User> all = cache.getAll(Arrays.asList(1, 2, 3, 4, 5, 6));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), new ArrayList<>(all.keySet()));
+        assertEquals(new User(3, "xjs3"), all.get(3));
+        assertNull(all.get(5));
+        cache.evict(1);
+        assertNull(cache.get(1));
+        assertFalse(redisService.exists(UserKey.cache, "1"));
+        //前缀里的[ab]按字面匹配，clear不会删到ca:下的key
+        UserKey globKey = new UserKey("c[ab]:", 60);
+        RedisClientCacheManager globManager = new RedisClientCacheManager(redisService);
+        globManager.addCache("glob", globKey, options);
+        globManager.afterPropertiesSet();
+        RedisClientCache globCache = globManager.getCache("glob");
+        globCache.put(1, new User(1, "xjs"));
+        redisService.set(new UserKey("ca:"), "1", "other");
+        globCache.clear();
+        assertFalse(redisService.exists(globKey, "1"));
+        assertEquals("other", redisService.get(new UserKey("ca:"), "1", String.class));
+        redisService.delete(new UserKey("ca:"), "1");
+    }
+
+    @Test
+    public void testUntypedCache(){
+        RedisClientCacheManager cacheManager = new RedisClientCacheManager(redisService);
+        cacheManager.addCache("untyped", UserKey.cache, new CacheOptions());
+        cacheManager.afterPropertiesSet();
+        RedisClientCache cache = cacheManager.getCache("untyped");
+        //没有声明类型，读出来还是写入时的类型
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("long", 5L);
+        values.put("short", (short) 5);
+        values.put("float", 1.5f);
+        values.put("char", 'x');
+        values.put("bool", true);
+        values.put("enum", DelayPriority.HIGH);
+        values.put("user", new User(1, "xjs"));
+        values.put("list", new ArrayList<>(Arrays.asList(new User(1, "xjs"), new User(2, "aaa"))));
+        values.put("string", "hello");
+        values.put("json-like", "[1,2]");
+        for(Map.Entry<String, Object> e : values.entrySet()){
+            cache.put(e.getKey(), e.getValue());
+        }
+        for(Map.Entry<String, Object> e : values.entrySet()){
+            assertEquals(e.getKey(), e.getValue(), cache.get(e.getKey()).get());
+        }
+        assertEquals(Long.valueOf(5), cache.get("long", Long.class));
+        //String原样写入，和redisService.get互通
+        assertEquals("hello", redisService.get(UserKey.cache, "string", String.class));
+        redisService.set(UserKey.cache, "raw", "written by service");
+        assertEquals("written by service", cache.get("raw").get());
+        Map<String, Object> all = cache.getAll(Arrays.asList("long", "char", "user"));
+        assertEquals(5L, all.get("long"));
+        assertEquals('x', all.get("char"));
+        assertEquals(new User(1, "xjs"), all.get("user"));
+    }
+
+    @Test
+    public void testConnectionLanes() throws Exception{
+        try(RedisClientService lanedService = newService(properties -> {
+            properties.getLanes().setEnabled(true);
+            properties.getLanes().setBulkMaxTotal(2);
+        })){
+            for(int i=0;i<100;i++){
+                lanedService.sadd(UserKey.set, "lanes", i);
+                lanedService.hset(ReportKey.daily, "lanes", "f"+i, i);
+            }
+            assertEquals(100, lanedService.smembers(UserKey.set, "lanes", Integer.class).size());
+            assertEquals(100, lanedService.hgetall(ReportKey.daily, "lanes", Integer.class).size());
+            List<Object> results = lanedService.execute(ConnectionLane.BULK, new SessionCallback<List<Object>>() {
+                @Override
+                public List<Object> execute(RedisOperations operations) {
+                    operations.multi();
+                    operations.opsForSet().size("lanes".getBytes(StandardCharsets.UTF_8));
+                    return operations.exec();
+                }
+            });
+            assertEquals(Collections.singletonList(0L), results);
+            Map<ConnectionLane, LaneMetrics> metrics = lanedService.getLaneMetrics();
+            assertTrue(metrics.get(ConnectionLane.FAST).getCompleted() > 0);
+            assertTrue(metrics.get(ConnectionLane.BULK).getCompleted() > 0);
+            assertTrue(metrics.get(ConnectionLane.BULK).getPeakInFlight() <= 2);
+            lanedService.delete(UserKey.set, "lanes");
+            lanedService.delete(ReportKey.daily, "lanes");
+        }
+    }
+
+    @Test
+    public void testReplicaReads() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer replica = RedisServerRule.getServer().newReplica().start();
+        try(RedisClientService replicaService = newService(properties -> {
+            properties.getReplicaReads().setEnabled(true);
+            properties.getReplicaReads().setNodes(Arrays.asList(replica.getHost() + ":" + replica.getPort()));
+        })){
+            replicaService.set(ProfileKey.profile, "1", new User(1, "xjs"));
+            replicaService.get(ProfileKey.profile, "1", User.class);
+            long before = replica.getCommandsProcessed();
+            assertEquals(new User(1, "xjs"), replicaService.get(ProfileKey.profile, "1", User.class));
+            assertEquals(1, replica.getCommandsProcessed() - before);
+            before = replica.getCommandsProcessed();
+            assertEquals(new User(1, "xjs"), replicaService.readFrom(ReadPreference.MASTER, () -> replicaService.get(ProfileKey.profile, "1", User.class)));
+            assertEquals(0, replica.getCommandsProcessed() - before);
+            replicaService.delete(ProfileKey.profile, "1");
+        }finally{
+            replica.close();
+        }
+    }
+
+    @Test
+    public void testHedgedReads() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer master = RedisServerRule.getServer();
+        RespServer replica = master.newReplica().start();
+        try(RedisClientService hedgedService = newService(properties -> {
+            properties.getReplicaReads().setEnabled(true);
+            properties.getReplicaReads().setNodes(Arrays.asList(replica.getHost() + ":" + replica.getPort()));
+            properties.getHedging().setEnabled(true);
+            properties.getHedging().setInitialDelayMillis(10);
+            properties.getHedging().setMaxHedgePercent(100);
+        })){
+            hedgedService.set(UserKey.getById, "1", new User(1, "xjs"));
+            hedgedService.set(FeedKey.feed, "1", "feed1");
+            assertEquals("feed1", hedgedService.get(FeedKey.feed, "1", String.class));
+            //先建立到副本的连接，exists不对冲，等连接建好才返回
+            assertTrue(hedgedService.readFrom(ReadPreference.REPLICA_PREFERRED, () -> hedgedService.exists(UserKey.getById, "1")));
+            //master变慢，10毫秒以后对冲到副本
+            master.setLatencyMicros(200000);
+            long start = System.currentTimeMillis();
+            assertEquals(new User(1, "xjs"), hedgedService.get(UserKey.getById, "1", User.class));
+            assertTrue(System.currentTimeMillis() - start < 150);
+            //副本也变慢，30毫秒超时返回上一次读到的值，没有读过的key走fallback
+            replica.setLatencyMicros(200000);
+            start = System.currentTimeMillis();
+            assertEquals("feed1", hedgedService.get(FeedKey.feed, "1", String.class));
+            assertTrue(System.currentTimeMillis() - start < 150);
+            assertEquals("loaded", hedgedService.get(FeedKey.feed, "2", String.class, () -> "loaded"));
+            HedgingMetrics metrics = hedgedService.getHedgingMetrics();
+            assertTrue(metrics.getHedges() >= 1);
+            assertTrue(metrics.getHedgeWins() >= 1);
+            assertTrue(metrics.getDeadlineExceeded() >= 2);
+        }finally{
+            master.setLatencyMicros(0);
+            replica.close();
+        }
+    }
+
+    @Test
+    public void testHedgedReadsSaturated() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer master = RedisServerRule.getServer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try(RedisClientService hedgedService = newService(properties -> {
+            properties.getHedging().setEnabled(true);
+            properties.getHedging().setThreads(1);
+        })){
+            hedgedService.set(UserKey.getById, "1", new User(1, "xjs"));
+            hedgedService.set(FeedKey.feed, "1", "feed1");
+            hedgedService.delete(FeedKey.feed, "2");
+            assertEquals("feed1", hedgedService.get(FeedKey.feed, "1", String.class));
+            //唯一的线程被一个没有读超时的慢读占着
+            master.setLatencyMicros(300000);
+            Future<User> slow = executor.submit(() -> hedgedService.get(UserKey.getById, "1", User.class));
+            Thread.sleep(50);
+            //有读超时的不在调用线程上等，直接返回上一次读到的值
+            long start = System.currentTimeMillis();
+            assertEquals("feed1", hedgedService.get(FeedKey.feed, "1", String.class));
+            try{
+                hedgedService.get(FeedKey.feed, "2", String.class);
+                fail();
+            }catch(QueryTimeoutException e){
+                //没有读过的key
+            }
+            assertTrue(System.currentTimeMillis() - start < 100);
+            assertEquals(2, hedgedService.getHedgingMetrics().getRejected());
+            assertEquals(new User(1, "xjs"), slow.get());
+        }finally{
+            master.setLatencyMicros(0);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer server = RedisServerRule.getServer();
+        try(RedisClientService breakerService = newService(properties -> {
+            properties.getCircuitBreaker().setEnabled(true);
+            properties.getCircuitBreaker().setMinimumCalls(5);
+            properties.getCircuitBreaker().setSlowCallMillis(20);
+            properties.getCircuitBreaker().setSlowCallRateThreshold(50);
+            properties.getCircuitBreaker().setOpenMillis(500);
+        })){
+            breakerService.set(UserKey.getById, "1", new User(1, "xjs"));
+            breakerService.set(CatalogKey.catalog, "1", "catalog1");
+            assertEquals("catalog1", breakerService.get(CatalogKey.catalog, "1", String.class));
+            //redis变慢，慢调用超过一半以后熔断
+            server.setLatencyMicros(50000);
+            long start = 0;
+            boolean rejected = false;
+            try{
+                for(int i = 0; i < 10; i++){
+                    start = System.currentTimeMillis();
+                    breakerService.get(UserKey.getById, "1", User.class);
+                }
+            }catch(RedisConnectionFailureException e){
+                rejected = true;
+                //熔断以后直接失败，不等redis
+                assertTrue(System.currentTimeMillis() - start < 50);
+            }
+            assertTrue(rejected);
+            //熔断期间返回上一次读到的值
+            assertEquals("catalog1", breakerService.get(CatalogKey.catalog, "1", String.class));
+            CircuitBreakerMetrics metrics = breakerService.getCircuitBreakerMetrics();
+            assertEquals(CircuitState.OPEN, metrics.getState());
+            assertEquals(1, metrics.getTimesOpened());
+            assertTrue(metrics.getStaleServed() >= 1);
+            assertTrue(metrics.getNotPermittedCalls() >= 1);
+            //恢复以后探测成功关闭熔断
+            server.setLatencyMicros(0);
+            Thread.sleep(600);
+            for(int i = 0; i < 3; i++){
+                assertEquals(new User(1, "xjs"), breakerService.get(UserKey.getById, "1", User.class));
+            }
+            assertEquals(CircuitState.CLOSED, breakerService.getCircuitBreakerMetrics().getState());
+        }finally{
+            server.setLatencyMicros(0);
+        }
+    }
+
+    @Test
+    public void testStaleInvalidation() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer server = RedisServerRule.getServer();
+        try(RedisClientService breakerService = newService(properties -> {
+            properties.getCircuitBreaker().setEnabled(true);
+            properties.getCircuitBreaker().setMinimumCalls(5);
+            properties.getCircuitBreaker().setSlowCallMillis(20);
+            properties.getCircuitBreaker().setSlowCallRateThreshold(50);
+            properties.getCircuitBreaker().setOpenMillis(500);
+        })){
+            breakerService.delete(CatalogKey.catalog, "h");
+            breakerService.delete(CatalogKey.catalog, "h2");
+            breakerService.delete(CatalogKey.catalog, "z");
+            for(int i = 1; i <= 3; i++){
+                breakerService.hset(CatalogKey.catalog, "h", "f" + i, "v" + i);
+            }
+            breakerService.hset(CatalogKey.catalog, "h2", "f", "v");
+            breakerService.zadd(CatalogKey.catalog, "z", new DefaultTypedTuple<>("m1", 1.0), new DefaultTypedTuple<>("m2", 2.0));
+            for(int i = 1; i <= 3; i++){
+                assertEquals("v" + i, breakerService.hget(CatalogKey.catalog, "h", "f" + i, String.class));
+            }
+            assertEquals("v", breakerService.hget(CatalogKey.catalog, "h2", "f", String.class));
+            assertEquals(1.0, breakerService.zscore(CatalogKey.catalog, "z", "m1"), 0);
+            assertEquals(2.0, breakerService.zscore(CatalogKey.catalog, "z", "m2"), 0);
+            //本进程写过、删过的field和member，本地保存的旧值都不能再用
+            breakerService.hset(CatalogKey.catalog, "h", "f1", "new");
+            breakerService.hdelete(CatalogKey.catalog, "h", "f2");
+            breakerService.delete(CatalogKey.catalog, "h2");
+            breakerService.zrem(CatalogKey.catalog, "z", "m1");
+            //前面的快调用也算在内，慢调用超过一半才熔断
+            server.setLatencyMicros(50000);
+            try{
+                for(int i = 0; i < 40; i++){
+                    breakerService.get(UserKey.getById, "1", User.class);
+                }
+                fail();
+            }catch(RedisConnectionFailureException e){
+                //熔断
+            }
+            assertEquals(CircuitState.OPEN, breakerService.getCircuitBreakerMetrics().getState());
+            assertEquals("v3", breakerService.hget(CatalogKey.catalog, "h", "f3", String.class));
+            assertEquals(2.0, breakerService.zscore(CatalogKey.catalog, "z", "m2"), 0);
+            assertStaleMissing(() -> breakerService.hget(CatalogKey.catalog, "h", "f1", String.class));
+            assertStaleMissing(() -> breakerService.hget(CatalogKey.catalog, "h", "f2", String.class));
+            assertStaleMissing(() -> breakerService.hget(CatalogKey.catalog, "h2", "f", String.class));
+            assertStaleMissing(() -> breakerService.zscore(CatalogKey.catalog, "z", "m1"));
+        }finally{
+            server.setLatencyMicros(0);
+        }
+    }
+
+    private static void assertStaleMissing(Runnable read){
+        try{
+            read.run();
+            fail();
+        }catch(RedisConnectionFailureException e){
+            //没有旧值，抛出熔断的异常
+        }
+    }
+
+    @Test
+    public void testTracing() throws Exception{
+        Assume.assumeTrue(RedisServerRule.isEnabled());
+        RespServer server = RedisServerRule.getServer();
+        try(RedisClientService tracedService = newService(properties -> {
+            properties.getTracing().setEnabled(true);
+            properties.getTracing().setSlowMillis(20);
+            properties.getLanes().setEnabled(true);
+        })){
+            List<RedisOperation> spans = new CopyOnWriteArrayList<>();
+            tracedService.addOperationListener(spans::add);
+            tracedService.set(UserKey.getById, "1", new User(1, "xjs"));
+            tracedService.get(UserKey.getById, "1", User.class);
+            tracedService.mget(String.class, UserKey.mset, "a", "b", "c");
+            for(int i = 0; i < 3; i++){
+                tracedService.hset(ReportKey.daily, "traced", "f" + i, i);
+            }
+            tracedService.hgetall(ReportKey.daily, "traced", Integer.class);
+            List<String> commands = new ArrayList<>();
+            for(RedisOperation span : spans){
+                commands.add(span.getCommand());
+            }
+            assertEquals(Arrays.asList("SET", "GET", "MGET", "HSET", "HSET", "HSET"), commands.subList(0, 6));
+            for(RedisOperation span : spans){
+                if(span.getCommand().startsWith("H")){
+                    assertEquals(ReportKey.class.getName(), span.getPrefixClass());
+                }else if("MGET".equals(span.getCommand())){
+                    assertEquals(3, span.getKeyCount());
+                    assertEquals(UserKey.class.getName(), span.getPrefixClass());
+                }else if("GET".equals(span.getCommand())){
+                    assertTrue(span.getResponseBytes() > 0);
+                }
+                assertNull(span.getError());
+                assertFalse(span.isSlow());
+            }
+            //unLock的lua脚本不经过template()，也要记在自己的前缀下，不能沿用线程上一次的ReportKey
+            spans.clear();
+            assertFalse(tracedService.unLock(UserKey.getById, "traced-lock", "v"));
+            assertFalse(spans.isEmpty());
+            for(RedisOperation span : spans){
+                assertEquals(UserKey.class.getName(), span.getPrefixClass());
+            }
+            //redis变慢，超过20毫秒的操作记到慢操作日志里
+            server.setLatencyMicros(30000);
+            tracedService.hgetall(ReportKey.daily, "traced", Integer.class);
+            List<RedisOperation> slow = tracedService.getSlowOperations();
+            assertFalse(slow.isEmpty());
+            assertEquals(ReportKey.class.getName(), slow.get(0).getPrefixClass());
+            assertTrue(slow.get(0).isSlow());
+            tracedService.delete(ReportKey.daily, "traced");
+        }finally{
+            server.setLatencyMicros(0);
+        }
+    }
+
+    @Test
+    public void testBufferDecoding() throws Exception{
+        try(RedisClientService bufferService = newService(properties -> properties.getBufferDecoding().setEnabled(true))){
+            bufferService.set(UserKey.getById, "1", new User(1, "xjs"));
+            bufferService.set(UserKey.getById, "count", 100);
+            assertEquals(new User(1, "xjs"), bufferService.get(UserKey.getById, "1", User.class));
+            assertEquals(Integer.valueOf(100), bufferService.get(UserKey.getById, "count", Integer.class));
+            Map<String, Object> map = bufferService.get(UserKey.getById, "1", new TypeReference<Map<String, Object>>(){});
+            assertEquals("xjs", map.get("name"));
+            bufferService.delete(UserKey.getById, "list");
+            Object[] users = new Object[1000];
+            for(int i = 0; i < users.length; i++){
+                users[i] = new User(i, "user" + i);
+            }
+            bufferService.rpush(UserKey.getById, "list", users);
+            List<User> list = bufferService.lrange(UserKey.getById, "list", 0, -1, User.class);
+            assertEquals(1000, list.size());
+            assertEquals(new User(999, "user999"), list.get(999));
+            bufferService.delete(UserKey.getById, "hash");
+            bufferService.hset(UserKey.getById, "hash", "a", "1");
+            bufferService.hset(UserKey.getById, "hash", "b", "2");
+            assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(bufferService.hvals(UserKey.getById, "hash", String.class)));
+            bufferService.delete(UserKey.getById, "list");
+            bufferService.delete(UserKey.getById, "hash");
+            bufferService.delete(UserKey.getById, "count");
+        }
+    }
+
+    @Test
+    public void testLargeValue() throws Exception{
+        //边生成边写，每512KB一个分片
+        LargeValueManifest manifest = redisLargeValues.write(ReportKey.daily, "large", out -> {
+            for(int i = 0; i < 100000; i++){
+                out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        assertEquals(1088890, manifest.getSize());
+        assertEquals(3, manifest.getChunks());
+        long lines = 0;
+        try(InputStream in = redisLargeValues.openStream(ReportKey.daily, "large")){
+            int b;
+            while((b = in.read()) >= 0){
+                if(b == '\n'){
+                    lines++;
+                }
+            }
+        }
+        assertEquals(100000, lines);
+        //覆盖以后读到的是新版本，旧版本的分片保留30秒
+        String oldVersion = manifest.getVersion();
+        byte[] data = new byte[3 * 1024 * 1024 + 1];
+        new Random(1).nextBytes(data);
+        manifest = redisLargeValues.write(ReportKey.daily, "large", new ByteArrayInputStream(data));
+        assertEquals(7, manifest.getChunks());
+        assertEquals(manifest.getVersion(), redisLargeValues.manifest(ReportKey.daily, "large").getVersion());
+        RedisConnection connection = redisConnectionFactory.getConnection();
         try{
-            Thread.sleep(1000);
-        }catch(Exception e){
-            e.printStackTrace();
+            Set<byte[]> oldChunks = connection.keys(("*large:" + oldVersion + ":*").getBytes(StandardCharsets.UTF_8));
+            assertEquals(3, oldChunks.size());
+            for(byte[] chunk : oldChunks){
+                long ttl = connection.pTtl(chunk);
+                assertTrue(ttl > 0 && ttl <= 30000);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            redisLargeValues.read(ReportKey.daily, "large", out);
+            assertArrayEquals(data, out.toByteArray());
+            //manifest和分片都删掉
+            assertTrue(redisLargeValues.delete(ReportKey.daily, "large"));
+            assertNull(redisLargeValues.manifest(ReportKey.daily, "large"));
+            assertFalse(redisLargeValues.delete(ReportKey.daily, "large"));
+            assertTrue(connection.keys(("*large:" + manifest.getVersion() + ":*").getBytes(StandardCharsets.UTF_8)).isEmpty());
+        }finally{
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception{
+        redisService.set(UserKey.getById, "1", new User(1, "xjs"));
+        redisService.hset(UserKey.getById, "2", "name", "snapshot");
+        redisService.rpush(UserKey.getById, "3", "a", "b", "c");
+        Path file = Files.createTempFile("user", ".snapshot");
+        try{
+            //导出UserKey.getById下的所有key
+            SnapshotResult exported = redisSnapshots.export(UserKey.getById, file);
+            assertTrue(exported.getKeys() >= 3);
+            assertEquals(0, exported.getFailedKeys());
+            //BULK通道只有一个连接时，SCAN和DUMP用同一个连接
+            try(RedisClientService lanedService = newService(properties -> {
+                properties.getLanes().setEnabled(true);
+                properties.getLanes().setBulkMaxTotal(1);
+                properties.getLanes().setBulkMaxWaitMillis(500);
+            })){
+                Path lanedFile = Files.createTempFile("laned", ".snapshot");
+                try{
+                    assertTrue(new RedisSnapshots(lanedService).export("*" + UserKey.getById.getPrefix() + "*", lanedFile).getKeys() >= 3);
+                }finally{
+                    Files.delete(lanedFile);
+                }
+            }
+            redisService.delete(UserKey.getById, "1");
+            redisService.delete(UserKey.getById, "2");
+            redisService.delete(UserKey.getById, "3");
+            //导入，已经存在的key会被覆盖
+            SnapshotResult restored = redisSnapshots.restore(file);
+            assertEquals(exported.getKeys(), restored.getKeys());
+            assertEquals(0, restored.getFailedKeys());
+            assertEquals(new User(1, "xjs"), redisService.get(UserKey.getById, "1", User.class));
+            assertEquals("snapshot", redisService.hget(UserKey.getById, "2", "name", String.class));
+            assertEquals(Arrays.asList("a", "b", "c"), redisService.lrange(UserKey.getById, "3", 0, -1, String.class));
+            //不覆盖时已经存在的key逐个算失败，不影响同一批的其他key
+            SnapshotOptions noReplace = new SnapshotOptions();
+            noReplace.setReplace(false);
+            redisService.delete(UserKey.getById, "1");
+            restored = new RedisSnapshots(redisService, noReplace).restore(file);
+            assertEquals(1, restored.getKeys());
+            assertEquals(exported.getKeys() - 1, restored.getFailedKeys());
+            //命令行导出和导入
+            LettuceConnectionFactory factory = (LettuceConnectionFactory) redisConnectionFactory;
+            String host = "--host=" + factory.getHostName();
+            String port = "--port=" + factory.getPort();
+            RedisSnapshotTool.main(new String[]{"export", file.toString(), host, port, "--pattern=*" + UserKey.getById.getPrefix() + "*"});
+            redisService.delete(UserKey.getById, "1");
+            redisService.delete(UserKey.getById, "2");
+            RedisSnapshotTool.main(new String[]{"restore", file.toString(), host, port});
+            assertEquals(new User(1, "xjs"), redisService.get(UserKey.getById, "1", User.class));
+            assertEquals("snapshot", redisService.hget(UserKey.getById, "2", "name", String.class));
+        }finally{
+            Files.delete(file);
+            redisService.delete(UserKey.getById, "2");
+            redisService.delete(UserKey.getById, "3");
+        }
+    }
+
+    @Test
+    public void testWarmup(){
+        for(int i = 11; i <= 15; i++){
+            redisService.set(UserKey.cache, String.valueOf(i), new User(i, "warm" + i));
+        }
+        CacheOptions cacheOptions = new CacheOptions();
+        cacheOptions.setValueType(User.class);
+        cacheOptions.setNearCacheMaxSize(1000);
+        RedisClientCacheManager cacheManager = new RedisClientCacheManager(redisService);
+        cacheManager.addCache("user", UserKey.cache, cacheOptions);
+        cacheManager.afterPropertiesSet();
+        //一般在配置文件中设置spring.redis.warmup.*，启动时自动执行
+        RedisClientProperties.Warmup options = new RedisClientProperties.Warmup();
+        options.getHotKeys().put("user", Arrays.asList("11", "12"));
+        options.getScanCaches().add("user");
+        RedisWarmup warmup = new RedisWarmup(redisService, options, cacheManager);
+        WarmupMetrics metrics = warmup.warmUp();
+        assertTrue(metrics.isCompleted());
+        assertTrue(metrics.getPreloadedKeys() >= 5);
+        //已经在一级缓存中，redis中删除以后还能读到
+        redisService.delete(UserKey.cache, "13");
+        assertEquals("warm13", cacheManager.getCache("user").get(13, User.class).getName());
+    }
+
+    @Test
+    public void testZSetPage(){
+        redisService.delete(UserKey.rank, "page");
+        for(int i = 0; i < 25; i++){
+            //每5个同分
+            redisService.zadd(UserKey.rank, "page", new DefaultTypedTuple<>("m" + i, (double)(i / 5)));
+        }
+        //ZREVRANGEBYSCORE ... LIMIT offset count，同分的按成员倒序
+        assertEquals(Arrays.asList("m19", "m18", "m17", "m16", "m15"), redisService.zrevRangeByScore(UserKey.rank, "page", 0, 100, 5, 5, String.class));
+        //游标分页，翻页期间插入新成员也不会重复或者跳过
+        ScoreCursor cursor = null;
+        List<String> all = new ArrayList<>();
+        int pages = 0;
+        do{
+            ScorePage<String> page = redisService.zpageByScore(UserKey.rank, "page", 0, 100, true, cursor, 7, String.class);
+            page.getItems().forEach(item -> all.add(item.getValue()));
+            pages++;
+            cursor = page.getNext();
+            if(cursor != null){
+                cursor = ScoreCursor.decode(cursor.encode());
+                redisService.zadd(UserKey.rank, "page", new DefaultTypedTuple<>("new" + all.size(), 100.0));
+            }
+        }while(cursor != null);
+        assertEquals(4, pages);
+        assertEquals(25, all.size());
+        assertEquals(Arrays.asList("m24", "m23", "m22", "m21", "m20", "m19", "m18"), all.subList(0, 7));
+        Set<String> expected = new HashSet<>();
+        for(int i = 0; i < 25; i++){
+            expected.add("m" + i);
+        }
+        assertEquals(expected, new HashSet<>(all));
+    }
+
+    @Test
+    public void testZSetPageTies(){
+        redisService.delete(UserKey.rank, "ties");
+        DefaultTypedTuple[] tuples = new DefaultTypedTuple[1000];
+        for(int i = 0; i < tuples.length; i++){
+            tuples[i] = new DefaultTypedTuple<>(String.format("m%04d", i), 0.0);
+        }
+        redisService.zadd(UserKey.rank, "ties", tuples);
+        redisService.zadd(UserKey.rank, "ties", new DefaultTypedTuple<>("out", 1.0));
+        RespServer server = RedisServerRule.isEnabled() ? RedisServerRule.getServer() : null;
+        long scans = server == null ? 0 : server.getCommandCount("ZRANGEBYSCORE");
+        //1000个同分，游标成员还在时从它的排名往后取，不再按分数扫描
+        ScoreCursor cursor = null;
+        List<String> all = new ArrayList<>();
+        do{
+            ScorePage<String> page = redisService.zpageByScore(UserKey.rank, "ties", 0, 0, false, cursor, 100, String.class);
+            page.getItems().forEach(item -> all.add(item.getValue()));
+            cursor = page.getNext();
+        }while(cursor != null);
+        assertEquals(1000, all.size());
+        for(int i = 0; i < all.size(); i++){
+            assertEquals(String.format("m%04d", i), all.get(i));
+        }
+        if(server != null){
+            assertEquals(scans + 1, server.getCommandCount("ZRANGEBYSCORE"));
+        }
+        //游标成员被删除以后跳过同分的成员继续翻
+        ScorePage<String> page = redisService.zpageByScore(UserKey.rank, "ties", 0, 0, false, null, 500, String.class);
+        assertEquals("m0499", page.getItems().get(499).getValue());
+        redisService.zrem(UserKey.rank, "ties", "m0499");
+        page = redisService.zpageByScore(UserKey.rank, "ties", 0, 0, false, page.getNext(), 10, String.class);
+        assertEquals("m0500", page.getItems().get(0).getValue());
+        assertEquals(10, page.getItems().size());
+        redisService.delete(UserKey.rank, "ties");
+    }
+
+    @Test
+    public void testScoredMembers(){
+        redisService.delete(UserKey.rank, "scored");
+        DefaultTypedTuple[] tuples = new DefaultTypedTuple[10000];
+        for(int i = 0; i < tuples.length; i++){
+            tuples[i] = new DefaultTypedTuple<>("m" + i, i * 0.5);
+        }
+        redisService.zadd(UserKey.rank, "scored", tuples);
+        //分数是double[]，只统计分数时不解码成员
+        ScoredMembers<String> range = redisService.zrangeByScoreScored(UserKey.rank, "scored", Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1, String.class);
+        assertEquals(10000, range.size());
+        double sum = 0;
+        for(int i = 0; i < range.size(); i++){
+            sum += range.scores()[i];
+        }
+        assertEquals(24997500.0, sum, 0);
+        assertEquals(24997500.0, range.sum(), 0);
+        assertEquals("m0", range.member(0));
+        assertEquals(4999.5, range.score(9999), 0);
+        ScoredMembers<String> top = redisService.zrevRangeScored(UserKey.rank, "scored", 0, 2, String.class);
+        List<String> members = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        top.forEach((member, score) -> {
+            members.add(member);
+            scores.add(score);
+        });
+        assertEquals(Arrays.asList("m9999", "m9998", "m9997"), members);
+        assertEquals(Arrays.asList(4999.5, 4999.0, 4998.5), scores);
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(redisService.zrevRangeByScoreScored(UserKey.rank, "scored", 100, 200, 10, 3, String.class).toTuples());
+        assertEquals(3, page.size());
+        assertEquals("m390", page.get(0).getValue());
+        assertEquals(195.0, page.get(0).getScore(), 0);
+        assertEquals("m388", page.get(2).getValue());
+    }
+
+    @Test
+    public void testLeaderboard(){
+        LeaderboardOptions options = new LeaderboardOptions();
+        options.setTopCacheMillis(1000);
+        RedisLeaderboard leaderboard = new RedisLeaderboard(redisService, options);
+        redisService.delete(UserKey.rank, "board");
+        for(int i = 1; i <= 50; i++){
+            leaderboard.setScore(UserKey.rank, "board", "player" + i, i * 10);
+        }
+        leaderboard.incrementScore(UserKey.rank, "board", "player1", 1000);
+        //前3名，1秒内再取直接读本地缓存
+        List<LeaderboardEntry<String>> top = leaderboard.top(UserKey.rank, "board", 3, String.class);
+        assertEquals(Arrays.asList("player1", "player50", "player49"), members(top));
+        assertEquals(1010.0, top.get(0).getScore(), 0);
+        assertEquals(1, top.get(0).getRank());
+        List<LeaderboardEntry<String>> page = leaderboard.page(UserKey.rank, "board", 2, 10, String.class);
+        assertEquals(10, page.size());
+        assertEquals("player41", page.get(0).getMember());
+        assertEquals(11, page.get(0).getRank());
+        LeaderboardEntry<String> me = leaderboard.rank(UserKey.rank, "board", "player20");
+        //player1和player21~player50在前面
+        assertEquals(32, me.getRank());
+        assertEquals(200.0, me.getScore(), 0);
+        //前后各2名
+        List<LeaderboardEntry<String>> around = leaderboard.around(UserKey.rank, "board", "player20", 2, String.class);
+        assertEquals(Arrays.asList("player22", "player21", "player20", "player19", "player18"), members(around));
+        assertEquals(30, around.get(0).getRank());
+        assertNull(leaderboard.rank(UserKey.rank, "board", "nobody"));
+    }
+
+    private static List<String> members(List<LeaderboardEntry<String>> entries){
+        List<String> ret = new ArrayList<>();
+        for(LeaderboardEntry<String> entry : entries){
+            ret.add(entry.getMember());
+        }
+        return ret;
+    }
+
+    @Test
+    public void testAnalytics(){
+        LocalDate today = LocalDate.now();
+        String[] days = DailyKeys.lastDays("{daily}", today, 7);
+        for(String day : days){
+            redisService.delete(UserKey.uv, day);
+            redisService.delete(UserKey.uv, day + ":active");
+        }
+        redisService.delete(UserKey.uv, "{daily}:week");
+        redisService.delete(UserKey.uv, "{daily}:counters");
+        //每天的uv写到当天的HyperLogLog，本地去重以后批量flush
+        RedisAnalyticsBuffer buffer = redisService.analyticsBuffer(UserKey.uv);
+        for(int d = 0; d < 7; d++){
+            for(int user = d * 100; user < d * 100 + 1000; user++){
+                buffer.pfadd(days[d], "user" + user);
+                buffer.setbit(days[d] + ":active", user, true);
+            }
+        }
+        buffer.close();
+        //HyperLogLog是估算值，标准误差0.81%
+        assertEquals(1000, redisService.pfcount(UserKey.uv, days[0]), 30);
+        //7天合起来的uv，user0~user1599
+        assertEquals(1600, redisService.pfcountDays(UserKey.uv, "{daily}", today, 7), 50);
+        redisService.pfmergeDays(UserKey.uv, "{daily}:week", "{daily}", today, 7);
+        assertEquals(redisService.pfcountDays(UserKey.uv, "{daily}", today, 7), redisService.pfcount(UserKey.uv, "{daily}:week"));
+        //7天都活跃的用户，600~999
+        String[] activeDays = DailyKeys.lastDays("{daily}", today, 7);
+        for(int i = 0; i < activeDays.length; i++){
+            activeDays[i] = activeDays[i] + ":active";
+        }
+        redisService.bitop(UserKey.uv, RedisStringCommands.BitOperation.AND, "{daily}:allweek", activeDays);
+        assertEquals(400, redisService.bitcount(UserKey.uv, "{daily}:allweek"));
+        assertTrue(redisService.getbit(UserKey.uv, "{daily}:allweek", 650));
+        assertFalse(redisService.getbit(UserKey.uv, "{daily}:allweek", 599));
+        //u8溢出以后回绕
+        assertEquals(Arrays.asList(44L, 44L), redisService.bitfield(UserKey.uv, "{daily}:counters", BitFieldSubCommands.create()
+                .incr(BitFieldSubCommands.BitFieldType.unsigned(8)).valueAt(0).by(300)
+                .get(BitFieldSubCommands.BitFieldType.unsigned(8)).valueAt(0)));
+    }
+
+    @Test
+    public void testAnalyticsBufferPartialFailure(){
+        redisService.delete(UserKey.uv, "buffered-ok");
+        redisService.delete(UserKey.uv, "buffered-bits");
+        redisService.set(UserKey.uv, "buffered-wrongtype", "abc");
+        RedisClientProperties.AnalyticsBuffer config = new RedisClientProperties.AnalyticsBuffer();
+        config.setBatchSize(1);
+        config.setMaxPending(10);
+        RedisAnalyticsBuffer buffer = redisService.analyticsBuffer(true, UserKey.uv, config);
+        try{
+            //WRONGTYPE的那一条被丢弃，不影响其它key
+            buffer.pfadd("buffered-wrongtype", "a", "b");
+            buffer.pfadd("buffered-ok", "a", "b");
+            buffer.setbit("buffered-bits", 5, true);
+            buffer.flush();
+            assertEquals(2, redisService.pfcount(UserKey.uv, "buffered-ok"));
+            assertTrue(redisService.getbit(UserKey.uv, "buffered-bits", 5));
+            assertEquals(2, buffer.getDroppedValues());
+            buffer.flush();
+            assertEquals(2, buffer.getDroppedValues());
+            assertEquals("abc", redisService.get(UserKey.uv, "buffered-wrongtype", String.class));
+            //超过maxPending的丢弃
+            for(int i = 0; i < 15; i++){
+                buffer.pfadd("buffered-ok", "user" + i);
+            }
+            assertEquals(7, buffer.getDroppedValues());
+            buffer.flush();
+            assertEquals(12, redisService.pfcount(UserKey.uv, "buffered-ok"));
+        }finally{
+            buffer.close();
         }
     }
 
@@ -284,6 +1496,23 @@ public class RedisClientServiceTest {
             this.name = name;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof User)) {
+                return false;
+            }
+            User user = (User) o;
+            return id == user.id && Objects.equals(name, user.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+
         @Override
         public String toString() {
             return "User{" +
@@ -3,7 +3,9 @@ package com.test;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.xjs.redisclient.KV;
 import com.github.xjs.redisclient.RedisClientService;
+import com.github.xjs.redisclient.testserver.RedisServerRule;
 import com.test.entity.UserEntity;
+import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +25,12 @@ import java.util.*;
 @RunWith(SpringRunner.class)
 public class RedisTemplateServiceTest {
 
+    /**
+     * 默认连进程内的测试服务器，-Dredis.embedded=false时连application.yml里配置的redis
+     */
+    @ClassRule
+    public static RedisServerRule redis = new RedisServerRule();
+
     @Autowired
     private RedisTemplate redisTemplate;
 
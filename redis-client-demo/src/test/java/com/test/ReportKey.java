@@ -0,0 +1,14 @@
+package com.test;
+
+
+import com.github.xjs.redisclient.key.AbstractLanedKey;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+
+public class ReportKey extends AbstractLanedKey {
+
+    public ReportKey(String value, ConnectionLane lane) {
+        super(value, lane);
+    }
+
+    public static ReportKey daily = new ReportKey("rpt:", ConnectionLane.BULK);
+}
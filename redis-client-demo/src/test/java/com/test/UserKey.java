@@ -27,5 +27,12 @@ public class UserKey extends AbstractKey {
     public static UserKey set = new UserKey("s1:");
     public static UserKey set2 = new UserKey("s2:");
     public static UserKey zset1 = new UserKey("zs1:");
+    public static UserKey rank = new UserKey("rk:");
+    public static UserKey uv = new UserKey("uv:", 8 * 24 * 3600);
     public static UserKey pubsub = new UserKey("ps:");
+    public static UserKey stream = new UserKey("st:");
+    public static UserKey rateLimit = new UserKey("rl:");
+    public static UserKey workQueue = new UserKey("wq:");
+    public static UserKey delayQueue = new UserKey("dq:");
+    public static UserKey cache = new UserKey("c:", 60);
 }
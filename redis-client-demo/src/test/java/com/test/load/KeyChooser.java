@@ -0,0 +1,75 @@
+package com.test.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按均匀分布或者zipf分布选择[0, n)之间的key
+ */
+abstract class KeyChooser {
+
+    abstract long next();
+
+    static KeyChooser of(LoadOptions options){
+        if("zipf".equals(options.distribution)){
+            return new Zipfian(options.keys, options.zipfExponent);
+        }
+        return new Uniform(options.keys);
+    }
+
+    private static final class Uniform extends KeyChooser {
+        private final int n;
+
+        private Uniform(int n) {
+            this.n = n;
+        }
+
+        @Override
+        long next(){
+            return ThreadLocalRandom.current().nextInt(n);
+        }
+    }
+
+    /**
+     * Gray等人的快速zipf生成算法(YCSB的ZipfianGenerator)，0是最热的key。
+     * 初始化时计算一次zeta(n)，之后每次O(1)
+     */
+    private static final class Zipfian extends KeyChooser {
+        private final long n;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        private Zipfian(long n, double theta) {
+            if(theta <= 0 || theta == 1){
+                throw new IllegalArgumentException("zipfExponent必须大于0并且不能等于1");
+            }
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        @Override
+        long next(){
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * zetan;
+            if(uz < 1.0){
+                return 0;
+            }
+            if(uz < 1.0 + Math.pow(0.5, theta)){
+                return Math.min(1, n - 1);
+            }
+            return Math.min(n - 1, (long)(n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(long n, double theta){
+            double sum = 0;
+            for(long i = 1; i <= n; i++){
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.test.load;
+
+import com.github.xjs.redisclient.RedisClientService;
+import com.github.xjs.redisclient.testserver.RedisServerRule;
+import com.github.xjs.redisclient.testserver.RespServer;
+import com.test.DemoApplication;
+import com.test.entity.UserEntity;
+import com.test.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 并发压测，模拟UserController/UserService的cache-aside读写和分布式锁竞争
+ *
+ * 读：先查缓存，没有命中时从UserService读出来再写入缓存；写：UserService保存以后删除缓存；锁：抢少数几个热点锁，持有一段时间后释放。
+ * 每个线程各自记录HdrHistogram，结束以后合并，输出各操作的吞吐量、p50到max的延迟、缓存命中率、锁等待超时和错误。
+ * 直接运行main，或者mvn test -Dtest=LoadTest，参数见LoadOptions。
+ */
+public class LoadDriver {
+
+    private static Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    private final RedisClientService redisService;
+    private final UserService userService;
+    private final LoadOptions options;
+    private final AtomicLong version = new AtomicLong();
+
+    public LoadDriver(RedisClientService redisService, UserService userService, LoadOptions options) {
+        this.redisService = redisService;
+        this.userService = userService;
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        RespServer server = RedisServerRule.getServer();
+        if(server != null){
+            server.setLatencyMicros(Long.getLong("load.latencyMicros", 0));
+        }
+        try(ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class).web(WebApplicationType.NONE).run(args)){
+            new LoadDriver(context.getBean(RedisClientService.class), context.getBean(UserService.class), LoadOptions.fromSystemProperties()).run();
+        }
+    }
+
+    public LoadReport run() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        try{
+            preload(executor);
+            KeyChooser keys = KeyChooser.of(options);
+            long start = System.nanoTime();
+            long measureStart = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+            long end = measureStart + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            List<Future<LoadReport>> futures = new ArrayList<>(options.threads);
+            for(int i = 0; i < options.threads; i++){
+                futures.add(executor.submit(() -> work(keys, start, measureStart, end)));
+            }
+            LoadReport report = new LoadReport();
+            for(Future<LoadReport> future : futures){
+                report.add(future.get());
+            }
+            report.setElapsedNanos(end - measureStart);
+            String text = report.format(options, target());
+            report.write(new File(options.reportDir), text);
+            log.info("压测报告(" + new File(options.reportDir).getAbsolutePath() + "):\n" + text);
+            return report;
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 把所有用户写入UserService，缓存是空的
+     */
+    private void preload(ExecutorService executor) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        int batch = (options.keys + options.threads - 1) / options.threads;
+        for(int from = 0; from < options.keys; from += batch){
+            int begin = from;
+            int stop = Math.min(options.keys, from + batch);
+            futures.add(executor.submit(() -> {
+                for(long id = begin; id < stop; id++){
+                    userService.save(new UserEntity(id, "user" + id, "pwd" + id));
+                    redisService.delete(LoadKey.user, String.valueOf(id));
+                }
+            }));
+        }
+        for(Future<?> future : futures){
+            future.get();
+        }
+    }
+
+    /**
+     * 一个压测线程。指定了targetRate时按计划的时间发请求，延迟从计划时间算起
+     */
+    private LoadReport work(KeyChooser keys, long start, long measureStart, long end){
+        LoadReport report = new LoadReport();
+        long intervalNanos = options.targetRate > 0 ? TimeUnit.SECONDS.toNanos(options.threads) / options.targetRate : 0;
+        long intended = start + (intervalNanos > 0 ? ThreadLocalRandom.current().nextLong(intervalNanos) : 0);
+        while(true){
+            long begin;
+            if(intervalNanos > 0){
+                long wait = intended - System.nanoTime();
+                if(wait > 0){
+                    LockSupport.parkNanos(wait);
+                }
+                begin = intended;
+                intended += intervalNanos;
+            }else{
+                begin = System.nanoTime();
+            }
+            if(begin >= end || Thread.currentThread().isInterrupted()){
+                return report;
+            }
+            boolean measured = begin >= measureStart;
+            LoadReport target = measured ? report : null;
+            LoadReport.Op op = chooseOp();
+            try{
+                execute(op, keys, target);
+            }catch(Exception e){
+                if(measured){
+                    report.error(op, e);
+                }
+            }
+            if(measured){
+                report.record(op, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    private LoadReport.Op chooseOp(){
+        int dice = ThreadLocalRandom.current().nextInt(100);
+        if(dice < options.writePercent){
+            return LoadReport.Op.WRITE;
+        }
+        if(dice < options.writePercent + options.lockPercent){
+            return LoadReport.Op.LOCK;
+        }
+        return LoadReport.Op.READ;
+    }
+
+    private void execute(LoadReport.Op op, KeyChooser keys, LoadReport report){
+        switch(op){
+            case READ:
+                read(keys.next(), report);
+                break;
+            case WRITE:
+                write(keys.next());
+                break;
+            default:
+                lock(ThreadLocalRandom.current().nextInt(options.lockKeys), report);
+        }
+    }
+
+    private UserEntity read(long id, LoadReport report){
+        String key = String.valueOf(id);
+        UserEntity user = redisService.get(LoadKey.user, key, UserEntity.class);
+        if(report != null){
+            report.hit(user != null);
+        }
+        if(user == null){
+            user = userService.findById(id);
+            if(user != null){
+                redisService.set(LoadKey.user, key, user);
+            }
+        }
+        return user;
+    }
+
+    private void write(long id){
+        userService.save(new UserEntity(id, "user" + id + "-" + version.incrementAndGet(), "pwd" + id));
+        redisService.delete(LoadKey.user, String.valueOf(id));
+    }
+
+    private void lock(int index, LoadReport report){
+        String key = "hot" + index;
+        String value = redisService.lock(LoadKey.lock, key, options.lockWaitSeconds);
+        if(value == null){
+            if(report != null){
+                report.lockTimeout();
+            }
+            return;
+        }
+        try{
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(options.lockHoldMicros));
+        }finally{
+            redisService.unLock(LoadKey.lock, key, value);
+        }
+    }
+
+    private String target(){
+        RespServer server = RedisServerRule.isEnabled() ? RedisServerRule.getServer() : null;
+        if(server != null){
+            return "进程内测试服务器 " + server.getHost() + ":" + server.getPort() + ", 注入延迟" + server.getLatencyMicros() + "微秒";
+        }
+        return System.getProperty("spring.redis.host", "application.yml") + ":" + System.getProperty("spring.redis.port", "");
+    }
+}
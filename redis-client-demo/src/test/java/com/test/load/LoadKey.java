@@ -0,0 +1,13 @@
+package com.test.load;
+
+import com.github.xjs.redisclient.key.AbstractKey;
+
+public class LoadKey extends AbstractKey {
+
+    public LoadKey(String value, int expireSeconds) {
+        super(value, expireSeconds);
+    }
+
+    public static LoadKey user = new LoadKey("u:", 60);
+    public static LoadKey lock = new LoadKey("lk:", 10);
+}
@@ -0,0 +1,75 @@
+package com.test.load;
+
+/**
+ * 压测参数，都从-Dload.xxx读取
+ */
+public class LoadOptions {
+
+    /**
+     * 并发线程数
+     */
+    int threads = Integer.getInteger("load.threads", 16);
+    /**
+     * 预热和正式压测的秒数，预热期间的请求不计入报告
+     */
+    int warmupSeconds = Integer.getInteger("load.warmupSeconds", 1);
+    int durationSeconds = Integer.getInteger("load.durationSeconds", 5);
+    /**
+     * 用户id的范围，压测前会全部写入UserService
+     */
+    int keys = Integer.getInteger("load.keys", 1000);
+    /**
+     * uniform或者zipf
+     */
+    String distribution = System.getProperty("load.distribution", "zipf");
+    double zipfExponent = Double.parseDouble(System.getProperty("load.zipfExponent", "0.99"));
+    /**
+     * 更新用户(写库+删缓存)和抢锁的百分比，剩下的是cache-aside读
+     */
+    int writePercent = Integer.getInteger("load.writePercent", 5);
+    int lockPercent = Integer.getInteger("load.lockPercent", 5);
+    /**
+     * 竞争的锁的个数，越少竞争越激烈
+     */
+    int lockKeys = Integer.getInteger("load.lockKeys", 4);
+    int lockHoldMicros = Integer.getInteger("load.lockHoldMicros", 200);
+    int lockWaitSeconds = Integer.getInteger("load.lockWaitSeconds", 1);
+    /**
+     * 所有线程加起来的目标QPS，0表示每个线程收到响应就发下一个请求。
+     * 指定了QPS时延迟从计划发出的时间算起，服务端变慢造成的排队也会计入，避免coordinated omission
+     */
+    int targetRate = Integer.getInteger("load.targetRate", 0);
+    /**
+     * 报告和.hgrm直方图文件的目录
+     */
+    String reportDir = System.getProperty("load.reportDir", "target/load-report");
+
+    public static LoadOptions fromSystemProperties(){
+        LoadOptions options = new LoadOptions();
+        if(options.threads <= 0 || options.durationSeconds <= 0 || options.keys <= 0 || options.lockKeys <= 0){
+            throw new IllegalArgumentException("threads、durationSeconds、keys和lockKeys必须大于0");
+        }
+        if(options.writePercent < 0 || options.lockPercent < 0 || options.writePercent + options.lockPercent > 100){
+            throw new IllegalArgumentException("writePercent和lockPercent之和必须在0到100之间");
+        }
+        if(!"uniform".equals(options.distribution) && !"zipf".equals(options.distribution)){
+            throw new IllegalArgumentException("distribution只能是uniform或者zipf");
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + threads +
+                ", warmupSeconds=" + warmupSeconds +
+                ", durationSeconds=" + durationSeconds +
+                ", keys=" + keys +
+                ", distribution=" + ("zipf".equals(distribution) ? "zipf(" + zipfExponent + ")" : distribution) +
+                ", writePercent=" + writePercent +
+                ", lockPercent=" + lockPercent +
+                ", lockKeys=" + lockKeys +
+                ", lockHoldMicros=" + lockHoldMicros +
+                ", lockWaitSeconds=" + lockWaitSeconds +
+                ", targetRate=" + (targetRate > 0 ? targetRate : "unlimited");
+    }
+}
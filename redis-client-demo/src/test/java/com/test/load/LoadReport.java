@@ -0,0 +1,156 @@
+package com.test.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个压测线程的统计，压测结束以后合并成总的报告
+ *
+ * 延迟以微秒记录在HdrHistogram中，报告里换算成毫秒。
+ */
+public class LoadReport {
+
+    public enum Op {
+        READ, WRITE, LOCK
+    }
+
+    private final Map<Op, Histogram> histograms = new EnumMap<>(Op.class);
+    private final Map<Op, Map<String, Long>> errors = new EnumMap<>(Op.class);
+    private long hits;
+    private long misses;
+    private long lockTimeouts;
+    private long elapsedNanos;
+
+    LoadReport() {
+        for(Op op : Op.values()){
+            histograms.put(op, new Histogram(3));
+            errors.put(op, new TreeMap<>());
+        }
+    }
+
+    void record(Op op, long latencyNanos){
+        histograms.get(op).recordValue(Math.max(1, latencyNanos / 1000));
+    }
+
+    void error(Op op, Exception e){
+        errors.get(op).merge(e.getClass().getSimpleName(), 1L, Long::sum);
+    }
+
+    void hit(boolean hit){
+        if(hit){
+            hits++;
+        }else{
+            misses++;
+        }
+    }
+
+    void lockTimeout(){
+        lockTimeouts++;
+    }
+
+    void add(LoadReport other){
+        for(Op op : Op.values()){
+            histograms.get(op).add(other.histograms.get(op));
+            for(Map.Entry<String, Long> e : other.errors.get(op).entrySet()){
+                errors.get(op).merge(e.getKey(), e.getValue(), Long::sum);
+            }
+        }
+        hits += other.hits;
+        misses += other.misses;
+        lockTimeouts += other.lockTimeouts;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getCount(Op op){
+        return histograms.get(op).getTotalCount();
+    }
+
+    public long getTotalCount(){
+        long total = 0;
+        for(Histogram histogram : histograms.values()){
+            total += histogram.getTotalCount();
+        }
+        return total;
+    }
+
+    public double getHitRatio(){
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public long getLockTimeouts() {
+        return lockTimeouts;
+    }
+
+    public String format(LoadOptions options, String target){
+        StringBuilder sb = new StringBuilder();
+        double seconds = elapsedNanos / 1e9;
+        sb.append("目标: ").append(target).append('\n');
+        sb.append("参数: ").append(options).append('\n');
+        sb.append(String.format("%-6s %10s %10s %8s %9s %9s %9s %9s %9s%n", "op", "count", "ops/s", "errors", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        for(Op op : Op.values()){
+            Histogram histogram = histograms.get(op);
+            long opErrors = errorCount(op);
+            line(sb, op.name().toLowerCase(), histogram, seconds, opErrors);
+            total.add(histogram);
+            totalErrors += opErrors;
+        }
+        line(sb, "total", total, seconds, totalErrors);
+        sb.append(String.format("缓存命中率: %.2f%%, 锁等待超时: %d%n", getHitRatio() * 100, lockTimeouts));
+        for(Op op : Op.values()){
+            if(!errors.get(op).isEmpty()){
+                sb.append("错误 ").append(op.name().toLowerCase()).append(": ").append(errors.get(op)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 写出report.txt和每种操作的完整延迟分布(.hgrm，可以用HdrHistogram的plotter画图)
+     */
+    public void write(File dir, String text) throws IOException {
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            throw new IOException("创建目录失败:" + dir.getAbsolutePath());
+        }
+        Files.write(new File(dir, "report.txt").toPath(), text.getBytes(StandardCharsets.UTF_8));
+        for(Op op : Op.values()){
+            try(PrintStream out = new PrintStream(new File(dir, op.name().toLowerCase() + ".hgrm"), "UTF-8")){
+                histograms.get(op).outputPercentileDistribution(out, 1000.0);
+            }catch(FileNotFoundException e){
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private long errorCount(Op op){
+        long count = 0;
+        for(Long c : errors.get(op).values()){
+            count += c;
+        }
+        return count;
+    }
+
+    private static void line(StringBuilder sb, String name, Histogram h, double seconds, long errors){
+        sb.append(String.format("%-6s %10d %10.0f %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n", name, h.getTotalCount(),
+                seconds > 0 ? h.getTotalCount() / seconds : 0, errors,
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)),
+                ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue())));
+    }
+
+    private static double ms(long micros){
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.test.load;
+
+import com.github.xjs.redisclient.RedisClientService;
+import com.github.xjs.redisclient.testserver.RedisServerRule;
+import com.test.service.UserService;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * mvn test -Dtest=LoadTest -Dload.enabled=true -Dload.threads=64 -Dload.durationSeconds=30 -Dload.latencyMicros=500
+ * 没有-Dload.enabled=true时跳过，默认的mvn test不跑压测
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class LoadTest {
+
+    @ClassRule
+    public static RedisServerRule redis = new RedisServerRule(Long.getLong("load.latencyMicros", 0));
+
+    @Autowired
+    private RedisClientService redisService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void testLoad() throws Exception{
+        Assume.assumeTrue(Boolean.getBoolean("load.enabled"));
+        LoadReport report = new LoadDriver(redisService, userService, LoadOptions.fromSystemProperties()).run();
+        Assert.assertTrue(report.getTotalCount() > 0);
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.zset.ScoredMembers;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.BaseRedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 直接从lettuce的读缓冲区解码
+ *
+ * 通过原生连接的dispatch发送命令，自定义的CommandOutput在收到每个bulk string时拿到的是指向netty缓冲区的ByteBuffer，
+ * 在lettuce的IO线程上只把它追加到一个连续的数组里，不再每个元素一个byte[]；反序列化等命令结束以后在调用线程上执行，
+ * 大的value不会占住IO线程，挡住同一个连接上的其他命令。不是lettuce连接或者连接在pipeline、事务里时走原来的byte[]。
+ */
+final class BufferReads {
+
+    private final long timeoutMillis;
+    private final OperationTracer tracer;
+
+    /**
+     * @param timeoutMillis 等待命令返回的超时
+     * @param tracer 为null时不跟踪
+     */
+    BufferReads(long timeoutMillis, OperationTracer tracer) {
+        this.timeoutMillis = timeoutMillis;
+        this.tracer = tracer;
+    }
+
+    static CommandArgs<byte[], byte[]> args(byte[] key){
+        return new CommandArgs<>(ByteArrayCodec.INSTANCE).addKey(key);
+    }
+
+    /**
+     * @param breaker 熔断器，template没有经过熔断器时为null
+     * @param prefix 记在跟踪里的前缀
+     * @param output 每次调用都要是新的
+     * @param fallback 不能用原生连接时在同一个连接上执行
+     */
+    <T> T read(RedisTemplate<byte[], byte[]> template, RedisCircuitBreaker breaker, KeyPrefix prefix, ProtocolKeyword type, CommandArgs<byte[], byte[]> args,
+               Decoding<T> output, Function<RedisConnection, T> fallback){
+        return template.execute((RedisCallback<T>) connection -> {
+            Object nativeConnection = connection.isPipelined() || connection.isQueueing() ? null : connection.getNativeConnection();
+            if(!(nativeConnection instanceof BaseRedisAsyncCommands)){
+                return fallback.apply(connection);
+            }
+            if(breaker != null){
+                breaker.acquirePermission();
+            }
+            long start = System.nanoTime();
+            try{
+                T ret = dispatch((BaseRedisAsyncCommands<byte[], byte[]>) nativeConnection, type, args, output);
+                if(breaker != null){
+                    breaker.onComplete(System.nanoTime() - start, null);
+                }
+                if(tracer != null){
+                    tracer.record(prefix, type.name(), 1, keyBytes(args), output.bytes, start, null);
+                }
+                return ret;
+            }catch(RuntimeException e){
+                if(breaker != null){
+                    breaker.onComplete(System.nanoTime() - start, e);
+                }
+                if(tracer != null){
+                    tracer.record(prefix, type.name(), 1, keyBytes(args), output.bytes, start, e);
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * 原生命令的参数只统计key的字节数
+     */
+    private static long keyBytes(CommandArgs<byte[], byte[]> args){
+        ByteBuffer key = args.getFirstEncodedKey();
+        return key == null ? 0 : key.remaining();
+    }
+
+    private <T> T dispatch(BaseRedisAsyncCommands<byte[], byte[]> commands, ProtocolKeyword type, CommandArgs<byte[], byte[]> args, Decoding<T> output){
+        try{
+            RedisFuture<T> future = commands.dispatch(type, output, args);
+            LettuceFutures.awaitOrCancel(future, timeoutMillis, TimeUnit.MILLISECONDS);
+        }catch(RuntimeException e){
+            DataAccessException translated = LettuceConverters.exceptionConverter().convert(e);
+            throw translated == null ? e : translated;
+        }
+        return output.result();
+    }
+
+    /**
+     * 在IO线程上收集bulk string的CommandOutput，{@link #result()}在调用线程上解码
+     */
+    abstract static class Decoding<T> extends CommandOutput<byte[], byte[], T> {
+        /**
+         * 收到的bulk string的字节数
+         */
+        private long bytes;
+
+        Decoding(T output) {
+            super(ByteArrayCodec.INSTANCE, output);
+        }
+
+        @Override
+        public void set(ByteBuffer bytes) {
+            if(bytes != null){
+                this.bytes += bytes.remaining();
+            }
+            decode(bytes);
+        }
+
+        /**
+         * 在IO线程上执行，只复制字节，不做反序列化
+         * @param bytes 只在这次调用里有效，不能保存；key不存在时为null
+         */
+        abstract void decode(ByteBuffer bytes);
+
+        /**
+         * 命令结束以后在调用线程上执行
+         */
+        abstract T result();
+    }
+
+    /**
+     * GET这样返回一个bulk string的命令
+     */
+    static final class Value<T> extends Decoding<T> {
+        private final Function<ByteBuffer, T> decoder;
+        private byte[] data;
+
+        Value(Function<ByteBuffer, T> decoder) {
+            super(null);
+            this.decoder = decoder;
+        }
+
+        @Override
+        void decode(ByteBuffer bytes) {
+            if(bytes != null){
+                data = new byte[bytes.remaining()];
+                bytes.get(data);
+            }
+        }
+
+        @Override
+        T result() {
+            return data == null ? null : decoder.apply(ByteBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * LRANGE、HVALS这样返回bulk string数组的命令，所有元素的字节追加到一个数组里
+     */
+    static final class Values<T> extends Decoding<List<T>> {
+        private final Function<ByteBuffer, T> decoder;
+        private byte[] data = new byte[256];
+        /**
+         * 第i个元素是data[offsets[i], offsets[i + 1])
+         */
+        private int[] offsets = new int[17];
+        private BitSet nulls;
+        private int size;
+
+        Values(Function<ByteBuffer, T> decoder) {
+            super(null);
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void multi(int count) {
+            ensureCapacity(count);
+        }
+
+        @Override
+        void decode(ByteBuffer bytes) {
+            ensureCapacity(size + 1);
+            int length = offsets[size];
+            if(bytes == null){
+                if(nulls == null){
+                    nulls = new BitSet();
+                }
+                nulls.set(size);
+                offsets[++size] = length;
+                return;
+            }
+            int remaining = bytes.remaining();
+            if(data.length - length < remaining){
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + remaining));
+            }
+            bytes.get(data, length, remaining);
+            offsets[++size] = length + remaining;
+        }
+
+        @Override
+        List<T> result() {
+            List<T> ret = new ArrayList<>(size);
+            for(int i = 0; i < size; i++){
+                ret.add(nulls != null && nulls.get(i) ? null : decoder.apply(ByteBuffer.wrap(data, offsets[i], offsets[i + 1] - offsets[i])));
+            }
+            return ret;
+        }
+
+        private void ensureCapacity(int count){
+            if(offsets.length < count + 1){
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, count + 1));
+            }
+        }
+    }
+
+    /**
+     * 带WITHSCORES的ZRANGE、ZRANGEBYSCORE这样成员和分数交替返回的命令，成员的字节追加到一个数组里，分数直接解析成double
+     */
+    static final class Scored<T> extends Decoding<ScoredMembers<T>> {
+        private final Function<ByteBuffer, T> decoder;
+        private final byte[] scratch = new byte[32];
+        private byte[] data = new byte[256];
+        private int[] offsets = new int[17];
+        private double[] scores = new double[16];
+        private int size;
+        private boolean member = true;
+
+        Scored(Function<ByteBuffer, T> decoder) {
+            super(null);
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void multi(int count) {
+            ensureMembers(count / 2);
+        }
+
+        @Override
+        void decode(ByteBuffer bytes) {
+            if(member){
+                ensureMembers(size + 1);
+                int length = offsets[size];
+                int remaining = bytes == null ? 0 : bytes.remaining();
+                if(data.length - length < remaining){
+                    data = Arrays.copyOf(data, Math.max(data.length * 2, length + remaining));
+                }
+                if(remaining > 0){
+                    bytes.get(data, length, remaining);
+                }
+                offsets[size + 1] = length + remaining;
+            }else{
+                scores[size++] = parseScore(bytes);
+            }
+            member = !member;
+        }
+
+        /**
+         * 成员在ScoredMembers里用到时才解码
+         */
+        @Override
+        ScoredMembers<T> result() {
+            return new ScoredMembers<>(data, offsets, scores, size, decoder);
+        }
+
+        private void ensureMembers(int count){
+            if(scores.length < count){
+                int capacity = Math.max(scores.length * 2, count);
+                scores = Arrays.copyOf(scores, capacity);
+                offsets = Arrays.copyOf(offsets, capacity + 1);
+            }
+        }
+
+        /**
+         * 分数是"1.5"、"inf"这样的字符串
+         */
+        private double parseScore(ByteBuffer bytes){
+            int length = bytes.remaining();
+            byte[] buf = length <= scratch.length ? scratch : new byte[length];
+            bytes.get(buf, 0, length);
+            if(length >= 3 && buf[length - 1] == 'f'){
+                return buf[0] == '-' ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            return AsciiNumbers.parseDouble(buf, 0, length);
+        }
+    }
+
+    /**
+     * 不能用原生连接时，把spring-data返回的Tuple转成同样的结构
+     */
+    static <T> ScoredMembers<T> scored(Collection<RedisZSetCommands.Tuple> tuples, Function<ByteBuffer, T> decoder){
+        int size = tuples == null ? 0 : tuples.size();
+        int[] offsets = new int[size + 1];
+        double[] scores = new double[size];
+        int length = 0;
+        int i = 0;
+        for(RedisZSetCommands.Tuple tuple : size == 0 ? Collections.<RedisZSetCommands.Tuple>emptyList() : tuples){
+            length += tuple.getValue().length;
+            offsets[i + 1] = length;
+            scores[i++] = tuple.getScore();
+        }
+        byte[] data = new byte[length];
+        i = 0;
+        for(RedisZSetCommands.Tuple tuple : size == 0 ? Collections.<RedisZSetCommands.Tuple>emptyList() : tuples){
+            System.arraycopy(tuple.getValue(), 0, data, offsets[i], tuple.getValue().length);
+            i++;
+        }
+        return new ScoredMembers<>(data, offsets, scores, size, decoder);
+    }
+}
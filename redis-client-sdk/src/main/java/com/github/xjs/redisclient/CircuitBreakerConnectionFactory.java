@@ -0,0 +1,130 @@
+package com.github.xjs.redisclient;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 经过熔断器的连接
+ *
+ * 返回的连接是代理，每个命令执行以前先问熔断器，执行完把耗时和异常交给熔断器统计。
+ * pipeline和事务里排队的命令不单独统计，以closePipeline()和exec()为准。
+ */
+final class CircuitBreakerConnectionFactory implements RedisConnectionFactory {
+
+    /**
+     * 不访问redis的方法，直接调用
+     */
+    private static final Set<String> LOCAL_METHODS = new HashSet<>(Arrays.asList("close", "isClosed", "getNativeConnection",
+            "isQueueing", "isPipelined", "openPipeline", "isSubscribed", "getSubscription", "getSentinelConnection",
+            "equals", "hashCode", "toString"));
+
+    private final RedisCircuitBreaker breaker;
+    private final RedisConnectionFactory delegate;
+
+    CircuitBreakerConnectionFactory(RedisCircuitBreaker breaker, RedisConnectionFactory delegate) {
+        this.breaker = breaker;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        breaker.rejectIfOpen();
+        return guard(connect(false));
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        breaker.rejectIfOpen();
+        return (RedisClusterConnection) guard(connect(true));
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    /**
+     * 建立连接失败也算一次失败
+     */
+    private RedisConnection connect(boolean cluster){
+        long start = System.nanoTime();
+        try{
+            return cluster ? delegate.getClusterConnection() : delegate.getConnection();
+        }catch(RuntimeException e){
+            breaker.onComplete(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private RedisConnection guard(RedisConnection target){
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, new Guarded(target));
+    }
+
+    private final class Guarded implements InvocationHandler {
+        private final RedisConnection target;
+
+        private Guarded(RedisConnection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if("equals".equals(name) && method.getParameterCount() == 1){
+                return proxy == args[0];
+            }
+            if("hashCode".equals(name) && method.getParameterCount() == 0){
+                return System.identityHashCode(proxy);
+            }
+            if(LOCAL_METHODS.contains(name) || (name.endsWith("Commands") && method.getParameterCount() == 0)
+                    || (queued() && !"closePipeline".equals(name) && !"exec".equals(name))){
+                return call(method, args);
+            }
+            breaker.acquirePermission();
+            long start = System.nanoTime();
+            try{
+                Object ret = call(method, args);
+                breaker.onComplete(System.nanoTime() - start, null);
+                return ret;
+            }catch(Throwable e){
+                breaker.onComplete(System.nanoTime() - start, e);
+                throw e;
+            }
+        }
+
+        private boolean queued(){
+            return target.isPipelined() || target.isQueueing();
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try{
+                return method.invoke(target, args);
+            }catch(InvocationTargetException e){
+                throw e.getTargetException();
+            }
+        }
+    }
+}
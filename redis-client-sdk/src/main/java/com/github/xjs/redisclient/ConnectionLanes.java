@@ -0,0 +1,83 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.key.LanedKeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.lane.LaneMetrics;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * FAST和BULK两组连接
+ *
+ * FAST沿用原来的factory，lettuce下是共享的那一条多路复用连接；BULK从原来的配置复制一个不共享连接的factory，
+ * 再用自己的连接池管理，返回整个集合的命令、大pipeline和事务在BULK上执行，不会堵住FAST上的小命令。
+ */
+final class ConnectionLanes {
+
+    private final RedisConnectionFactory original;
+    private final RedisConnectionFactory dedicated;
+    private final LaneConnectionFactory fastFactory;
+    private final LaneConnectionFactory bulkFactory;
+    private final RedisTemplate<byte[], byte[]> fast;
+    private final RedisTemplate<byte[], byte[]> bulk;
+
+    /**
+     * @param breaker 熔断器，为null时不熔断
+     * @param tracer 为null时不跟踪
+     */
+    ConnectionLanes(RedisConnectionFactory factory, RedisClientProperties.Lanes lanes, RedisCircuitBreaker breaker, OperationTracer tracer) {
+        this.original = factory;
+        this.dedicated = DedicatedConnectionFactory.of(factory);
+        this.fastFactory = new LaneConnectionFactory(ConnectionLane.FAST, factory);
+        this.bulkFactory = new LaneConnectionFactory(ConnectionLane.BULK, dedicated, lanes.getBulkMaxTotal(),
+                lanes.getBulkMaxIdle(), lanes.getBulkMinIdle(), lanes.getBulkMaxWaitMillis());
+        this.fast = template(OperationTracer.trace(tracer, guard(breaker, fastFactory)));
+        this.bulk = template(OperationTracer.trace(tracer, guard(breaker, bulkFactory)));
+    }
+
+    RedisTemplate<byte[], byte[]> fast(){
+        return fast;
+    }
+
+    /**
+     * 前缀指定了通道时使用前缀的，否则使用命令默认的通道
+     */
+    RedisTemplate<byte[], byte[]> select(ConnectionLane lane, KeyPrefix prefix){
+        if(prefix instanceof LanedKeyPrefix && ((LanedKeyPrefix) prefix).getLane() != null){
+            lane = ((LanedKeyPrefix) prefix).getLane();
+        }
+        return lane == ConnectionLane.BULK ? bulk : fast;
+    }
+
+    Map<ConnectionLane, LaneMetrics> metrics(){
+        Map<ConnectionLane, LaneMetrics> ret = new EnumMap<>(ConnectionLane.class);
+        ret.put(ConnectionLane.FAST, fastFactory.metrics());
+        ret.put(ConnectionLane.BULK, bulkFactory.metrics());
+        return ret;
+    }
+
+    void close(){
+        bulkFactory.close();
+        DedicatedConnectionFactory.release(original, dedicated);
+    }
+
+    static RedisConnectionFactory guard(RedisCircuitBreaker breaker, RedisConnectionFactory factory){
+        return breaker == null ? factory : new CircuitBreakerConnectionFactory(breaker, factory);
+    }
+
+    static RedisTemplate<byte[], byte[]> template(RedisConnectionFactory factory){
+        RedisTemplate<byte[], byte[]> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setKeySerializer(null);
+        redisTemplate.setValueSerializer(null);
+        redisTemplate.setHashKeySerializer(null);
+        redisTemplate.setHashValueSerializer(null);
+        redisTemplate.setEnableDefaultSerializer(false);
+        redisTemplate.setConnectionFactory(factory);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+}
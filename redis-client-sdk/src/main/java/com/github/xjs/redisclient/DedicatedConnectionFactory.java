@@ -0,0 +1,51 @@
+package com.github.xjs.redisclient;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+/**
+ * 阻塞命令（XREADGROUP BLOCK、BRPOPLPUSH等）不能跑在lettuce共享的那一条连接上，否则会把其他命令都堵住。
+ * 这里按原来的配置复制一个不共享连接的LettuceConnectionFactory，每个RedisConnection都有自己独占的物理连接。
+ * jedis的连接本来就是独占的，直接返回原来的factory。
+ */
+final class DedicatedConnectionFactory {
+
+    private DedicatedConnectionFactory(){
+    }
+
+    static RedisConnectionFactory of(RedisConnectionFactory factory){
+        if(!(factory instanceof LettuceConnectionFactory)){
+            return factory;
+        }
+        LettuceConnectionFactory lettuce = (LettuceConnectionFactory)factory;
+        if(!lettuce.getShareNativeConnection()){
+            return factory;
+        }
+        LettuceConnectionFactory dedicated;
+        if(lettuce.isClusterAware()){
+            dedicated = new LettuceConnectionFactory(lettuce.getClusterConfiguration(), lettuce.getClientConfiguration());
+        }else if(lettuce.isRedisSentinelAware()){
+            dedicated = new LettuceConnectionFactory(lettuce.getSentinelConfiguration(), lettuce.getClientConfiguration());
+        }else{
+            dedicated = new LettuceConnectionFactory(lettuce.getStandaloneConfiguration(), lettuce.getClientConfiguration());
+        }
+        dedicated.setShareNativeConnection(false);
+        dedicated.setDatabase(lettuce.getDatabase());
+        dedicated.afterPropertiesSet();
+        return dedicated;
+    }
+
+    /**
+     * 只销毁{@link #of(RedisConnectionFactory)}新建出来的factory
+     */
+    static void release(RedisConnectionFactory original, RedisConnectionFactory dedicated){
+        if(dedicated != null && dedicated != original && dedicated instanceof DisposableBean){
+            try{
+                ((DisposableBean)dedicated).destroy();
+            }catch(Exception e){
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
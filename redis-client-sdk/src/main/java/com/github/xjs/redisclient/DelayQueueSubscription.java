@@ -0,0 +1,180 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.queue.DelayListener;
+import com.github.xjs.redisclient.queue.DelayQueueOptions;
+import com.github.xjs.redisclient.queue.DelayedJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 延迟队列的一个消费者
+ *
+ * 取走一批到期的任务处理完，如果没有取满，就睡到下一个任务到期(最多maxIdleMillis)。
+ * 本进程加入了更早到期的任务时会提前唤醒。
+ */
+public class DelayQueueSubscription {
+
+    private static Logger log = LoggerFactory.getLogger(DelayQueueSubscription.class);
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final RedisDelayQueue queue;
+    private final String name;
+    private final DelayQueueOptions options;
+    private final DelayListener listener;
+    private final ExecutorService workers;
+    private final Thread thread;
+    private final Object monitor = new Object();
+    /**
+     * 正在睡眠时为醒来的System.nanoTime()，没有睡眠时为0
+     */
+    private long sleepUntilNanos;
+    private volatile boolean running;
+
+    DelayQueueSubscription(RedisDelayQueue queue, String name, DelayQueueOptions options, DelayListener listener) {
+        this.queue = queue;
+        this.name = name;
+        this.options = options;
+        this.listener = listener;
+        String threadName = "redis-delay-queue-" + THREAD_INDEX.incrementAndGet();
+        this.workers = options.getConcurrency() > 1 ? Executors.newFixedThreadPool(options.getConcurrency(), r -> {
+            Thread t = new Thread(r, threadName + "-worker");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+    }
+
+    void start(){
+        running = true;
+        thread.start();
+    }
+
+    public String getQueue() {
+        return name;
+    }
+
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * 停止消费，正在处理的批次会处理完
+     */
+    public void stop(){
+        if(!running){
+            return;
+        }
+        running = false;
+        queue.unregister(this);
+        synchronized (monitor){
+            monitor.notifyAll();
+        }
+        try{
+            thread.join(options.getMaxIdleMillis() + 5000);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        if(workers != null){
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * 新加入的任务比当前睡眠的时间更早到期时提前唤醒
+     */
+    void wakeUp(long delayMillis){
+        synchronized (monitor){
+            if(sleepUntilNanos != 0 && sleepUntilNanos - (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis)) > 0){
+                sleepUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private void run(){
+        while(running){
+            long idleMillis;
+            try{
+                RedisDelayQueue.ClaimResult claimed = queue.claim(name, options.getBatchSize());
+                process(claimed.jobs);
+                if(claimed.jobs.size() >= options.getBatchSize()){
+                    continue;
+                }
+                idleMillis = claimed.nextDueMillis < 0 ? options.getMaxIdleMillis() : Math.min(claimed.nextDueMillis, options.getMaxIdleMillis());
+            }catch(Exception e){
+                if(!running){
+                    break;
+                }
+                log.error("消费延迟队列失败:" + e.getMessage(), e);
+                idleMillis = 1000;
+            }
+            sleep(idleMillis);
+        }
+    }
+
+    private void sleep(long millis){
+        if(millis <= 0){
+            return;
+        }
+        synchronized (monitor){
+            sleepUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            try{
+                long remaining;
+                while(running && (remaining = sleepUntilNanos - System.nanoTime()) > 0){
+                    TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                running = false;
+            }finally{
+                sleepUntilNanos = 0;
+            }
+        }
+    }
+
+    private void process(List<DelayedJob> jobs) throws InterruptedException{
+        if(jobs.isEmpty()){
+            return;
+        }
+        if(workers == null){
+            for(DelayedJob job : jobs){
+                handle(job);
+            }
+        }else{
+            List<Callable<Object>> tasks = new ArrayList<>(jobs.size());
+            for(DelayedJob job : jobs){
+                tasks.add(() -> {
+                    handle(job);
+                    return null;
+                });
+            }
+            workers.invokeAll(tasks);
+        }
+    }
+
+    private void handle(DelayedJob job){
+        try{
+            listener.onMessage(job);
+        }catch(Exception e){
+            if(options.getRetryDelayMillis() <= 0){
+                log.error("处理延迟任务失败:" + e.getMessage(), e);
+                return;
+            }
+            log.error("处理延迟任务失败，" + options.getRetryDelayMillis() + "毫秒以后重试:" + e.getMessage(), e);
+            try{
+                queue.retry(job, options.getRetryDelayMillis());
+            }catch(Exception retryError){
+                log.error("延迟任务重新入队失败，任务已丢失:" + retryError.getMessage(), retryError);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.xjs.redisclient;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把并发的单key GET合并成一次MGET
+ *
+ * 第一个进入批次的线程作为leader，等待windowNanos或者批次满了以后关闭批次并发出MGET，
+ * 同一个批次里相同的key只查一次，其他线程等待leader把结果分发回来。不需要额外的线程，
+ * 多个批次可以同时在途。集群模式下MGET由spring-data-redis按slot拆分执行。
+ * 上一个批次只有一个key、这次短暂自旋以后也没有人加入时不等窗口，直接发出去，没有并发时单个get不多等一个窗口；
+ * leader被中断时也提前发出。
+ */
+class GetBatcher {
+
+    private final RedisTemplate<byte[], byte[]> redisTemplate;
+    private final OperationTracer tracer;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final AtomicReference<Batch> current = new AtomicReference<>();
+    /**
+     * 上一个批次的key数，一开始按有并发算
+     */
+    private volatile int lastBatchSize;
+
+    /**
+     * @param tracer 为null时不跟踪
+     */
+    GetBatcher(RedisTemplate<byte[], byte[]> redisTemplate, OperationTracer tracer, long windowMicros, int maxBatchSize) {
+        if(windowMicros <= 0 || maxBatchSize <= 1){
+            throw new IllegalArgumentException("windowMicros必须大于0，maxBatchSize必须大于1");
+        }
+        this.redisTemplate = redisTemplate;
+        this.tracer = tracer;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.lastBatchSize = maxBatchSize;
+    }
+
+    byte[] get(byte[] key){
+        ByteBuffer wrapped = ByteBuffer.wrap(key);
+        while(true){
+            Batch batch = current.get();
+            if(batch == null){
+                Batch created = new Batch(Thread.currentThread());
+                if(!current.compareAndSet(null, created)){
+                    continue;
+                }
+                CompletableFuture<byte[]> future = created.add(wrapped, maxBatchSize);
+                lead(created);
+                return await(future);
+            }
+            CompletableFuture<byte[]> future = batch.add(wrapped, maxBatchSize);
+            if(future == null){
+                //批次已经关闭，重新找下一个批次
+                current.compareAndSet(batch, null);
+                continue;
+            }
+            if(batch.isFull(maxBatchSize)){
+                LockSupport.unpark(batch.leader);
+            }
+            return await(future);
+        }
+    }
+
+    private void lead(Batch batch){
+        long start = System.nanoTime();
+        long spinUntil = start + Math.min(windowNanos, FIRST_SPIN_NANOS);
+        while(batch.size == 1 && System.nanoTime() - spinUntil < 0){
+            //自旋等别的线程加入
+        }
+        boolean interrupted = false;
+        if(batch.size > 1 || lastBatchSize > 1){
+            long deadline = start + windowNanos;
+            long remaining;
+            while(!batch.isFull(maxBatchSize) && (remaining = deadline - System.nanoTime()) > 0){
+                //中断标记在的时候parkNanos马上返回，不能空转到窗口结束
+                if(Thread.interrupted()){
+                    interrupted = true;
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+        Map<ByteBuffer, CompletableFuture<byte[]>> requests = batch.seal();
+        current.compareAndSet(batch, null);
+        lastBatchSize = requests.size();
+        List<byte[]> keys = new ArrayList<>(requests.size());
+        for(ByteBuffer key : requests.keySet()){
+            keys.add(key.array());
+        }
+        if(tracer != null){
+            //批次里是各个前缀的key，不归到leader的前缀下
+            tracer.enter(null);
+        }
+        try{
+            List<byte[]> values = keys.size() == 1
+                    ? Collections.singletonList(redisTemplate.opsForValue().get(keys.get(0)))
+                    : redisTemplate.opsForValue().multiGet(keys);
+            int i = 0;
+            for(CompletableFuture<byte[]> future : requests.values()){
+                future.complete(values == null ? null : values.get(i++));
+            }
+        }catch(Throwable e){
+            for(CompletableFuture<byte[]> future : requests.values()){
+                future.completeExceptionally(e);
+            }
+        }finally{
+            //发完再恢复中断标记，不让整个批次的MGET因为leader被中断而失败
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future){
+        boolean interrupted = false;
+        try{
+            while(true){
+                try{
+                    return future.get();
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+        }catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error){
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }finally{
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * leader先自旋这么久看有没有人加入
+     */
+    private static final long FIRST_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+
+    private static final class Batch {
+        private final Thread leader;
+        private final Map<ByteBuffer, CompletableFuture<byte[]>> requests = new LinkedHashMap<>();
+        private boolean sealed;
+        /**
+         * requests的大小，leader自旋时不加锁读
+         */
+        private volatile int size;
+
+        private Batch(Thread leader) {
+            this.leader = leader;
+        }
+
+        /**
+         * @return 批次已经关闭或者已满返回null
+         */
+        synchronized CompletableFuture<byte[]> add(ByteBuffer key, int maxBatchSize){
+            if(sealed){
+                return null;
+            }
+            CompletableFuture<byte[]> future = requests.get(key);
+            if(future != null){
+                return future;
+            }
+            if(requests.size() >= maxBatchSize){
+                return null;
+            }
+            future = new CompletableFuture<>();
+            requests.put(key, future);
+            size = requests.size();
+            return future;
+        }
+
+        synchronized boolean isFull(int maxBatchSize){
+            return requests.size() >= maxBatchSize;
+        }
+
+        synchronized Map<ByteBuffer, CompletableFuture<byte[]>> seal(){
+            sealed = true;
+            return requests;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.hedge.HedgingMetrics;
+import com.github.xjs.redisclient.key.DeadlineKeyPrefix;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 对冲读和读超时
+ *
+ * 读命令放到线程池里执行，调用线程最多等对冲延迟(最近1024次主读延迟的percentile分位)，还没有返回就把同一个命令发到另一个节点，
+ * 两个里面先返回的为准。每统计256次主读重新计算一次对冲延迟，同时重置对冲预算，一个周期内对冲的次数不超过请求数的maxHedgePercent%。
+ * 前缀有读超时的，超时以后不再等待，返回本地保存的上一次读到的值，没有的话抛出QueryTimeoutException，不会一直占着请求线程。
+ * 线程池满的时候，没有读超时的在调用线程上直接执行，不对冲也不限时；有读超时的不再发出命令，和超时一样返回旧值或者抛出QueryTimeoutException。
+ */
+final class HedgedReads {
+
+    private static final int SAMPLES = 1024;
+    private static final int RECALCULATE_EVERY = 256;
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final RedisClientProperties.Hedging options;
+    private final ThreadPoolExecutor executor;
+    private final StaleStore stale;
+    private final long[] samples = new long[SAMPLES];
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong totalHedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long hedgeDelayNanos;
+
+    HedgedReads(RedisClientProperties.Hedging options) {
+        if(options.getPercentile() <= 0 || options.getPercentile() >= 100){
+            throw new IllegalArgumentException("percentile必须在0到100之间");
+        }
+        if(options.getThreads() <= 0 || options.getMaxHedgePercent() < 0 || options.getDeadlineMillis() < 0){
+            throw new IllegalArgumentException("threads必须大于0，maxHedgePercent和deadlineMillis不能小于0");
+        }
+        this.options = options;
+        this.executor = new ThreadPoolExecutor(0, options.getThreads(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "redis-hedged-read-" + THREAD_INDEX.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.stale = new StaleStore(options.getStaleCacheMaxSize(), options.getStaleCacheExpireMillis());
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(options.getInitialDelayMillis());
+    }
+
+    /**
+     * @param key 单个key的读命令的key，不为null时超时可以返回上一次读到的值
+     * @param field hash的field或者zset的member
+     * @param hedge 对冲用的节点，为null时只限时不对冲
+     */
+    <R> R read(KeyPrefix prefix, byte[] key, byte[] field, RedisTemplate<byte[], byte[]> primary,
+               RedisTemplate<byte[], byte[]> hedge, Function<RedisTemplate<byte[], byte[]>, R> command){
+        long deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis(prefix));
+        boolean keepStale = deadlineNanos > 0 && key != null;
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        try{
+            executor.execute(() -> attempt(primary, command, result, outstanding, start, true));
+        }catch(RejectedExecutionException e){
+            rejected.incrementAndGet();
+            if(deadlineNanos <= 0){
+                return command.apply(primary);
+            }
+            //在调用线程上执行就没法限时了
+            return staleOrThrow(keepStale, key, field, new QueryTimeoutException("对冲读线程池已满，" + deadlineMillis(prefix) + "毫秒内无法完成读取"));
+        }
+        try{
+            long delay = hedge == null ? -1 : hedgeDelayNanos;
+            if(delay >= 0 && (deadlineNanos <= 0 || delay < deadlineNanos)){
+                try{
+                    return remember(keepStale, key, field, await(result, delay));
+                }catch(TimeoutException e){
+                    if(tryHedge()){
+                        outstanding.incrementAndGet();
+                        try{
+                            executor.execute(() -> attempt(hedge, command, result, outstanding, start, false));
+                        }catch(RejectedExecutionException rejected){
+                            outstanding.decrementAndGet();
+                        }
+                    }
+                }
+            }
+            long remaining = deadlineNanos <= 0 ? -1 : deadlineNanos - (System.nanoTime() - start);
+            return remember(keepStale, key, field, await(result, remaining));
+        }catch(TimeoutException e){
+            deadlineExceeded.incrementAndGet();
+            return staleOrThrow(keepStale, key, field, new QueryTimeoutException("读取超过" + deadlineMillis(prefix) + "毫秒没有返回"));
+        }
+    }
+
+    /**
+     * 写了以后保存的旧值就不对了
+     * @param field hash的field或者zset的member，string为null
+     */
+    void forget(byte[] key, byte[] field){
+        stale.remove(key, field);
+    }
+
+    /**
+     * 删除整个key或者按范围删除以后，key下面保存的所有旧值都不对了
+     */
+    void forgetAll(byte[] key){
+        stale.removeAll(key);
+    }
+
+    HedgingMetrics metrics(){
+        return new HedgingMetrics(TimeUnit.NANOSECONDS.toMicros(hedgeDelayNanos), totalHedges.get(), hedgeWins.get(), deadlineExceeded.get(), rejected.get());
+    }
+
+    /**
+     * 等还在途的读命令结束，最多等1秒，避免连接关闭以后还有线程在用
+     */
+    void close(){
+        executor.shutdown();
+        try{
+            if(!executor.awaitTermination(1, TimeUnit.SECONDS)){
+                executor.shutdownNow();
+            }
+        }catch(InterruptedException e){
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long deadlineMillis(KeyPrefix prefix){
+        if(prefix instanceof DeadlineKeyPrefix && ((DeadlineKeyPrefix) prefix).getDeadlineMillis() > 0){
+            return ((DeadlineKeyPrefix) prefix).getDeadlineMillis();
+        }
+        return options.getDeadlineMillis();
+    }
+
+    private <R> void attempt(RedisTemplate<byte[], byte[]> template, Function<RedisTemplate<byte[], byte[]>, R> command,
+                             CompletableFuture<R> result, AtomicInteger outstanding, long start, boolean primary){
+        try{
+            R value = command.apply(template);
+            if(primary){
+                record(System.nanoTime() - start);
+            }
+            if(result.complete(value) && !primary){
+                hedgeWins.incrementAndGet();
+            }
+        }catch(Throwable e){
+            //另一个还没返回的时候以另一个的结果为准
+            if(outstanding.decrementAndGet() == 0){
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 本周期内对冲的次数没有超过预算才对冲
+     */
+    private boolean tryHedge(){
+        long budget = requests.get() * options.getMaxHedgePercent() / 100;
+        while(true){
+            long used = hedges.get();
+            if(options.getMaxHedgePercent() <= 0 || used >= Math.max(budget, 1)){
+                return false;
+            }
+            if(hedges.compareAndSet(used, used + 1)){
+                totalHedges.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void record(long nanos){
+        long n = sampleCount.getAndIncrement();
+        samples[(int)(n % SAMPLES)] = nanos;
+        if((n + 1) % RECALCULATE_EVERY == 0){
+            long[] copy = Arrays.copyOf(samples, (int)Math.min(n + 1, SAMPLES));
+            Arrays.sort(copy);
+            long percentile = copy[(int)Math.min(copy.length - 1, Math.ceil(copy.length * options.getPercentile() / 100) - 1)];
+            hedgeDelayNanos = Math.max(percentile, TimeUnit.MICROSECONDS.toNanos(options.getMinDelayMicros()));
+            requests.set(0);
+            hedges.set(0);
+        }
+    }
+
+    private <R> R staleOrThrow(boolean keepStale, byte[] key, byte[] field, QueryTimeoutException timeout){
+        if(!keepStale){
+            throw timeout;
+        }
+        return stale.get(key, field, () -> timeout);
+    }
+
+    private <R> R remember(boolean keepStale, byte[] key, byte[] field, R value){
+        return keepStale ? stale.remember(key, field, value) : value;
+    }
+
+    /**
+     * @param timeoutNanos 小于0表示一直等
+     */
+    private static <R> R await(CompletableFuture<R> future, long timeoutNanos) throws TimeoutException{
+        long until = System.nanoTime() + timeoutNanos;
+        boolean interrupted = false;
+        try{
+            while(true){
+                try{
+                    return timeoutNanos < 0 ? future.get() : future.get(until - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+        }catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error){
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }finally{
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
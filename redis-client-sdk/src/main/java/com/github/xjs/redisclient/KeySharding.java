@@ -0,0 +1,56 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.key.ShardedKeyPrefix;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 大key拆分的路由规则，field/member的CRC32对分片数取模
+ */
+final class KeySharding {
+
+    private KeySharding(){
+    }
+
+    static int shards(KeyPrefix prefix){
+        if(prefix instanceof ShardedKeyPrefix){
+            return Math.max(((ShardedKeyPrefix)prefix).getShards(), 1);
+        }
+        return 1;
+    }
+
+    static int shardOf(byte[] fieldOrMember, int shards){
+        CRC32 crc32 = new CRC32();
+        crc32.update(fieldOrMember, 0, fieldOrMember.length);
+        return (int)(crc32.getValue() % shards);
+    }
+
+    static byte[] shardKey(String realKey, int shard){
+        return (realKey + "#" + shard).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static List<byte[]> shardKeys(String realKey, int shards){
+        List<byte[]> keys = new ArrayList<>(shards);
+        for(int i = 0; i < shards; i++){
+            keys.add(shardKey(realKey, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 把field/member按子key分组，value是它们在原数组中的下标
+     */
+    static Map<Integer, List<Integer>> group(byte[][] fieldsOrMembers, int shards){
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < fieldsOrMembers.length; i++){
+            groups.computeIfAbsent(shardOf(fieldsOrMembers[i], shards), k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.lane.LaneMetrics;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个连接通道：统计每个通道上正在执行的操作数，BULK通道的连接从自己的连接池里借
+ *
+ * RedisTemplate每次操作都会getConnection()、用完以后close()，这里返回的连接是代理，
+ * close()时归还连接池(或者关闭共享连接的包装)并记录占用的时间。
+ */
+final class LaneConnectionFactory implements RedisConnectionFactory {
+
+    private final ConnectionLane lane;
+    private final RedisConnectionFactory delegate;
+    private final GenericObjectPool<RedisConnection> pool;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    /**
+     * 不带连接池，每次直接从delegate拿连接
+     */
+    LaneConnectionFactory(ConnectionLane lane, RedisConnectionFactory delegate) {
+        this.lane = lane;
+        this.delegate = delegate;
+        this.pool = null;
+    }
+
+    /**
+     * @param delegate 每次getConnection()都返回独占连接的factory
+     */
+    LaneConnectionFactory(ConnectionLane lane, RedisConnectionFactory delegate, int maxTotal, int maxIdle, int minIdle, long maxWaitMillis) {
+        if(maxTotal <= 0 || maxIdle < 0 || minIdle < 0){
+            throw new IllegalArgumentException("连接池的maxTotal必须大于0，maxIdle和minIdle不能小于0");
+        }
+        this.lane = lane;
+        this.delegate = delegate;
+        GenericObjectPoolConfig<RedisConnection> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxIdle);
+        config.setMinIdle(minIdle);
+        config.setMaxWaitMillis(maxWaitMillis);
+        config.setTestOnBorrow(true);
+        config.setJmxEnabled(false);
+        this.pool = new GenericObjectPool<>(new PooledConnections(delegate), config);
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return track(pool == null ? delegate.getConnection() : borrow());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        if(pool == null){
+            return (RedisClusterConnection) track(delegate.getClusterConnection());
+        }
+        RedisConnection connection = getConnection();
+        if(!(connection instanceof RedisClusterConnection)){
+            connection.close();
+            throw new IllegalStateException("不是集群模式");
+        }
+        return (RedisClusterConnection) connection;
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    LaneMetrics metrics(){
+        long count = completed.sum();
+        double meanMicros = count == 0 ? 0 : busyNanos.sum() / 1000.0 / count;
+        if(pool == null){
+            return new LaneMetrics(lane, inFlight.get(), peakInFlight.get(), count, meanMicros, 0, 0, 0, 0, 0, 0);
+        }
+        return new LaneMetrics(lane, inFlight.get(), peakInFlight.get(), count, meanMicros, pool.getMaxTotal(), pool.getNumActive(),
+                pool.getNumIdle(), pool.getNumWaiters(), pool.getMeanBorrowWaitTimeMillis(), pool.getMaxBorrowWaitTimeMillis());
+    }
+
+    void close(){
+        if(pool != null){
+            pool.close();
+        }
+    }
+
+    private RedisConnection borrow(){
+        try{
+            return pool.borrowObject();
+        }catch(RuntimeException e){
+            throw e;
+        }catch(Exception e){
+            throw new RedisConnectionFailureException(lane + "通道的连接池没有可用的连接(maxTotal=" + pool.getMaxTotal()
+                    + ", waiters=" + pool.getNumWaiters() + "):" + e.getMessage(), e);
+        }
+    }
+
+    private RedisConnection track(RedisConnection target){
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, new Tracked(target, System.nanoTime()));
+    }
+
+    private final class Tracked implements InvocationHandler {
+        private final RedisConnection target;
+        private final long start;
+        private boolean released;
+
+        private Tracked(RedisConnection target, long start) {
+            this.target = target;
+            this.start = start;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if("close".equals(name) && method.getParameterCount() == 0){
+                release();
+                return null;
+            }
+            if("isClosed".equals(name) && method.getParameterCount() == 0 && released){
+                return true;
+            }
+            if("equals".equals(name) && method.getParameterCount() == 1){
+                return proxy == args[0];
+            }
+            if("hashCode".equals(name) && method.getParameterCount() == 0){
+                return System.identityHashCode(proxy);
+            }
+            try{
+                return method.invoke(target, args);
+            }catch(InvocationTargetException e){
+                throw e.getTargetException();
+            }
+        }
+
+        private void release(){
+            if(released){
+                return;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            completed.increment();
+            busyNanos.add(System.nanoTime() - start);
+            if(pool == null){
+                target.close();
+            }else if(target.isClosed()){
+                invalidate();
+            }else{
+                pool.returnObject(target);
+            }
+        }
+
+        private void invalidate(){
+            try{
+                pool.invalidateObject(target);
+            }catch(Exception e){
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 连接池里的连接：借出去以前检查没有被关闭，还回来时清理没有结束的事务和pipeline
+     */
+    private static final class PooledConnections extends BasePooledObjectFactory<RedisConnection> {
+        private final RedisConnectionFactory factory;
+
+        private PooledConnections(RedisConnectionFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public RedisConnection create() {
+            return factory.getConnection();
+        }
+
+        @Override
+        public PooledObject<RedisConnection> wrap(RedisConnection connection) {
+            return new DefaultPooledObject<>(connection);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<RedisConnection> p) {
+            return !p.getObject().isClosed();
+        }
+
+        @Override
+        public void passivateObject(PooledObject<RedisConnection> p) {
+            RedisConnection connection = p.getObject();
+            if(connection.isQueueing()){
+                connection.discard();
+            }
+            if(connection.isPipelined()){
+                connection.closePipeline();
+            }
+        }
+
+        @Override
+        public void destroyObject(PooledObject<RedisConnection> p) {
+            p.getObject().close();
+        }
+    }
+}
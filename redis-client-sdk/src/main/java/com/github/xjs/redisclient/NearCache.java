@@ -0,0 +1,60 @@
+package com.github.xjs.redisclient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地一级缓存，按访问顺序淘汰最久没用的key，每个key写入以后expireNanos过期
+ */
+class NearCache {
+
+    private final long expireNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    NearCache(int maxSize, long expireMillis) {
+        if(maxSize <= 0 || expireMillis <= 0){
+            throw new IllegalArgumentException("nearCacheMaxSize和nearCacheExpireMillis必须大于0");
+        }
+        this.expireNanos = expireMillis * 1000000L;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Object get(String key){
+        Entry entry = entries.get(key);
+        if(entry == null){
+            return null;
+        }
+        if(entry.expireAt - System.nanoTime() < 0){
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void put(String key, Object value){
+        entries.put(key, new Entry(value, System.nanoTime() + expireNanos));
+    }
+
+    synchronized void remove(String key){
+        entries.remove(key);
+    }
+
+    synchronized void clear(){
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
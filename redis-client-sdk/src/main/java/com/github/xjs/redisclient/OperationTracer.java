@@ -0,0 +1,181 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.trace.RedisOperation;
+import com.github.xjs.redisclient.trace.RedisOperationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 操作的跟踪和慢操作日志
+ *
+ * RedisClientService选连接时把KeyPrefix记在当前线程上，连接的代理在命令结束以后带上它生成{@link RedisOperation}，
+ * 同步交给所有的{@link RedisOperationListener}。超过slowMillis的按slowSampleRate采样，打一条warn日志，并保留最近slowLogSize条。
+ * 没有listener并且不慢的命令不创建任何对象。
+ */
+final class OperationTracer {
+
+    private static Logger log = LoggerFactory.getLogger(OperationTracer.class);
+    private static final String SDK_PACKAGE = "com.github.xjs.redisclient.";
+
+    private final RedisClientProperties.Tracing options;
+    private final long slowNanos;
+    private final List<RedisOperationListener> listeners = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<RedisOperation> slowLog = new ArrayDeque<>();
+    private final ThreadLocal<KeyPrefix> current = new ThreadLocal<>();
+
+    OperationTracer(RedisClientProperties.Tracing options) {
+        if(options.getSlowSampleRate() < 0 || options.getSlowSampleRate() > 1 || options.getSlowLogSize() < 0){
+            throw new IllegalArgumentException("slowSampleRate必须在0到1之间，slowLogSize不能小于0");
+        }
+        this.options = options;
+        this.slowNanos = options.getSlowMillis() <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(options.getSlowMillis());
+    }
+
+    static RedisConnectionFactory trace(OperationTracer tracer, RedisConnectionFactory factory){
+        return tracer == null ? factory : new TracingConnectionFactory(tracer, factory);
+    }
+
+    void addListener(RedisOperationListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * 当前线程接下来发出的命令属于这个前缀，拿RedisTemplate的地方都要设置，不知道前缀的设置成null
+     */
+    void enter(KeyPrefix prefix){
+        current.set(prefix);
+    }
+
+    /**
+     * 线程池里的线程执行完以后清掉，不留给后面的任务
+     */
+    void exit(){
+        current.remove();
+    }
+
+    KeyPrefix current(){
+        return current.get();
+    }
+
+    /**
+     * @param prefix 发出命令时线程上的前缀，可以为null
+     */
+    void record(KeyPrefix prefix, String command, int keyCount, long requestBytes, long responseBytes, long startNanos, Throwable error){
+        long nanos = System.nanoTime() - startNanos;
+        boolean logSlow = nanos >= slowNanos && ThreadLocalRandom.current().nextDouble() < options.getSlowSampleRate();
+        if(listeners.isEmpty() && !logSlow){
+            return;
+        }
+        emit(prefix, command, keyCount, requestBytes, responseBytes, nanos, logSlow, error);
+    }
+
+    /**
+     * 确定要生成{@link RedisOperation}以后才用{@link #size(Object)}计算参数和返回值的字节数，没有listener并且不慢的命令不遍历返回值
+     */
+    void record(KeyPrefix prefix, String command, int keyCount, Object request, Object response, long startNanos, Throwable error){
+        long nanos = System.nanoTime() - startNanos;
+        boolean logSlow = nanos >= slowNanos && ThreadLocalRandom.current().nextDouble() < options.getSlowSampleRate();
+        if(listeners.isEmpty() && !logSlow){
+            return;
+        }
+        emit(prefix, command, keyCount, size(request), size(response), nanos, logSlow, error);
+    }
+
+    private void emit(KeyPrefix prefix, String command, int keyCount, long requestBytes, long responseBytes, long nanos, boolean logSlow, Throwable error){
+        boolean slow = nanos >= slowNanos;
+        String sdkMethod = null;
+        String caller = null;
+        if(logSlow && options.isCaptureCaller()){
+            StackTraceElement[] frames = new Throwable().getStackTrace();
+            StackTraceElement sdkFrame = null;
+            for(StackTraceElement frame : frames){
+                String className = frame.getClassName();
+                if(className.startsWith(SDK_PACKAGE)){
+                    if(!className.startsWith(SDK_PACKAGE + "OperationTracer") && !className.startsWith(SDK_PACKAGE + "TracingConnectionFactory")){
+                        sdkFrame = frame;
+                    }
+                }else if(sdkFrame != null && !isFramework(className)){
+                    caller = frame.toString();
+                    break;
+                }
+            }
+            if(sdkFrame != null){
+                String className = sdkFrame.getClassName();
+                sdkMethod = className.substring(className.lastIndexOf('.') + 1) + "." + sdkFrame.getMethodName();
+            }
+        }
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        RedisOperation operation = new RedisOperation(command, prefix == null ? null : prefix.getClass().getName(), prefix == null ? null : prefix.getPrefix(),
+                keyCount, requestBytes, responseBytes, System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(nanos), durationMicros, error, slow, sdkMethod, caller);
+        if(logSlow){
+            log.warn("redis慢操作，耗时" + durationMicros / 1000 + "毫秒:" + operation);
+            if(options.getSlowLogSize() > 0){
+                synchronized (slowLog){
+                    if(slowLog.size() >= options.getSlowLogSize()){
+                        slowLog.removeLast();
+                    }
+                    slowLog.addFirst(operation);
+                }
+            }
+        }
+        for(RedisOperationListener listener : listeners){
+            try{
+                listener.onOperation(operation);
+            }catch(RuntimeException e){
+                log.error("RedisOperationListener执行失败:" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return 最近的慢操作，新的在前
+     */
+    List<RedisOperation> slowOperations(){
+        synchronized (slowLog){
+            return new ArrayList<>(slowLog);
+        }
+    }
+
+    private static boolean isFramework(String className){
+        return className.startsWith("org.springframework.") || className.startsWith("java.") || className.startsWith("jdk.")
+                || className.startsWith("sun.") || className.startsWith("com.sun.proxy.") || className.startsWith("io.lettuce.");
+    }
+
+    /**
+     * key和value的字节数，集合递归累加，数字之类的不算
+     */
+    static long size(Object value){
+        if(value instanceof byte[]){
+            return ((byte[]) value).length;
+        }
+        long ret = 0;
+        if(value instanceof Object[]){
+            for(Object item : (Object[]) value){
+                ret += size(item);
+            }
+        }else if(value instanceof Collection){
+            for(Object item : (Collection<?>) value){
+                ret += size(item);
+            }
+        }else if(value instanceof Map){
+            for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()){
+                ret += size(entry.getKey()) + size(entry.getValue());
+            }
+        }else if(value instanceof RedisZSetCommands.Tuple){
+            ret = size(((RedisZSetCommands.Tuple) value).getValue());
+        }
+        return ret;
+    }
+}
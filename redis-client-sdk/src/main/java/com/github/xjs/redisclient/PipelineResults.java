@@ -0,0 +1,153 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 逐条拿到结果的pipeline
+ *
+ * spring-data-redis的closePipeline()遇到第一个出错的命令就整批抛出，lettuce下连每条命令的结果都拿不到，
+ * 调用方分不清哪些已经执行了。这里在lettuce的原生连接上发出命令，逐条等待future，返回值和命令一一对应。
+ * 调用方据此只重试暂时失败的命令，已经执行的不会再执行一次。
+ */
+final class PipelineResults {
+
+    /**
+     * 命令暂时执行不了，过一会重试可能成功；其余的错误(WRONGTYPE、ERR之类)重试也不会成功
+     */
+    private static final String[] TRANSIENT_ERRORS = {"OOM", "LOADING", "BUSY", "READONLY", "MASTERDOWN", "TRYAGAIN", "CLUSTERDOWN", "NOREPLICAS"};
+    /**
+     * 不是lettuce的原生连接，换成executePipelined
+     */
+    private static final List<Object> NOT_NATIVE = new ArrayList<>(0);
+
+    private PipelineResults() {
+    }
+
+    /**
+     * @param breaker 熔断器，template没有经过熔断器时为null
+     * @param tracer 为null时不跟踪
+     * @param prefix 记在跟踪里的前缀
+     * @param commands 在原生连接上发出命令，返回的future和命令一一对应
+     * @param fallback 不是lettuce连接或者连接在pipeline、事务里时用executePipelined执行
+     * @return 每条命令的结果，失败的命令对应的是异常，超时没有返回的是QueryTimeoutException；
+     * 命令已经发出去但是拿不到逐条的结果时返回null，这时不知道哪些执行了
+     * @throws RuntimeException 拿不到连接或者熔断，命令一条都没有发出去
+     */
+    static List<Object> execute(RedisTemplate<byte[], byte[]> template, RedisCircuitBreaker breaker, OperationTracer tracer, KeyPrefix prefix, long timeoutMillis,
+                                Function<RedisClusterAsyncCommands<byte[], byte[]>, List<RedisFuture<?>>> commands, RedisCallback<?> fallback){
+        List<Object> ret = template.execute((RedisCallback<List<Object>>) connection -> {
+            Object nativeConnection = connection.isPipelined() || connection.isQueueing() ? null : connection.getNativeConnection();
+            if(!(nativeConnection instanceof RedisClusterAsyncCommands)){
+                return NOT_NATIVE;
+            }
+            if(breaker != null){
+                breaker.acquirePermission();
+            }
+            long start = System.nanoTime();
+            List<RedisFuture<?>> futures;
+            try{
+                futures = commands.apply((RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection);
+            }catch(RuntimeException e){
+                complete(breaker, tracer, prefix, 0, start, e);
+                return null;
+            }
+            List<Object> results = new ArrayList<>(futures.size());
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            QueryTimeoutException timeout = null;
+            for(RedisFuture<?> future : futures){
+                try{
+                    if(!future.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)){
+                        timeout = new QueryTimeoutException("Redis command timed out");
+                        results.add(timeout);
+                        continue;
+                    }
+                    results.add(future.get());
+                }catch(ExecutionException e){
+                    results.add(translate(e.getCause() instanceof Exception ? (Exception) e.getCause() : e));
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    timeout = new QueryTimeoutException("Redis command interrupted", e);
+                    results.add(timeout);
+                }
+            }
+            complete(breaker, tracer, prefix, futures.size(), start, timeout);
+            return results;
+        });
+        return ret == NOT_NATIVE ? fallback(template, fallback) : ret;
+    }
+
+    private static List<Object> fallback(RedisTemplate<byte[], byte[]> template, RedisCallback<?> fallback){
+        try{
+            return template.executePipelined(fallback);
+        }catch(RedisPipelineException e){
+            //jedis能拿到逐条的结果，lettuce的被包在cause里，而且遇到第一个错误就不再往后取了
+            for(Throwable t = e; t != null && t.getCause() != t; t = t.getCause()){
+                if(t instanceof RedisPipelineException && !((RedisPipelineException) t).getPipelineResult().isEmpty()){
+                    return ((RedisPipelineException) t).getPipelineResult();
+                }
+            }
+            return null;
+        }
+    }
+
+    private static void complete(RedisCircuitBreaker breaker, OperationTracer tracer, KeyPrefix prefix, int commands, long start, Throwable error){
+        if(breaker != null){
+            breaker.onComplete(System.nanoTime() - start, error);
+        }
+        if(tracer != null){
+            tracer.record(prefix, "PIPELINE", commands, 0, 0, start, error);
+        }
+    }
+
+    private static Object translate(Exception e){
+        DataAccessException translated = LettuceConverters.exceptionConverter().convert(e);
+        return translated == null ? e : translated;
+    }
+
+    /**
+     * redis返回了可以重试的错误，命令没有执行；超时之类不知道有没有执行的不算
+     */
+    static boolean isTransient(Object result){
+        if(!(result instanceof Throwable)){
+            return false;
+        }
+        for(Throwable t = (Throwable) result; t != null; t = t.getCause() == t ? null : t.getCause()){
+            String message = t.getMessage();
+            if(message != null){
+                for(String error : TRANSIENT_ERRORS){
+                    if(message.startsWith(error)){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 失败的原因，redis返回的错误直接用错误信息
+     */
+    static String reason(Object result){
+        for(Throwable t = (Throwable) result; t != null; t = t.getCause() == t ? null : t.getCause()){
+            if(t instanceof RedisCommandExecutionException){
+                return t.getMessage();
+            }
+        }
+        return ((Throwable) result).getMessage();
+    }
+}
@@ -0,0 +1,403 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.analytics.DailyKeys;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HyperLogLog和bitmap写入的本地缓冲
+ *
+ * pfadd的元素按key在本地去重，setbit按key和offset只保留最后一次的值，每隔flushIntervalMillis或者累计flushThreshold次操作以后，
+ * 每个key合成一条PFADD(最多maxArgs个元素)或者一条BITFIELD(最多maxArgs个SET u1)，每batchSize条命令一个pipeline写到redis。
+ * 前缀有过期时间的，写完以后给这个key续上过期时间，按天滚动的key不会一直留在redis里。
+ * 暂时写不进去的命令放回本地重试，WRONGTYPE之类的错误丢弃这条命令；本地最多缓冲maxPending个元素和bit，超过的丢弃，丢弃的个数见{@link #getDroppedValues()}。
+ * 进程异常退出时，最多丢失最近一个周期还没有flush的数据，正常关闭时调用{@link #close()}会把剩余的数据flush掉。
+ */
+public class RedisAnalyticsBuffer implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(RedisAnalyticsBuffer.class);
+    private static final BitFieldSubCommands.BitFieldType BIT = BitFieldSubCommands.BitFieldType.unsigned(1);
+
+    private final RedisClientService redisService;
+    private final boolean enableAppKeyPrefix;
+    private final KeyPrefix prefix;
+    private final RedisClientProperties.AnalyticsBuffer config;
+
+    /**
+     * 只在compute里修改，和flush时的remove互斥，不会有写到已经摘走的集合里的情况
+     */
+    private final ConcurrentMap<String, Set<ByteBuffer>> members = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<Long, Boolean>> bits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingOps = new AtomicInteger();
+    /**
+     * members和bits里一共有多少个元素和bit
+     */
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * 上次flush以后因为缓冲已满丢弃的个数，flush时打一条日志
+     */
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    RedisAnalyticsBuffer(RedisClientService redisService, boolean enableAppKeyPrefix, KeyPrefix prefix, RedisClientProperties.AnalyticsBuffer config) {
+        if(config.getFlushIntervalMillis() <= 0 || config.getFlushThreshold() <= 0 || config.getBatchSize() <= 0 || config.getMaxArgs() <= 0
+                || config.getMaxPending() <= 0){
+            throw new IllegalArgumentException("flushIntervalMillis、flushThreshold、batchSize、maxArgs和maxPending必须大于0");
+        }
+        this.redisService = redisService;
+        this.enableAppKeyPrefix = enableAppKeyPrefix;
+        this.prefix = prefix;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redis-analytics-buffer-" + prefix.getPrefix());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void pfadd(String key, Object... values){
+        checkOpen();
+        if(values == null || values.length <= 0){
+            return;
+        }
+        //满了直接丢弃，不再浪费时间编码
+        if(isFull(values.length)){
+            return;
+        }
+        List<ByteBuffer> encoded = new ArrayList<>(values.length);
+        for(Object value : values){
+            encoded.add(ByteBuffer.wrap(redisService.getCodec().encode(value)));
+        }
+        int[] added = new int[1];
+        members.compute(key, (k, set) -> {
+            Set<ByteBuffer> ret = set == null ? new HashSet<>() : set;
+            int before = ret.size();
+            ret.addAll(encoded);
+            added[0] = ret.size() - before;
+            return ret;
+        });
+        buffered.addAndGet(added[0]);
+        afterAdd(values.length);
+    }
+
+    /**
+     * 写到当天的key，见{@link DailyKeys}
+     */
+    public void pfaddToday(String key, Object... values){
+        pfadd(DailyKeys.today(key), values);
+    }
+
+    public void setbit(String key, long offset, boolean value){
+        checkOpen();
+        if(offset < 0){
+            throw new IllegalArgumentException("offset不能小于0");
+        }
+        if(isFull(1)){
+            return;
+        }
+        boolean[] added = new boolean[1];
+        bits.compute(key, (k, map) -> {
+            Map<Long, Boolean> ret = map == null ? new HashMap<>() : map;
+            added[0] = ret.put(offset, value) == null;
+            return ret;
+        });
+        if(added[0]){
+            buffered.incrementAndGet();
+        }
+        afterAdd(1);
+    }
+
+    /**
+     * 写到当天的key，见{@link DailyKeys}
+     */
+    public void setbitToday(String key, long offset, boolean value){
+        setbit(DailyKeys.today(key), offset, value);
+    }
+
+    private void checkOpen(){
+        if(closed.get()){
+            throw new IllegalStateException("RedisAnalyticsBuffer已经关闭");
+        }
+    }
+
+    /**
+     * 本地缓冲的元素和bit个数到了maxPending(比如redis长时间不可用)，新写入的直接丢弃，不会一直占用内存
+     */
+    private boolean isFull(int values){
+        if(buffered.get() < config.getMaxPending()){
+            return false;
+        }
+        dropped.addAndGet(values);
+        overflowed.addAndGet(values);
+        return true;
+    }
+
+    private void afterAdd(int ops){
+        if(pendingOps.addAndGet(ops) >= config.getFlushThreshold() && flushScheduled.compareAndSet(false, true)){
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly(){
+        try{
+            flush();
+        }catch(Exception e){
+            log.error("flush HyperLogLog/bitmap失败，数据会在下次flush时重试:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把本地缓冲的数据写到redis，暂时失败的命令会放回本地，下次flush时重试；
+     * WRONGTYPE之类重试也不会成功的命令直接丢弃，不影响其它key
+     */
+    public synchronized void flush(){
+        pendingOps.set(0);
+        long overflow = overflowed.getAndSet(0);
+        if(overflow > 0){
+            log.warn("本地缓冲已满，丢弃了" + overflow + "个元素/bit");
+        }
+        List<Pending> commands = new ArrayList<>();
+        for(String key : members.keySet()){
+            Set<ByteBuffer> set = members.remove(key);
+            if(set != null){
+                buffered.addAndGet(-set.size());
+                List<ByteBuffer> chunk = new ArrayList<>();
+                for(ByteBuffer member : set){
+                    chunk.add(member);
+                    if(chunk.size() >= config.getMaxArgs()){
+                        commands.add(new Pending(key, chunk, null));
+                        chunk = new ArrayList<>();
+                    }
+                }
+                if(!chunk.isEmpty()){
+                    commands.add(new Pending(key, chunk, null));
+                }
+            }
+        }
+        for(String key : bits.keySet()){
+            Map<Long, Boolean> map = bits.remove(key);
+            if(map != null){
+                buffered.addAndGet(-map.size());
+                Map<Long, Boolean> chunk = new LinkedHashMap<>();
+                for(Map.Entry<Long, Boolean> entry : map.entrySet()){
+                    chunk.put(entry.getKey(), entry.getValue());
+                    if(chunk.size() >= config.getMaxArgs()){
+                        commands.add(new Pending(key, null, chunk));
+                        chunk = new LinkedHashMap<>();
+                    }
+                }
+                if(!chunk.isEmpty()){
+                    commands.add(new Pending(key, null, chunk));
+                }
+            }
+        }
+        int requeued = 0;
+        for(int from = 0; from < commands.size(); from += config.getBatchSize()){
+            List<Pending> batch = commands.subList(from, Math.min(commands.size(), from + config.getBatchSize()));
+            List<Object> results;
+            try{
+                results = redisService.pipeline(ConnectionLane.BULK, prefix, redisCommands -> write(redisCommands, batch), (RedisCallback<Object>) connection -> {
+                    write(connection, batch);
+                    return null;
+                });
+            }catch(RuntimeException e){
+                //拿不到连接或者熔断，一条都没有发出去，后面的批次也一样，一起放回本地
+                requeue(commands.subList(from, commands.size()));
+                throw e;
+            }
+            if(results == null){
+                //PFADD和BITFIELD SET重复执行结果不变，不知道执行了没有的整批重发
+                requeue(batch);
+                requeued += batch.size();
+                continue;
+            }
+            for(int i = 0; i < batch.size(); i++){
+                Object result = results.get(i);
+                if(!(result instanceof Throwable)){
+                    continue;
+                }
+                Pending pending = batch.get(i);
+                if(PipelineResults.isTransient(result) || result instanceof QueryTimeoutException){
+                    requeue(Collections.singletonList(pending));
+                    requeued++;
+                }else{
+                    dropped.addAndGet(pending.size());
+                    log.error("HyperLogLog/bitmap写入失败，丢弃" + pending.size() + "个元素/bit，key:" + pending.key + "，原因:" + PipelineResults.reason(result));
+                }
+            }
+        }
+        if(requeued > 0){
+            log.warn(requeued + "条PFADD/BITFIELD暂时写入失败，会在下次flush时重试");
+        }
+    }
+
+    /**
+     * @return 丢弃的元素和bit个数，包括本地缓冲已满时新写入的和WRONGTYPE之类写入失败的
+     */
+    public long getDroppedValues(){
+        return dropped.get();
+    }
+
+    /**
+     * 返回的future前batch.size()个和batch一一对应，后面是续过期时间的EXPIRE
+     */
+    private List<RedisFuture<?>> write(RedisClusterAsyncCommands<byte[], byte[]> commands, List<Pending> batch){
+        List<RedisFuture<?>> futures = new ArrayList<>(batch.size() * 2);
+        Set<String> keys = new LinkedHashSet<>();
+        for(Pending pending : batch){
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, pending.key);
+            if(pending.members != null){
+                futures.add(commands.pfadd(keyBytes, pending.values()));
+            }else{
+                futures.add(commands.bitfield(keyBytes, LettuceConverters.toBitFieldArgs(pending.subCommands())));
+            }
+            keys.add(pending.key);
+        }
+        if(prefix.getExpireSeconds() > 0){
+            for(String key : keys){
+                futures.add(commands.expire(redisService.rawKey(enableAppKeyPrefix, prefix, key), prefix.getExpireSeconds()));
+            }
+        }
+        return futures;
+    }
+
+    private void write(RedisConnection connection, List<Pending> batch){
+        Set<String> keys = new LinkedHashSet<>();
+        for(Pending pending : batch){
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, pending.key);
+            if(pending.members != null){
+                connection.pfAdd(keyBytes, pending.values());
+            }else{
+                connection.bitField(keyBytes, pending.subCommands());
+            }
+            keys.add(pending.key);
+        }
+        if(prefix.getExpireSeconds() > 0){
+            for(String key : keys){
+                connection.expire(redisService.rawKey(enableAppKeyPrefix, prefix, key), prefix.getExpireSeconds());
+            }
+        }
+    }
+
+    /**
+     * 放回本地，bitmap里已经有更新的值的位置以新的为准；本地缓冲已满时丢弃
+     */
+    private void requeue(List<Pending> batch){
+        for(Pending pending : batch){
+            if(buffered.get() >= config.getMaxPending()){
+                dropped.addAndGet(pending.size());
+                overflowed.addAndGet(pending.size());
+                continue;
+            }
+            int[] added = new int[1];
+            if(pending.members != null){
+                members.compute(pending.key, (k, set) -> {
+                    Set<ByteBuffer> ret = set == null ? new HashSet<>() : set;
+                    int before = ret.size();
+                    ret.addAll(pending.members);
+                    added[0] = ret.size() - before;
+                    return ret;
+                });
+            }else{
+                bits.compute(pending.key, (k, map) -> {
+                    Map<Long, Boolean> ret = map == null ? new HashMap<>() : map;
+                    int before = ret.size();
+                    pending.bits.forEach(ret::putIfAbsent);
+                    added[0] = ret.size() - before;
+                    return ret;
+                });
+            }
+            buffered.addAndGet(added[0]);
+        }
+    }
+
+    /**
+     * 停止定时flush，并把剩余的数据flush到redis，这次flush失败的数据会丢失
+     */
+    @Override
+    public void close(){
+        if(!closed.compareAndSet(false, true)){
+            return;
+        }
+        scheduler.shutdown();
+        try{
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        try{
+            flush();
+        }catch(Exception e){
+            log.error("关闭时flush HyperLogLog/bitmap失败，未写入的数据已丢失:" + e.getMessage(), e);
+        }
+    }
+
+    private static final class Pending {
+        private final String key;
+        private final List<ByteBuffer> members;
+        private final Map<Long, Boolean> bits;
+
+        private Pending(String key, List<ByteBuffer> members, Map<Long, Boolean> bits) {
+            this.key = key;
+            this.members = members;
+            this.bits = bits;
+        }
+
+        private int size(){
+            return members != null ? members.size() : bits.size();
+        }
+
+        private byte[][] values(){
+            byte[][] values = new byte[members.size()][];
+            for(int i = 0; i < values.length; i++){
+                values[i] = members.get(i).array();
+            }
+            return values;
+        }
+
+        private BitFieldSubCommands subCommands(){
+            BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+            for(Map.Entry<Long, Boolean> entry : bits.entrySet()){
+                subCommands = subCommands.set(BIT).valueAt(entry.getKey()).to(entry.getValue() ? 1 : 0);
+            }
+            return subCommands;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.breaker.CircuitBreakerMetrics;
+import com.github.xjs.redisclient.breaker.CircuitState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * redis的熔断器
+ *
+ * 按秒分桶统计最近windowSeconds秒的调用数、失败数(连接失败和超时)和慢调用数，调用数达到minimumCalls以后，
+ * 失败率或者慢调用率超过阈值就熔断，熔断期间的命令直接抛出RedisConnectionFailureException，不再等连接超时。
+ * 熔断openMillis毫秒以后放行halfOpenProbes个探测命令，都成功就恢复，有一个失败或者慢就重新熔断。
+ */
+final class RedisCircuitBreaker {
+
+    private static Logger log = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    private final RedisClientProperties.CircuitBreaker options;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final Bucket[] buckets;
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+    private final LongAdder notPermitted = new LongAdder();
+    private final AtomicLong timesOpened = new AtomicLong();
+    private final LongAdder staleServed = new LongAdder();
+    /**
+     * 最近一次进入OPEN或者HALF_OPEN的System.nanoTime()
+     */
+    private volatile long transitionAt;
+
+    RedisCircuitBreaker(RedisClientProperties.CircuitBreaker options) {
+        if(options.getWindowSeconds() <= 0 || options.getMinimumCalls() <= 0 || options.getHalfOpenProbes() <= 0){
+            throw new IllegalArgumentException("windowSeconds、minimumCalls和halfOpenProbes必须大于0");
+        }
+        if(options.getFailureRateThreshold() <= 0 || options.getFailureRateThreshold() > 100
+                || options.getSlowCallRateThreshold() <= 0 || options.getSlowCallRateThreshold() > 100){
+            throw new IllegalArgumentException("failureRateThreshold和slowCallRateThreshold必须在1到100之间");
+        }
+        if(options.getSlowCallMillis() <= 0 || options.getOpenMillis() <= 0){
+            throw new IllegalArgumentException("slowCallMillis和openMillis必须大于0");
+        }
+        this.options = options;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(options.getSlowCallMillis());
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(options.getOpenMillis());
+        this.buckets = new Bucket[options.getWindowSeconds()];
+        for(int i = 0; i < buckets.length; i++){
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 执行一个命令以前调用，熔断中抛出RedisConnectionFailureException
+     */
+    void acquirePermission(){
+        CircuitState current = state.get();
+        if(current == CircuitState.CLOSED){
+            return;
+        }
+        long now = System.nanoTime();
+        if(current == CircuitState.OPEN){
+            if(now - transitionAt < openNanos || !state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN)){
+                reject();
+            }
+            transitionAt = now;
+            probeSuccesses.set(0);
+            probePermits.set(options.getHalfOpenProbes() - 1);
+            log.info("redis熔断" + options.getOpenMillis() + "毫秒，开始探测");
+            return;
+        }
+        //探测命令一直没有结果的话，过了openMillis重新放行
+        if(probePermits.getAndDecrement() <= 0){
+            if(now - transitionAt < openNanos){
+                reject();
+            }
+            transitionAt = now;
+            probePermits.set(options.getHalfOpenProbes() - 1);
+        }
+    }
+
+    /**
+     * 获取连接以前调用，只在熔断期间拒绝，不占用探测的名额
+     */
+    void rejectIfOpen(){
+        if(state.get() == CircuitState.OPEN && System.nanoTime() - transitionAt < openNanos){
+            reject();
+        }
+    }
+
+    /**
+     * @param error 命令抛出的异常，成功时为null
+     */
+    void onComplete(long nanos, Throwable error){
+        boolean failure = isFailure(error);
+        boolean slow = nanos >= slowCallNanos;
+        CircuitState current = state.get();
+        if(current == CircuitState.HALF_OPEN){
+            if(failure || slow){
+                open(CircuitState.HALF_OPEN);
+            }else if(probeSuccesses.incrementAndGet() >= options.getHalfOpenProbes()
+                    && state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED)){
+                for(Bucket bucket : buckets){
+                    bucket.reset(Long.MIN_VALUE);
+                }
+                log.info("redis已恢复，关闭熔断");
+            }
+            return;
+        }
+        if(current == CircuitState.OPEN){
+            //熔断以前就发出去的命令
+            return;
+        }
+        Bucket bucket = bucket(currentSecond());
+        bucket.calls.increment();
+        if(failure){
+            bucket.failures.increment();
+        }
+        if(slow){
+            bucket.slowCalls.increment();
+        }
+        if(failure || slow){
+            long[] counts = counts();
+            if(counts[0] >= options.getMinimumCalls()
+                    && (counts[1] * 100 >= counts[0] * options.getFailureRateThreshold()
+                    || counts[2] * 100 >= counts[0] * options.getSlowCallRateThreshold())){
+                open(CircuitState.CLOSED);
+            }
+        }
+    }
+
+    void onStaleServed(){
+        staleServed.increment();
+    }
+
+    CircuitBreakerMetrics metrics(){
+        long[] counts = counts();
+        double failureRate = counts[0] == 0 ? 0 : counts[1] * 100.0 / counts[0];
+        double slowCallRate = counts[0] == 0 ? 0 : counts[2] * 100.0 / counts[0];
+        return new CircuitBreakerMetrics(state.get(), counts[0], failureRate, slowCallRate,
+                notPermitted.sum(), timesOpened.get(), staleServed.sum());
+    }
+
+    /**
+     * 连接失败和超时才算失败，命令本身的错误(比如WRONGTYPE)说明redis是好的
+     */
+    static boolean isFailure(Throwable error){
+        return error instanceof DataAccessResourceFailureException || error instanceof TransientDataAccessException;
+    }
+
+    private void open(CircuitState from){
+        if(state.compareAndSet(from, CircuitState.OPEN)){
+            transitionAt = System.nanoTime();
+            timesOpened.incrementAndGet();
+            log.warn("redis失败率或者慢调用率过高，熔断" + options.getOpenMillis() + "毫秒:" + metrics());
+        }
+    }
+
+    private void reject(){
+        notPermitted.increment();
+        throw new RedisConnectionFailureException("redis熔断中，" + options.getOpenMillis() + "毫秒以后重试");
+    }
+
+    /**
+     * @return 窗口内的调用数、失败数、慢调用数
+     */
+    private long[] counts(){
+        long second = currentSecond();
+        long[] ret = new long[3];
+        for(Bucket bucket : buckets){
+            if(bucket.second != Long.MIN_VALUE && bucket.second > second - buckets.length){
+                ret[0] += bucket.calls.sum();
+                ret[1] += bucket.failures.sum();
+                ret[2] += bucket.slowCalls.sum();
+            }
+        }
+        return ret;
+    }
+
+    private Bucket bucket(long second){
+        Bucket bucket = buckets[(int)Math.floorMod(second, (long)buckets.length)];
+        if(bucket.second != second){
+            synchronized (bucket){
+                if(bucket.second != second){
+                    bucket.reset(second);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static long currentSecond(){
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    private static final class Bucket {
+        private volatile long second = Long.MIN_VALUE;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        private void reset(long second){
+            calls.reset();
+            failures.reset();
+            slowCalls.reset();
+            this.second = second;
+        }
+    }
+}
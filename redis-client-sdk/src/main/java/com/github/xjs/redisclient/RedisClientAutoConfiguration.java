@@ -1,13 +1,17 @@
 package com.github.xjs.redisclient;
 
+import com.github.xjs.redisclient.codec.ValueCodec;
 import com.github.xjs.redisclient.key.ApplicationKeyPrefix;
+import com.github.xjs.redisclient.trace.RedisOperationListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.EnvironmentAware;
@@ -35,7 +39,8 @@ public class RedisClientAutoConfiguration implements EnvironmentAware, BeanClass
     private ClassLoader classLoader;
 
     @Bean
-    public RedisClientService redisService(RedisConnectionFactory redisConnectionFactory, RedisClientProperties properties, @Nullable ApplicationKeyPrefix appKeyPrefix){
+    public RedisClientService redisService(RedisConnectionFactory redisConnectionFactory, RedisClientProperties properties, @Nullable ApplicationKeyPrefix appKeyPrefix, ValueCodec valueCodec,
+                                           ObjectProvider<RedisOperationListener> operationListeners){
         RedisTemplate<byte[], byte[]> redisTemplate = new RedisTemplate<>();
         redisTemplate.setKeySerializer(null);
         redisTemplate.setValueSerializer(null);
@@ -45,7 +50,60 @@ public class RedisClientAutoConfiguration implements EnvironmentAware, BeanClass
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         redisTemplate.setBeanClassLoader(this.classLoader);
         redisTemplate.afterPropertiesSet();
-        return new RedisClientService(redisTemplate, properties, appKeyPrefix);
+        RedisClientService redisService = new RedisClientService(redisTemplate, properties, appKeyPrefix, valueCodec);
+        if(properties.getTracing().isEnabled()){
+            operationListeners.orderedStream().forEach(redisService::addOperationListener);
+        }
+        return redisService;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisStreamClient redisStreamClient(RedisClientService redisService, RedisConnectionFactory redisConnectionFactory){
+        return new RedisStreamClient(redisService, redisConnectionFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisWorkQueue redisWorkQueue(RedisClientService redisService, RedisConnectionFactory redisConnectionFactory){
+        return new RedisWorkQueue(redisService, redisConnectionFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisDelayQueue redisDelayQueue(RedisClientService redisService){
+        return new RedisDelayQueue(redisService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisLargeValues redisLargeValues(RedisClientService redisService){
+        return new RedisLargeValues(redisService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisSnapshots redisSnapshots(RedisClientService redisService){
+        return new RedisSnapshots(redisService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisLeaderboard redisLeaderboard(RedisClientService redisService){
+        return new RedisLeaderboard(redisService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(value="spring.redis.warmup.enabled", havingValue="true")
+    public RedisWarmup redisWarmup(RedisClientService redisService, ObjectProvider<CacheManager> cacheManager){
+        return new RedisWarmup(redisService, cacheManager.getIfUnique());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ValueCodec redisValueCodec(){
+        return new ValueCodec();
     }
 
     @Bean
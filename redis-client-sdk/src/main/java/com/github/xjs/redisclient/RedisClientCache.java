@@ -0,0 +1,328 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.cache.CacheOptions;
+import com.github.xjs.redisclient.codec.ValueCodec;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 用KeyPrefix保存的spring cache
+ *
+ * cache的key用toString()拼在KeyPrefix后面，有效期是KeyPrefix的getExpireSeconds()，value用sdk的ValueCodec编码，
+ * 和redisService.set/get写入的数据可以互相读取。开启一级缓存时先查本地，本地没有再查redis。
+ * sync=true的@Cacheable在本进程内同一个key同时只有一个线程回源，其他线程等它的结果。
+ */
+public class RedisClientCache extends AbstractValueAdaptingCache {
+
+    private static final int CLEAR_BATCH_SIZE = 500;
+
+    private final String name;
+    private final RedisClientService redisService;
+    private final KeyPrefix prefix;
+    private final ValueCodec codec;
+    private final Class<?> valueType;
+    private final byte[] nullBytes;
+    private final NearCache nearCache;
+    private final ConcurrentMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    RedisClientCache(String name, RedisClientService redisService, KeyPrefix prefix, CacheOptions options) {
+        super(options.isAllowNullValues());
+        this.name = name;
+        this.redisService = redisService;
+        this.prefix = prefix;
+        this.codec = redisService.getCodec();
+        this.valueType = options.getValueType();
+        this.nullBytes = codec.encode(NullValue.INSTANCE);
+        if(options.getNearCacheMaxSize() > 0){
+            long expireMillis = options.getNearCacheExpireMillis();
+            if(prefix.getExpireSeconds() > 0){
+                expireMillis = Math.min(expireMillis, prefix.getExpireSeconds() * 1000L);
+            }
+            this.nearCache = new NearCache(options.getNearCacheMaxSize(), expireMillis);
+        }else{
+            this.nearCache = null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisService;
+    }
+
+    public KeyPrefix getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    protected Object lookup(Object key){
+        String cacheKey = cacheKey(key);
+        if(nearCache != null){
+            Object value = nearCache.get(cacheKey);
+            if(value != null){
+                return value;
+            }
+        }
+        Object value = fromBytes(redisService.get(prefix, cacheKey, byte[].class));
+        if(value != null && nearCache != null){
+            nearCache.put(cacheKey, value);
+        }
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader){
+        ValueWrapper cached = get(key);
+        if(cached != null){
+            return (T) cached.get();
+        }
+        String cacheKey = cacheKey(key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(cacheKey, future);
+        if(inFlight != null){
+            try{
+                return (T) fromStoreValue(inFlight.get());
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }catch(ExecutionException e){
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try{
+            //拿到回源权以前可能刚有线程回源完成
+            Object stored = lookup(key);
+            if(stored == null){
+                T value = valueLoader.call();
+                put(key, value);
+                stored = toStoreValue(value);
+            }
+            future.complete(stored);
+            return (T) fromStoreValue(stored);
+        }catch(Exception e){
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }finally{
+            loading.remove(cacheKey, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value){
+        String cacheKey = cacheKey(key);
+        Object stored = toStoreValue(value);
+        redisService.set(prefix, cacheKey, toBytes(stored));
+        if(nearCache != null){
+            nearCache.put(cacheKey, stored);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value){
+        String cacheKey = cacheKey(key);
+        Object stored = toStoreValue(value);
+        if(Boolean.TRUE.equals(redisService.set(prefix, cacheKey, toBytes(stored), true))){
+            if(nearCache != null){
+                nearCache.put(cacheKey, stored);
+            }
+            return null;
+        }
+        return toValueWrapper(fromBytes(redisService.get(prefix, cacheKey, byte[].class)));
+    }
+
+    @Override
+    public void evict(Object key){
+        String cacheKey = cacheKey(key);
+        redisService.delete(prefix, cacheKey);
+        if(nearCache != null){
+            nearCache.remove(cacheKey);
+        }
+    }
+
+    /**
+     * SCAN出这个前缀下所有的key分批删除，key很多时比较慢
+     */
+    @Override
+    public void clear(){
+        String pattern = RedisClientService.escapeGlob(redisService.keyBase(true, prefix)) + "*";
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(CLEAR_BATCH_SIZE).build();
+        redisService.template(ConnectionLane.BULK, prefix).execute((RedisCallback<Object>) connection -> {
+            List<byte[]> batch = new ArrayList<>(CLEAR_BATCH_SIZE);
+            try(Cursor<byte[]> cursor = connection.scan(options)){
+                while(cursor.hasNext()){
+                    batch.add(cursor.next());
+                    if(batch.size() >= CLEAR_BATCH_SIZE){
+                        connection.del(batch.toArray(new byte[0][]));
+                        batch.clear();
+                    }
+                }
+            }catch(IOException e){
+                throw new IllegalStateException(e);
+            }
+            if(!batch.isEmpty()){
+                connection.del(batch.toArray(new byte[0][]));
+            }
+            return null;
+        });
+        if(nearCache != null){
+            nearCache.clear();
+        }
+    }
+
+    /**
+     * 扫描前缀下的key，预热一级缓存用
+     * @return 去掉前缀以后的缓存key，最多maxKeys个
+     */
+    List<String> scanKeys(int maxKeys){
+        String base = redisService.keyBase(true, prefix);
+        int prefixLength = base.length();
+        ScanOptions options = ScanOptions.scanOptions().match(RedisClientService.escapeGlob(base) + "*").count(CLEAR_BATCH_SIZE).build();
+        return redisService.template(ConnectionLane.BULK, prefix).execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            try(Cursor<byte[]> cursor = connection.scan(options)){
+                while(cursor.hasNext() && keys.size() < maxKeys){
+                    keys.add(new String(cursor.next(), StandardCharsets.UTF_8).substring(prefixLength));
+                }
+            }catch(IOException e){
+                throw new IllegalStateException(e);
+            }
+            return keys;
+        });
+    }
+
+    boolean hasNearCache(){
+        return nearCache != null;
+    }
+
+    /***************************批量操作************************************/
+    /**
+     * 批量读取，一级缓存没有的key用一次MGET读取
+     * @return 命中的key和value，缓存的null值对应的value是null，没有命中的key不在结果中
+     */
+    public <K, V> Map<K, V> getAll(Collection<K> keys){
+        Map<K, V> ret = new LinkedHashMap<>();
+        List<K> misses = new ArrayList<>();
+        for(K key : keys){
+            Object stored = nearCache == null ? null : nearCache.get(cacheKey(key));
+            if(stored != null){
+                ret.put(key, (V) fromStoreValue(stored));
+            }else{
+                misses.add(key);
+            }
+        }
+        if(misses.isEmpty()){
+            return ret;
+        }
+        List<byte[]> rawKeys = new ArrayList<>(misses.size());
+        for(K key : misses){
+            rawKeys.add(redisService.rawKey(true, prefix, cacheKey(key)));
+        }
+        List<byte[]> values = redisService.template(ConnectionLane.BULK, prefix).opsForValue().multiGet(rawKeys);
+        for(int i = 0; values != null && i < misses.size(); i++){
+            Object stored = fromBytes(values.get(i));
+            if(stored == null){
+                continue;
+            }
+            K key = misses.get(i);
+            if(nearCache != null){
+                nearCache.put(cacheKey(key), stored);
+            }
+            ret.put(key, (V) fromStoreValue(stored));
+        }
+        return ret;
+    }
+
+    /**
+     * 批量写入，用一次pipeline执行SET，有效期和单个put一样
+     */
+    public void putAll(Map<?, ?> entries){
+        if(entries.isEmpty()){
+            return;
+        }
+        Map<byte[], byte[]> raw = new LinkedHashMap<>();
+        for(Map.Entry<?, ?> e : entries.entrySet()){
+            String cacheKey = cacheKey(e.getKey());
+            Object stored = toStoreValue(e.getValue());
+            raw.put(redisService.rawKey(true, prefix, cacheKey), toBytes(stored));
+            if(nearCache != null){
+                nearCache.put(cacheKey, stored);
+            }
+        }
+        Expiration expiration = prefix.getExpireSeconds() > 0 ? Expiration.seconds(prefix.getExpireSeconds()) : Expiration.persistent();
+        redisService.template(ConnectionLane.BULK, prefix).executePipelined((RedisCallback<Object>) connection -> {
+            for(Map.Entry<byte[], byte[]> e : raw.entrySet()){
+                connection.set(e.getKey(), e.getValue(), expiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /***************************编解码************************************/
+    private static String cacheKey(Object key){
+        if(key == null){
+            throw new IllegalArgumentException("缓存的key不能为空");
+        }
+        return key.toString();
+    }
+
+    /**
+     * 声明了类型的cache和redisService.set一样用codec编码；没有声明类型的cache，String原样写入，其他的值带上类型，
+     * 读出来的Long、Float、枚举等还是原来的类型
+     */
+    private byte[] toBytes(Object stored){
+        if(stored == NullValue.INSTANCE){
+            return nullBytes;
+        }
+        if(valueType == null && !(stored instanceof String)){
+            return codec.encodeWithType(stored);
+        }
+        return codec.encode(stored);
+    }
+
+    private Object fromBytes(byte[] bytes){
+        if(bytes == null){
+            return null;
+        }
+        if(Arrays.equals(bytes, nullBytes)){
+            return NullValue.INSTANCE;
+        }
+        if(valueType != null){
+            return codec.decode(bytes, (Class<Object>) valueType);
+        }
+        //带类型的json以{或者[开头，其余的都是String
+        if(bytes.length > 0 && (bytes[0] == '{' || bytes[0] == '[')){
+            try{
+                return codec.decode(bytes, Object.class);
+            }catch(SerializationException e){
+                //恰好以{或者[开头的String
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.cache.CacheOptions;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于RedisClientService的spring CacheManager
+ *
+ * 每个cache的名字对应一个KeyPrefix，缓存的key和有效期都遵循KeyPrefix的约定，value使用sdk的ValueCodec编码。
+ * 没有声明过的cache名字，dynamic为true时使用"cache:名字:"前缀和defaultExpireSeconds，为false时返回null。
+ * <pre>
+ * &#64;Bean
+ * public CacheManager cacheManager(RedisClientService redisService){
+ *     RedisClientCacheManager cacheManager = new RedisClientCacheManager(redisService);
+ *     cacheManager.addCache("user", UserKey.cache, options);
+ *     return cacheManager;
+ * }
+ * </pre>
+ */
+public class RedisClientCacheManager extends AbstractCacheManager {
+
+    private final RedisClientService redisService;
+    private final Map<String, RedisClientCache> declared = new ConcurrentHashMap<>();
+    private CacheOptions defaultOptions = new CacheOptions();
+    private boolean dynamic = true;
+    private int defaultExpireSeconds = 600;
+
+    public RedisClientCacheManager(RedisClientService redisService) {
+        this.redisService = redisService;
+    }
+
+    public void addCache(String name, KeyPrefix prefix){
+        addCache(name, prefix, defaultOptions);
+    }
+
+    /**
+     * 声明一个cache，要在CacheManager初始化以前调用
+     */
+    public void addCache(String name, KeyPrefix prefix, CacheOptions options){
+        if(name == null || prefix == null || options == null){
+            throw new IllegalArgumentException("cache的名字、前缀和参数不能为空");
+        }
+        declared.put(name, new RedisClientCache(name, redisService, prefix, options));
+    }
+
+    public CacheOptions getDefaultOptions() {
+        return defaultOptions;
+    }
+
+    /**
+     * addCache没有指定参数时和动态创建的cache使用的参数
+     */
+    public void setDefaultOptions(CacheOptions defaultOptions) {
+        this.defaultOptions = defaultOptions;
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    public void setDynamic(boolean dynamic) {
+        this.dynamic = dynamic;
+    }
+
+    public int getDefaultExpireSeconds() {
+        return defaultExpireSeconds;
+    }
+
+    public void setDefaultExpireSeconds(int defaultExpireSeconds) {
+        this.defaultExpireSeconds = defaultExpireSeconds;
+    }
+
+    @Override
+    public RedisClientCache getCache(String name){
+        return (RedisClientCache) super.getCache(name);
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches(){
+        return new ArrayList<>(declared.values());
+    }
+
+    @Override
+    protected Cache getMissingCache(String name){
+        RedisClientCache cache = declared.get(name);
+        if(cache != null){
+            return cache;
+        }
+        if(!dynamic){
+            return null;
+        }
+        return new RedisClientCache(name, redisService, new CacheKey(name, defaultExpireSeconds), defaultOptions);
+    }
+
+    private static final class CacheKey implements KeyPrefix {
+        private final String prefix;
+        private final int expireSeconds;
+
+        private CacheKey(String name, int expireSeconds) {
+            this.prefix = "cache:" + name + ":";
+            this.expireSeconds = expireSeconds;
+        }
+
+        @Override
+        public String getPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public int getExpireSeconds() {
+            return expireSeconds;
+        }
+    }
+}
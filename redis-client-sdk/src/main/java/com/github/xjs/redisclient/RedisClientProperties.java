@@ -1,12 +1,38 @@
 package com.github.xjs.redisclient;
 
+import com.github.xjs.redisclient.replica.ReadPreference;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @ConfigurationProperties(prefix = "spring.redis")
 public class RedisClientProperties {
 
     private boolean enableApplicationKeyPrefix= true;
 
+    private CounterBuffer counterBuffer = new CounterBuffer();
+
+    private AnalyticsBuffer analyticsBuffer = new AnalyticsBuffer();
+
+    private GetBatching getBatching = new GetBatching();
+
+    private Lanes lanes = new Lanes();
+
+    private ReplicaReads replicaReads = new ReplicaReads();
+
+    private Hedging hedging = new Hedging();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private BufferDecoding bufferDecoding = new BufferDecoding();
+
+    private Warmup warmup = new Warmup();
+
+    private Tracing tracing = new Tracing();
+
     public boolean isEnableApplicationKeyPrefix() {
         return enableApplicationKeyPrefix;
     }
@@ -14,4 +40,784 @@ public class RedisClientProperties {
     public void setEnableApplicationKeyPrefix(boolean enableApplicationKeyPrefix) {
         this.enableApplicationKeyPrefix = enableApplicationKeyPrefix;
     }
+
+    public CounterBuffer getCounterBuffer() {
+        return counterBuffer;
+    }
+
+    public void setCounterBuffer(CounterBuffer counterBuffer) {
+        this.counterBuffer = counterBuffer;
+    }
+
+    public AnalyticsBuffer getAnalyticsBuffer() {
+        return analyticsBuffer;
+    }
+
+    public void setAnalyticsBuffer(AnalyticsBuffer analyticsBuffer) {
+        this.analyticsBuffer = analyticsBuffer;
+    }
+
+    public GetBatching getGetBatching() {
+        return getBatching;
+    }
+
+    public void setGetBatching(GetBatching getBatching) {
+        this.getBatching = getBatching;
+    }
+
+    public Lanes getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(Lanes lanes) {
+        this.lanes = lanes;
+    }
+
+    public ReplicaReads getReplicaReads() {
+        return replicaReads;
+    }
+
+    public void setReplicaReads(ReplicaReads replicaReads) {
+        this.replicaReads = replicaReads;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public void setHedging(Hedging hedging) {
+        this.hedging = hedging;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public BufferDecoding getBufferDecoding() {
+        return bufferDecoding;
+    }
+
+    public void setBufferDecoding(BufferDecoding bufferDecoding) {
+        this.bufferDecoding = bufferDecoding;
+    }
+
+    public Warmup getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Warmup warmup) {
+        this.warmup = warmup;
+    }
+
+    public Tracing getTracing() {
+        return tracing;
+    }
+
+    public void setTracing(Tracing tracing) {
+        this.tracing = tracing;
+    }
+
+    public static class CounterBuffer {
+
+        /**
+         * 最长多久flush一次
+         */
+        private long flushIntervalMillis = 1000;
+
+        /**
+         * 累计多少次操作以后立即flush
+         */
+        private int flushThreshold = 10000;
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+
+        public int getFlushThreshold() {
+            return flushThreshold;
+        }
+
+        public void setFlushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+        }
+    }
+
+    public static class AnalyticsBuffer {
+
+        /**
+         * 最长多久flush一次
+         */
+        private long flushIntervalMillis = 1000;
+
+        /**
+         * 累计多少次操作以后立即flush
+         */
+        private int flushThreshold = 10000;
+
+        /**
+         * flush时一个pipeline里最多多少条命令
+         */
+        private int batchSize = 500;
+
+        /**
+         * 一条PFADD最多带多少个元素，一条BITFIELD最多带多少个SET
+         */
+        private int maxArgs = 1000;
+
+        /**
+         * 本地最多缓冲多少个元素和bit，超过以后新写入的丢弃
+         */
+        private int maxPending = 1000000;
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+
+        public int getFlushThreshold() {
+            return flushThreshold;
+        }
+
+        public void setFlushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxArgs() {
+            return maxArgs;
+        }
+
+        public void setMaxArgs(int maxArgs) {
+            this.maxArgs = maxArgs;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+    }
+
+    public static class GetBatching {
+
+        /**
+         * 是否把并发的GET合并成MGET
+         */
+        private boolean enabled = false;
+
+        /**
+         * 一个批次最多等待多少微秒
+         */
+        private long windowMicros = 100;
+
+        /**
+         * 一个批次最多多少个key
+         */
+        private int maxBatchSize = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindowMicros() {
+            return windowMicros;
+        }
+
+        public void setWindowMicros(long windowMicros) {
+            this.windowMicros = windowMicros;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+
+    public static class Lanes {
+
+        /**
+         * 是否把返回整个集合的命令、大pipeline和事务放到独立的BULK连接池上执行
+         */
+        private boolean enabled = false;
+
+        /**
+         * BULK连接池的最大连接数
+         */
+        private int bulkMaxTotal = 8;
+
+        private int bulkMaxIdle = 8;
+
+        private int bulkMinIdle = 0;
+
+        /**
+         * BULK连接池耗尽时最多等待多少毫秒，超时抛出RedisConnectionFailureException
+         */
+        private long bulkMaxWaitMillis = 2000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBulkMaxTotal() {
+            return bulkMaxTotal;
+        }
+
+        public void setBulkMaxTotal(int bulkMaxTotal) {
+            this.bulkMaxTotal = bulkMaxTotal;
+        }
+
+        public int getBulkMaxIdle() {
+            return bulkMaxIdle;
+        }
+
+        public void setBulkMaxIdle(int bulkMaxIdle) {
+            this.bulkMaxIdle = bulkMaxIdle;
+        }
+
+        public int getBulkMinIdle() {
+            return bulkMinIdle;
+        }
+
+        public void setBulkMinIdle(int bulkMinIdle) {
+            this.bulkMinIdle = bulkMinIdle;
+        }
+
+        public long getBulkMaxWaitMillis() {
+            return bulkMaxWaitMillis;
+        }
+
+        public void setBulkMaxWaitMillis(long bulkMaxWaitMillis) {
+            this.bulkMaxWaitMillis = bulkMaxWaitMillis;
+        }
+    }
+
+    public static class ReplicaReads {
+
+        /**
+         * 是否允许读命令发到副本
+         */
+        private boolean enabled = false;
+
+        /**
+         * 单机模式下副本的地址，格式是host:port，哨兵和集群模式从拓扑中发现副本，不需要配置
+         */
+        private List<String> nodes = new ArrayList<>();
+
+        /**
+         * 没有实现ReadPreferenceKeyPrefix的前缀使用的读节点，默认读master
+         */
+        private ReadPreference readPreference = ReadPreference.MASTER;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(List<String> nodes) {
+            this.nodes = nodes;
+        }
+
+        public ReadPreference getReadPreference() {
+            return readPreference;
+        }
+
+        public void setReadPreference(ReadPreference readPreference) {
+            this.readPreference = readPreference;
+        }
+    }
+
+    public static class Hedging {
+
+        /**
+         * 是否开启get、mget、hget、zscore的对冲读和读超时
+         */
+        private boolean enabled = false;
+
+        /**
+         * 主读超过最近延迟的这个百分位还没有返回时，向另一个节点再发一次，先返回的为准
+         */
+        private double percentile = 95;
+
+        /**
+         * 对冲延迟的下限，避免延迟很低时大量对冲
+         */
+        private long minDelayMicros = 1000;
+
+        /**
+         * 还没有足够的延迟样本时使用的对冲延迟
+         */
+        private long initialDelayMillis = 10;
+
+        /**
+         * 对冲的请求最多占全部请求的百分之多少
+         */
+        private int maxHedgePercent = 5;
+
+        /**
+         * 没有实现DeadlineKeyPrefix的前缀的读超时，0表示一直等到命令超时
+         */
+        private long deadlineMillis = 0;
+
+        /**
+         * 执行读命令的线程数，线程都忙时在调用线程上直接读，不对冲也不限时
+         */
+        private int threads = 64;
+
+        /**
+         * 有读超时的前缀在本地保存最近读到的值，超时的时候返回，最多保存多少个
+         */
+        private int staleCacheMaxSize = 10000;
+
+        /**
+         * 本地保存的值最多用多久
+         */
+        private long staleCacheExpireMillis = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public long getMinDelayMicros() {
+            return minDelayMicros;
+        }
+
+        public void setMinDelayMicros(long minDelayMicros) {
+            this.minDelayMicros = minDelayMicros;
+        }
+
+        public long getInitialDelayMillis() {
+            return initialDelayMillis;
+        }
+
+        public void setInitialDelayMillis(long initialDelayMillis) {
+            this.initialDelayMillis = initialDelayMillis;
+        }
+
+        public int getMaxHedgePercent() {
+            return maxHedgePercent;
+        }
+
+        public void setMaxHedgePercent(int maxHedgePercent) {
+            this.maxHedgePercent = maxHedgePercent;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public void setDeadlineMillis(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getStaleCacheMaxSize() {
+            return staleCacheMaxSize;
+        }
+
+        public void setStaleCacheMaxSize(int staleCacheMaxSize) {
+            this.staleCacheMaxSize = staleCacheMaxSize;
+        }
+
+        public long getStaleCacheExpireMillis() {
+            return staleCacheExpireMillis;
+        }
+
+        public void setStaleCacheExpireMillis(long staleCacheExpireMillis) {
+            this.staleCacheExpireMillis = staleCacheExpireMillis;
+        }
+    }
+
+    public static class CircuitBreaker {
+
+        /**
+         * 是否开启熔断，开启以后实现了StaleKeyPrefix的前缀在redis不可用时返回本地保存的旧值
+         */
+        private boolean enabled = false;
+
+        /**
+         * 统计最近多少秒的失败率和慢调用率
+         */
+        private int windowSeconds = 10;
+
+        /**
+         * 窗口内的调用数达到多少以后才计算失败率和慢调用率
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * 连接失败和超时的百分比达到多少时熔断
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 超过多少毫秒算慢调用
+         */
+        private long slowCallMillis = 1000;
+
+        /**
+         * 慢调用的百分比达到多少时熔断
+         */
+        private int slowCallRateThreshold = 80;
+
+        /**
+         * 熔断多少毫秒以后放行探测命令
+         */
+        private long openMillis = 5000;
+
+        /**
+         * 探测多少个命令都成功以后恢复
+         */
+        private int halfOpenProbes = 3;
+
+        /**
+         * 本地保存的旧值最多多少个
+         */
+        private int staleMaxSize = 10000;
+
+        /**
+         * 本地保存的旧值最多用多久
+         */
+        private long staleExpireMillis = 300000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSeconds() {
+            return windowSeconds;
+        }
+
+        public void setWindowSeconds(int windowSeconds) {
+            this.windowSeconds = windowSeconds;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public long getSlowCallMillis() {
+            return slowCallMillis;
+        }
+
+        public void setSlowCallMillis(long slowCallMillis) {
+            this.slowCallMillis = slowCallMillis;
+        }
+
+        public int getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public long getOpenMillis() {
+            return openMillis;
+        }
+
+        public void setOpenMillis(long openMillis) {
+            this.openMillis = openMillis;
+        }
+
+        public int getHalfOpenProbes() {
+            return halfOpenProbes;
+        }
+
+        public void setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+        }
+
+        public int getStaleMaxSize() {
+            return staleMaxSize;
+        }
+
+        public void setStaleMaxSize(int staleMaxSize) {
+            this.staleMaxSize = staleMaxSize;
+        }
+
+        public long getStaleExpireMillis() {
+            return staleExpireMillis;
+        }
+
+        public void setStaleExpireMillis(long staleExpireMillis) {
+            this.staleExpireMillis = staleExpireMillis;
+        }
+    }
+
+    public static class BufferDecoding {
+
+        /**
+         * 是否让get、lrange、hvals直接从lettuce的读缓冲区解码，不先复制成byte[]，只支持lettuce
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Tracing {
+
+        /**
+         * 是否开启，关闭时连接上不加任何代理，命令的执行路径和原来完全一样
+         */
+        private boolean enabled = false;
+
+        /**
+         * 超过多少毫秒算慢操作，小于等于0时不记录慢操作
+         */
+        private long slowMillis = 100;
+
+        /**
+         * 慢操作按这个比例采样记录，0到1之间
+         */
+        private double slowSampleRate = 1.0;
+
+        /**
+         * 本地保留最近多少条慢操作
+         */
+        private int slowLogSize = 128;
+
+        /**
+         * 慢操作是否记下发出命令的SDK方法和业务代码的位置，需要取一次调用栈
+         */
+        private boolean captureCaller = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getSlowMillis() {
+            return slowMillis;
+        }
+
+        public void setSlowMillis(long slowMillis) {
+            this.slowMillis = slowMillis;
+        }
+
+        public double getSlowSampleRate() {
+            return slowSampleRate;
+        }
+
+        public void setSlowSampleRate(double slowSampleRate) {
+            this.slowSampleRate = slowSampleRate;
+        }
+
+        public int getSlowLogSize() {
+            return slowLogSize;
+        }
+
+        public void setSlowLogSize(int slowLogSize) {
+            this.slowLogSize = slowLogSize;
+        }
+
+        public boolean isCaptureCaller() {
+            return captureCaller;
+        }
+
+        public void setCaptureCaller(boolean captureCaller) {
+            this.captureCaller = captureCaller;
+        }
+    }
+
+    public static class Warmup {
+
+        /**
+         * 是否在应用启动时预热，预热完成以后才开始接收请求
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个通道和读副本预先建立的连接数，同时借出这么多连接执行PING
+         */
+        private int connections = 4;
+
+        /**
+         * 编解码和拼key执行多少次，让JIT提前编译这些代码
+         */
+        private int codecIterations = 5000;
+
+        /**
+         * 要预加载到一级缓存的热点key，cache的名字 -> key列表
+         */
+        private Map<String, List<String>> hotKeys = new LinkedHashMap<>();
+
+        /**
+         * 要整个扫描预加载的cache的名字
+         */
+        private List<String> scanCaches = new ArrayList<>();
+
+        /**
+         * 每个扫描的cache最多预加载多少个key
+         */
+        private int maxScanKeys = 10000;
+
+        /**
+         * 每次MGET多少个key
+         */
+        private int batchSize = 200;
+
+        /**
+         * 预加载的线程数
+         */
+        private int threads = 4;
+
+        /**
+         * 预热最多等多久，超时以后不再等待，应用照常启动
+         */
+        private long timeoutMillis = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+
+        public int getCodecIterations() {
+            return codecIterations;
+        }
+
+        public void setCodecIterations(int codecIterations) {
+            this.codecIterations = codecIterations;
+        }
+
+        public Map<String, List<String>> getHotKeys() {
+            return hotKeys;
+        }
+
+        public void setHotKeys(Map<String, List<String>> hotKeys) {
+            this.hotKeys = hotKeys;
+        }
+
+        public List<String> getScanCaches() {
+            return scanCaches;
+        }
+
+        public void setScanCaches(List<String> scanCaches) {
+            this.scanCaches = scanCaches;
+        }
+
+        public int getMaxScanKeys() {
+            return maxScanKeys;
+        }
+
+        public void setMaxScanKeys(int maxScanKeys) {
+            this.maxScanKeys = maxScanKeys;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
 }
@@ -2,36 +2,140 @@ package com.github.xjs.redisclient;
 
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.github.xjs.redisclient.analytics.DailyKeys;
+import com.github.xjs.redisclient.breaker.CircuitBreakerMetrics;
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.codec.ValueCodec;
+import com.github.xjs.redisclient.hedge.HedgingMetrics;
 import com.github.xjs.redisclient.key.ApplicationKeyPrefix;
 import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.key.ReadPreferenceKeyPrefix;
+import com.github.xjs.redisclient.key.StaleKeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.lane.LaneMetrics;
+import com.github.xjs.redisclient.ratelimit.RateLimitRule;
+import com.github.xjs.redisclient.replica.ReadPreference;
+import com.github.xjs.redisclient.trace.RedisOperation;
+import com.github.xjs.redisclient.trace.RedisOperationListener;
+import com.github.xjs.redisclient.zset.ScoreCursor;
+import com.github.xjs.redisclient.zset.ScorePage;
+import com.github.xjs.redisclient.zset.ScoredMembers;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandKeyword;
+import io.lettuce.core.protocol.CommandType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.*;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
-import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import reactor.util.annotation.Nullable;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class RedisClientService {
+public class RedisClientService implements Closeable {
 
     private static Logger log = LoggerFactory.getLogger(RedisClientService.class);
+    /**
+     * lua脚本的参数和返回值原样传递，返回值中的bulk string就是byte[]
+     */
+    private static final RedisSerializer<byte[]> RAW_SERIALIZER = new RedisSerializer<byte[]>() {
+        @Override
+        public byte[] serialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+    /**
+     * 按分数分页时游标成员已经不在了，最多跳过多少个和它同分的成员
+     */
+    private static final int MAX_CURSOR_SKIP = 10000;
 
     private RedisTemplate<byte[], byte[]> redisTemplate;
     private RedisClientProperties properties;
     private ApplicationKeyPrefix applicationKeyPrefix;
+    private ValueCodec codec;
+    private GetBatcher getBatcher;
+    private ConnectionLanes lanes;
+    private ReplicaRouter replicas;
+    private HedgedReads hedging;
+    private RedisCircuitBreaker breaker;
+    private OperationTracer tracer;
+    private StaleStore staleStore;
+    private BufferReads bufferReads;
+    private long commandTimeoutMillis;
+    private boolean decodeBuffers;
+    private static final ThreadLocal<ReadPreference> READ_PREFERENCE = new ThreadLocal<>();
 
     public RedisClientService(RedisTemplate<byte[], byte[]> redisTemplate, RedisClientProperties properties, @Nullable ApplicationKeyPrefix applicationKeyPrefix){
+        this(redisTemplate, properties, applicationKeyPrefix, new ValueCodec());
+    }
+
+    public RedisClientService(RedisTemplate<byte[], byte[]> redisTemplate, RedisClientProperties properties, @Nullable ApplicationKeyPrefix applicationKeyPrefix, ValueCodec codec){
         this.redisTemplate = redisTemplate;
         this.properties = properties;
         this.applicationKeyPrefix = applicationKeyPrefix;
+        this.codec = codec;
+        if(properties.getTracing().isEnabled()){
+            this.tracer = new OperationTracer(properties.getTracing());
+        }
+        RedisClientProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+        if(circuitBreaker.isEnabled()){
+            this.breaker = new RedisCircuitBreaker(circuitBreaker);
+            this.staleStore = new StaleStore(circuitBreaker.getStaleMaxSize(), circuitBreaker.getStaleExpireMillis());
+            this.redisTemplate = ConnectionLanes.template(ConnectionLanes.guard(breaker, redisTemplate.getConnectionFactory()));
+        }
+        if(tracer != null){
+            this.redisTemplate = ConnectionLanes.template(OperationTracer.trace(tracer, this.redisTemplate.getConnectionFactory()));
+        }
+        if(properties.getReplicaReads().isEnabled()){
+            this.replicas = new ReplicaRouter(redisTemplate.getConnectionFactory(), properties.getReplicaReads(), tracer);
+        }
+        if(properties.getLanes().isEnabled()){
+            this.lanes = new ConnectionLanes(redisTemplate.getConnectionFactory(), properties.getLanes(), breaker, tracer);
+            this.redisTemplate = lanes.fast();
+        }
+        if(properties.getHedging().isEnabled()){
+            this.hedging = new HedgedReads(properties.getHedging());
+        }
+        //带分数的范围读取总是直接从读缓冲区解析，get、lrange、hvals开启了spring.redis.buffer-decoding.enabled才走这里
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        this.commandTimeoutMillis = factory instanceof LettuceConnectionFactory ? ((LettuceConnectionFactory) factory).getTimeout() : 60000;
+        this.bufferReads = new BufferReads(commandTimeoutMillis, tracer);
+        this.decodeBuffers = properties.getBufferDecoding().isEnabled();
+        RedisClientProperties.GetBatching getBatching = properties.getGetBatching();
+        if(getBatching.isEnabled()){
+            this.getBatcher = new GetBatcher(this.redisTemplate, tracer, getBatching.getWindowMicros(), getBatching.getMaxBatchSize());
+        }
     }
 
     public <T> T get( KeyPrefix prefix, String key, Class<T> valueClazz){
@@ -41,13 +145,141 @@ public class RedisClientService {
     public <T> T get(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClazz){
         String realKey =  buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        byte[] val = redisTemplate.boundValueOps(keyBytes).get();
+        if(decodeFromBuffer(prefix)){
+            return bufferRead(ConnectionLane.FAST, prefix, CommandType.GET, BufferReads.args(keyBytes),
+                    new BufferReads.Value<>(buf -> codec.decode(buf, valueClazz)), connection -> bytesToObject(connection.get(keyBytes), valueClazz));
+        }
+        byte[] val = readValue(prefix, keyBytes);
         if(val == null){
             return null;
         }
         return bytesToObject(val, valueClazz);
     }
 
+    /**
+     * redis出错或者超过读超时(见DeadlineKeyPrefix)时返回fallback的结果，比如从数据库加载，不抛出异常
+     */
+    public <T> T get(KeyPrefix prefix, String key, Class<T> valueClazz, Supplier<T> fallback){
+        return get(true, prefix, key, valueClazz, fallback);
+    }
+
+    public <T> T get(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClazz, Supplier<T> fallback){
+        try{
+            return get(enableAppKeyPrefix, prefix, key, valueClazz);
+        }catch(DataAccessException e){
+            log.warn("读取redis失败，使用fallback:" + e.getMessage());
+            return fallback.get();
+        }
+    }
+
+    /**
+     * 按泛型类型读取，value需要用{@link #set(KeyPrefix, String, Object, TypeReference)}写入
+     */
+    public <T> T get(KeyPrefix prefix, String key, TypeReference<T> valueType){
+        return get(true, prefix, key, codec.constructType(valueType));
+    }
+
+    public <T> T get(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, TypeReference<T> valueType){
+        return get(enableAppKeyPrefix, prefix, key, codec.constructType(valueType));
+    }
+
+    public <T> T get(KeyPrefix prefix, String key, JavaType valueType){
+        return get(true, prefix, key, valueType);
+    }
+
+    public <T> T get(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, JavaType valueType){
+        String realKey =  buildRealKey(enableAppKeyPrefix, prefix, key);
+        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
+        if(decodeFromBuffer(prefix)){
+            return bufferRead(ConnectionLane.FAST, prefix, CommandType.GET, BufferReads.args(keyBytes),
+                    new BufferReads.Value<T>(buf -> codec.decode(buf, valueType)), connection -> codec.decode(connection.get(keyBytes), valueType));
+        }
+        byte[] val = readValue(prefix, keyBytes);
+        if(val == null){
+            return null;
+        }
+        return codec.decode(val, valueType);
+    }
+
+    /**
+     * 读取数字类型的value，直接从byte[]解析，不经过String也不装箱，key不存在返回defaultValue
+     */
+    public long getLong(KeyPrefix prefix, String key){
+        return getLong(true, prefix, key, 0L);
+    }
+
+    public long getLong(KeyPrefix prefix, String key, long defaultValue){
+        return getLong(true, prefix, key, defaultValue);
+    }
+
+    public long getLong(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long defaultValue){
+        byte[] val = getBytes(enableAppKeyPrefix, prefix, key);
+        return val == null ? defaultValue : AsciiNumbers.parseLong(val);
+    }
+
+    public int getInt(KeyPrefix prefix, String key){
+        return getInt(true, prefix, key, 0);
+    }
+
+    public int getInt(KeyPrefix prefix, String key, int defaultValue){
+        return getInt(true, prefix, key, defaultValue);
+    }
+
+    public int getInt(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int defaultValue){
+        byte[] val = getBytes(enableAppKeyPrefix, prefix, key);
+        return val == null ? defaultValue : AsciiNumbers.parseInt(val);
+    }
+
+    public double getDouble(KeyPrefix prefix, String key){
+        return getDouble(true, prefix, key, 0D);
+    }
+
+    public double getDouble(KeyPrefix prefix, String key, double defaultValue){
+        return getDouble(true, prefix, key, defaultValue);
+    }
+
+    public double getDouble(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double defaultValue){
+        byte[] val = getBytes(enableAppKeyPrefix, prefix, key);
+        return val == null ? defaultValue : AsciiNumbers.parseDouble(val);
+    }
+
+    public boolean getBoolean(KeyPrefix prefix, String key){
+        return getBoolean(true, prefix, key, false);
+    }
+
+    public boolean getBoolean(KeyPrefix prefix, String key, boolean defaultValue){
+        return getBoolean(true, prefix, key, defaultValue);
+    }
+
+    public boolean getBoolean(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, boolean defaultValue){
+        byte[] val = getBytes(enableAppKeyPrefix, prefix, key);
+        return val == null ? defaultValue : AsciiNumbers.parseBoolean(val);
+    }
+
+    private byte[] getBytes(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        String realKey =  buildRealKey(enableAppKeyPrefix, prefix, key);
+        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
+        return readValue(prefix, keyBytes);
+    }
+
+    private byte[] readValue(KeyPrefix prefix, byte[] keyBytes){
+        return staleRead(prefix, keyBytes, null, () -> fetchValue(prefix, keyBytes));
+    }
+
+    /**
+     * 开启了spring.redis.getBatching.enabled时，并发的GET会被合并成MGET；开启了对冲读时不合并
+     */
+    private byte[] fetchValue(KeyPrefix prefix, byte[] keyBytes){
+        if(hedging != null){
+            return hedgedRead(ConnectionLane.FAST, prefix, keyBytes, null, template -> template.boundValueOps(keyBytes).get());
+        }
+        RedisTemplate<byte[], byte[]> template = readTemplate(ConnectionLane.FAST, prefix);
+        if(getBatcher != null && template == redisTemplate){
+            return getBatcher.get(keyBytes);
+        }
+        return template.boundValueOps(keyBytes).get();
+    }
+
     public Boolean set(KeyPrefix prefix, String key, Object value){
         return set(true, prefix, key, value, false);
     }
@@ -61,22 +293,45 @@ public class RedisClientService {
     }
 
     public Boolean set(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value, boolean onlyNotExist){
-        byte[] val = objectToBytes(value);
+        return doSet(enableAppKeyPrefix, prefix, key, objectToBytes(value), onlyNotExist);
+    }
+
+    /**
+     * 按泛型类型写入，json中不带@class，用{@link #get(KeyPrefix, String, TypeReference)}读取
+     */
+    public <T> Boolean set(KeyPrefix prefix, String key, T value, TypeReference<T> valueType){
+        return set(true, prefix, key, value, codec.constructType(valueType));
+    }
+
+    public <T> Boolean set(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, T value, TypeReference<T> valueType){
+        return set(enableAppKeyPrefix, prefix, key, value, codec.constructType(valueType));
+    }
+
+    public Boolean set(KeyPrefix prefix, String key, Object value, JavaType valueType){
+        return set(true, prefix, key, value, valueType);
+    }
+
+    public Boolean set(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value, JavaType valueType){
+        return doSet(enableAppKeyPrefix, prefix, key, codec.encode(value, valueType), false);
+    }
+
+    private Boolean doSet(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, byte[] val, boolean onlyNotExist){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
+        forgetStale(prefix, keyBytes, null);
         int expireSeconds = prefix.getExpireSeconds();
         if(expireSeconds <= 0){
             if(onlyNotExist) {
-                return redisTemplate.boundValueOps(keyBytes).setIfAbsent(val);
+                return template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).setIfAbsent(val);
             }else {
-                redisTemplate.boundValueOps(keyBytes).set(val);
+                template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).set(val);
                 return true;
             }
         }else{
             if(onlyNotExist) {
-                return redisTemplate.boundValueOps(keyBytes).setIfAbsent(val,  expireSeconds, TimeUnit.SECONDS);
+                return template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).setIfAbsent(val,  expireSeconds, TimeUnit.SECONDS);
             }else {
-                redisTemplate.boundValueOps(keyBytes).set(val, expireSeconds, TimeUnit.SECONDS);
+                template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).set(val, expireSeconds, TimeUnit.SECONDS);
                 return true;
             }
         }
@@ -87,9 +342,15 @@ public class RedisClientService {
     }
 
     public void delete(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        redisTemplate.delete(keyBytes);
+        List<byte[]> keys = allKeys(enableAppKeyPrefix, prefix, key);
+        for(byte[] keyBytes : keys){
+            forgetAllStale(prefix, keyBytes);
+        }
+        if(keys.size() > 1){
+            template(ConnectionLane.FAST, prefix).delete(keys);
+            return;
+        }
+        template(ConnectionLane.FAST, prefix).delete(keys.get(0));
     }
 
     public boolean exists(KeyPrefix prefix, String key){
@@ -97,9 +358,12 @@ public class RedisClientService {
     }
 
     public boolean exists(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.hasKey(keyBytes);
+        List<byte[]> keys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(keys.size() > 1){
+            Long count = readTemplate(ConnectionLane.FAST, prefix).countExistingKeys(keys);
+            return count != null && count > 0;
+        }
+        return readTemplate(ConnectionLane.FAST, prefix).hasKey(keys.get(0));
     }
 
     public <T> T getSet(KeyPrefix prefix, String key, T value){
@@ -109,7 +373,8 @@ public class RedisClientService {
     public <T> T getSet(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, T value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        byte[] oldBytes = redisTemplate.boundValueOps(keyBytes).getAndSet(objectToBytes(value));
+        forgetStale(prefix, keyBytes, null);
+        byte[] oldBytes = template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).getAndSet(objectToBytes(value));
         if(oldBytes !=  null && oldBytes.length > 0){
             return (T)bytesToObject(oldBytes, value.getClass());
         }
@@ -129,7 +394,7 @@ public class RedisClientService {
             String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
             byteKeys.add(realKey.getBytes(StandardCharsets.UTF_8));
         }
-        List<byte[]> valueBytes = redisTemplate.opsForValue().multiGet(byteKeys);
+        List<byte[]> valueBytes = hedgedRead(ConnectionLane.BULK, prefix, null, null, template -> template.opsForValue().multiGet(byteKeys));
         if(valueBytes == null || valueBytes.size() <= 0){
             return null;
         }
@@ -149,9 +414,11 @@ public class RedisClientService {
             String k = kv.getK();
             Object v = kv.getV();
             String realKey = buildRealKey(enableAppKeyPrefix, prefix, k);
-            kvMap.put(realKey.getBytes(StandardCharsets.UTF_8), objectToBytes(v));
+            byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
+            forgetStale(prefix, keyBytes, null);
+            kvMap.put(keyBytes, objectToBytes(v));
         }
-        redisTemplate.opsForValue().multiSet(kvMap);
+        template(ConnectionLane.BULK, prefix).opsForValue().multiSet(kvMap);
     }
 
     public Long incr(KeyPrefix prefix, String key){
@@ -169,7 +436,34 @@ public class RedisClientService {
     public Long incr(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int offset){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundValueOps(keyBytes).increment(offset);
+        forgetStale(prefix, keyBytes, null);
+        return template(ConnectionLane.FAST, prefix).boundValueOps(keyBytes).increment(offset);
+    }
+
+    /**
+     * 创建一个本地聚合的计数器缓冲，flush的周期和阈值使用spring.redis.counterBuffer的配置
+     */
+    public RedisCounterBuffer counterBuffer(KeyPrefix prefix){
+        RedisClientProperties.CounterBuffer config = properties.getCounterBuffer();
+        return counterBuffer(true, prefix, config.getFlushIntervalMillis(), config.getFlushThreshold());
+    }
+
+    public RedisCounterBuffer counterBuffer(boolean enableAppKeyPrefix, KeyPrefix prefix, long flushIntervalMillis, int flushThreshold){
+        return new RedisCounterBuffer(this, enableAppKeyPrefix, prefix, flushIntervalMillis, flushThreshold);
+    }
+
+    /**
+     * 创建一个限流器，开启本地预检查
+     */
+    public RedisRateLimiter rateLimiter(KeyPrefix prefix, RateLimitRule rule){
+        return rateLimiter(true, prefix, rule, true);
+    }
+
+    /**
+     * @param localPrecheck 被拒绝的key在redis给出的等待时间内直接在本地拒绝
+     */
+    public RedisRateLimiter rateLimiter(boolean enableAppKeyPrefix, KeyPrefix prefix, RateLimitRule rule, boolean localPrecheck){
+        return new RedisRateLimiter(this, enableAppKeyPrefix, prefix, rule, localPrecheck);
     }
 
     /***************************HASH************************************/
@@ -178,11 +472,22 @@ public class RedisClientService {
     }
 
     public void hset(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String field, Object value){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = routeKey(enableAppKeyPrefix, prefix, key, fieldBytes);
         byte[] valueBytes = objectToBytes(value);
-        redisTemplate.boundHashOps(keyBytes).put(fieldBytes, valueBytes);
+        forgetStale(prefix, keyBytes, fieldBytes);
+        template(ConnectionLane.FAST, prefix).boundHashOps(keyBytes).put(fieldBytes, valueBytes);
+    }
+
+    public Long hincr(KeyPrefix prefix, String key, String field, long delta){
+        return hincr(true, prefix, key, field, delta);
+    }
+
+    public Long hincr(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String field, long delta){
+        byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = routeKey(enableAppKeyPrefix, prefix, key, fieldBytes);
+        forgetStale(prefix, keyBytes, fieldBytes);
+        return template(ConnectionLane.FAST, prefix).boundHashOps(keyBytes).increment(fieldBytes, delta);
     }
 
     public <T> T hget(KeyPrefix prefix, String key, String field,  Class<T> memberValueClass){
@@ -194,17 +499,25 @@ public class RedisClientService {
     }
 
     public <T> T hget(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String field, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
-        byte[] valueBytes = (byte[])redisTemplate.boundHashOps(keyBytes).get(fieldBytes);
+        byte[] keyBytes = routeKey(enableAppKeyPrefix, prefix, key, fieldBytes);
+        byte[] valueBytes = staleRead(prefix, keyBytes, fieldBytes,
+                () -> (byte[])hedgedRead(ConnectionLane.FAST, prefix, keyBytes, fieldBytes, template -> template.boundHashOps(keyBytes).get(fieldBytes)));
         return bytesToObject(valueBytes,valueClass);
     }
 
     public List<String> hkeys(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<Object> keys = redisTemplate.boundHashOps(keyBytes).keys();
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            List<String> ret = new ArrayList<>();
+            for(Object fields : fanOut(readTemplate(ConnectionLane.BULK, prefix), shardKeys, RedisConnection::hKeys)){
+                for(byte[] field : (Set<byte[]>)fields){
+                    ret.add(new String(field, StandardCharsets.UTF_8));
+                }
+            }
+            return ret.isEmpty() ? null : ret;
+        }
+        Set<Object> keys = readTemplate(ConnectionLane.BULK, prefix).boundHashOps(shardKeys.get(0)).keys();
         if(keys == null || keys.size() <= 0){
             return null;
         }
@@ -216,9 +529,22 @@ public class RedisClientService {
     }
 
     public <T> List<T> hvals(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        List<Object> values = redisTemplate.boundHashOps(keyBytes).values();
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            List<T> ret = new ArrayList<>();
+            for(Object values : fanOut(readTemplate(ConnectionLane.BULK, prefix), shardKeys, RedisConnection::hVals)){
+                for(byte[] value : (List<byte[]>)values){
+                    ret.add(bytesToObject(value, valueClass));
+                }
+            }
+            return ret.isEmpty() ? null : ret;
+        }
+        if(decodeBuffers){
+            List<T> decoded = bufferRead(ConnectionLane.BULK, prefix, CommandType.HVALS, BufferReads.args(shardKeys.get(0)),
+                    new BufferReads.Values<>(buf -> codec.decode(buf, valueClass)), connection -> bytesToObjects(connection.hVals(shardKeys.get(0)), valueClass));
+            return CollectionUtils.isEmpty(decoded) ? null : decoded;
+        }
+        List<Object> values = readTemplate(ConnectionLane.BULK, prefix).boundHashOps(shardKeys.get(0)).values();
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -230,9 +556,11 @@ public class RedisClientService {
     }
 
     public int hlen(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Long size = redisTemplate.boundHashOps(keyBytes).size();
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            return (int)sum(fanOut(readTemplate(ConnectionLane.FAST, prefix), shardKeys, RedisConnection::hLen));
+        }
+        Long size = readTemplate(ConnectionLane.FAST, prefix).boundHashOps(shardKeys.get(0)).size();
         return size==null?0:size.intValue();
     }
 
@@ -246,12 +574,18 @@ public class RedisClientService {
         }
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Object[] fieldBytes = new Object[fields.length];
+        byte[][] fieldBytes = new byte[fields.length][];
         for(int i=0; i<fields.length; i++){
             String field = fields[i];
             fieldBytes[i] = field.getBytes(StandardCharsets.UTF_8);
         }
-        redisTemplate.boundHashOps(keyBytes).delete(fieldBytes);
+        forgetStale(enableAppKeyPrefix, prefix, key, fieldBytes);
+        int shards = KeySharding.shards(prefix);
+        if(shards > 1){
+            fanOut(template(ConnectionLane.FAST, prefix), realKey, shards, fieldBytes, (connection, shardKey, group) -> connection.hDel(shardKey, group));
+            return;
+        }
+        template(ConnectionLane.FAST, prefix).boundHashOps(keyBytes).delete((Object[])fieldBytes);
     }
 
     public Boolean hexists(KeyPrefix prefix, String key, String field){
@@ -259,9 +593,9 @@ public class RedisClientService {
     }
 
     public Boolean hexists(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String field){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundHashOps(keyBytes).hasKey(field.getBytes(StandardCharsets.UTF_8));
+        byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = routeKey(enableAppKeyPrefix, prefix, key, fieldBytes);
+        return readTemplate(ConnectionLane.FAST, prefix).boundHashOps(keyBytes).hasKey(fieldBytes);
     }
 
     public <T> Map<String, T> hgetall(KeyPrefix prefix, String key, Class<T> valueClass){
@@ -269,6 +603,16 @@ public class RedisClientService {
     }
 
     public <T> Map<String, T> hgetall(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClass){
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            Map<String, T> ret = new HashMap<String, T>();
+            for(Object entries : fanOut(readTemplate(ConnectionLane.BULK, prefix), shardKeys, RedisConnection::hGetAll)){
+                for(Map.Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>)entries).entrySet()){
+                    ret.put(new String(entry.getKey(), StandardCharsets.UTF_8), bytesToObject(entry.getValue(), valueClass));
+                }
+            }
+            return ret.isEmpty() ? null : ret;
+        }
         List<String> fields =  this.hkeys(enableAppKeyPrefix, prefix, key);
         if(fields == null || fields.size() <= 0){
             return null;
@@ -293,11 +637,29 @@ public class RedisClientService {
         if(fields == null || fields.length <= 0){
             return null;
         }
+        int shards = KeySharding.shards(prefix);
+        if(shards > 1){
+            byte[][] fieldBytes = new byte[fields.length][];
+            for(int i=0; i<fields.length; i++){
+                fieldBytes[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            }
+            Object[] values = new Object[fields.length];
+            Map<Integer, List<Integer>> groups = KeySharding.group(fieldBytes, shards);
+            List<Object> results = fanOut(readTemplate(ConnectionLane.FAST, prefix), realKey, shards, fieldBytes, (connection, shardKey, group) -> connection.hMGet(shardKey, group));
+            int g = 0;
+            for(List<Integer> indexes : groups.values()){
+                List<byte[]> shardValues = (List<byte[]>)results.get(g++);
+                for(int i=0; i<indexes.size(); i++){
+                    values[indexes.get(i)] = shardValues.get(i);
+                }
+            }
+            return Arrays.stream(values).map((v)->bytesToObject((byte[])v, valueClass)).collect(Collectors.toList());
+        }
         List<Object> fieldBytes = new ArrayList<>(fields.length);
         for(String field : fields){
             fieldBytes.add(field.getBytes(StandardCharsets.UTF_8));
         }
-        List<Object> values = redisTemplate.boundHashOps(keyBytes).multiGet(fieldBytes);
+        List<Object> values = readTemplate(ConnectionLane.FAST, prefix).boundHashOps(keyBytes).multiGet(fieldBytes);
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -314,13 +676,38 @@ public class RedisClientService {
         if(fieldValues == null || fieldValues.size() <= 0){
             return;
         }
+        int shards = KeySharding.shards(prefix);
+        if(shards > 1){
+            byte[][] fieldBytes = new byte[fieldValues.size()][];
+            byte[][] valueBytes = new byte[fieldValues.size()][];
+            int i = 0;
+            for(Map.Entry<String, Object> entry : fieldValues.entrySet()){
+                fieldBytes[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                valueBytes[i++] = objectToBytes(entry.getValue());
+            }
+            forgetStale(enableAppKeyPrefix, prefix, key, fieldBytes);
+            Map<Integer, List<Integer>> groups = KeySharding.group(fieldBytes, shards);
+            template(ConnectionLane.BULK, prefix).executePipelined((RedisCallback<Object>) connection -> {
+                for(Map.Entry<Integer, List<Integer>> group : groups.entrySet()){
+                    Map<byte[], byte[]> bytes = new HashMap<>(group.getValue().size());
+                    for(int index : group.getValue()){
+                        bytes.put(fieldBytes[index], valueBytes[index]);
+                    }
+                    connection.hMSet(KeySharding.shardKey(realKey, group.getKey()), bytes);
+                }
+                return null;
+            });
+            return;
+        }
         Map<byte[], byte[]> bytes = new HashMap<>(fieldValues.size());
         for(Map.Entry<String, Object> entry : fieldValues.entrySet()){
             String k = entry.getKey();
             Object v = entry.getValue();
-            bytes.put(k.getBytes(StandardCharsets.UTF_8), objectToBytes(v));
+            byte[] fieldBytes = k.getBytes(StandardCharsets.UTF_8);
+            forgetStale(prefix, keyBytes, fieldBytes);
+            bytes.put(fieldBytes, objectToBytes(v));
         }
-        redisTemplate.boundHashOps(keyBytes).putAll(bytes);
+        template(ConnectionLane.BULK, prefix).boundHashOps(keyBytes).putAll(bytes);
     }
 
     public Map<String, byte[]> hscan(KeyPrefix prefix, String key, String pattern){
@@ -329,20 +716,20 @@ public class RedisClientService {
 
     public Map<String, byte[]> hscan(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String pattern){
         Map<String, byte[]> ret = new HashMap<>();
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         ScanOptions options = ScanOptions.scanOptions().count(10).match(pattern).build();
-        Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.boundHashOps(keyBytes).scan(options);
-        while(cursor.hasNext()){
-            Map.Entry<Object, Object> entry = cursor.next();
-            byte[] k = (byte[])entry.getKey();
-            byte[] v = (byte[])entry.getValue();
-            ret.put(new String(k, StandardCharsets.UTF_8), v);
-        }
-        try{
-            cursor.close();
-        }catch(Exception e){
-            log.error(e.getMessage(), e);
+        for(byte[] keyBytes : allKeys(enableAppKeyPrefix, prefix, key)){
+            Cursor<Map.Entry<Object, Object>> cursor = readTemplate(ConnectionLane.BULK, prefix).boundHashOps(keyBytes).scan(options);
+            while(cursor.hasNext()){
+                Map.Entry<Object, Object> entry = cursor.next();
+                byte[] k = (byte[])entry.getKey();
+                byte[] v = (byte[])entry.getValue();
+                ret.put(new String(k, StandardCharsets.UTF_8), v);
+            }
+            try{
+                cursor.close();
+            }catch(Exception e){
+                log.error(e.getMessage(), e);
+            }
         }
         return ret;
     }
@@ -352,20 +739,20 @@ public class RedisClientService {
     }
 
     public List<String> hscanKeys(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String pattern){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         ScanOptions options = ScanOptions.scanOptions().count(10).match(pattern).build();
         Set<String> keys = new HashSet<>();
-        Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.boundHashOps(keyBytes).scan(options);
-        while(cursor.hasNext()){
-            Map.Entry<Object, Object> entry = cursor.next();
-            byte[] k = (byte[])entry.getKey();
-            keys.add(new String(k,StandardCharsets.UTF_8));
-        }
-        try{
-            cursor.close();
-        }catch(Exception e){
-            log.error(e.getMessage(), e);
+        for(byte[] keyBytes : allKeys(enableAppKeyPrefix, prefix, key)){
+            Cursor<Map.Entry<Object, Object>> cursor = readTemplate(ConnectionLane.BULK, prefix).boundHashOps(keyBytes).scan(options);
+            while(cursor.hasNext()){
+                Map.Entry<Object, Object> entry = cursor.next();
+                byte[] k = (byte[])entry.getKey();
+                keys.add(new String(k,StandardCharsets.UTF_8));
+            }
+            try{
+                cursor.close();
+            }catch(Exception e){
+                log.error(e.getMessage(), e);
+            }
         }
         return new ArrayList<>(keys);
     }
@@ -385,7 +772,7 @@ public class RedisClientService {
         for(int i=0;i<values.length;i++){
             valueBytes[i] = objectToBytes(values[i]);
         }
-        return redisTemplate.boundListOps(keyBytes).leftPushAll(valueBytes);
+        return template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).leftPushAll(valueBytes);
     }
 
     public Long lpushx(KeyPrefix prefix, String key, Object value){
@@ -394,7 +781,7 @@ public class RedisClientService {
     public Long lpushx(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundListOps(keyBytes).leftPushIfPresent(objectToBytes(value));
+        return template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).leftPushIfPresent(objectToBytes(value));
     }
 
     public <T> T lpop(KeyPrefix prefix, String key, Class<T> valueClass){
@@ -404,7 +791,7 @@ public class RedisClientService {
     public <T> T lpop(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        byte[] valueBytes = redisTemplate.boundListOps(keyBytes).leftPop();
+        byte[] valueBytes = template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).leftPop();
         if(valueBytes == null){
             return null;
         }
@@ -419,7 +806,7 @@ public class RedisClientService {
     public void lset(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int index, Object value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        redisTemplate.boundListOps(keyBytes).set(index, objectToBytes(value));
+        template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).set(index, objectToBytes(value));
     }
 
     public <T> T lindex(KeyPrefix prefix, String key, int index, Class<T> valueClass){
@@ -429,7 +816,7 @@ public class RedisClientService {
     public <T> T  lindex(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int index, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        byte[] valueBytes = redisTemplate.boundListOps(keyBytes).index(index);
+        byte[] valueBytes = readTemplate(ConnectionLane.FAST, prefix).boundListOps(keyBytes).index(index);
         if(valueBytes == null){
           return null;
         }
@@ -443,7 +830,7 @@ public class RedisClientService {
     public int llen(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Long size = redisTemplate.boundListOps(keyBytes).size();
+        Long size = readTemplate(ConnectionLane.FAST, prefix).boundListOps(keyBytes).size();
         if(size == null){
             return 0;
         }
@@ -457,7 +844,12 @@ public class RedisClientService {
     public <T> List<T> lrange(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int start, int stop, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        List<byte[]> valueBytes = redisTemplate.boundListOps(keyBytes).range(start, stop);
+        if(decodeBuffers){
+            List<T> decoded = bufferRead(ConnectionLane.BULK, prefix, CommandType.LRANGE, BufferReads.args(keyBytes).add(start).add(stop),
+                    new BufferReads.Values<>(buf -> codec.decode(buf, valueClass)), connection -> bytesToObjects(connection.lRange(keyBytes, start, stop), valueClass));
+            return CollectionUtils.isEmpty(decoded) ? null : decoded;
+        }
+        List<byte[]> valueBytes = readTemplate(ConnectionLane.BULK, prefix).boundListOps(keyBytes).range(start, stop);
         if(CollectionUtils.isEmpty(valueBytes)){
             return null;
         }
@@ -471,7 +863,7 @@ public class RedisClientService {
     public int lrem(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int count, Object value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Long cnt = redisTemplate.boundListOps(keyBytes).remove(count, objectToBytes(value));
+        Long cnt = template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).remove(count, objectToBytes(value));
         return cnt == null ? 0 : cnt.intValue();
     }
 
@@ -482,7 +874,7 @@ public class RedisClientService {
     public void ltrim(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int start, int stop){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        redisTemplate.boundListOps(keyBytes).trim(start, stop);
+        template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).trim(start, stop);
     }
 
     public Long rpush(KeyPrefix prefix, String key, Object... values){
@@ -499,7 +891,7 @@ public class RedisClientService {
         for(int i=0;i<values.length;i++){
             valueBytes[i] = objectToBytes(values[i]);
         }
-        return redisTemplate.boundListOps(keyBytes).rightPushAll(valueBytes);
+        return template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).rightPushAll(valueBytes);
     }
 
     public Long rpushx(KeyPrefix prefix, String key, Object value){
@@ -508,7 +900,7 @@ public class RedisClientService {
     public Long rpushx(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundListOps(keyBytes).rightPushIfPresent(objectToBytes(value));
+        return template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).rightPushIfPresent(objectToBytes(value));
     }
 
     public <T> T rpop(KeyPrefix prefix, String key, Class<T> valueClass){
@@ -518,7 +910,7 @@ public class RedisClientService {
     public <T> T rpop(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        byte[] valueBytes = redisTemplate.boundListOps(keyBytes).rightPop();
+        byte[] valueBytes = template(ConnectionLane.FAST, prefix).boundListOps(keyBytes).rightPop();
         if(valueBytes == null){
             return null;
         }
@@ -540,7 +932,11 @@ public class RedisClientService {
         for(int i=0; i<value.length; i++){
             valuesBytes[i] = objectToBytes(value[i]);
         }
-        return redisTemplate.boundSetOps(keyBytes).add(valuesBytes);
+        int shards = KeySharding.shards(prefix);
+        if(shards > 1){
+            return sum(fanOut(template(ConnectionLane.FAST, prefix), realKey, shards, valuesBytes, (connection, shardKey, group) -> connection.sAdd(shardKey, group)));
+        }
+        return template(ConnectionLane.FAST, prefix).boundSetOps(keyBytes).add(valuesBytes);
     }
 
     public <T> List<T> smembers(KeyPrefix prefix, String key, Class<T> valueClass){
@@ -548,9 +944,17 @@ public class RedisClientService {
     }
 
     public <T> List<T> smembers(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<byte[]> members = redisTemplate.boundSetOps(keyBytes).members();
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            List<T> ret = new ArrayList<>();
+            for(Object members : fanOut(readTemplate(ConnectionLane.BULK, prefix), shardKeys, RedisConnection::sMembers)){
+                for(byte[] member : (Set<byte[]>)members){
+                    ret.add(bytesToObject(member, valueClass));
+                }
+            }
+            return ret.isEmpty() ? null : ret;
+        }
+        Set<byte[]> members = readTemplate(ConnectionLane.BULK, prefix).boundSetOps(shardKeys.get(0)).members();
         if(members == null || members.size() <= 0){
            return null;
         }
@@ -562,9 +966,11 @@ public class RedisClientService {
     }
 
     public int scard(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Long size = redisTemplate.boundSetOps(keyBytes).size();
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            return (int)sum(fanOut(readTemplate(ConnectionLane.FAST, prefix), shardKeys, RedisConnection::sCard));
+        }
+        Long size = readTemplate(ConnectionLane.FAST, prefix).boundSetOps(shardKeys.get(0)).size();
         return size==null?0:size.intValue();
     }
 
@@ -573,9 +979,9 @@ public class RedisClientService {
     }
 
     public boolean sismember(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Boolean ret = redisTemplate.boundSetOps(keyBytes).isMember(objectToBytes(value));
+        byte[] valueBytes = objectToBytes(value);
+        byte[] keyBytes = routeKey(enableAppKeyPrefix, prefix, key, valueBytes);
+        Boolean ret = readTemplate(ConnectionLane.FAST, prefix).boundSetOps(keyBytes).isMember(valueBytes);
         return ret==null?false:ret.booleanValue();
     }
 
@@ -596,9 +1002,13 @@ public class RedisClientService {
     }
 
     public <T> List<T> srandmember(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int count, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<byte[]> values = redisTemplate.boundSetOps(keyBytes).distinctRandomMembers(count);
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        Collection<byte[]> values;
+        if(shardKeys.size() > 1){
+            values = fromRandomShards(shardKeys, count, (keyBytes, remaining) -> readTemplate(ConnectionLane.FAST, prefix).opsForSet().distinctRandomMembers(keyBytes, remaining));
+        }else{
+            values = readTemplate(ConnectionLane.FAST, prefix).boundSetOps(shardKeys.get(0)).distinctRandomMembers(count);
+        }
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -612,7 +1022,12 @@ public class RedisClientService {
     public Boolean srem(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object... values){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Long cnt = redisTemplate.boundSetOps(keyBytes).remove(objectsToBytes(values));
+        int shards = KeySharding.shards(prefix);
+        if(shards > 1 && values != null && values.length > 0){
+            byte[][] valuesBytes = objectsToBytes(values);
+            return sum(fanOut(template(ConnectionLane.FAST, prefix), realKey, shards, valuesBytes, (connection, shardKey, group) -> connection.sRem(shardKey, group))) > 0;
+        }
+        Long cnt = template(ConnectionLane.FAST, prefix).boundSetOps(keyBytes).remove(objectsToBytes(values));
         if(cnt == null){
             return null;
         }
@@ -636,9 +1051,12 @@ public class RedisClientService {
     }
 
     public <T> List<T> spop(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int count, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        List<byte[]> bytes = redisTemplate.opsForSet().pop(keyBytes, count);
+        List<byte[]> shardKeys = allKeys(enableAppKeyPrefix, prefix, key);
+        if(shardKeys.size() > 1){
+            List<byte[]> bytes = fromRandomShards(shardKeys, count, (keyBytes, remaining) -> template(ConnectionLane.FAST, prefix).opsForSet().pop(keyBytes, remaining));
+            return bytesToObjects(bytes, valueClass);
+        }
+        List<byte[]> bytes = template(ConnectionLane.FAST, prefix).opsForSet().pop(shardKeys.get(0), count);
         return bytesToObjects(bytes, valueClass);
     }
 
@@ -647,15 +1065,15 @@ public class RedisClientService {
     }
 
     public <T> Set<T> sscan(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String pattern, Class<T> valueClass){
-        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
-        byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         Set<T> set = new HashSet<T>();
         ScanOptions options = ScanOptions.scanOptions().count(10).match(pattern).build();
-        Cursor<byte[]> cursor = redisTemplate.boundSetOps(keyBytes).scan(options);
-        while(cursor.hasNext()){
-            byte[] valueBytes = cursor.next();
-            T t = bytesToObject(valueBytes, valueClass);
-            set.add(t);
+        for(byte[] keyBytes : allKeys(enableAppKeyPrefix, prefix, key)){
+            Cursor<byte[]> cursor = readTemplate(ConnectionLane.BULK, prefix).boundSetOps(keyBytes).scan(options);
+            while(cursor.hasNext()){
+                byte[] valueBytes = cursor.next();
+                T t = bytesToObject(valueBytes, valueClass);
+                set.add(t);
+            }
         }
         return set;
     }
@@ -672,10 +1090,11 @@ public class RedisClientService {
         }
         Set<ZSetOperations.TypedTuple<byte[]>> valueBytes = new HashSet<>(tuples.length);
         for(ZSetOperations.TypedTuple tuple : tuples){
-            ZSetOperations.TypedTuple t = new DefaultTypedTuple(objectToBytes(tuple.getValue()), tuple.getScore());
-            valueBytes.add(t);
+            byte[] memberBytes = objectToBytes(tuple.getValue());
+            forgetStale(prefix, keyBytes, memberBytes);
+            valueBytes.add(new DefaultTypedTuple<>(memberBytes, tuple.getScore()));
         }
-        redisTemplate.boundZSetOps(keyBytes).add(valueBytes);
+        template(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).add(valueBytes);
     }
 
     public <T> Set<T> zrange(KeyPrefix prefix, String key, double minScore, double maxScore, Class<T> valueClazz){
@@ -685,7 +1104,7 @@ public class RedisClientService {
     public <T> Set<T> zrange(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double minScore, double maxScore, Class<T> valueClazz){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<byte[]> valueBytes = redisTemplate.boundZSetOps(keyBytes).rangeByScore(minScore, maxScore);
+        Set<byte[]> valueBytes = readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).rangeByScore(minScore, maxScore);
         if(valueBytes == null || valueBytes.size() <= 0){
             return null;
         }
@@ -699,7 +1118,7 @@ public class RedisClientService {
     public <T> Set<ZSetOperations.TypedTuple<T>> zrangeWithScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double minScore, double maxScore, Class<T> valueClazz){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<ZSetOperations.TypedTuple<byte[]>> valueBytes = redisTemplate.boundZSetOps(keyBytes).rangeByScoreWithScores(minScore, maxScore);
+        Set<ZSetOperations.TypedTuple<byte[]>> valueBytes = readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).rangeByScoreWithScores(minScore, maxScore);
         if(valueBytes == null || valueBytes.size() <= 0){
             return null;
         }
@@ -718,7 +1137,7 @@ public class RedisClientService {
     public Long zcard(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).size();
+        return readTemplate(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).size();
     }
 
     public Long zcount(KeyPrefix prefix, String key, double minScore, double maxScore){
@@ -728,7 +1147,7 @@ public class RedisClientService {
     public Long zcount(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double minScore, double maxScore){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).count(minScore, maxScore);
+        return readTemplate(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).count(minScore, maxScore);
     }
 
     public Double zincrby(KeyPrefix prefix, String key, String member, double score){
@@ -737,7 +1156,9 @@ public class RedisClientService {
     public Double zincrby(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String member, double score){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).incrementScore(objectToBytes(member), score);
+        byte[] memberBytes = objectToBytes(member);
+        forgetStale(prefix, keyBytes, memberBytes);
+        return template(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).incrementScore(memberBytes, score);
     }
 
     public Long zrank(KeyPrefix prefix, String key, String member){
@@ -746,7 +1167,7 @@ public class RedisClientService {
     public Long zrank(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String member){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).rank(objectToBytes(member));
+        return readTemplate(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).rank(objectToBytes(member));
     }
 
     public Double zscore(KeyPrefix prefix, String key, String member){
@@ -756,7 +1177,9 @@ public class RedisClientService {
     public Double zscore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String member){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).score(objectToBytes(member));
+        byte[] memberBytes = objectToBytes(member);
+        return staleRead(prefix, keyBytes, memberBytes,
+                () -> hedgedRead(ConnectionLane.FAST, prefix, keyBytes, memberBytes, template -> template.boundZSetOps(keyBytes).score(memberBytes)));
     }
 
     public Long zrem(KeyPrefix prefix, String key, String... members){
@@ -766,7 +1189,13 @@ public class RedisClientService {
     public Long zrem(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String... members){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).remove(objectsToBytes(members));
+        byte[][] memberBytes = objectsToBytes(members);
+        if(memberBytes != null){
+            for(byte[] member : memberBytes){
+                forgetStale(prefix, keyBytes, member);
+            }
+        }
+        return template(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).remove(memberBytes);
     }
 
     public Long zremByRank(KeyPrefix prefix, String key, int start, int stop){
@@ -776,7 +1205,8 @@ public class RedisClientService {
     public Long zremByRank(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int start, int stop){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).removeRange(start, stop);
+        forgetAllStale(prefix, keyBytes);
+        return template(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).removeRange(start, stop);
     }
 
     public Long zremByScore(KeyPrefix prefix, String key, double min, double max){
@@ -786,7 +1216,8 @@ public class RedisClientService {
     public Long zremByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).removeRangeByScore(min, max);
+        forgetAllStale(prefix, keyBytes);
+        return template(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).removeRangeByScore(min, max);
     }
 
     public Long zrevRank(KeyPrefix prefix, String key, String member){
@@ -796,7 +1227,7 @@ public class RedisClientService {
     public Long zrevRank(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String member){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        return redisTemplate.boundZSetOps(keyBytes).reverseRank(objectToBytes(member));
+        return readTemplate(ConnectionLane.FAST, prefix).boundZSetOps(keyBytes).reverseRank(objectToBytes(member));
     }
 
     public <T>List<T> zrevRange(KeyPrefix prefix, String key, int start, int stop, Class<T> valueClass){
@@ -806,7 +1237,7 @@ public class RedisClientService {
     public <T> List<T> zrevRange(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int start, int stop, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<byte[]> values = redisTemplate.boundZSetOps(keyBytes).reverseRange(start, stop);
+        Set<byte[]> values = readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).reverseRange(start, stop);
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -820,7 +1251,7 @@ public class RedisClientService {
     public <T> List<T> zrevRangeByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<byte[]> values=redisTemplate.boundZSetOps(keyBytes).reverseRangeByScore(min,max);
+        Set<byte[]> values=readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).reverseRangeByScore(min,max);
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -834,7 +1265,7 @@ public class RedisClientService {
     public <T> List<ZSetOperations.TypedTuple<T>> zrevRangeByScoreWithScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, Class<T> valueClass){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        Set<ZSetOperations.TypedTuple<byte[]>> values = redisTemplate.boundZSetOps(keyBytes).reverseRangeByScoreWithScores(min, max);
+        Set<ZSetOperations.TypedTuple<byte[]>> values = readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).reverseRangeByScoreWithScores(min, max);
         if(values == null || values.size() <= 0){
             return null;
         }
@@ -846,6 +1277,250 @@ public class RedisClientService {
         return ret;
     }
 
+    /**
+     * ZRANGEBYSCORE min max LIMIT offset count，按分数从小到大取一页
+     */
+    public <T> List<T> zrangeByScore(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrangeByScore(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> List<T> zrangeByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return bytesToObjects(readTemplate(ConnectionLane.BULK, prefix).opsForZSet().rangeByScore(keyBytes, min, max, offset, count), valueClass);
+    }
+
+    public <T> List<ZSetOperations.TypedTuple<T>> zrangeByScoreWithScore(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrangeByScoreWithScore(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> List<ZSetOperations.TypedTuple<T>> zrangeByScoreWithScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return bytesToTuples(readTemplate(ConnectionLane.BULK, prefix).opsForZSet().rangeByScoreWithScores(keyBytes, min, max, offset, count), valueClass);
+    }
+
+    /**
+     * ZREVRANGEBYSCORE max min LIMIT offset count，按分数从大到小取一页
+     */
+    public <T> List<T> zrevRangeByScore(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrevRangeByScore(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> List<T> zrevRangeByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return bytesToObjects(readTemplate(ConnectionLane.BULK, prefix).opsForZSet().reverseRangeByScore(keyBytes, min, max, offset, count), valueClass);
+    }
+
+    public <T> List<ZSetOperations.TypedTuple<T>> zrevRangeByScoreWithScore(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrevRangeByScoreWithScore(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> List<ZSetOperations.TypedTuple<T>> zrevRangeByScoreWithScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return bytesToTuples(readTemplate(ConnectionLane.BULK, prefix).opsForZSet().reverseRangeByScoreWithScores(keyBytes, min, max, offset, count), valueClass);
+    }
+
+    /**
+     * 和zrangeByScoreWithScore一样，返回的分数是double[]，成员用到时才解码，范围很大时分配的对象少得多
+     * @param count 小于0表示不限制
+     */
+    public <T> ScoredMembers<T> zrangeByScoreScored(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrangeByScoreScored(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrangeByScoreScored(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return scoredByScore(enableAppKeyPrefix, prefix, key, false, min, max, offset, count, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrevRangeByScoreScored(KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return zrevRangeByScoreScored(true, prefix, key, min, max, offset, count, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrevRangeByScoreScored(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, long offset, long count, Class<T> valueClass){
+        return scoredByScore(enableAppKeyPrefix, prefix, key, true, min, max, offset, count, valueClass);
+    }
+
+    /**
+     * 按排名取带分数的范围，ZRANGE start stop WITHSCORES
+     */
+    public <T> ScoredMembers<T> zrangeScored(KeyPrefix prefix, String key, long start, long stop, Class<T> valueClass){
+        return zrangeScored(true, prefix, key, start, stop, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrangeScored(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long start, long stop, Class<T> valueClass){
+        return scoredByRank(enableAppKeyPrefix, prefix, key, false, start, stop, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrevRangeScored(KeyPrefix prefix, String key, long start, long stop, Class<T> valueClass){
+        return zrevRangeScored(true, prefix, key, start, stop, valueClass);
+    }
+
+    public <T> ScoredMembers<T> zrevRangeScored(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long start, long stop, Class<T> valueClass){
+        return scoredByRank(enableAppKeyPrefix, prefix, key, true, start, stop, valueClass);
+    }
+
+    private <T> ScoredMembers<T> scoredByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, boolean reverse, double min, double max, long offset, long count, Class<T> valueClass){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        Function<ByteBuffer, T> decoder = buf -> codec.decode(buf, valueClass);
+        CommandArgs<byte[], byte[]> args = BufferReads.args(keyBytes).add(scoreArg(reverse ? max : min)).add(scoreArg(reverse ? min : max)).add(CommandKeyword.WITHSCORES);
+        RedisZSetCommands.Range range = RedisZSetCommands.Range.range().gte(min).lte(max);
+        RedisZSetCommands.Limit limit = RedisZSetCommands.Limit.unlimited();
+        if(count >= 0){
+            args.add(CommandKeyword.LIMIT).add(offset).add(count);
+            limit = RedisZSetCommands.Limit.limit().offset((int) offset).count((int) count);
+        }
+        RedisZSetCommands.Limit fallbackLimit = limit;
+        return bufferRead(ConnectionLane.BULK, prefix, reverse ? CommandType.ZREVRANGEBYSCORE : CommandType.ZRANGEBYSCORE, args, new BufferReads.Scored<>(decoder),
+                connection -> BufferReads.scored(reverse ? connection.zRevRangeByScoreWithScores(keyBytes, range, fallbackLimit)
+                        : connection.zRangeByScoreWithScores(keyBytes, range, fallbackLimit), decoder));
+    }
+
+    private <T> ScoredMembers<T> scoredByRank(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, boolean reverse, long start, long stop, Class<T> valueClass){
+        return scoredByRank(ConnectionLane.BULK, prefix, rawKey(enableAppKeyPrefix, prefix, key), reverse, start, stop, buf -> codec.decode(buf, valueClass));
+    }
+
+    /**
+     * 排行榜按排名取范围也走这里
+     */
+    <T> ScoredMembers<T> scoredByRank(ConnectionLane lane, KeyPrefix prefix, byte[] keyBytes, boolean reverse, long start, long stop, Function<ByteBuffer, T> decoder){
+        CommandArgs<byte[], byte[]> args = BufferReads.args(keyBytes).add(start).add(stop).add(CommandKeyword.WITHSCORES);
+        return bufferRead(lane, prefix, reverse ? CommandType.ZREVRANGE : CommandType.ZRANGE, args, new BufferReads.Scored<>(decoder),
+                connection -> BufferReads.scored(reverse ? connection.zRevRangeWithScores(keyBytes, start, stop)
+                        : connection.zRangeWithScores(keyBytes, start, stop), decoder));
+    }
+
+    private static String scoreArg(double score){
+        if(Double.isInfinite(score)){
+            return score > 0 ? "+inf" : "-inf";
+        }
+        return Double.toString(score);
+    }
+
+    /**
+     * 按分数的游标分页，不像LIMIT offset那样越往后越慢，翻页期间有插入和删除也不会重复或者跳过
+     *
+     * 游标成员还在并且分数没变时从它的ZRANK往后取，同分的成员再多也只读一页；
+     * 成员已经被删除或者分数变了时，从游标的分数开始扫描并跳过同分的成员，最多跳过MAX_CURSOR_SKIP个，再多抛出IllegalArgumentException，需要从第一页重新翻
+     * @param reverse true按分数从大到小
+     * @param after 上一页返回的游标，第一页传null
+     */
+    public <T> ScorePage<T> zpageByScore(KeyPrefix prefix, String key, double min, double max, boolean reverse, @Nullable ScoreCursor after, int count, Class<T> valueClass){
+        return zpageByScore(true, prefix, key, min, max, reverse, after, count, valueClass);
+    }
+
+    public <T> ScorePage<T> zpageByScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, double min, double max, boolean reverse, @Nullable ScoreCursor after, int count, Class<T> valueClass){
+        if(count <= 0){
+            throw new IllegalArgumentException("count必须大于0");
+        }
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        ZSetOperations<byte[], byte[]> ops = readTemplate(ConnectionLane.BULK, prefix).opsForZSet();
+        List<ZSetOperations.TypedTuple<byte[]>> items = null;
+        if(after != null && after.getScore() >= min && after.getScore() <= max){
+            items = pageAfterRank(ops, keyBytes, min, max, reverse, after, count);
+        }
+        if(items == null){
+            items = pageAfterScore(ops, keyBytes, min, max, reverse, after, count);
+        }
+        ScoreCursor next = null;
+        if(items.size() > count){
+            items = items.subList(0, count);
+            ZSetOperations.TypedTuple<byte[]> last = items.get(count - 1);
+            next = new ScoreCursor(last.getScore(), last.getValue());
+        }
+        List<ZSetOperations.TypedTuple<T>> ret = new ArrayList<>(items.size());
+        for(ZSetOperations.TypedTuple<byte[]> item : items){
+            ret.add(new DefaultTypedTuple<>(bytesToObject(item.getValue(), valueClass), item.getScore()));
+        }
+        return new ScorePage<>(ret, next);
+    }
+
+    /**
+     * 游标成员还在时从它的排名往后多取一个判断有没有下一页；游标本身也取回来，确认两次读之间它的位置没有变
+     * @return 游标成员不在了、分数变了或者位置变了返回null
+     */
+    private static List<ZSetOperations.TypedTuple<byte[]>> pageAfterRank(ZSetOperations<byte[], byte[]> ops, byte[] keyBytes, double min, double max,
+                                                                         boolean reverse, ScoreCursor after, int count){
+        Long rank = reverse ? ops.reverseRank(keyBytes, after.getMember()) : ops.rank(keyBytes, after.getMember());
+        if(rank == null){
+            return null;
+        }
+        Set<ZSetOperations.TypedTuple<byte[]>> batch = reverse ? ops.reverseRangeWithScores(keyBytes, rank, rank + count + 1)
+                : ops.rangeWithScores(keyBytes, rank, rank + count + 1);
+        Iterator<ZSetOperations.TypedTuple<byte[]>> it = batch == null ? Collections.emptyIterator() : batch.iterator();
+        if(!it.hasNext()){
+            return null;
+        }
+        ZSetOperations.TypedTuple<byte[]> first = it.next();
+        if(!Arrays.equals(first.getValue(), after.getMember()) || Double.compare(first.getScore(), after.getScore()) != 0){
+            return null;
+        }
+        List<ZSetOperations.TypedTuple<byte[]>> items = new ArrayList<>(count + 1);
+        while(it.hasNext()){
+            ZSetOperations.TypedTuple<byte[]> item = it.next();
+            if(reverse ? item.getScore() < min : item.getScore() > max){
+                break;
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * 从游标的分数开始按分数取，多取一个判断有没有下一页；和游标同分的成员按字节序排在一起，跳过游标和它之前的
+     */
+    private static List<ZSetOperations.TypedTuple<byte[]>> pageAfterScore(ZSetOperations<byte[], byte[]> ops, byte[] keyBytes, double min, double max,
+                                                                          boolean reverse, @Nullable ScoreCursor after, int count){
+        double from = after == null ? (reverse ? max : min) : (reverse ? Math.min(max, after.getScore()) : Math.max(min, after.getScore()));
+        List<ZSetOperations.TypedTuple<byte[]>> items = new ArrayList<>(count + 1);
+        long offset = 0;
+        int skipped = 0;
+        while(items.size() <= count){
+            Set<ZSetOperations.TypedTuple<byte[]>> batch = reverse ? ops.reverseRangeByScoreWithScores(keyBytes, min, from, offset, count + 1)
+                    : ops.rangeByScoreWithScores(keyBytes, from, max, offset, count + 1);
+            if(batch == null || batch.isEmpty()){
+                break;
+            }
+            for(ZSetOperations.TypedTuple<byte[]> item : batch){
+                if(after != null && items.isEmpty() && !afterCursor(item, after, reverse)){
+                    if(++skipped > MAX_CURSOR_SKIP){
+                        throw new IllegalArgumentException("游标成员已经不在了，和它同分的成员超过" + MAX_CURSOR_SKIP + "个，请从第一页重新翻页");
+                    }
+                    continue;
+                }
+                items.add(item);
+                if(items.size() > count){
+                    break;
+                }
+            }
+            if(batch.size() <= count){
+                break;
+            }
+            offset += batch.size();
+        }
+        return items;
+    }
+
+    private static boolean afterCursor(ZSetOperations.TypedTuple<byte[]> item, ScoreCursor cursor, boolean reverse){
+        int c = Double.compare(item.getScore(), cursor.getScore());
+        if(c == 0){
+            c = compareUnsigned(item.getValue(), cursor.getMember());
+        }
+        return reverse ? c < 0 : c > 0;
+    }
+
+    /**
+     * 和redis一样按无符号字节比较同分的成员
+     */
+    private static int compareUnsigned(byte[] a, byte[] b){
+        int n = Math.min(a.length, b.length);
+        for(int i = 0; i < n; i++){
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if(c != 0){
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
     public <T> Set<ZSetOperations.TypedTuple<T>> zscan(KeyPrefix prefix, String key, String pattern, Class<T> valueClass){
         return zscan(true, prefix, key, pattern, valueClass);
     }
@@ -855,7 +1530,7 @@ public class RedisClientService {
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
         Set<ZSetOperations.TypedTuple<T>> set = new HashSet<>();
         ScanOptions options = ScanOptions.scanOptions().count(10).match(pattern).build();
-        Cursor<ZSetOperations.TypedTuple<byte[]>> cursor = redisTemplate.boundZSetOps(keyBytes).scan(options);
+        Cursor<ZSetOperations.TypedTuple<byte[]>> cursor = readTemplate(ConnectionLane.BULK, prefix).boundZSetOps(keyBytes).scan(options);
         while(cursor.hasNext()){
             ZSetOperations.TypedTuple<byte[]> value = cursor.next();
             byte[] bytes = value.getValue();
@@ -864,6 +1539,161 @@ public class RedisClientService {
         }
         return set;
     }
+    /***************************HyperLogLog************************************/
+    public Long pfadd(KeyPrefix prefix, String key, Object... values){
+        return pfadd(true, prefix, key, values);
+    }
+
+    /**
+     * @return 估算的基数有变化时返回1
+     */
+    public Long pfadd(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object... values){
+        if(values == null || values.length <= 0){
+            return null;
+        }
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return template(ConnectionLane.FAST, prefix).opsForHyperLogLog().add(keyBytes, objectsToBytes(values));
+    }
+
+    public long pfcount(KeyPrefix prefix, String... keys){
+        return pfcount(true, prefix, keys);
+    }
+
+    /**
+     * 多个key时返回并集的基数，集群模式下这些key要在同一个slot
+     */
+    public long pfcount(boolean enableAppKeyPrefix, KeyPrefix prefix, String... keys){
+        byte[][] keysBytes = rawKeys(enableAppKeyPrefix, prefix, keys);
+        Long count = readTemplate(ConnectionLane.FAST, prefix).opsForHyperLogLog().size(keysBytes);
+        return count == null ? 0 : count;
+    }
+
+    public void pfmerge(KeyPrefix prefix, String destKey, String... sourceKeys){
+        pfmerge(true, prefix, destKey, sourceKeys);
+    }
+
+    /**
+     * 把sourceKeys合并到destKey，destKey原来的元素会保留
+     */
+    public void pfmerge(boolean enableAppKeyPrefix, KeyPrefix prefix, String destKey, String... sourceKeys){
+        byte[] destBytes = rawKey(enableAppKeyPrefix, prefix, destKey);
+        byte[][] sourceBytes = rawKeys(enableAppKeyPrefix, prefix, sourceKeys);
+        template(ConnectionLane.FAST, prefix).execute((RedisCallback<Object>) connection -> {
+            connection.pfMerge(destBytes, sourceBytes);
+            return null;
+        });
+    }
+
+    public long pfcountDays(KeyPrefix prefix, String key, LocalDate lastDay, int days){
+        return pfcountDays(true, prefix, key, lastDay, days);
+    }
+
+    /**
+     * 截止到lastDay(含)最近days天的去重数，用{@link DailyKeys}生成的每日key一起PFCOUNT，不落地
+     */
+    public long pfcountDays(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, LocalDate lastDay, int days){
+        return pfcount(enableAppKeyPrefix, prefix, DailyKeys.lastDays(key, lastDay, days));
+    }
+
+    public void pfmergeDays(KeyPrefix prefix, String destKey, String key, LocalDate lastDay, int days){
+        pfmergeDays(true, prefix, destKey, key, lastDay, days);
+    }
+
+    /**
+     * 把截止到lastDay(含)最近days天的每日key合并到destKey，比如把最近7天合成周的key
+     */
+    public void pfmergeDays(boolean enableAppKeyPrefix, KeyPrefix prefix, String destKey, String key, LocalDate lastDay, int days){
+        pfmerge(enableAppKeyPrefix, prefix, destKey, DailyKeys.lastDays(key, lastDay, days));
+    }
+
+    /***************************Bitmap************************************/
+    public Boolean setbit(KeyPrefix prefix, String key, long offset, boolean value){
+        return setbit(true, prefix, key, offset, value);
+    }
+
+    /**
+     * @return 原来这一位的值
+     */
+    public Boolean setbit(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long offset, boolean value){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return template(ConnectionLane.FAST, prefix).opsForValue().setBit(keyBytes, offset, value);
+    }
+
+    public boolean getbit(KeyPrefix prefix, String key, long offset){
+        return getbit(true, prefix, key, offset);
+    }
+
+    public boolean getbit(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long offset){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return Boolean.TRUE.equals(readTemplate(ConnectionLane.FAST, prefix).opsForValue().getBit(keyBytes, offset));
+    }
+
+    public long bitcount(KeyPrefix prefix, String key){
+        return bitcount(true, prefix, key, 0, -1);
+    }
+
+    public long bitcount(KeyPrefix prefix, String key, long startByte, long endByte){
+        return bitcount(true, prefix, key, startByte, endByte);
+    }
+
+    /**
+     * @param startByte 和redis一样是字节的下标，可以是负数
+     */
+    public long bitcount(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, long startByte, long endByte){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        Long count = readTemplate(ConnectionLane.FAST, prefix).execute((RedisCallback<Long>) connection -> connection.bitCount(keyBytes, startByte, endByte));
+        return count == null ? 0 : count;
+    }
+
+    public Long bitop(KeyPrefix prefix, RedisStringCommands.BitOperation op, String destKey, String... keys){
+        return bitop(true, prefix, op, destKey, keys);
+    }
+
+    /**
+     * 结果写到destKey，集群模式下所有key要在同一个slot
+     * @return destKey的字节数
+     */
+    public Long bitop(boolean enableAppKeyPrefix, KeyPrefix prefix, RedisStringCommands.BitOperation op, String destKey, String... keys){
+        byte[] destBytes = rawKey(enableAppKeyPrefix, prefix, destKey);
+        byte[][] keysBytes = rawKeys(enableAppKeyPrefix, prefix, keys);
+        return template(ConnectionLane.FAST, prefix).execute((RedisCallback<Long>) connection -> connection.bitOp(op, destBytes, keysBytes));
+    }
+
+    public Long bitopDays(KeyPrefix prefix, RedisStringCommands.BitOperation op, String destKey, String key, LocalDate lastDay, int days){
+        return bitopDays(true, prefix, op, destKey, key, lastDay, days);
+    }
+
+    /**
+     * 对截止到lastDay(含)最近days天的每日bitmap做BITOP，比如AND得到每天都活跃的用户，OR得到至少活跃过一天的用户，
+     * 结果写到destKey，再用{@link #bitcount(KeyPrefix, String)}统计人数
+     */
+    public Long bitopDays(boolean enableAppKeyPrefix, KeyPrefix prefix, RedisStringCommands.BitOperation op, String destKey, String key, LocalDate lastDay, int days){
+        return bitop(enableAppKeyPrefix, prefix, op, destKey, DailyKeys.lastDays(key, lastDay, days));
+    }
+
+    public List<Long> bitfield(KeyPrefix prefix, String key, BitFieldSubCommands subCommands){
+        return bitfield(true, prefix, key, subCommands);
+    }
+
+    /**
+     * 一条命令读写多个整数字段，OVERFLOW FAIL溢出的字段返回null
+     */
+    public List<Long> bitfield(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, BitFieldSubCommands subCommands){
+        byte[] keyBytes = rawKey(enableAppKeyPrefix, prefix, key);
+        return template(ConnectionLane.FAST, prefix).opsForValue().bitField(keyBytes, subCommands);
+    }
+
+    /**
+     * 创建一个本地缓冲的PFADD/SETBIT写入器，flush的周期、阈值和批量大小使用spring.redis.analyticsBuffer的配置
+     */
+    public RedisAnalyticsBuffer analyticsBuffer(KeyPrefix prefix){
+        return analyticsBuffer(true, prefix, properties.getAnalyticsBuffer());
+    }
+
+    public RedisAnalyticsBuffer analyticsBuffer(boolean enableAppKeyPrefix, KeyPrefix prefix, RedisClientProperties.AnalyticsBuffer config){
+        return new RedisAnalyticsBuffer(this, enableAppKeyPrefix, prefix, config);
+    }
+
     /***************************pub/sub************************************/
     public void publish(KeyPrefix prefix, String key, Object value){
         publish(true, prefix, key, value);
@@ -871,7 +1701,7 @@ public class RedisClientService {
     public void publish(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object value){
         String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
         byte[] keyBytes = realKey.getBytes(StandardCharsets.UTF_8);
-        redisTemplate.execute(connection -> {
+        template(ConnectionLane.FAST, prefix).execute(connection -> {
             connection.publish(keyBytes, objectToBytes(value));
             return null;
         }, true);
@@ -917,7 +1747,7 @@ public class RedisClientService {
         try {
             List<String> keys = new ArrayList<>();
             keys.add(realKey);
-            Object result = executeScript(script, Long.class, keys, oldValue);
+            Object result = executeScript(prefix, script, Long.class, keys, oldValue);
             if(result!=null && Integer.parseInt(result.toString()) == 1) {
                 return true;
             }
@@ -928,14 +1758,414 @@ public class RedisClientService {
         }
     }
 
-    private Object executeScript(String script, Class resultType, List<String> keys, String... args){
+    private Object executeScript(KeyPrefix prefix, String script, Class resultType, List<String> keys, String... args){
         List<byte[]> byteKeys = keys.stream().map((str)->str.getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList());
         int argsLength = (args==null||args.length<=0)?0:args.length;
         Object[] byteArgs = new Object[argsLength];
         for(int i=0; i<argsLength; i++){
             byteArgs[i] = args[i].getBytes(StandardCharsets.UTF_8);
         }
-        return redisTemplate.execute(new DefaultRedisScript(script, resultType), byteKeys, byteArgs);
+        return getRedisTemplate(prefix).execute(new DefaultRedisScript(script, resultType), byteKeys, byteArgs);
+    }
+
+    /**
+     * @param prefix 记在跟踪里的前缀，key不属于某一个前缀时为null
+     */
+    <T> T eval(KeyPrefix prefix, RedisScript<T> script, List<byte[]> keys, byte[]... args){
+        return getRedisTemplate(prefix).execute(script, RAW_SERIALIZER, (RedisSerializer<T>)RAW_SERIALIZER, keys, (Object[])args);
+    }
+
+    public ValueCodec getCodec(){
+        return codec;
+    }
+
+    RedisTemplate<byte[], byte[]> getRedisTemplate(){
+        return getRedisTemplate(null);
+    }
+
+    /**
+     * 不区分通道的RedisTemplate，命令记在prefix下
+     */
+    RedisTemplate<byte[], byte[]> getRedisTemplate(KeyPrefix prefix){
+        if(tracer != null){
+            tracer.enter(prefix);
+        }
+        return redisTemplate;
+    }
+
+    RedisClientProperties getProperties(){
+        return properties;
+    }
+
+    /***************************连接通道和读副本************************************/
+    /**
+     * 开启了spring.redis.lanes.enabled时，前缀指定了通道就用前缀的，否则用命令默认的通道；没有开启时都是同一个RedisTemplate
+     */
+    RedisTemplate<byte[], byte[]> template(ConnectionLane lane, KeyPrefix prefix){
+        if(tracer != null){
+            tracer.enter(prefix);
+        }
+        return lanes == null ? redisTemplate : lanes.select(lane, prefix);
+    }
+
+    /**
+     * 在lane的连接上发一批命令，逐条返回结果，见{@link PipelineResults#execute}
+     */
+    List<Object> pipeline(ConnectionLane lane, KeyPrefix prefix, Function<RedisClusterAsyncCommands<byte[], byte[]>, List<RedisFuture<?>>> commands, RedisCallback<?> fallback){
+        return PipelineResults.execute(template(lane, prefix), breaker, tracer, prefix, commandTimeoutMillis, commands, fallback);
+    }
+
+    /**
+     * 读命令用的RedisTemplate，读节点不是master时发到副本，否则和{@link #template(ConnectionLane, KeyPrefix)}一样
+     */
+    RedisTemplate<byte[], byte[]> readTemplate(ConnectionLane lane, KeyPrefix prefix){
+        if(tracer != null){
+            tracer.enter(prefix);
+        }
+        if(replicas != null){
+            ReadPreference preference = readPreference(prefix);
+            if(preference != ReadPreference.MASTER){
+                return replicas.template(preference);
+            }
+        }
+        return template(lane, prefix);
+    }
+
+    /**
+     * 所有通道和默认读副本的RedisTemplate，预热连接用
+     */
+    Collection<RedisTemplate<byte[], byte[]>> templates(){
+        Set<RedisTemplate<byte[], byte[]>> ret = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(ConnectionLane lane : ConnectionLane.values()){
+            ret.add(template(lane, null));
+        }
+        ReadPreference preference = properties.getReplicaReads().getReadPreference();
+        if(replicas != null && preference != ReadPreference.MASTER){
+            ret.add(replicas.template(preference));
+        }
+        return ret;
+    }
+
+    /**
+     * 优先级：readFrom指定的 > 前缀指定的 > spring.redis.replica-reads.readPreference
+     */
+    private ReadPreference readPreference(KeyPrefix prefix){
+        ReadPreference preference = READ_PREFERENCE.get();
+        if(preference == null && prefix instanceof ReadPreferenceKeyPrefix){
+            preference = ((ReadPreferenceKeyPrefix)prefix).getReadPreference();
+        }
+        return preference == null ? properties.getReplicaReads().getReadPreference() : preference;
+    }
+
+    /**
+     * 当前线程在reads里执行的读命令都按preference路由，比如写完以后马上要读到的地方用MASTER，
+     * 没有开启spring.redis.replica-reads.enabled时不起作用
+     */
+    public <T> T readFrom(ReadPreference preference, Supplier<T> reads){
+        ReadPreference previous = READ_PREFERENCE.get();
+        READ_PREFERENCE.set(preference);
+        try{
+            return reads.get();
+        }finally{
+            if(previous == null){
+                READ_PREFERENCE.remove();
+            }else{
+                READ_PREFERENCE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 开启了spring.redis.hedging.enabled时get、mget、hget、zscore经过这里，限时并在主读慢的时候对冲
+     */
+    private <R> R hedgedRead(ConnectionLane lane, KeyPrefix prefix, byte[] key, byte[] field, Function<RedisTemplate<byte[], byte[]>, R> command){
+        RedisTemplate<byte[], byte[]> primary = readTemplate(lane, prefix);
+        if(hedging == null){
+            return command.apply(primary);
+        }
+        //对冲读在线程池里执行，前缀要带过去
+        Function<RedisTemplate<byte[], byte[]>, R> traced = tracer == null ? command : template -> {
+            tracer.enter(prefix);
+            try{
+                return command.apply(template);
+            }finally{
+                tracer.exit();
+            }
+        };
+        return hedging.read(prefix, key, field, primary, hedgeTemplate(lane, prefix, primary), traced);
+    }
+
+    /**
+     * 主读发到master时对冲到副本，发到副本时对冲到master；没有开启读副本时对冲到另一个连接通道，都没有开启时不对冲
+     */
+    private RedisTemplate<byte[], byte[]> hedgeTemplate(ConnectionLane lane, KeyPrefix prefix, RedisTemplate<byte[], byte[]> primary){
+        if(replicas != null){
+            RedisTemplate<byte[], byte[]> master = template(lane, prefix);
+            return primary == master ? replicas.template(ReadPreference.REPLICA_PREFERRED) : master;
+        }
+        if(lanes != null){
+            RedisTemplate<byte[], byte[]> fast = template(ConnectionLane.FAST, null);
+            return primary == fast ? template(ConnectionLane.BULK, null) : fast;
+        }
+        return null;
+    }
+
+    /**
+     * 对冲读的指标，没有开启spring.redis.hedging.enabled时返回null
+     */
+    public HedgingMetrics getHedgingMetrics(){
+        return hedging == null ? null : hedging.metrics();
+    }
+
+    /**
+     * 实现了StaleKeyPrefix的前缀保存每次读到的值，redis连接失败、超时或者熔断时返回保存的值，没有的话抛出原来的异常
+     */
+    private <R> R staleRead(KeyPrefix prefix, byte[] key, byte[] field, Supplier<R> read){
+        if(staleStore == null || !(prefix instanceof StaleKeyPrefix)){
+            return read.get();
+        }
+        try{
+            return staleStore.remember(key, field, read.get());
+        }catch(DataAccessResourceFailureException | TransientDataAccessException e){
+            R value = staleStore.get(key, field, () -> e);
+            breaker.onStaleServed();
+            log.warn("redis不可用，返回本地保存的旧值:" + new String(key, StandardCharsets.UTF_8) + "，" + e.getMessage());
+            return value;
+        }
+    }
+
+    /**
+     * 写了以后本地保存的旧值就不对了，熔断和对冲读各自保存的都要删
+     * @param field hash的field或者zset的member，string为null
+     */
+    private void forgetStale(KeyPrefix prefix, byte[] key, byte[] field){
+        if(staleStore != null && prefix instanceof StaleKeyPrefix){
+            staleStore.remove(key, field);
+        }
+        if(hedging != null){
+            hedging.forget(key, field);
+        }
+    }
+
+    /**
+     * 分片的hash每个field按它所在的子key删
+     */
+    private void forgetStale(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, byte[][] fields){
+        if(hedging == null && !(staleStore != null && prefix instanceof StaleKeyPrefix)){
+            return;
+        }
+        for(byte[] field : fields){
+            forgetStale(prefix, routeKey(enableAppKeyPrefix, prefix, key, field), field);
+        }
+    }
+
+    /**
+     * 删除整个key或者按范围删除以后，key下面保存的field和member都不对了
+     */
+    private void forgetAllStale(KeyPrefix prefix, byte[] key){
+        if(staleStore != null && prefix instanceof StaleKeyPrefix){
+            staleStore.removeAll(key);
+        }
+        if(hedging != null){
+            hedging.forgetAll(key);
+        }
+    }
+
+    /**
+     * 开启了spring.redis.buffer-decoding.enabled，并且这次读不经过对冲、GET合并和本地旧值时，直接从读缓冲区解码
+     */
+    private boolean decodeFromBuffer(KeyPrefix prefix){
+        return decodeBuffers && hedging == null && getBatcher == null && !(staleStore != null && prefix instanceof StaleKeyPrefix);
+    }
+
+    private <T> T bufferRead(ConnectionLane lane, KeyPrefix prefix, CommandType type, CommandArgs<byte[], byte[]> args,
+                             BufferReads.Decoding<T> output, Function<RedisConnection, T> fallback){
+        RedisTemplate<byte[], byte[]> template = readTemplate(lane, prefix);
+        //读副本的连接不经过熔断器
+        RedisCircuitBreaker guard = template == template(lane, prefix) ? breaker : null;
+        return bufferReads.read(template, guard, prefix, type, args, output, fallback);
+    }
+
+    /**
+     * 注册操作的回调，需要开启spring.redis.tracing.enabled
+     */
+    public void addOperationListener(RedisOperationListener listener){
+        if(tracer == null){
+            throw new IllegalStateException("没有开启spring.redis.tracing.enabled");
+        }
+        tracer.addListener(listener);
+    }
+
+    /**
+     * 最近采样到的慢操作，新的在前；没有开启spring.redis.tracing.enabled时返回空
+     */
+    public List<RedisOperation> getSlowOperations(){
+        return tracer == null ? Collections.emptyList() : tracer.slowOperations();
+    }
+
+    /**
+     * 熔断器的指标，没有开启spring.redis.circuit-breaker.enabled时返回null
+     */
+    public CircuitBreakerMetrics getCircuitBreakerMetrics(){
+        return breaker == null ? null : breaker.metrics();
+    }
+
+    /**
+     * 在指定的通道上执行自定义的命令，比如大批量的pipeline
+     */
+    public <T> T execute(ConnectionLane lane, RedisCallback<T> action){
+        return template(lane, null).execute(action);
+    }
+
+    /**
+     * 在指定的通道上执行事务(MULTI/EXEC)等需要在同一条连接上连续执行的操作
+     */
+    public <T> T execute(ConnectionLane lane, SessionCallback<T> session){
+        return template(lane, null).execute(session);
+    }
+
+    /**
+     * 各个通道的指标，没有开启spring.redis.lanes.enabled时是空的
+     */
+    public Map<ConnectionLane, LaneMetrics> getLaneMetrics(){
+        return lanes == null ? Collections.emptyMap() : lanes.metrics();
+    }
+
+    /**
+     * 关闭BULK通道的连接池、读副本的连接和对冲读的线程池，声明成spring的bean时会自动调用
+     */
+    @Override
+    public void close(){
+        if(hedging != null){
+            hedging.close();
+        }
+        if(lanes != null){
+            lanes.close();
+        }
+        if(replicas != null){
+            replicas.close();
+        }
+    }
+
+    /***************************大key分片************************************/
+    /**
+     * 分片的前缀按field/member路由到对应的子key，不分片的就是原来的key
+     */
+    private byte[] routeKey(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, byte[] fieldOrMember){
+        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
+        int shards = KeySharding.shards(prefix);
+        if(shards <= 1){
+            return realKey.getBytes(StandardCharsets.UTF_8);
+        }
+        return KeySharding.shardKey(realKey, KeySharding.shardOf(fieldOrMember, shards));
+    }
+
+    /**
+     * 分片的前缀返回所有的子key，不分片的只有原来的key
+     */
+    private List<byte[]> allKeys(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        String realKey = buildRealKey(enableAppKeyPrefix, prefix, key);
+        int shards = KeySharding.shards(prefix);
+        if(shards <= 1){
+            return Collections.singletonList(realKey.getBytes(StandardCharsets.UTF_8));
+        }
+        return KeySharding.shardKeys(realKey, shards);
+    }
+
+    /**
+     * 用一次pipeline对每个子key执行同一个命令，按子key的顺序返回结果
+     */
+    private List<Object> fanOut(RedisTemplate<byte[], byte[]> template, List<byte[]> shardKeys, BiConsumer<RedisConnection, byte[]> command){
+        return template.executePipelined((RedisCallback<Object>) connection -> {
+            for(byte[] shardKey : shardKeys){
+                command.accept(connection, shardKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 把field/member按子key分组，用一次pipeline对每组执行命令，按{@link KeySharding#group}的顺序返回结果
+     */
+    private List<Object> fanOut(RedisTemplate<byte[], byte[]> template, String realKey, int shards, byte[][] fieldsOrMembers, ShardCommand command){
+        Map<Integer, List<Integer>> groups = KeySharding.group(fieldsOrMembers, shards);
+        return template.executePipelined((RedisCallback<Object>) connection -> {
+            for(Map.Entry<Integer, List<Integer>> group : groups.entrySet()){
+                byte[][] items = new byte[group.getValue().size()][];
+                for(int i = 0; i < items.length; i++){
+                    items[i] = fieldsOrMembers[group.getValue().get(i)];
+                }
+                command.execute(connection, KeySharding.shardKey(realKey, group.getKey()), items);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从随机的一个子key开始依次取，直到取够count个
+     */
+    private List<byte[]> fromRandomShards(List<byte[]> shardKeys, long count, BiFunction<byte[], Long, Collection<byte[]>> fetch){
+        List<byte[]> ret = new ArrayList<>();
+        int start = ThreadLocalRandom.current().nextInt(shardKeys.size());
+        for(int i = 0; i < shardKeys.size() && ret.size() < count; i++){
+            Collection<byte[]> values = fetch.apply(shardKeys.get((start + i) % shardKeys.size()), count - ret.size());
+            if(values != null){
+                ret.addAll(values);
+            }
+        }
+        return ret;
+    }
+
+    private static long sum(List<Object> counts){
+        long sum = 0;
+        for(Object count : counts){
+            if(count instanceof Number){
+                sum += ((Number)count).longValue();
+            }
+        }
+        return sum;
+    }
+
+    private interface ShardCommand {
+        void execute(RedisConnection connection, byte[] shardKey, byte[][] fieldsOrMembers);
+    }
+
+    byte[] rawKey(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        return buildRealKey(enableAppKeyPrefix, prefix, key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * prefix下所有key共同的开头，以:结尾，SCAN的时候用{@link #escapeGlob(String)}转义以后再加上*
+     */
+    String keyBase(boolean enableAppKeyPrefix, KeyPrefix prefix){
+        String base = buildRealKey(enableAppKeyPrefix, prefix, "");
+        return base.endsWith(":") ? base : base + ":";
+    }
+
+    /**
+     * SCAN的MATCH里*?[]和\需要转义
+     */
+    static String escapeGlob(String s){
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c == '*' || c == '?' || c == '[' || c == ']' || c == '\\'){
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private byte[][] rawKeys(boolean enableAppKeyPrefix, KeyPrefix prefix, String... keys){
+        if(keys == null || keys.length <= 0){
+            throw new IllegalArgumentException("keys不能为空");
+        }
+        byte[][] ret = new byte[keys.length][];
+        for(int i = 0; i < keys.length; i++){
+            ret[i] = rawKey(enableAppKeyPrefix, prefix, keys[i]);
+        }
+        return ret;
     }
 
     private String buildRealKey(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
@@ -990,47 +2220,23 @@ public class RedisClientService {
         return ret;
     }
 
-    private byte[] objectToBytes(Object value){
-        Class clazz = value.getClass();
-        if(ClassUtils.isPrimitiveOrWrapper(clazz) || clazz == String.class){
-            return value.toString().getBytes(StandardCharsets.UTF_8);
-        }else if(clazz == byte[].class){
-            return (byte[])value;
-        }else{
-            return RedisSerializer.json().serialize(value);
+    private <T> List<ZSetOperations.TypedTuple<T>> bytesToTuples(Collection<ZSetOperations.TypedTuple<byte[]>> val, Class<T> valueClazz){
+        if(val == null || val.size() <= 0){
+            return null;
         }
+        List<ZSetOperations.TypedTuple<T>> ret = new ArrayList<>(val.size());
+        for(ZSetOperations.TypedTuple<byte[]> tuple : val){
+            ret.add(new DefaultTypedTuple<>(bytesToObject(tuple.getValue(), valueClazz), tuple.getScore()));
+        }
+        return ret;
+    }
+
+    private byte[] objectToBytes(Object value){
+        return codec.encode(value);
     }
 
     private <T> T bytesToObject(byte[] val, Class<T> valueClazz){
-        if(ClassUtils.isPrimitiveOrWrapper(valueClazz) || valueClazz == String.class){
-            if(valueClazz == String.class){
-                return (T)new String(val, StandardCharsets.UTF_8);
-            }else if(valueClazz == int.class || valueClazz == Integer.class){
-                return (T)Integer.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == long.class || valueClazz == Long.class){
-                return (T)Long.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == boolean.class || valueClazz == Boolean.class){
-                return (T)Boolean.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == byte.class || valueClazz == Byte.class){
-                return (T)Byte.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == short.class || valueClazz == Short.class){
-                return (T)Short.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == float.class || valueClazz == Float.class){
-                return (T)Float.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == double.class || valueClazz == Double.class){
-                return (T)Double.valueOf(new String(val, StandardCharsets.UTF_8));
-            }else if(valueClazz == char.class || valueClazz == Character.class){
-                return (T)Character.valueOf(new String(val, StandardCharsets.UTF_8).charAt(0));
-            }else{
-                return null;
-            }
-        }else if(valueClazz == byte[].class){
-            return (T)val;
-        } else if(valueClazz == TypeReference.class){
-            return (T)((GenericJackson2JsonRedisSerializer)RedisSerializer.json()).deserialize(val, valueClazz);
-        } else{
-            return (T)RedisSerializer.json().deserialize(val);
-        }
+        return codec.decode(val, valueClazz);
     }
 }
 
@@ -0,0 +1,334 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器的本地聚合缓冲
+ *
+ * incr/hincr/zincrby先累加到本地，每隔flushIntervalMillis或者累计flushThreshold次操作以后，
+ * 用一次pipeline把增量以INCRBY/HINCRBY/ZINCRBY写到redis。
+ * redis中的值最多落后一个flush周期；进程异常退出时，最多丢失最近一个周期还没有flush的增量，
+ * 正常关闭时调用{@link #close()}会把剩余的增量flush掉，声明成spring的bean时会自动调用。
+ */
+public class RedisCounterBuffer implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(RedisCounterBuffer.class);
+
+    private final RedisClientService redisService;
+    private final boolean enableAppKeyPrefix;
+    private final KeyPrefix prefix;
+    private final int flushThreshold;
+
+    private final ConcurrentMap<CounterKey, LongAdder> longCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CounterKey, DoubleAdder> scoreCounters = new ConcurrentHashMap<>();
+    /**
+     * 上一次flush时从map中摘掉的空闲计数器，下一次flush时再收一次尾，防止摘除的瞬间还有线程在往里累加
+     */
+    private List<Map.Entry<CounterKey, LongAdder>> retiredLongs = new ArrayList<>();
+    private List<Map.Entry<CounterKey, DoubleAdder>> retiredScores = new ArrayList<>();
+
+    private final AtomicInteger pendingOps = new AtomicInteger();
+    private final AtomicLong droppedDeltas = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    RedisCounterBuffer(RedisClientService redisService, boolean enableAppKeyPrefix, KeyPrefix prefix, long flushIntervalMillis, int flushThreshold) {
+        if(flushIntervalMillis <= 0 || flushThreshold <= 0){
+            throw new IllegalArgumentException("flushIntervalMillis和flushThreshold必须大于0");
+        }
+        this.redisService = redisService;
+        this.enableAppKeyPrefix = enableAppKeyPrefix;
+        this.prefix = prefix;
+        this.flushThreshold = flushThreshold;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redis-counter-buffer-" + prefix.getPrefix());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void incr(String key){
+        incr(key, 1);
+    }
+
+    public void incr(String key, long delta){
+        add(longCounters, new CounterKey(key, null), delta);
+    }
+
+    public void hincr(String key, String field, long delta){
+        add(longCounters, new CounterKey(key, field), delta);
+    }
+
+    public void zincrby(String key, String member, double delta){
+        checkOpen();
+        scoreCounters.computeIfAbsent(new CounterKey(key, member), k -> new DoubleAdder()).add(delta);
+        afterAdd();
+    }
+
+    private void add(ConcurrentMap<CounterKey, LongAdder> counters, CounterKey counterKey, long delta){
+        checkOpen();
+        counters.computeIfAbsent(counterKey, k -> new LongAdder()).add(delta);
+        afterAdd();
+    }
+
+    private void checkOpen(){
+        if(closed.get()){
+            throw new IllegalStateException("RedisCounterBuffer已经关闭");
+        }
+    }
+
+    private void afterAdd(){
+        if(pendingOps.incrementAndGet() >= flushThreshold && flushScheduled.compareAndSet(false, true)){
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly(){
+        try{
+            flush();
+        }catch(Exception e){
+            log.error("flush计数器失败:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把本地累计的增量写到redis
+     *
+     * 还没有发出去的(拿不到连接、熔断)全部加回本地，下次flush时重试；
+     * 逐条检查pipeline的结果，只把暂时失败(OOM、LOADING、READONLY之类)的增量加回本地，WRONGTYPE之类重试也不会成功的记error日志后丢弃；
+     * 超时或者连接中途断开的命令不知道执行了没有，为了不重复计数，同样记error日志后丢弃，丢弃的个数见{@link #getDroppedDeltas()}。
+     */
+    public synchronized void flush(){
+        pendingOps.set(0);
+        Map<CounterKey, Long> longDeltas = new HashMap<>();
+        Map<CounterKey, Double> scoreDeltas = new HashMap<>();
+        List<Map.Entry<CounterKey, LongAdder>> idleLongs = new ArrayList<>();
+        List<Map.Entry<CounterKey, DoubleAdder>> idleScores = new ArrayList<>();
+        for(Map.Entry<CounterKey, LongAdder> entry : retiredLongs){
+            collect(entry.getKey(), entry.getValue(), longDeltas);
+        }
+        for(Map.Entry<CounterKey, DoubleAdder> entry : retiredScores){
+            collect(entry.getKey(), entry.getValue(), scoreDeltas);
+        }
+        for(Map.Entry<CounterKey, LongAdder> entry : longCounters.entrySet()){
+            if(!collect(entry.getKey(), entry.getValue(), longDeltas)){
+                idleLongs.add(entry);
+            }
+        }
+        for(Map.Entry<CounterKey, DoubleAdder> entry : scoreCounters.entrySet()){
+            if(!collect(entry.getKey(), entry.getValue(), scoreDeltas)){
+                idleScores.add(entry);
+            }
+        }
+        for(Map.Entry<CounterKey, LongAdder> entry : idleLongs){
+            longCounters.remove(entry.getKey(), entry.getValue());
+        }
+        for(Map.Entry<CounterKey, DoubleAdder> entry : idleScores){
+            scoreCounters.remove(entry.getKey(), entry.getValue());
+        }
+        retiredLongs = idleLongs;
+        retiredScores = idleScores;
+        if(longDeltas.isEmpty() && scoreDeltas.isEmpty()){
+            return;
+        }
+        //pipeline的结果和这两个列表的顺序一一对应
+        List<Map.Entry<CounterKey, Long>> longs = new ArrayList<>(longDeltas.entrySet());
+        List<Map.Entry<CounterKey, Double>> scores = new ArrayList<>(scoreDeltas.entrySet());
+        List<Object> results;
+        try{
+            results = redisService.pipeline(ConnectionLane.BULK, prefix, commands -> writeDeltas(commands, longs, scores), (RedisCallback<Object>) connection -> {
+                writeDeltas(connection, longs, scores);
+                return null;
+            });
+        }catch(RuntimeException e){
+            longs.forEach(entry -> requeue(longCounters, entry.getKey(), entry.getValue()));
+            scores.forEach(entry -> requeue(scoreCounters, entry.getKey(), entry.getValue()));
+            throw e;
+        }
+        if(results == null){
+            droppedDeltas.addAndGet(longs.size() + scores.size());
+            log.error("flush计数器的结果未知，为了不重复计数，丢弃" + (longs.size() + scores.size()) + "个增量");
+            return;
+        }
+        int requeued = 0;
+        int dropped = 0;
+        for(int i = 0; i < results.size(); i++){
+            Object result = results.get(i);
+            if(!(result instanceof Throwable)){
+                continue;
+            }
+            boolean isLong = i < longs.size();
+            Map.Entry<CounterKey, ?> entry = isLong ? longs.get(i) : scores.get(i - longs.size());
+            if(PipelineResults.isTransient(result)){
+                if(isLong){
+                    requeue(longCounters, longs.get(i).getKey(), longs.get(i).getValue());
+                }else{
+                    requeue(scoreCounters, scores.get(i - longs.size()).getKey(), scores.get(i - longs.size()).getValue());
+                }
+                requeued++;
+            }else{
+                dropped++;
+                log.error("计数器写入失败，丢弃增量，key:" + entry.getKey().key + "，field:" + entry.getKey().field + "，delta:" + entry.getValue()
+                        + "，原因:" + PipelineResults.reason(result));
+            }
+        }
+        if(requeued > 0){
+            log.warn(requeued + "个计数器暂时写入失败，增量会在下次flush时重试");
+        }
+        droppedDeltas.addAndGet(dropped);
+    }
+
+    /**
+     * @return 写入失败以后丢弃的增量个数，包括WRONGTYPE之类的错误和结果未知的整批
+     */
+    public long getDroppedDeltas(){
+        return droppedDeltas.get();
+    }
+
+    private static void requeue(ConcurrentMap<CounterKey, LongAdder> counters, CounterKey key, long delta){
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+    }
+
+    private static void requeue(ConcurrentMap<CounterKey, DoubleAdder> counters, CounterKey key, double delta){
+        counters.computeIfAbsent(key, k -> new DoubleAdder()).add(delta);
+    }
+
+    private List<RedisFuture<?>> writeDeltas(RedisClusterAsyncCommands<byte[], byte[]> commands, List<Map.Entry<CounterKey, Long>> longDeltas, List<Map.Entry<CounterKey, Double>> scoreDeltas){
+        List<RedisFuture<?>> futures = new ArrayList<>(longDeltas.size() + scoreDeltas.size());
+        for(Map.Entry<CounterKey, Long> entry : longDeltas){
+            CounterKey counterKey = entry.getKey();
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, counterKey.key);
+            if(counterKey.field == null){
+                futures.add(commands.incrby(keyBytes, entry.getValue()));
+            }else{
+                futures.add(commands.hincrby(keyBytes, counterKey.field.getBytes(StandardCharsets.UTF_8), entry.getValue()));
+            }
+        }
+        for(Map.Entry<CounterKey, Double> entry : scoreDeltas){
+            CounterKey counterKey = entry.getKey();
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, counterKey.key);
+            futures.add(commands.zincrby(keyBytes, entry.getValue(), counterKey.field.getBytes(StandardCharsets.UTF_8)));
+        }
+        return futures;
+    }
+
+    private void writeDeltas(RedisConnection connection, List<Map.Entry<CounterKey, Long>> longDeltas, List<Map.Entry<CounterKey, Double>> scoreDeltas){
+        for(Map.Entry<CounterKey, Long> entry : longDeltas){
+            CounterKey counterKey = entry.getKey();
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, counterKey.key);
+            if(counterKey.field == null){
+                connection.incrBy(keyBytes, entry.getValue());
+            }else{
+                connection.hIncrBy(keyBytes, counterKey.field.getBytes(StandardCharsets.UTF_8), entry.getValue());
+            }
+        }
+        for(Map.Entry<CounterKey, Double> entry : scoreDeltas){
+            CounterKey counterKey = entry.getKey();
+            byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, counterKey.key);
+            connection.zIncrBy(keyBytes, entry.getValue(), counterKey.field.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 只减去读到的值，并发累加进来的部分留到下次flush
+     */
+    private static boolean collect(CounterKey key, LongAdder adder, Map<CounterKey, Long> deltas){
+        long value = adder.sum();
+        if(value == 0){
+            return false;
+        }
+        adder.add(-value);
+        deltas.merge(key, value, Long::sum);
+        return true;
+    }
+
+    private static boolean collect(CounterKey key, DoubleAdder adder, Map<CounterKey, Double> deltas){
+        double value = adder.sum();
+        if(value == 0){
+            return false;
+        }
+        adder.add(-value);
+        deltas.merge(key, value, Double::sum);
+        return true;
+    }
+
+    /**
+     * 停止定时flush，并把剩余的增量flush到redis，这次flush失败的增量会丢失
+     */
+    @Override
+    public void close(){
+        if(!closed.compareAndSet(false, true)){
+            return;
+        }
+        scheduler.shutdown();
+        try{
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        try{
+            flush();
+            //把最后一次flush时摘掉的计数器也收掉
+            flush();
+        }catch(Exception e){
+            log.error("关闭时flush计数器失败，未写入的增量已丢失:" + e.getMessage(), e);
+        }
+    }
+
+    private static final class CounterKey {
+        private final String key;
+        private final String field;
+
+        private CounterKey(String key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CounterKey)) {
+                return false;
+            }
+            CounterKey that = (CounterKey) o;
+            return key.equals(that.key) && Objects.equals(field, that.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + (field == null ? 0 : field.hashCode());
+        }
+    }
+}
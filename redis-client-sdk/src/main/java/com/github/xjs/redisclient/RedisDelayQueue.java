@@ -0,0 +1,224 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.queue.DelayListener;
+import com.github.xjs.redisclient.queue.DelayPriority;
+import com.github.xjs.redisclient.queue.DelayQueueOptions;
+import com.github.xjs.redisclient.queue.DelayedJob;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于zset的延迟队列
+ *
+ * 任务以到期时间为score写入zset，每个优先级一个zset。消费者用lua脚本按优先级从高到低原子地取走一批到期的任务
+ * (ZRANGEBYSCORE LIMIT + ZREM)，多个节点一起消费也不会重复，每次取走的复杂度是O(log(n) + m)。
+ * 脚本同时返回离下一个任务到期还有多久，消费者睡到那个时候再来取，不需要频繁轮询。
+ * 加入和取走任务都用redis服务端的时间，生产者和消费者所在机器的时钟偏差不会让任务提前或者推迟到期。
+ *
+ * 任务取走以后就从redis删除了，处理失败的会按retryDelayMillis重新放回队列，但是进程在处理过程中宕机的任务会丢失。
+ * 相同内容的任务只会保存一份，再次加入只会更新到期时间。
+ * 集群模式下各个优先级的zset要在同一个slot，需要在key里使用{hashtag}。
+ */
+public class RedisDelayQueue implements Closeable {
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> SCHEDULE_SCRIPT = new DefaultRedisScript<>();
+    private static final DelayPriority[] PRIORITIES = DelayPriority.values();
+
+    static {
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/delay_queue_claim.lua"));
+        CLAIM_SCRIPT.setResultType(List.class);
+        SCHEDULE_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/delay_queue_schedule.lua"));
+        SCHEDULE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final RedisClientService redisService;
+    private final Map<String, List<DelayQueueSubscription>> subscriptions = new ConcurrentHashMap<>();
+
+    public RedisDelayQueue(RedisClientService redisService) {
+        this.redisService = redisService;
+    }
+
+    /***************************producer************************************/
+    public Boolean schedule(KeyPrefix prefix, String key, Object job, long delayMillis){
+        return schedule(true, prefix, key, job, delayMillis, DelayPriority.NORMAL);
+    }
+
+    public Boolean schedule(KeyPrefix prefix, String key, Object job, long delayMillis, DelayPriority priority){
+        return schedule(true, prefix, key, job, delayMillis, priority);
+    }
+
+    /**
+     * 加入一个延迟任务，delayMillis毫秒以后到期
+     * @return 新加入返回true，已经存在相同的任务时更新到期时间，返回false
+     */
+    public Boolean schedule(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object job, long delayMillis, DelayPriority priority){
+        if(job == null){
+            throw new IllegalArgumentException("任务不能为空");
+        }
+        String name = new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8);
+        Boolean added = add(prefix, laneKey(name, priority), redisService.getCodec().encode(job), delayMillis);
+        List<DelayQueueSubscription> local = subscriptions.get(name);
+        if(local != null){
+            for(DelayQueueSubscription subscription : local){
+                subscription.wakeUp(delayMillis);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 取消一个还没有到期的任务
+     */
+    public boolean cancel(KeyPrefix prefix, String key, Object job){
+        return cancel(true, prefix, key, job);
+    }
+
+    public boolean cancel(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object job){
+        String name = new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8);
+        byte[] value = redisService.getCodec().encode(job);
+        List<Object> removed = redisService.getRedisTemplate(prefix).executePipelined((RedisCallback<Object>) connection -> {
+            for(DelayPriority priority : PRIORITIES){
+                connection.zRem(laneKey(name, priority), value);
+            }
+            return null;
+        });
+        for(Object count : removed){
+            if(count instanceof Number && ((Number)count).longValue() > 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 所有优先级中还没有被取走的任务数
+     */
+    public long size(KeyPrefix prefix, String key){
+        return size(true, prefix, key);
+    }
+
+    public long size(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        String name = new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8);
+        List<Object> sizes = redisService.getRedisTemplate(prefix).executePipelined((RedisCallback<Object>) connection -> {
+            for(DelayPriority priority : PRIORITIES){
+                connection.zCard(laneKey(name, priority));
+            }
+            return null;
+        });
+        long size = 0;
+        for(Object count : sizes){
+            if(count instanceof Number){
+                size += ((Number)count).longValue();
+            }
+        }
+        return size;
+    }
+
+    /***************************consumer************************************/
+    /**
+     * 取走最多count个到期的任务
+     */
+    public List<DelayedJob> poll(KeyPrefix prefix, String key, int count){
+        return poll(true, prefix, key, count);
+    }
+
+    public List<DelayedJob> poll(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int count){
+        String name = new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8);
+        return claim(name, count).jobs;
+    }
+
+    /**
+     * 在后台线程中持续消费到期的任务
+     */
+    public DelayQueueSubscription subscribe(KeyPrefix prefix, String key, DelayListener listener){
+        return subscribe(true, prefix, key, new DelayQueueOptions(), listener);
+    }
+
+    public DelayQueueSubscription subscribe(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, DelayQueueOptions options, DelayListener listener){
+        if(options.getBatchSize() <= 0 || options.getMaxIdleMillis() <= 0 || options.getConcurrency() <= 0){
+            throw new IllegalArgumentException("batchSize、maxIdleMillis和concurrency必须大于0");
+        }
+        String name = new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8);
+        DelayQueueSubscription subscription = new DelayQueueSubscription(this, name, options, listener);
+        subscriptions.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>()).add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    @Override
+    public void close(){
+        for(List<DelayQueueSubscription> list : subscriptions.values()){
+            for(DelayQueueSubscription subscription : list){
+                subscription.stop();
+            }
+        }
+        subscriptions.clear();
+    }
+
+    /***************************内部实现************************************/
+    void unregister(DelayQueueSubscription subscription){
+        List<DelayQueueSubscription> list = subscriptions.get(subscription.getQueue());
+        if(list != null){
+            list.remove(subscription);
+        }
+    }
+
+    ClaimResult claim(String name, int count){
+        List<byte[]> keys = new ArrayList<>(PRIORITIES.length);
+        for(DelayPriority priority : PRIORITIES){
+            keys.add(laneKey(name, priority));
+        }
+        List<Object> result = redisService.eval(null, CLAIM_SCRIPT, keys, AsciiNumbers.encodeInt(count));
+        List<DelayedJob> jobs = new ArrayList<>(result.size() / 2);
+        for(int i = 1; i + 1 < result.size(); i += 2){
+            DelayPriority priority = PRIORITIES[((Number)result.get(i)).intValue() - 1];
+            jobs.add(new DelayedJob(name, priority, (byte[])result.get(i + 1), redisService.getCodec()));
+        }
+        return new ClaimResult(((Number)result.get(0)).longValue(), jobs);
+    }
+
+    /**
+     * 把处理失败的任务重新放回原来的优先级
+     */
+    void retry(DelayedJob job, long delayMillis){
+        add(null, laneKey(job.getQueue(), job.getPriority()), job.getValue(), delayMillis);
+    }
+
+    /**
+     * 到期时间在redis里按服务端的时间计算
+     */
+    private Boolean add(KeyPrefix prefix, byte[] laneKey, byte[] value, long delayMillis){
+        Long added = redisService.eval(prefix, SCHEDULE_SCRIPT, Collections.singletonList(laneKey), AsciiNumbers.encodeLong(delayMillis), value);
+        return added == null ? null : added == 1;
+    }
+
+    private static byte[] laneKey(String name, DelayPriority priority){
+        return (name + priority.getSuffix()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static final class ClaimResult {
+        /**
+         * 离下一个任务到期还有多少毫秒，-1表示队列是空的
+         */
+        final long nextDueMillis;
+        final List<DelayedJob> jobs;
+
+        private ClaimResult(long nextDueMillis, List<DelayedJob> jobs) {
+            this.nextDueMillis = nextDueMillis;
+            this.jobs = jobs;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.large.LargeValueManifest;
+import com.github.xjs.redisclient.large.LargeValueOptions;
+import com.github.xjs.redisclient.large.ValueWriter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 大value的分片存储
+ *
+ * 一个大value按chunkSize切成多个分片，每个分片是一个string，key是"key:版本:序号"，key本身是一个hash(manifest)，
+ * 记录当前的版本、分片数和总字节数。写入时先把新版本的分片都写完(每次pipeline写pipelineChunks个)，再用lua脚本原子地切换manifest，
+ * 读的人要么读到旧版本要么读到新版本；旧版本的分片再保留oldVersionRetainMillis毫秒，正在读旧版本的可以读完。
+ * 读取时每次MGET pipelineChunks个分片，不会把整个value读进内存。分片和manifest的过期时间跟随KeyPrefix。
+ * 分片在BULK通道上读写，不会堵住普通的小命令；集群模式下key需要带{hashtag}，保证分片和manifest在同一个slot。
+ * 切换和删除的脚本用到的分片都放在KEYS里：先读manifest拿到旧版本，脚本里确认manifest没有被别人切换过，切换过就重新读一次。
+ */
+public class RedisLargeValues {
+
+    private static final DefaultRedisScript<Long> SWAP_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>();
+    private static final byte[] VERSION = "version".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNKS = "chunks".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SIZE = "size".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNK_SIZE = "chunkSize".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        SWAP_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/large_value_swap.lua"));
+        SWAP_SCRIPT.setResultType(Long.class);
+        DELETE_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/large_value_delete.lua"));
+        DELETE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final RedisClientService redisService;
+    private final LargeValueOptions options;
+
+    public RedisLargeValues(RedisClientService redisService) {
+        this(redisService, new LargeValueOptions());
+    }
+
+    public RedisLargeValues(RedisClientService redisService, LargeValueOptions options) {
+        if(options.getChunkSize() <= 0 || options.getPipelineChunks() <= 0 || options.getPendingExpireSeconds() <= 0){
+            throw new IllegalArgumentException("chunkSize、pipelineChunks和pendingExpireSeconds必须大于0");
+        }
+        if(options.getOldVersionRetainMillis() <= 0){
+            throw new IllegalArgumentException("oldVersionRetainMillis必须大于0");
+        }
+        this.redisService = redisService;
+        this.options = options;
+    }
+
+    /***************************写入************************************/
+    /**
+     * 把in读完写成新版本，in由调用方关闭
+     */
+    public LargeValueManifest write(KeyPrefix prefix, String key, InputStream in) throws IOException{
+        return write(true, prefix, key, in);
+    }
+
+    public LargeValueManifest write(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, InputStream in) throws IOException{
+        return write(enableAppKeyPrefix, prefix, key, out -> {
+            byte[] buf = new byte[8192];
+            int n;
+            while((n = in.read(buf)) >= 0){
+                out.write(buf, 0, n);
+            }
+        });
+    }
+
+    /**
+     * writer往输出流里写，正常返回以后切换到新版本，抛出异常时不切换，已经写入的分片到pendingExpireSeconds自动删除
+     */
+    public LargeValueManifest write(KeyPrefix prefix, String key, ValueWriter writer) throws IOException{
+        return write(true, prefix, key, writer);
+    }
+
+    public LargeValueManifest write(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, ValueWriter writer) throws IOException{
+        byte[] manifestKey = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        String version = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        ChunkedOutputStream out = new ChunkedOutputStream(redisService.template(ConnectionLane.BULK, prefix), manifestKey, version);
+        writer.writeTo(out);
+        out.finish();
+        while(true){
+            LargeValueManifest old = manifest(prefix, manifestKey);
+            List<byte[]> keys = new ArrayList<>(1 + out.chunks + (old == null ? 0 : old.getChunks()));
+            keys.add(manifestKey);
+            addChunkKeys(keys, manifestKey, version, out.chunks);
+            if(old != null && !old.getVersion().equals(version)){
+                addChunkKeys(keys, manifestKey, old.getVersion(), old.getChunks());
+            }
+            Long swapped = redisService.eval(prefix, SWAP_SCRIPT, keys, version.getBytes(StandardCharsets.UTF_8),
+                    AsciiNumbers.encodeInt(out.chunks), AsciiNumbers.encodeLong(out.size), AsciiNumbers.encodeInt(options.getChunkSize()),
+                    AsciiNumbers.encodeInt(prefix.getExpireSeconds()), AsciiNumbers.encodeLong(options.getOldVersionRetainMillis()),
+                    (old == null ? "" : old.getVersion()).getBytes(StandardCharsets.UTF_8));
+            if(swapped == null || swapped == 0){
+                throw new IOException("写入超过" + options.getPendingExpireSeconds() + "秒，部分分片已经过期，没有切换到新版本");
+            }
+            if(swapped > 0){
+                return new LargeValueManifest(version, out.chunks, out.size, options.getChunkSize());
+            }
+            //读manifest以后被别人切换了，旧版本的分片变了
+        }
+    }
+
+    /***************************读取************************************/
+    /**
+     * @return 不存在时返回null
+     */
+    public LargeValueManifest manifest(KeyPrefix prefix, String key){
+        return manifest(true, prefix, key);
+    }
+
+    public LargeValueManifest manifest(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        return manifest(prefix, redisService.rawKey(enableAppKeyPrefix, prefix, key));
+    }
+
+    private LargeValueManifest manifest(KeyPrefix prefix, byte[] manifestKey){
+        List<byte[]> fields = redisService.template(ConnectionLane.FAST, prefix)
+                .execute((RedisCallback<List<byte[]>>) connection -> connection.hMGet(manifestKey, VERSION, CHUNKS, SIZE, CHUNK_SIZE));
+        if(fields == null || fields.get(0) == null){
+            return null;
+        }
+        return new LargeValueManifest(new String(fields.get(0), StandardCharsets.UTF_8), AsciiNumbers.parseInt(fields.get(1)),
+                AsciiNumbers.parseLong(fields.get(2)), AsciiNumbers.parseInt(fields.get(3)));
+    }
+
+    /**
+     * 打开当前版本的输入流，边读边取分片，不存在时返回null
+     */
+    public InputStream openStream(KeyPrefix prefix, String key){
+        return openStream(true, prefix, key);
+    }
+
+    public InputStream openStream(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        LargeValueManifest manifest = manifest(enableAppKeyPrefix, prefix, key);
+        if(manifest == null){
+            return null;
+        }
+        byte[] manifestKey = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        return new ChunkedInputStream(redisService.template(ConnectionLane.BULK, prefix), manifestKey, manifest);
+    }
+
+    /**
+     * 把当前版本写到out，out由调用方关闭
+     * @return 不存在时返回null
+     */
+    public LargeValueManifest read(KeyPrefix prefix, String key, OutputStream out) throws IOException{
+        return read(true, prefix, key, out);
+    }
+
+    public LargeValueManifest read(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, OutputStream out) throws IOException{
+        LargeValueManifest manifest = manifest(enableAppKeyPrefix, prefix, key);
+        if(manifest == null){
+            return null;
+        }
+        byte[] manifestKey = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        ChunkedInputStream in = new ChunkedInputStream(redisService.template(ConnectionLane.BULK, prefix), manifestKey, manifest);
+        byte[] chunk;
+        while((chunk = in.nextChunk()) != null){
+            out.write(chunk);
+        }
+        return manifest;
+    }
+
+    /**
+     * 删除manifest和当前版本的分片
+     */
+    public boolean delete(KeyPrefix prefix, String key){
+        return delete(true, prefix, key);
+    }
+
+    public boolean delete(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        byte[] manifestKey = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        while(true){
+            LargeValueManifest manifest = manifest(prefix, manifestKey);
+            if(manifest == null){
+                return false;
+            }
+            List<byte[]> keys = new ArrayList<>(1 + manifest.getChunks());
+            keys.add(manifestKey);
+            addChunkKeys(keys, manifestKey, manifest.getVersion(), manifest.getChunks());
+            Long deleted = redisService.eval(prefix, DELETE_SCRIPT, keys, manifest.getVersion().getBytes(StandardCharsets.UTF_8));
+            if(deleted == null || deleted >= 0){
+                return deleted != null && deleted > 0;
+            }
+            //读manifest以后被别人切换了，要删的是新版本的分片
+        }
+    }
+
+    /***************************内部实现************************************/
+    private static byte[] chunkKey(String base, int index){
+        return (base + index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void addChunkKeys(List<byte[]> keys, byte[] manifestKey, String version, int chunks){
+        String base = chunkKeyBase(manifestKey, version);
+        for(int i = 0; i < chunks; i++){
+            keys.add(chunkKey(base, i));
+        }
+    }
+
+    private static String chunkKeyBase(byte[] manifestKey, String version){
+        return new String(manifestKey, StandardCharsets.UTF_8) + ":" + version + ":";
+    }
+
+    /**
+     * 写满一个分片放到待写列表，攒够pipelineChunks个用pipeline一起写，写完以后分片的数组重复使用
+     */
+    private final class ChunkedOutputStream extends OutputStream {
+        private final RedisTemplate<byte[], byte[]> template;
+        private final String base;
+        private final byte[][] pending;
+        private int pendingCount;
+        private int position;
+        private int chunks;
+        private long size;
+
+        private ChunkedOutputStream(RedisTemplate<byte[], byte[]> template, byte[] manifestKey, String version) {
+            this.template = template;
+            this.base = chunkKeyBase(manifestKey, version);
+            this.pending = new byte[options.getPipelineChunks()][];
+        }
+
+        @Override
+        public void write(int b) {
+            current()[position++] = (byte) b;
+            size++;
+            if(position == options.getChunkSize()){
+                completeChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while(len > 0){
+                byte[] chunk = current();
+                int n = Math.min(len, chunk.length - position);
+                System.arraycopy(b, off, chunk, position, n);
+                position += n;
+                size += n;
+                off += n;
+                len -= n;
+                if(position == chunk.length){
+                    completeChunk();
+                }
+            }
+        }
+
+        private byte[] current(){
+            if(pending[pendingCount] == null){
+                pending[pendingCount] = new byte[options.getChunkSize()];
+            }
+            return pending[pendingCount];
+        }
+
+        private void completeChunk(){
+            position = 0;
+            if(++pendingCount == pending.length){
+                flushChunks(pendingCount);
+            }
+        }
+
+        /**
+         * 写出最后一个不满的分片
+         */
+        private void finish(){
+            if(position > 0){
+                pending[pendingCount] = Arrays.copyOf(pending[pendingCount], position);
+                pendingCount++;
+                position = 0;
+            }
+            if(pendingCount > 0){
+                flushChunks(pendingCount);
+            }
+        }
+
+        private void flushChunks(int count){
+            int first = chunks;
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                for(int i = 0; i < count; i++){
+                    connection.setEx(chunkKey(base, first + i), options.getPendingExpireSeconds(), pending[i]);
+                }
+                return null;
+            });
+            chunks += count;
+            pendingCount = 0;
+        }
+    }
+
+    /**
+     * 每次MGET pipelineChunks个分片，分片不存在(被删除或者过期)时抛出IOException
+     */
+    private final class ChunkedInputStream extends InputStream {
+        private final RedisTemplate<byte[], byte[]> template;
+        private final String base;
+        private final LargeValueManifest manifest;
+        private List<byte[]> batch = Collections.emptyList();
+        private int batchIndex;
+        private int nextChunk;
+        private byte[] current;
+        private int position;
+
+        private ChunkedInputStream(RedisTemplate<byte[], byte[]> template, byte[] manifestKey, LargeValueManifest manifest) {
+            this.template = template;
+            this.base = chunkKeyBase(manifestKey, manifest.getVersion());
+            this.manifest = manifest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!fill()){
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0){
+                return 0;
+            }
+            if(!fill()){
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        private boolean fill() throws IOException {
+            while(current == null || position == current.length){
+                current = nextChunk();
+                position = 0;
+                if(current == null){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return 没有了返回null
+         */
+        private byte[] nextChunk() throws IOException {
+            if(batchIndex == batch.size()){
+                if(nextChunk == manifest.getChunks()){
+                    return null;
+                }
+                int count = Math.min(options.getPipelineChunks(), manifest.getChunks() - nextChunk);
+                byte[][] keys = new byte[count][];
+                for(int i = 0; i < count; i++){
+                    keys[i] = chunkKey(base, nextChunk + i);
+                }
+                batch = template.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+                batchIndex = 0;
+                nextChunk += count;
+            }
+            byte[] chunk = batch.get(batchIndex);
+            if(chunk == null){
+                throw new IOException("第" + (nextChunk - batch.size() + batchIndex) + "个分片已经不存在，可能已经过期或者被覆盖超过"
+                        + options.getOldVersionRetainMillis() + "毫秒");
+            }
+            batchIndex++;
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.leaderboard.LeaderboardEntry;
+import com.github.xjs.redisclient.leaderboard.LeaderboardOptions;
+import com.github.xjs.redisclient.zset.ScoredMembers;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于sorted set的排行榜
+ *
+ * 成员用sdk的ValueCodec编码，和redisService.zadd写入的可以互相读取。
+ * 排名和前后各n名用一个lua脚本一次取回；前topCacheSize名可以在本地缓存topCacheMillis毫秒，首页这种最热的请求不用每次访问redis，
+ * 本进程的写入会立即清除本地缓存。
+ */
+public class RedisLeaderboard {
+
+    private static final DefaultRedisScript<List> AROUND_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        AROUND_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/leaderboard_around.lua"));
+        AROUND_SCRIPT.setResultType(List.class);
+    }
+
+    private final RedisClientService redisService;
+    private final LeaderboardOptions options;
+    private final ValueCodec codec;
+    private final NearCache topCache;
+
+    public RedisLeaderboard(RedisClientService redisService) {
+        this(redisService, new LeaderboardOptions());
+    }
+
+    public RedisLeaderboard(RedisClientService redisService, LeaderboardOptions options) {
+        if(options.getTopCacheSize() <= 0 || options.getTopCacheMillis() < 0){
+            throw new IllegalArgumentException("topCacheSize必须大于0，topCacheMillis不能小于0");
+        }
+        this.redisService = redisService;
+        this.options = options;
+        this.codec = redisService.getCodec();
+        this.topCache = options.getTopCacheMillis() > 0 ? new NearCache(options.getTopCacheBoards(), options.getTopCacheMillis()) : null;
+    }
+
+    /***************************写入************************************/
+    /**
+     * 给成员加分，成员不存在时从0开始加
+     * @return 加完以后的分数
+     */
+    public Double incrementScore(KeyPrefix prefix, String key, Object member, double delta){
+        return incrementScore(true, prefix, key, member, delta);
+    }
+
+    public Double incrementScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object member, double delta){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        Double score = redisService.template(ConnectionLane.FAST, prefix).opsForZSet().incrementScore(keyBytes, codec.encode(member), delta);
+        evictTop(keyBytes);
+        return score;
+    }
+
+    public void setScore(KeyPrefix prefix, String key, Object member, double score){
+        setScore(true, prefix, key, member, score);
+    }
+
+    public void setScore(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object member, double score){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        redisService.template(ConnectionLane.FAST, prefix).opsForZSet().add(keyBytes, codec.encode(member), score);
+        evictTop(keyBytes);
+    }
+
+    public Long remove(KeyPrefix prefix, String key, Object... members){
+        return remove(true, prefix, key, members);
+    }
+
+    public Long remove(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object... members){
+        if(members == null || members.length <= 0){
+            return 0L;
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        Object[] memberBytes = new Object[members.length];
+        for(int i = 0; i < members.length; i++){
+            memberBytes[i] = codec.encode(members[i]);
+        }
+        Long removed = redisService.template(ConnectionLane.FAST, prefix).opsForZSet().remove(keyBytes, memberBytes);
+        evictTop(keyBytes);
+        return removed;
+    }
+
+    /***************************读取************************************/
+    /**
+     * 前n名，n不超过topCacheSize并且开启了本地缓存时从本地缓存取
+     */
+    public <T> List<LeaderboardEntry<T>> top(KeyPrefix prefix, String key, int n, Class<T> memberClass){
+        return top(true, prefix, key, n, memberClass);
+    }
+
+    public <T> List<LeaderboardEntry<T>> top(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int n, Class<T> memberClass){
+        if(n <= 0){
+            return Collections.emptyList();
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        if(topCache == null || n > options.getTopCacheSize()){
+            ScoredMembers<?> items = range(prefix, keyBytes, 0, n - 1);
+            return toEntries(items, items.size(), 0, memberClass);
+        }
+        String cacheKey = new String(keyBytes, StandardCharsets.UTF_8);
+        ScoredMembers<?> top = (ScoredMembers<?>) topCache.get(cacheKey);
+        if(top == null){
+            top = range(prefix, keyBytes, 0, options.getTopCacheSize() - 1);
+            topCache.put(cacheKey, top);
+        }
+        return toEntries(top, Math.min(n, top.size()), 0, memberClass);
+    }
+
+    /**
+     * 按排名分页
+     * @param page 第几页，从1开始
+     */
+    public <T> List<LeaderboardEntry<T>> page(KeyPrefix prefix, String key, int page, int pageSize, Class<T> memberClass){
+        return page(true, prefix, key, page, pageSize, memberClass);
+    }
+
+    public <T> List<LeaderboardEntry<T>> page(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, int page, int pageSize, Class<T> memberClass){
+        if(page <= 0 || pageSize <= 0){
+            throw new IllegalArgumentException("page和pageSize必须大于0");
+        }
+        long start = (long) (page - 1) * pageSize;
+        if(page == 1){
+            return top(enableAppKeyPrefix, prefix, key, pageSize, memberClass);
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        ScoredMembers<?> items = range(prefix, keyBytes, start, start + pageSize - 1);
+        return toEntries(items, items.size(), start, memberClass);
+    }
+
+    /**
+     * 成员的排名和分数，不在排行榜上返回null
+     */
+    public <T> LeaderboardEntry<T> rank(KeyPrefix prefix, String key, T member){
+        return rank(true, prefix, key, member);
+    }
+
+    public <T> LeaderboardEntry<T> rank(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, T member){
+        List<LeaderboardEntry<byte[]>> around = around(enableAppKeyPrefix, prefix, key, member, 0, byte[].class);
+        if(around == null || around.isEmpty()){
+            return null;
+        }
+        LeaderboardEntry<byte[]> entry = around.get(0);
+        return new LeaderboardEntry<>(member, entry.getScore(), entry.getRank());
+    }
+
+    /**
+     * 成员和它前后各neighbours名，不在排行榜上返回null
+     */
+    public <T> List<LeaderboardEntry<T>> around(KeyPrefix prefix, String key, Object member, int neighbours, Class<T> memberClass){
+        return around(true, prefix, key, member, neighbours, memberClass);
+    }
+
+    public <T> List<LeaderboardEntry<T>> around(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object member, int neighbours, Class<T> memberClass){
+        if(neighbours < 0){
+            throw new IllegalArgumentException("neighbours不能小于0");
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        List<Object> ret = redisService.eval(prefix, AROUND_SCRIPT, Collections.singletonList(keyBytes),
+                (options.isDescending() ? "1" : "0").getBytes(StandardCharsets.UTF_8), codec.encode(member),
+                Integer.toString(neighbours).getBytes(StandardCharsets.UTF_8));
+        if(ret == null || ret.size() < 2){
+            return null;
+        }
+        long start = ((Number) ret.get(0)).longValue();
+        List<Object> items = (List<Object>) ret.get(1);
+        List<LeaderboardEntry<T>> entries = new ArrayList<>(items.size() / 2);
+        for(int i = 0; i + 1 < items.size(); i += 2){
+            entries.add(new LeaderboardEntry<>(decode((byte[]) items.get(i), memberClass), parseScore((byte[]) items.get(i + 1)), start + i / 2 + 1));
+        }
+        return entries;
+    }
+
+    public Long size(KeyPrefix prefix, String key){
+        return size(true, prefix, key);
+    }
+
+    public Long size(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        return redisService.readTemplate(ConnectionLane.FAST, prefix).opsForZSet().zCard(keyBytes);
+    }
+
+    /***************************内部实现************************************/
+    /**
+     * 成员只保存编码以后的字节，放进本地缓存以后多个线程按各自的memberClass解码
+     */
+    private ScoredMembers<?> range(KeyPrefix prefix, byte[] keyBytes, long start, long stop){
+        return redisService.scoredByRank(ConnectionLane.FAST, prefix, keyBytes, options.isDescending(), start, stop, buf -> null);
+    }
+
+    private <T> List<LeaderboardEntry<T>> toEntries(ScoredMembers<?> items, int n, long start, Class<T> memberClass){
+        List<LeaderboardEntry<T>> ret = new ArrayList<>(n);
+        for(int i = 0; i < n; i++){
+            ret.add(new LeaderboardEntry<>(codec.decode(items.memberBuffer(i), memberClass), items.score(i), start + i + 1));
+        }
+        return ret;
+    }
+
+    private <T> T decode(byte[] member, Class<T> memberClass){
+        return codec.decode(member, memberClass);
+    }
+
+    private void evictTop(byte[] keyBytes){
+        if(topCache != null){
+            topCache.remove(new String(keyBytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * lua脚本里的分数是字符串，无穷大是inf
+     */
+    private static double parseScore(byte[] score){
+        String s = new String(score, StandardCharsets.US_ASCII);
+        if(s.endsWith("inf")){
+            return s.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return Double.parseDouble(s);
+    }
+}
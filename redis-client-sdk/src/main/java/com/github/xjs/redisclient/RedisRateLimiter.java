@@ -0,0 +1,230 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.ratelimit.RateLimitRule;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于redis的分布式限流器
+ *
+ * 检查和扣减在一个lua脚本里完成，使用redis服务端的时间，多个实例之间不受本地时钟偏差的影响。
+ * 一次可以同时检查多个key(比如按用户、按接口、全局三个维度)，要么全部扣减，要么全部不扣。
+ * 开启本地预检查以后，被拒绝的key在redis给出的最短等待时间内直接在本地拒绝，不再访问redis。
+ * 集群模式下一次检查的多个key必须在同一个slot，可以在key里使用{hashtag}。
+ */
+public class RedisRateLimiter {
+
+    private static final DefaultRedisScript<List<Long>> SCRIPT = new DefaultRedisScript<>();
+    /**
+     * 滑动窗口日志的成员带上这个进程的标识和递增的序号，不同的申请不会因为同一微秒而互相覆盖
+     */
+    private static final String INSTANCE_ID = Long.toHexString(new SecureRandom().nextLong());
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    /**
+     * 本地拒绝记录超过这个数量时清理一次过期的记录
+     */
+    private static final int MAX_LOCAL_DENIALS = 10000;
+
+    static {
+        SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/rate_limit.lua"));
+        SCRIPT.setResultType(longList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<List<Long>> longList(){
+        return (Class<List<Long>>) (Class<?>) List.class;
+    }
+
+    private final RedisClientService redisService;
+    private final boolean enableAppKeyPrefix;
+    private final KeyPrefix prefix;
+    private final RateLimitRule rule;
+    private final byte[][] ruleArgs;
+    private final ConcurrentMap<String, Denial> denials;
+
+    RedisRateLimiter(RedisClientService redisService, boolean enableAppKeyPrefix, KeyPrefix prefix, RateLimitRule rule, boolean localPrecheck) {
+        if(rule == null){
+            throw new IllegalArgumentException("限流规则不能为空");
+        }
+        this.redisService = redisService;
+        this.enableAppKeyPrefix = enableAppKeyPrefix;
+        this.prefix = prefix;
+        this.rule = rule;
+        this.ruleArgs = new byte[][]{
+                rule.getAlgorithm().getCode().getBytes(StandardCharsets.UTF_8),
+                AsciiNumbers.encodeInt(rule.getLimit()),
+                AsciiNumbers.encodeLong(rule.getWindowMillis())
+        };
+        this.denials = localPrecheck ? new ConcurrentHashMap<>() : null;
+    }
+
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    public boolean tryAcquire(String key){
+        return tryAcquire(key, 1);
+    }
+
+    public boolean tryAcquire(String key, int permits){
+        return tryAcquireAll(permits, key(key));
+    }
+
+    /**
+     * 同一个规则下的多个key一起申请，全部通过才扣减
+     */
+    public boolean tryAcquireAll(int permits, String... keys){
+        Key[] bound = new Key[keys.length];
+        for(int i = 0; i < keys.length; i++){
+            bound[i] = key(keys[i]);
+        }
+        return tryAcquireAll(permits, bound);
+    }
+
+    /**
+     * 把key绑定到当前限流器的规则上，用于和其他规则的key一起申请
+     */
+    public Key key(String key){
+        return new Key(this, key);
+    }
+
+    /**
+     * 多个key一起申请，每个key使用各自限流器的规则，全部通过才扣减，重复的key只算一次
+     */
+    public static boolean tryAcquireAll(int permits, Key... keys){
+        if(keys == null || keys.length == 0){
+            throw new IllegalArgumentException("至少需要一个限流的key");
+        }
+        if(permits <= 0){
+            throw new IllegalArgumentException("permits必须大于0");
+        }
+        keys = distinct(keys);
+        for(Key key : keys){
+            if(key.limiter.isDeniedLocally(key.realKey, permits)){
+                return false;
+            }
+        }
+        List<byte[]> scriptKeys = new ArrayList<>(keys.length);
+        byte[][] args = new byte[2 + keys.length * 3][];
+        args[0] = AsciiNumbers.encodeInt(permits);
+        args[1] = (INSTANCE_ID + ":" + SEQUENCE.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+        for(int i = 0; i < keys.length; i++){
+            scriptKeys.add(keys[i].realKey.getBytes(StandardCharsets.UTF_8));
+            System.arraycopy(keys[i].limiter.ruleArgs, 0, args, 2 + i * 3, 3);
+        }
+        RedisClientService redisService = keys[0].limiter.redisService;
+        List<Long> result = redisService.eval(commonPrefix(keys), SCRIPT, scriptKeys, args);
+        if(result.get(0) == 1){
+            return true;
+        }
+        Key denied = keys[result.get(1).intValue() - 1];
+        denied.limiter.denyLocally(denied.realKey, permits, result.get(2));
+        return false;
+    }
+
+    /**
+     * 同一个key出现多次时只检查和扣减一次，规则不同的同一个key没法一起计数，直接报错
+     */
+    private static Key[] distinct(Key[] keys){
+        Map<String, Key> ret = new LinkedHashMap<>();
+        for(Key key : keys){
+            Key existing = ret.putIfAbsent(key.realKey, key);
+            if(existing != null && !existing.limiter.rule.equals(key.limiter.rule)){
+                throw new IllegalArgumentException("同一个key不能同时使用不同的限流规则:" + key.realKey);
+            }
+        }
+        return ret.size() == keys.length ? keys : ret.values().toArray(new Key[0]);
+    }
+
+    /**
+     * 跟踪里记的前缀，key来自不同前缀的限流器时不归到任何一个
+     */
+    private static KeyPrefix commonPrefix(Key[] keys){
+        KeyPrefix prefix = keys[0].limiter.prefix;
+        for(Key key : keys){
+            if(key.limiter.prefix != prefix){
+                return null;
+            }
+        }
+        return prefix;
+    }
+
+    private boolean isDeniedLocally(String realKey, int permits){
+        if(denials == null){
+            return false;
+        }
+        Denial denial = denials.get(realKey);
+        if(denial == null){
+            return false;
+        }
+        if(denial.isExpired(System.nanoTime())){
+            denials.remove(realKey, denial);
+            return false;
+        }
+        //申请得更少的可能会通过，交给redis判断
+        return permits >= denial.permits;
+    }
+
+    private void denyLocally(String realKey, int permits, long retryAfterMillis){
+        if(denials == null){
+            return;
+        }
+        long now = System.nanoTime();
+        if(denials.size() >= MAX_LOCAL_DENIALS){
+            for(Iterator<Map.Entry<String, Denial>> it = denials.entrySet().iterator(); it.hasNext();){
+                if(it.next().getValue().isExpired(now)){
+                    it.remove();
+                }
+            }
+            if(denials.size() >= MAX_LOCAL_DENIALS){
+                return;
+            }
+        }
+        denials.put(realKey, new Denial(now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis), permits));
+    }
+
+    /**
+     * 绑定了限流规则的key
+     */
+    public static final class Key {
+        private final RedisRateLimiter limiter;
+        private final String realKey;
+
+        private Key(RedisRateLimiter limiter, String key) {
+            this.limiter = limiter;
+            this.realKey = new String(limiter.redisService.rawKey(limiter.enableAppKeyPrefix, limiter.prefix, key), StandardCharsets.UTF_8);
+        }
+
+        public String getRealKey() {
+            return realKey;
+        }
+    }
+
+    private static final class Denial {
+        private final long deniedUntilNanos;
+        private final int permits;
+
+        private Denial(long deniedUntilNanos, int permits) {
+            this.deniedUntilNanos = deniedUntilNanos;
+            this.permits = permits;
+        }
+
+        private boolean isExpired(long nowNanos){
+            return nowNanos - deniedUntilNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.snapshot.SnapshotOptions;
+import com.github.xjs.redisclient.snapshot.SnapshotResult;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link RedisSnapshots}的命令行入口，不需要启动spring应用
+ *
+ * java -cp redis-client-sdk.jar:依赖 com.github.xjs.redisclient.RedisSnapshotTool export|restore 文件 [--参数=值...]
+ * --host、--port、--password、--database 连接的redis，默认127.0.0.1:6379的0号库
+ * --prefix 导出以它开头的所有key(按字面匹配，要包含应用前缀)，--pattern 导出SCAN MATCH匹配的key，导出时二选一
+ * --replace 导入时覆盖已经存在的key，默认true
+ * --parallelism、--batchSize 同{@link SnapshotOptions}
+ * 导入有失败的key时以1退出，参数错误时以2退出。
+ */
+public class RedisSnapshotTool {
+
+    private static final String USAGE = "用法: RedisSnapshotTool export|restore 文件 [--host=127.0.0.1] [--port=6379] [--password=] [--database=0]"
+            + " [--prefix=前缀|--pattern=模式] [--replace=true] [--parallelism=4] [--batchSize=500]";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> params;
+        try{
+            params = parse(args);
+        }catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        SnapshotResult result = run(args[0], Paths.get(args[1]), params);
+        System.out.println(args[0] + ":" + result);
+        if("restore".equals(args[0]) && result.getFailedKeys() > 0){
+            System.exit(1);
+        }
+    }
+
+    private static SnapshotResult run(String command, Path file, Map<String, String> params) throws IOException {
+        RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(params.getOrDefault("host", "127.0.0.1"),
+                Integer.parseInt(params.getOrDefault("port", "6379")));
+        standalone.setDatabase(Integer.parseInt(params.getOrDefault("database", "0")));
+        if(params.containsKey("password")){
+            standalone.setPassword(RedisPassword.of(params.get("password")));
+        }
+        SnapshotOptions options = new SnapshotOptions();
+        options.setReplace(Boolean.parseBoolean(params.getOrDefault("replace", "true")));
+        options.setParallelism(Integer.parseInt(params.getOrDefault("parallelism", String.valueOf(options.getParallelism()))));
+        options.setBatchSize(Integer.parseInt(params.getOrDefault("batchSize", String.valueOf(options.getBatchSize()))));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(standalone);
+        factory.afterPropertiesSet();
+        try(RedisClientService redisService = new RedisClientService(ConnectionLanes.template(factory), new RedisClientProperties(), null)){
+            RedisSnapshots snapshots = new RedisSnapshots(redisService, options);
+            if("restore".equals(command)){
+                return snapshots.restore(file);
+            }
+            String pattern = params.containsKey("pattern") ? params.get("pattern") : RedisClientService.escapeGlob(params.get("prefix")) + "*";
+            return snapshots.export(pattern, file);
+        }finally{
+            factory.destroy();
+        }
+    }
+
+    /**
+     * @return --参数=值
+     */
+    static Map<String, String> parse(String[] args){
+        if(args.length < 2 || !("export".equals(args[0]) || "restore".equals(args[0]))){
+            throw new IllegalArgumentException("第一个参数是export或者restore，第二个参数是文件");
+        }
+        Map<String, String> params = new HashMap<>();
+        for(int i = 2; i < args.length; i++){
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            if(!arg.startsWith("--") || eq < 0){
+                throw new IllegalArgumentException("参数格式是--参数=值:" + arg);
+            }
+            params.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        if("export".equals(args[0]) && params.containsKey("prefix") == params.containsKey("pattern")){
+            throw new IllegalArgumentException("导出时--prefix和--pattern必须指定一个");
+        }
+        return params;
+    }
+}
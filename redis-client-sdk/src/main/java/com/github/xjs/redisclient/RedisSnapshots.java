@@ -0,0 +1,366 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.lane.ConnectionLane;
+import com.github.xjs.redisclient.snapshot.SnapshotOptions;
+import com.github.xjs.redisclient.snapshot.SnapshotResult;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把一个KeyPrefix下的所有key导出到本地文件，再导入回redis，用于flush以后或者新机房上线时快速预热
+ *
+ * 导出：SCAN MATCH找到key，每batchSize个key用pipeline执行DUMP和PTTL，经过一个直接内存的缓冲区顺序写入文件。
+ * 导入：按mapWindowBytes分段内存映射文件，每batchSize个key交给一个线程用pipeline执行RESTORE，parallelism个线程并行，
+ * 在途的批次有上限，内存占用不随文件大小增长。
+ * 文件格式：8个字节的文件头，然后每个key一条记录：key长度(int)、key、剩余毫秒数(long，-1不过期)、DUMP长度(int)、DUMP的内容。
+ * 导入的key和导出时完全一样(包括应用前缀)，过期时间从导入的时候重新开始算。DUMP的格式和redis版本有关，只能导入到相同或者更高版本的redis。
+ * 集群模式下SCAN只能扫描一个节点，需要按节点分别导出。
+ */
+public class RedisSnapshots {
+
+    private static Logger log = LoggerFactory.getLogger(RedisSnapshots.class);
+    private static final byte[] MAGIC = "RCSNAP01".getBytes(StandardCharsets.US_ASCII);
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final RedisClientService redisService;
+    private final SnapshotOptions options;
+
+    public RedisSnapshots(RedisClientService redisService) {
+        this(redisService, new SnapshotOptions());
+    }
+
+    public RedisSnapshots(RedisClientService redisService, SnapshotOptions options) {
+        if(options.getScanCount() <= 0 || options.getBatchSize() <= 0 || options.getParallelism() <= 0){
+            throw new IllegalArgumentException("scanCount、batchSize和parallelism必须大于0");
+        }
+        if(options.getMapWindowBytes() <= 0 || options.getWriteBufferBytes() <= 0){
+            throw new IllegalArgumentException("mapWindowBytes和writeBufferBytes必须大于0");
+        }
+        this.redisService = redisService;
+        this.options = options;
+    }
+
+    /***************************导出************************************/
+    /**
+     * 导出prefix下的所有key，文件已经存在时覆盖
+     */
+    public SnapshotResult export(KeyPrefix prefix, Path file) throws IOException{
+        return export(true, prefix, file);
+    }
+
+    public SnapshotResult export(boolean enableAppKeyPrefix, KeyPrefix prefix, Path file) throws IOException{
+        return export(RedisClientService.escapeGlob(redisService.keyBase(enableAppKeyPrefix, prefix)) + "*", file);
+    }
+
+    /**
+     * @param pattern SCAN的MATCH
+     */
+    public SnapshotResult export(String pattern, Path file) throws IOException{
+        long start = System.currentTimeMillis();
+        RedisTemplate<byte[], byte[]> template = redisService.template(ConnectionLane.BULK, null);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            SnapshotWriter writer = new SnapshotWriter(channel, options.getWriteBufferBytes());
+            writer.put(MAGIC);
+            ScanOptions scanOptions = ScanOptions.scanOptions().match(pattern).count(options.getScanCount()).build();
+            try{
+                template.execute((RedisCallback<Object>) connection -> {
+                    try(Cursor<byte[]> cursor = connection.scan(scanOptions)){
+                        List<byte[]> batch = new ArrayList<>(options.getBatchSize());
+                        while(cursor.hasNext()){
+                            batch.add(cursor.next());
+                            if(batch.size() == options.getBatchSize()){
+                                dump(connection, batch, writer);
+                                batch.clear();
+                            }
+                        }
+                        if(!batch.isEmpty()){
+                            dump(connection, batch, writer);
+                        }
+                    }catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            }catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+            writer.flush();
+            return new SnapshotResult(writer.records, writer.missing, channel.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 在SCAN占着的同一个连接上pipeline执行DUMP和PTTL，BULK通道只有一个连接时也不会等待自己
+     */
+    private static void dump(RedisConnection connection, List<byte[]> keys, SnapshotWriter writer) throws IOException{
+        connection.openPipeline();
+        List<Object> replies;
+        try{
+            for(byte[] key : keys){
+                connection.dump(key);
+                connection.pTtl(key);
+            }
+        }finally{
+            replies = connection.closePipeline();
+        }
+        for(int i = 0; i < keys.size(); i++){
+            byte[] payload = (byte[]) replies.get(2 * i);
+            long ttl = replies.get(2 * i + 1) == null ? -2 : ((Number) replies.get(2 * i + 1)).longValue();
+            //SCAN以后被删除或者刚好过期的key
+            if(payload == null || (ttl != -1 && ttl <= 0)){
+                writer.missing++;
+                continue;
+            }
+            writer.record(keys.get(i), ttl, payload);
+        }
+    }
+
+    /***************************导入************************************/
+    /**
+     * 把文件中的key全部导入
+     */
+    public SnapshotResult restore(Path file) throws IOException{
+        long start = System.currentTimeMillis();
+        AtomicLong restored = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        int parallelism = options.getParallelism();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism), r -> {
+            Thread t = new Thread(r, "redis-snapshot-restore-" + THREAD_INDEX.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        long size;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            SnapshotReader reader = new SnapshotReader(channel, options.getMapWindowBytes());
+            size = reader.size;
+            List<Record> batch = new ArrayList<>(options.getBatchSize());
+            Record record;
+            while((record = reader.next()) != null){
+                batch.add(record);
+                if(batch.size() == options.getBatchSize()){
+                    List<Record> full = batch;
+                    executor.execute(() -> restore(full, restored, failed));
+                    batch = new ArrayList<>(options.getBatchSize());
+                }
+            }
+            if(!batch.isEmpty()){
+                restore(batch, restored, failed);
+            }
+        }finally{
+            executor.shutdown();
+            try{
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new SnapshotResult(restored.get(), failed.get(), size, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 逐条拿RESTORE的结果，一个key失败(比如replace=false时key已经存在)不影响同一批的其他key
+     */
+    private void restore(List<Record> records, AtomicLong restored, AtomicLong failed){
+        List<Object> results;
+        try{
+            results = redisService.pipeline(ConnectionLane.BULK, null, commands -> {
+                List<RedisFuture<?>> futures = new ArrayList<>(records.size());
+                for(Record record : records){
+                    futures.add(commands.restore(record.key, record.payload, RestoreArgs.Builder.ttl(record.ttl < 0 ? 0 : record.ttl).replace(options.isReplace())));
+                }
+                return futures;
+            }, (RedisCallback<Object>) connection -> {
+                for(Record record : records){
+                    connection.restore(record.key, record.ttl < 0 ? 0 : record.ttl, record.payload, options.isReplace());
+                }
+                return null;
+            });
+        }catch(RuntimeException e){
+            log.error("导入" + records.size() + "个key失败:" + e.getMessage(), e);
+            failed.addAndGet(records.size());
+            return;
+        }
+        if(results == null){
+            log.error("导入" + records.size() + "个key的结果未知，按失败计数");
+            failed.addAndGet(records.size());
+            return;
+        }
+        long errors = 0;
+        String reason = null;
+        for(Object result : results){
+            if(result instanceof Throwable){
+                if(errors++ == 0){
+                    reason = PipelineResults.reason(result);
+                }
+            }
+        }
+        if(errors > 0){
+            log.warn(errors + "个key导入失败，第一个失败的原因:" + reason);
+        }
+        failed.addAndGet(errors);
+        restored.addAndGet(records.size() - errors);
+    }
+
+    /***************************内部实现************************************/
+    private static final class Record {
+        private final byte[] key;
+        private final long ttl;
+        private final byte[] payload;
+
+        private Record(byte[] key, long ttl, byte[] payload) {
+            this.key = key;
+            this.ttl = ttl;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 顺序写文件，小记录先攒在直接内存的缓冲区里，超过缓冲区的直接写
+     */
+    private static final class SnapshotWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long records;
+        private long missing;
+
+        private SnapshotWriter(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 16));
+        }
+
+        private void record(byte[] key, long ttl, byte[] payload) throws IOException{
+            ensure(4);
+            buffer.putInt(key.length);
+            put(key);
+            ensure(12);
+            buffer.putLong(ttl);
+            buffer.putInt(payload.length);
+            put(payload);
+            records++;
+        }
+
+        private void put(byte[] bytes) throws IOException{
+            if(bytes.length > buffer.capacity()){
+                flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while(wrapped.hasRemaining()){
+                    channel.write(wrapped);
+                }
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(int bytes) throws IOException{
+            if(buffer.remaining() < bytes){
+                flush();
+            }
+        }
+
+        private void flush() throws IOException{
+            buffer.flip();
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 分段内存映射读取，记录跨过映射窗口时从记录的开头重新映射
+     */
+    private static final class SnapshotReader {
+        private final FileChannel channel;
+        private final int windowBytes;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        private SnapshotReader(FileChannel channel, int windowBytes) throws IOException{
+            this.channel = channel;
+            this.windowBytes = windowBytes;
+            this.size = channel.size();
+            byte[] magic = new byte[MAGIC.length];
+            ByteBuffer header = map(0, magic.length);
+            header.position(0);
+            header.get(magic);
+            if(!Arrays.equals(magic, MAGIC)){
+                throw new IOException("不是快照文件");
+            }
+            this.position = MAGIC.length;
+        }
+
+        /**
+         * @return 读完了返回null
+         */
+        private Record next() throws IOException{
+            if(position == size){
+                return null;
+            }
+            int keyLength = map(position, 4).getInt(offset());
+            int payloadLength = map(position, 16L + keyLength).getInt(offset() + 4 + keyLength + 8);
+            long recordLength = 16L + keyLength + payloadLength;
+            ByteBuffer buf = map(position, recordLength);
+            int offset = offset();
+            byte[] key = new byte[keyLength];
+            buf.position(offset + 4);
+            buf.get(key);
+            long ttl = buf.getLong();
+            byte[] payload = new byte[payloadLength];
+            buf.position(offset + 16 + keyLength);
+            buf.get(payload);
+            position += recordLength;
+            return new Record(key, ttl, payload);
+        }
+
+        private int offset(){
+            return (int) (position - windowStart);
+        }
+
+        /**
+         * 保证[from, from + length)在映射窗口内
+         */
+        private MappedByteBuffer map(long from, long length) throws IOException{
+            if(length < 0 || from + length > size){
+                throw new IOException("快照文件不完整，位置" + from);
+            }
+            if(window == null || from < windowStart || from + length > windowStart + window.capacity()){
+                long mapLength = Math.min(size - from, Math.max(windowBytes, length));
+                if(mapLength > Integer.MAX_VALUE){
+                    throw new IOException("单个key超过2GB");
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, from, mapLength);
+                windowStart = from;
+            }
+            return window;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.stream.StreamConsumerOptions;
+import com.github.xjs.redisclient.stream.StreamListener;
+import com.github.xjs.redisclient.stream.StreamRecord;
+import io.lettuce.core.Consumer;
+import io.lettuce.core.Limit;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.NestedMultiOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceExceptionConverter;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Redis Streams的生产者和消费者组
+ *
+ * 跟publish不同，消息会保存在stream里，消费者宕机期间的消息不会丢失；消费者组中的消息处理完成以后要XACK，
+ * 没有ACK的消息会一直留在pending列表里，超时以后可以被组里其他的消费者认领（XAUTOCLAIM），保证至少处理一次。
+ *
+ * spring-data-redis 2.1还没有stream的api，这里直接使用lettuce的连接，阻塞读使用独占的连接，不会影响其他命令。
+ */
+public class RedisStreamClient implements Closeable {
+
+    private static final long COMMAND_TIMEOUT_MILLIS = 60000;
+    private static final LettuceExceptionConverter EXCEPTION_CONVERTER = new LettuceExceptionConverter();
+
+    private final RedisClientService redisService;
+    private final RedisConnectionFactory connectionFactory;
+    private volatile RedisConnectionFactory dedicatedFactory;
+    private volatile boolean autoClaimSupported = true;
+    private final List<StreamSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public RedisStreamClient(RedisClientService redisService, RedisConnectionFactory connectionFactory) {
+        this.redisService = redisService;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /***************************producer************************************/
+    public String add(KeyPrefix prefix, String key, Map<String, ?> body){
+        return add(true, prefix, key, body, 0);
+    }
+
+    /**
+     * @param maxLen 大于0时使用MAXLEN ~ maxLen近似裁剪stream的长度
+     */
+    public String add(KeyPrefix prefix, String key, Map<String, ?> body, long maxLen){
+        return add(true, prefix, key, body, maxLen);
+    }
+
+    public String add(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Map<String, ?> body, long maxLen){
+        if(body == null || body.isEmpty()){
+            throw new IllegalArgumentException("消息内容不能为空");
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        Map<byte[], byte[]> fields = new LinkedHashMap<>(body.size());
+        for(Map.Entry<String, ?> entry : body.entrySet()){
+            fields.put(entry.getKey().getBytes(StandardCharsets.UTF_8), redisService.getCodec().encode(entry.getValue()));
+        }
+        XAddArgs args = new XAddArgs();
+        if(maxLen > 0){
+            args.maxlen(maxLen).approximateTrimming();
+        }
+        return execute(commands -> commands.xadd(keyBytes, args, fields));
+    }
+
+    /***************************consumer group************************************/
+    /**
+     * 创建消费者组，从最新的消息开始消费，stream不存在会自动创建，组已经存在时忽略
+     */
+    public void createGroup(KeyPrefix prefix, String key, String group){
+        createGroup(true, prefix, key, group);
+    }
+
+    public void createGroup(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String group){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        CommandArgs<byte[], byte[]> args = new CommandArgs<>(ByteArrayCodec.INSTANCE)
+                .add("CREATE").addKey(keyBytes).add(group).add("$").add("MKSTREAM");
+        try{
+            execute(commands -> commands.dispatch(CommandType.XGROUP, new StatusOutput<>(ByteArrayCodec.INSTANCE), args));
+        }catch(DataAccessException e){
+            if(e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")){
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * XREADGROUP读取新消息，blockMillis大于0时阻塞读，阻塞读每次会占用一条独占连接，持续消费请使用{@link #subscribe}
+     */
+    public List<StreamRecord> read(KeyPrefix prefix, String key, String group, String consumer, int count, long blockMillis){
+        return read(true, prefix, key, group, consumer, count, blockMillis);
+    }
+
+    public List<StreamRecord> read(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String group, String consumer, int count, long blockMillis){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        if(blockMillis <= 0){
+            return execute(commands -> commands.xreadgroup(consumer(group, consumer), XReadArgs.Builder.count(count),
+                    XReadArgs.StreamOffset.lastConsumed(keyBytes)), records -> toRecords(keyBytes, records));
+        }
+        RedisConnection connection = dedicatedFactory().getConnection();
+        try{
+            return readGroup(commands(connection), keyBytes, consumer(group, consumer), ">", count, blockMillis);
+        }finally{
+            connection.close();
+        }
+    }
+
+    /**
+     * 批量XACK
+     */
+    public long ack(KeyPrefix prefix, String key, String group, String... ids){
+        return ack(true, prefix, key, group, ids);
+    }
+
+    public long ack(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String group, String... ids){
+        if(ids == null || ids.length <= 0){
+            return 0;
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        Long cnt = execute(commands -> commands.xack(keyBytes, group.getBytes(StandardCharsets.UTF_8), ids));
+        return cnt == null ? 0 : cnt;
+    }
+
+    /**
+     * 把组内pending超过minIdleMillis的消息认领给consumer，最多认领count条
+     */
+    public List<StreamRecord> claim(KeyPrefix prefix, String key, String group, String consumer, long minIdleMillis, int count){
+        return claim(true, prefix, key, group, consumer, minIdleMillis, count);
+    }
+
+    public List<StreamRecord> claim(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String group, String consumer, long minIdleMillis, int count){
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        return redisService.getRedisTemplate(prefix).execute((RedisCallback<List<StreamRecord>>) connection ->
+                claim(commands(connection), keyBytes, consumer(group, consumer), minIdleMillis, "0-0", count).records);
+    }
+
+    /**
+     * 在后台线程中持续消费，处理成功的消息按批次XACK
+     */
+    public StreamSubscription subscribe(KeyPrefix prefix, String key, String group, String consumer, StreamListener listener){
+        return subscribe(true, prefix, key, group, consumer, new StreamConsumerOptions(), listener);
+    }
+
+    public StreamSubscription subscribe(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String group, String consumer, StreamConsumerOptions options, StreamListener listener){
+        createGroup(enableAppKeyPrefix, prefix, key, group);
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        StreamSubscription subscription = new StreamSubscription(this, keyBytes, consumer(group, consumer), options, listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    @Override
+    public void close(){
+        for(StreamSubscription subscription : subscriptions){
+            subscription.stop();
+        }
+        subscriptions.clear();
+        synchronized (this){
+            DedicatedConnectionFactory.release(connectionFactory, dedicatedFactory);
+            dedicatedFactory = null;
+        }
+    }
+
+    /***************************内部实现************************************/
+    void unregister(StreamSubscription subscription){
+        subscriptions.remove(subscription);
+    }
+
+    RedisConnectionFactory dedicatedFactory(){
+        RedisConnectionFactory factory = dedicatedFactory;
+        if(factory == null){
+            synchronized (this){
+                factory = dedicatedFactory;
+                if(factory == null){
+                    factory = DedicatedConnectionFactory.of(connectionFactory);
+                    dedicatedFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    List<StreamRecord> readGroup(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, Consumer<byte[]> consumer, String offset, int count, long blockMillis){
+        XReadArgs args = XReadArgs.Builder.count(count);
+        if(blockMillis > 0){
+            args.block(blockMillis);
+        }
+        List<StreamMessage<byte[], byte[]>> messages = await(commands.xreadgroup(consumer, args, XReadArgs.StreamOffset.from(keyBytes, offset)),
+                COMMAND_TIMEOUT_MILLIS + Math.max(blockMillis, 0));
+        return toRecords(keyBytes, messages);
+    }
+
+    long ack(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, byte[] group, List<String> ids){
+        if(ids.isEmpty()){
+            return 0;
+        }
+        Long cnt = await(commands.xack(keyBytes, group, ids.toArray(new String[0])), COMMAND_TIMEOUT_MILLIS);
+        return cnt == null ? 0 : cnt;
+    }
+
+    /**
+     * XAUTOCLAIM需要redis 6.2，低版本的redis使用XPENDING + XCLAIM
+     */
+    ClaimResult claim(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, Consumer<byte[]> consumer, long minIdleMillis, String start, int count){
+        if(autoClaimSupported){
+            try{
+                return autoClaim(commands, keyBytes, consumer, minIdleMillis, start, count);
+            }catch(DataAccessException e){
+                if(e.getMessage() == null || !e.getMessage().toLowerCase().contains("unknown command")){
+                    throw e;
+                }
+                autoClaimSupported = false;
+            }
+        }
+        //和XAUTOCLAIM一样从start往后翻一页，返回下一页的起点，翻到头返回0-0；低版本的XPENDING不支持IDLE和开区间
+        List<Object> pending = await(commands.xpending(keyBytes, consumer.getGroup(), Range.from(Range.Boundary.including(start), Range.Boundary.unbounded()), Limit.from(count)), COMMAND_TIMEOUT_MILLIS);
+        List<String> ids = new ArrayList<>();
+        String last = null;
+        for(Object entry : pending){
+            List<Object> fields = (List<Object>)entry;
+            last = asString(fields.get(0));
+            if(((Number)fields.get(2)).longValue() >= minIdleMillis){
+                ids.add(last);
+            }
+        }
+        String next = pending.size() < count || last == null ? "0-0" : nextId(last);
+        if(ids.isEmpty()){
+            return new ClaimResult(next, Collections.emptyList());
+        }
+        List<StreamMessage<byte[], byte[]>> messages = await(commands.xclaim(keyBytes, consumer, minIdleMillis, ids.toArray(new String[0])), COMMAND_TIMEOUT_MILLIS);
+        return new ClaimResult(next, toRecords(keyBytes, messages));
+    }
+
+    /**
+     * 紧挨着id的下一个id，作为闭区间的起点
+     */
+    static String nextId(String id){
+        int dash = id.indexOf('-');
+        long ms = Long.parseLong(id.substring(0, dash));
+        long seq = Long.parseUnsignedLong(id.substring(dash + 1));
+        return seq == -1L ? (ms + 1) + "-0" : ms + "-" + Long.toUnsignedString(seq + 1);
+    }
+
+    private ClaimResult autoClaim(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, Consumer<byte[]> consumer, long minIdleMillis, String start, int count){
+        CommandArgs<byte[], byte[]> args = new CommandArgs<>(ByteArrayCodec.INSTANCE)
+                .addKey(keyBytes).addValue(consumer.getGroup()).addValue(consumer.getName())
+                .add(minIdleMillis).add(start).add("COUNT").add(count);
+        List<Object> reply = await(commands.dispatch(StreamCommand.XAUTOCLAIM, new NestedMultiOutput<>(ByteArrayCodec.INSTANCE), args), COMMAND_TIMEOUT_MILLIS);
+        String next = asString(reply.get(0));
+        List<StreamRecord> records = new ArrayList<>();
+        String stream = new String(keyBytes, StandardCharsets.UTF_8);
+        for(Object entry : (List<Object>)reply.get(1)){
+            if(!(entry instanceof List)){
+                continue;
+            }
+            List<Object> message = (List<Object>)entry;
+            if(message.size() < 2 || message.get(1) == null){
+                //已经被XDEL的消息
+                continue;
+            }
+            List<Object> kvs = (List<Object>)message.get(1);
+            Map<String, byte[]> fields = new LinkedHashMap<>(kvs.size() / 2);
+            for(int i = 0; i + 1 < kvs.size(); i += 2){
+                fields.put(asString(kvs.get(i)), (byte[])kvs.get(i + 1));
+            }
+            records.add(new StreamRecord(stream, asString(message.get(0)), fields, redisService.getCodec()));
+        }
+        return new ClaimResult(next, records);
+    }
+
+    static RedisClusterAsyncCommands<byte[], byte[]> commands(RedisConnection connection){
+        Object nativeConnection = connection.getNativeConnection();
+        if(!(nativeConnection instanceof RedisClusterAsyncCommands)){
+            throw new UnsupportedOperationException("Redis Streams需要使用lettuce客户端");
+        }
+        return (RedisClusterAsyncCommands<byte[], byte[]>)nativeConnection;
+    }
+
+    private <T> T execute(Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<T>> action){
+        return execute(action, Function.identity());
+    }
+
+    private <T, R> R execute(Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<T>> action, Function<T, R> converter){
+        return redisService.getRedisTemplate().execute((RedisCallback<R>) connection ->
+                converter.apply(await(action.apply(commands(connection)), COMMAND_TIMEOUT_MILLIS)));
+    }
+
+    static <T> T await(RedisFuture<T> future, long timeoutMillis){
+        try{
+            return LettuceFutures.awaitOrCancel(future, timeoutMillis, TimeUnit.MILLISECONDS);
+        }catch(RuntimeException e){
+            DataAccessException translated = EXCEPTION_CONVERTER.convert(e);
+            throw translated != null ? translated : e;
+        }
+    }
+
+    private List<StreamRecord> toRecords(byte[] keyBytes, List<StreamMessage<byte[], byte[]>> messages){
+        if(messages == null || messages.isEmpty()){
+            return Collections.emptyList();
+        }
+        String stream = new String(keyBytes, StandardCharsets.UTF_8);
+        List<StreamRecord> records = new ArrayList<>(messages.size());
+        for(StreamMessage<byte[], byte[]> message : messages){
+            Map<byte[], byte[]> body = message.getBody();
+            Map<String, byte[]> fields = new LinkedHashMap<>(body == null ? 0 : body.size());
+            if(body != null){
+                for(Map.Entry<byte[], byte[]> entry : body.entrySet()){
+                    fields.put(new String(entry.getKey(), StandardCharsets.UTF_8), entry.getValue());
+                }
+            }
+            records.add(new StreamRecord(stream, message.getId(), fields, redisService.getCodec()));
+        }
+        return records;
+    }
+
+    private static Consumer<byte[]> consumer(String group, String name){
+        return Consumer.from(group.getBytes(StandardCharsets.UTF_8), name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String asString(Object value){
+        if(value instanceof byte[]){
+            return new String((byte[])value, StandardCharsets.UTF_8);
+        }
+        return value == null ? null : value.toString();
+    }
+
+    static final class ClaimResult {
+        final String next;
+        final List<StreamRecord> records;
+
+        ClaimResult(String next, List<StreamRecord> records) {
+            this.next = next;
+            this.records = records;
+        }
+    }
+
+    private enum StreamCommand implements ProtocolKeyword {
+        XAUTOCLAIM;
+
+        private final byte[] bytes = name().getBytes(StandardCharsets.US_ASCII);
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
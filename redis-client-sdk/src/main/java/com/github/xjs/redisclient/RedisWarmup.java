@@ -0,0 +1,274 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.warmup.WarmupMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import reactor.util.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 应用启动时的预热
+ *
+ * 新节点的第一批请求很慢：连接还没建立，编解码的代码还没有被JIT编译，一级缓存是空的。
+ * 开启spring.redis.warmup.enabled以后，在spring容器启动的最后阶段(web服务器开始接收请求以前)依次：
+ * 每个通道和读副本同时借出connections个连接执行PING；编解码和拼key执行codecIterations次，再读几次不存在的key走一遍读的完整路径；
+ * 把hotKeys和scanCaches里的key用MGET并行加载到RedisClientCache的一级缓存。
+ * 超过timeoutMillis不再等待，出错只打印日志，不影响应用启动。
+ */
+public class RedisWarmup implements SmartLifecycle {
+
+    private static Logger log = LoggerFactory.getLogger(RedisWarmup.class);
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+    private static final KeyPrefix WARMUP_KEY = new KeyPrefix() {
+        @Override
+        public String getPrefix() {
+            return "warmup:";
+        }
+
+        @Override
+        public int getExpireSeconds() {
+            return NEVER_EXPIRE;
+        }
+    };
+
+    private final RedisClientService redisService;
+    private final RedisClientProperties.Warmup options;
+    private final CacheManager cacheManager;
+    private volatile WarmupMetrics metrics;
+    private volatile boolean running;
+    /**
+     * 防止编解码的结果被JIT当成无用代码消除
+     */
+    private volatile int sink;
+
+    public RedisWarmup(RedisClientService redisService, @Nullable CacheManager cacheManager) {
+        this(redisService, redisService.getProperties().getWarmup(), cacheManager);
+    }
+
+    public RedisWarmup(RedisClientService redisService, RedisClientProperties.Warmup options, @Nullable CacheManager cacheManager) {
+        if(options.getConnections() < 0 || options.getCodecIterations() < 0 || options.getMaxScanKeys() < 0){
+            throw new IllegalArgumentException("connections、codecIterations和maxScanKeys不能小于0");
+        }
+        if(options.getBatchSize() <= 0 || options.getThreads() <= 0 || options.getTimeoutMillis() <= 0){
+            throw new IllegalArgumentException("batchSize、threads和timeoutMillis必须大于0");
+        }
+        this.redisService = redisService;
+        this.options = options;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 执行一次预热，容器启动时会自动调用
+     */
+    public WarmupMetrics warmUp(){
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(options.getTimeoutMillis());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(options.getThreads(), options.getConnections()), r -> {
+            Thread t = new Thread(r, "redis-warmup-" + THREAD_INDEX.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long connectionNanos = 0;
+        long codecNanos = 0;
+        long preloadNanos = 0;
+        AtomicLong preloaded = new AtomicLong();
+        boolean completed = false;
+        try{
+            long t = System.nanoTime();
+            boolean connected = connect(executor, deadline);
+            connectionNanos = System.nanoTime() - t;
+            t = System.nanoTime();
+            exerciseCodec();
+            codecNanos = System.nanoTime() - t;
+            t = System.nanoTime();
+            boolean loaded = preload(executor, deadline, preloaded);
+            preloadNanos = System.nanoTime() - t;
+            completed = connected && loaded;
+        }catch(RuntimeException e){
+            log.warn("redis预热失败:" + e.getMessage(), e);
+        }finally{
+            executor.shutdownNow();
+        }
+        WarmupMetrics ret = new WarmupMetrics(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), TimeUnit.NANOSECONDS.toMillis(connectionNanos),
+                TimeUnit.NANOSECONDS.toMillis(codecNanos), TimeUnit.NANOSECONDS.toMillis(preloadNanos), preloaded.get(), completed);
+        this.metrics = ret;
+        log.info("redis预热结束:" + ret);
+        return ret;
+    }
+
+    /**
+     * 最近一次预热的结果，还没有预热过时返回null
+     */
+    public WarmupMetrics getMetrics(){
+        return metrics;
+    }
+
+    /***************************SmartLifecycle************************************/
+    @Override
+    public void start() {
+        running = true;
+        warmUp();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /***************************内部实现************************************/
+    /**
+     * 每个RedisTemplate同时借出connections个连接，连接池里就有了这么多建立好的连接
+     */
+    private boolean connect(ExecutorService executor, long deadline){
+        boolean ok = true;
+        for(RedisTemplate<byte[], byte[]> template : redisService.templates()){
+            CountDownLatch latch = new CountDownLatch(options.getConnections());
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < options.getConnections(); i++){
+                futures.add(executor.submit(() -> template.execute((RedisCallback<Object>) connection -> {
+                    connection.ping();
+                    latch.countDown();
+                    try{
+                        latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                })));
+            }
+            ok &= await(futures, deadline);
+        }
+        return ok;
+    }
+
+    private void exerciseCodec(){
+        ValueCodec codec = redisService.getCodec();
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 1);
+        map.put("name", "warmup");
+        map.put("tags", Arrays.asList("a", "b"));
+        Object[] samples = {"warmup", 123456789L, 12345, 3.14, true, map, new ArrayList<>(map.keySet())};
+        List<KeyPrefix> prefixes = new ArrayList<>();
+        prefixes.add(WARMUP_KEY);
+        for(RedisClientCache cache : caches()){
+            prefixes.add(cache.getPrefix());
+        }
+        int sum = 0;
+        for(int i = 0; i < options.getCodecIterations(); i++){
+            Object sample = samples[i % samples.length];
+            byte[] bytes = codec.encode(sample);
+            Object decoded = codec.decode(bytes, sample.getClass());
+            Object fromBuffer = codec.decode(ByteBuffer.wrap(bytes), sample.getClass());
+            byte[] key = redisService.rawKey(true, prefixes.get(i % prefixes.size()), Integer.toString(i));
+            sum += bytes.length + key.length + decoded.hashCode() + fromBuffer.hashCode();
+        }
+        //不存在的key，走一遍读命令的完整路径
+        for(int i = 0; i < options.getCodecIterations() / 10; i++){
+            if(redisService.get(WARMUP_KEY, Integer.toString(i % 100), String.class) != null){
+                sum++;
+            }
+        }
+        sink = sum;
+    }
+
+    /**
+     * 每batchSize个key一个任务，并行用getAll加载到一级缓存；扫描在调用线程上执行
+     */
+    private boolean preload(ExecutorService executor, long deadline, AtomicLong preloaded){
+        List<Future<?>> futures = new ArrayList<>();
+        for(Map.Entry<String, List<String>> entry : options.getHotKeys().entrySet()){
+            RedisClientCache cache = cache(entry.getKey());
+            if(cache != null){
+                submit(executor, futures, cache, entry.getValue(), preloaded);
+            }
+        }
+        for(String name : options.getScanCaches()){
+            RedisClientCache cache = cache(name);
+            if(cache != null){
+                submit(executor, futures, cache, cache.scanKeys(options.getMaxScanKeys()), preloaded);
+            }
+        }
+        return await(futures, deadline);
+    }
+
+    private void submit(ExecutorService executor, List<Future<?>> futures, RedisClientCache cache, List<String> keys, AtomicLong preloaded){
+        for(int from = 0; from < keys.size(); from += options.getBatchSize()){
+            List<String> batch = keys.subList(from, Math.min(keys.size(), from + options.getBatchSize()));
+            futures.add(executor.submit(() -> preloaded.addAndGet(cache.getAll(batch).size())));
+        }
+    }
+
+    private RedisClientCache cache(String name){
+        Cache cache = cacheManager == null ? null : cacheManager.getCache(name);
+        if(!(cache instanceof RedisClientCache)){
+            log.warn("预热的cache不存在或者不是RedisClientCache:" + name);
+            return null;
+        }
+        if(!((RedisClientCache) cache).hasNearCache()){
+            log.warn("cache没有开启一级缓存，预加载没有效果:" + name);
+        }
+        return (RedisClientCache) cache;
+    }
+
+    private List<RedisClientCache> caches(){
+        List<RedisClientCache> ret = new ArrayList<>();
+        if(cacheManager != null){
+            for(String name : cacheManager.getCacheNames()){
+                Cache cache = cacheManager.getCache(name);
+                if(cache instanceof RedisClientCache){
+                    ret.add((RedisClientCache) cache);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return 全部在deadline以前成功结束返回true
+     */
+    private static boolean await(List<Future<?>> futures, long deadline){
+        boolean ok = true;
+        for(Future<?> future : futures){
+            try{
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }catch(TimeoutException e){
+                log.warn("redis预热超时");
+                return false;
+            }catch(ExecutionException e){
+                log.warn("redis预热出错:" + e.getCause().getMessage(), e.getCause());
+                ok = false;
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,242 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.codec.AsciiNumbers;
+import com.github.xjs.redisclient.key.KeyPrefix;
+import com.github.xjs.redisclient.queue.WorkItem;
+import com.github.xjs.redisclient.queue.WorkListener;
+import com.github.xjs.redisclient.queue.WorkQueueOptions;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于list的可靠工作队列
+ *
+ * 生产者LPUSH，消费者用BRPOPLPUSH阻塞地把消息移到自己的处理中列表，不需要轮询；处理成功以后从处理中列表删除。
+ * 每条消息取走时会在租约zset中记录到期时间，消费者宕机或者处理卡住，超过可见性超时的消息会被放回队列重新投递，保证至少处理一次。
+ * 阻塞读每个线程独占一条连接，不会影响其他命令。
+ *
+ * 队列、处理中列表、租约都以队列的key为前缀，集群模式下要在key里使用{hashtag}保证它们在同一个slot。
+ */
+public class RedisWorkQueue implements Closeable {
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> REAP_SCRIPT = new DefaultRedisScript<>();
+    private static final int ID_LENGTH = 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ONE = AsciiNumbers.encodeInt(1);
+    private static final byte[] ZERO = AsciiNumbers.encodeInt(0);
+    private static final byte[] TWO = AsciiNumbers.encodeInt(2);
+
+    static {
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/work_queue_claim.lua"));
+        CLAIM_SCRIPT.setResultType(List.class);
+        REAP_SCRIPT.setLocation(new ClassPathResource("com/github/xjs/redisclient/scripts/work_queue_reap.lua"));
+        REAP_SCRIPT.setResultType(Long.class);
+    }
+
+    private final RedisClientService redisService;
+    private final RedisConnectionFactory connectionFactory;
+    private volatile RedisConnectionFactory dedicatedFactory;
+    private final List<WorkQueueSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public RedisWorkQueue(RedisClientService redisService, RedisConnectionFactory connectionFactory) {
+        this.redisService = redisService;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /***************************producer************************************/
+    public Long push(KeyPrefix prefix, String key, Object... values){
+        return push(true, prefix, key, values);
+    }
+
+    /**
+     * 入队，每条消息会带上一个随机id
+     * @return 入队以后队列的长度
+     */
+    public Long push(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, Object... values){
+        if(values == null || values.length == 0){
+            throw new IllegalArgumentException("消息不能为空");
+        }
+        byte[] keyBytes = redisService.rawKey(enableAppKeyPrefix, prefix, key);
+        byte[][] items = new byte[values.length][];
+        for(int i = 0; i < values.length; i++){
+            items[i] = wrap(redisService.getCodec().encode(values[i]));
+        }
+        return redisService.getRedisTemplate(prefix).opsForList().leftPushAll(keyBytes, items);
+    }
+
+    /**
+     * 等待处理的消息数，不包括处理中的
+     */
+    public Long size(KeyPrefix prefix, String key){
+        return size(true, prefix, key);
+    }
+
+    public Long size(boolean enableAppKeyPrefix, KeyPrefix prefix, String key){
+        return redisService.getRedisTemplate(prefix).opsForList().size(redisService.rawKey(enableAppKeyPrefix, prefix, key));
+    }
+
+    /***************************consumer************************************/
+    public WorkQueueSubscription subscribe(KeyPrefix prefix, String key, String consumer, WorkListener listener){
+        return subscribe(true, prefix, key, consumer, new WorkQueueOptions(), listener);
+    }
+
+    /**
+     * 在后台线程中持续消费
+     * @param consumer 消费者的名字，同一个队列的消费者名字不能重复，重启以后使用相同的名字可以立即接管上次没处理完的消息
+     */
+    public WorkQueueSubscription subscribe(boolean enableAppKeyPrefix, KeyPrefix prefix, String key, String consumer, WorkQueueOptions options, WorkListener listener){
+        if(options.getConcurrency() <= 0 || options.getBatchSize() <= 0 || options.getBlockSeconds() <= 0){
+            throw new IllegalArgumentException("concurrency、batchSize和blockSeconds必须大于0");
+        }
+        if(options.getVisibilityTimeoutMillis() <= 0 || options.getReapIntervalMillis() <= 0){
+            throw new IllegalArgumentException("visibilityTimeoutMillis和reapIntervalMillis必须大于0");
+        }
+        Keys keys = new Keys(new String(redisService.rawKey(enableAppKeyPrefix, prefix, key), StandardCharsets.UTF_8));
+        WorkQueueSubscription subscription = new WorkQueueSubscription(this, keys, consumer, options, listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    @Override
+    public void close(){
+        for(WorkQueueSubscription subscription : subscriptions){
+            subscription.stop();
+        }
+        subscriptions.clear();
+        synchronized (this){
+            DedicatedConnectionFactory.release(connectionFactory, dedicatedFactory);
+            dedicatedFactory = null;
+        }
+    }
+
+    /***************************内部实现************************************/
+    void unregister(WorkQueueSubscription subscription){
+        subscriptions.remove(subscription);
+    }
+
+    RedisConnectionFactory dedicatedFactory(){
+        RedisConnectionFactory factory = dedicatedFactory;
+        if(factory == null){
+            synchronized (this){
+                factory = dedicatedFactory;
+                if(factory == null){
+                    factory = DedicatedConnectionFactory.of(connectionFactory);
+                    dedicatedFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * 给已经移过来的first加上租约，再从队列里最多移count条过来
+     */
+    List<byte[]> claim(Keys keys, String consumer, byte[] first, int count, long visibilityTimeoutMillis){
+        List<byte[]> scriptKeys = Arrays.asList(keys.queue, keys.processing(consumer), keys.leases(consumer));
+        List<byte[]> items = redisService.eval(null, CLAIM_SCRIPT, scriptKeys,
+                AsciiNumbers.encodeLong(visibilityTimeoutMillis), AsciiNumbers.encodeInt(count), first);
+        List<byte[]> ret = new ArrayList<>(items.size() + 1);
+        ret.add(first);
+        ret.addAll(items);
+        return ret;
+    }
+
+    /**
+     * 一次pipeline把处理成功的消息从处理中列表和租约中删掉
+     */
+    void ack(Keys keys, String consumer, List<byte[]> items){
+        if(items.isEmpty()){
+            return;
+        }
+        byte[] processing = keys.processing(consumer);
+        byte[] leases = keys.leases(consumer);
+        redisService.getRedisTemplate().executePipelined((RedisCallback<Object>) connection -> {
+            for(byte[] item : items){
+                connection.lRem(processing, 1, item);
+                connection.zRem(leases, item);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 更新自己的心跳，并把所有消费者租约到期的消息放回队列
+     * @param recover 刚启动时为true，自己处理中的消息不管租约有没有到期全部放回队列
+     * @return 放回队列的消息数
+     */
+    long reap(Keys keys, String self, long visibilityTimeoutMillis, long consumerTimeoutMillis, boolean recover){
+        Set<byte[]> registered = redisService.getRedisTemplate().opsForZSet().range(keys.consumers, 0, -1);
+        List<String> consumers = new ArrayList<>();
+        consumers.add(self);
+        if(registered != null){
+            for(byte[] name : registered){
+                String consumer = new String(name, StandardCharsets.UTF_8);
+                if(!consumer.equals(self)){
+                    consumers.add(consumer);
+                }
+            }
+        }
+        long requeued = 0;
+        for(String consumer : consumers){
+            List<byte[]> scriptKeys = Arrays.asList(keys.queue, keys.processing(consumer), keys.leases(consumer), keys.consumers);
+            Long count = redisService.eval(null, REAP_SCRIPT, scriptKeys, AsciiNumbers.encodeLong(visibilityTimeoutMillis),
+                    consumer.getBytes(StandardCharsets.UTF_8), !consumer.equals(self) ? ZERO : (recover ? TWO : ONE), AsciiNumbers.encodeLong(consumerTimeoutMillis));
+            requeued += count == null ? 0 : count;
+        }
+        return requeued;
+    }
+
+    WorkItem toItem(Keys keys, byte[] item){
+        String id = new String(item, 0, ID_LENGTH, StandardCharsets.US_ASCII);
+        byte[] value = Arrays.copyOfRange(item, ID_LENGTH + 1, item.length);
+        return new WorkItem(keys.name, id, value, redisService.getCodec());
+    }
+
+    /**
+     * 16位十六进制的随机id + ':' + value
+     */
+    private static byte[] wrap(byte[] value){
+        byte[] item = new byte[ID_LENGTH + 1 + value.length];
+        long id = ThreadLocalRandom.current().nextLong();
+        for(int i = ID_LENGTH - 1; i >= 0; i--){
+            item[i] = HEX[(int)(id & 0xF)];
+            id >>>= 4;
+        }
+        item[ID_LENGTH] = ':';
+        System.arraycopy(value, 0, item, ID_LENGTH + 1, value.length);
+        return item;
+    }
+
+    static final class Keys {
+        private final String name;
+        final byte[] queue;
+        private final byte[] consumers;
+
+        private Keys(String name) {
+            this.name = name;
+            this.queue = name.getBytes(StandardCharsets.UTF_8);
+            this.consumers = (name + ":consumers").getBytes(StandardCharsets.UTF_8);
+        }
+
+        byte[] processing(String consumer){
+            return (name + ":processing:" + consumer).getBytes(StandardCharsets.UTF_8);
+        }
+
+        byte[] leases(String consumer){
+            return (name + ":leases:" + consumer).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.replica.ReadPreference;
+import io.lettuce.core.ReadFrom;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读副本用的连接
+ *
+ * 按原来的配置为每种{@link ReadPreference}复制一个带ReadFrom的LettuceConnectionFactory：单机配置改成master+spring.redis.replica-reads.nodes
+ * 的静态主从拓扑，哨兵和集群沿用原来的拓扑。lettuce只把只读命令发到副本，即使在这个连接上执行了写命令也会发到master。
+ */
+final class ReplicaRouter {
+
+    private final LettuceConnectionFactory original;
+    private final List<String> nodes;
+    private final OperationTracer tracer;
+    /**
+     * 构造时建好，之后只读，读路径上不加锁
+     */
+    private final Map<ReadPreference, LettuceConnectionFactory> factories = new EnumMap<>(ReadPreference.class);
+    private final Map<ReadPreference, RedisTemplate<byte[], byte[]>> templates = new EnumMap<>(ReadPreference.class);
+
+    /**
+     * @param tracer 为null时不跟踪
+     */
+    ReplicaRouter(RedisConnectionFactory factory, RedisClientProperties.ReplicaReads replicaReads, OperationTracer tracer) {
+        if(!(factory instanceof LettuceConnectionFactory)){
+            throw new IllegalArgumentException("读副本只支持lettuce");
+        }
+        this.original = (LettuceConnectionFactory)factory;
+        this.nodes = replicaReads.getNodes();
+        this.tracer = tracer;
+        if(!original.isClusterAware() && !original.isRedisSentinelAware() && nodes.isEmpty()){
+            throw new IllegalArgumentException("单机模式读副本需要配置spring.redis.replica-reads.nodes");
+        }
+        //连接在第一次使用时才建立，这里只创建factory
+        try{
+            for(ReadPreference preference : ReadPreference.values()){
+                if(preference != ReadPreference.MASTER){
+                    LettuceConnectionFactory replicaFactory = create(readFrom(preference));
+                    factories.put(preference, replicaFactory);
+                    templates.put(preference, ConnectionLanes.template(OperationTracer.trace(tracer, replicaFactory)));
+                }
+            }
+        }catch(RuntimeException e){
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param preference 不能是MASTER，读master用原来的连接
+     */
+    RedisTemplate<byte[], byte[]> template(ReadPreference preference){
+        RedisTemplate<byte[], byte[]> template = templates.get(preference);
+        if(template == null){
+            throw new IllegalArgumentException("读master不经过副本连接");
+        }
+        return template;
+    }
+
+    void close(){
+        for(LettuceConnectionFactory factory : factories.values()){
+            factory.destroy();
+        }
+    }
+
+    private LettuceConnectionFactory create(ReadFrom readFrom){
+        LettuceClientConfiguration client = withReadFrom(original.getClientConfiguration(), readFrom);
+        LettuceConnectionFactory factory;
+        if(original.isClusterAware()){
+            factory = new LettuceConnectionFactory(original.getClusterConfiguration(), client);
+        }else if(original.isRedisSentinelAware()){
+            factory = new LettuceConnectionFactory(original.getSentinelConfiguration(), client);
+        }else{
+            RedisStandaloneConfiguration standalone = original.getStandaloneConfiguration();
+            RedisStaticMasterReplicaConfiguration topology = new RedisStaticMasterReplicaConfiguration(standalone.getHostName(), standalone.getPort());
+            for(String node : nodes){
+                int index = node.lastIndexOf(':');
+                if(index <= 0){
+                    throw new IllegalArgumentException("副本地址格式是host:port，" + node);
+                }
+                topology.node(node.substring(0, index).trim(), Integer.parseInt(node.substring(index + 1).trim()));
+            }
+            topology.setPassword(standalone.getPassword());
+            topology.setDatabase(original.getDatabase());
+            factory = new LettuceConnectionFactory(topology, client);
+        }
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    private static ReadFrom readFrom(ReadPreference preference){
+        switch(preference){
+            case REPLICA_PREFERRED:
+                return ReadFrom.SLAVE_PREFERRED;
+            case NEAREST:
+                return ReadFrom.NEAREST;
+            default:
+                return ReadFrom.MASTER;
+        }
+    }
+
+    private static LettuceClientConfiguration withReadFrom(LettuceClientConfiguration config, ReadFrom readFrom){
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder();
+        if(config.isUseSsl()){
+            LettuceClientConfiguration.LettuceSslClientConfigurationBuilder ssl = builder.useSsl();
+            if(!config.isVerifyPeer()){
+                ssl.disablePeerVerification();
+            }
+            if(config.isStartTls()){
+                ssl.startTls();
+            }
+        }
+        config.getClientResources().ifPresent(builder::clientResources);
+        config.getClientOptions().ifPresent(builder::clientOptions);
+        config.getClientName().ifPresent(builder::clientName);
+        return builder.readFrom(readFrom)
+                .commandTimeout(config.getCommandTimeout())
+                .shutdownTimeout(config.getShutdownTimeout())
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.xjs.redisclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 本地保存最近读到的值，redis读超时或者不可用时返回，key不存在的结果也会保存
+ *
+ * 值按key分组，string的值和hash的field、zset的member都挂在所属的key下面，删除整个key时直接移除这一组，不用遍历所有保存的值。
+ * 按key的访问顺序淘汰，保存的值超过maxSize个时先淘汰最久没用的key。
+ */
+final class StaleStore {
+
+    private static final Object NULL = new Object();
+
+    private final int maxSize;
+    private final long expireNanos;
+    private final LinkedHashMap<String, Map<String, Entry>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int size;
+
+    StaleStore(int maxSize, long expireMillis) {
+        if(maxSize <= 0 || expireMillis <= 0){
+            throw new IllegalArgumentException("保存旧值的最大个数和过期时间必须大于0");
+        }
+        this.maxSize = maxSize;
+        this.expireNanos = expireMillis * 1000000L;
+    }
+
+    /**
+     * @param field hash的field或者zset的member，string为null
+     */
+    <R> R remember(byte[] key, byte[] field, R value){
+        Entry entry = new Entry(value == null ? NULL : value, System.nanoTime() + expireNanos);
+        synchronized(this){
+            Map<String, Entry> fields = entries.computeIfAbsent(key(key), k -> new HashMap<>());
+            if(fields.put(field(field), entry) == null){
+                size++;
+            }
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * @param missing 没有保存时抛出的异常
+     */
+    @SuppressWarnings("unchecked")
+    <R> R get(byte[] key, byte[] field, Supplier<? extends RuntimeException> missing){
+        Object value = null;
+        synchronized(this){
+            String k = key(key);
+            Map<String, Entry> fields = entries.get(k);
+            Entry entry = fields == null ? null : fields.get(field(field));
+            if(entry != null){
+                if(entry.expireAt - System.nanoTime() < 0){
+                    remove(k, fields, field(field));
+                }else{
+                    value = entry.value;
+                }
+            }
+        }
+        if(value == null){
+            throw missing.get();
+        }
+        return value == NULL ? null : (R) value;
+    }
+
+    /**
+     * @param field hash的field或者zset的member，string为null
+     */
+    synchronized void remove(byte[] key, byte[] field){
+        String k = key(key);
+        Map<String, Entry> fields = entries.get(k);
+        if(fields != null){
+            remove(k, fields, field(field));
+        }
+    }
+
+    /**
+     * 删除key本身和key下面保存的所有field、member
+     */
+    synchronized void removeAll(byte[] key){
+        Map<String, Entry> fields = entries.remove(key(key));
+        if(fields != null){
+            size -= fields.size();
+        }
+    }
+
+    private void remove(String key, Map<String, Entry> fields, String field){
+        if(fields.remove(field) != null){
+            size--;
+            if(fields.isEmpty()){
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 先整组淘汰最久没用的key，只剩一个key时逐个淘汰它的field
+     */
+    private void evict(){
+        Iterator<Map<String, Entry>> it = entries.values().iterator();
+        while(size > maxSize){
+            Map<String, Entry> eldest = it.next();
+            if(it.hasNext()){
+                size -= eldest.size();
+                it.remove();
+            }else{
+                Iterator<String> fields = eldest.keySet().iterator();
+                while(size > maxSize){
+                    fields.next();
+                    fields.remove();
+                    size--;
+                }
+            }
+        }
+    }
+
+    private static String key(byte[] key){
+        return new String(key, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String field(byte[] field){
+        return field == null ? null : new String(field, StandardCharsets.ISO_8859_1);
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.stream.StreamConsumerOptions;
+import com.github.xjs.redisclient.stream.StreamListener;
+import com.github.xjs.redisclient.stream.StreamRecord;
+import io.lettuce.core.Consumer;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 消费者组的一个订阅，独占一条连接循环XREADGROUP
+ *
+ * 启动时先把自己名下还没ACK的消息重新处理一遍，然后阻塞读取新消息；每个批次并行交给listener处理，
+ * 成功的消息一次XACK，失败的留在pending中，定期用XAUTOCLAIM把组里超时的消息认领过来重试。
+ */
+public class StreamSubscription {
+
+    private static Logger log = LoggerFactory.getLogger(StreamSubscription.class);
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final RedisStreamClient client;
+    private final byte[] keyBytes;
+    private final Consumer<byte[]> consumer;
+    private final StreamConsumerOptions options;
+    private final StreamListener listener;
+    private final ExecutorService workers;
+    private final Thread thread;
+    private volatile boolean running;
+
+    StreamSubscription(RedisStreamClient client, byte[] keyBytes, Consumer<byte[]> consumer, StreamConsumerOptions options, StreamListener listener) {
+        this.client = client;
+        this.keyBytes = keyBytes;
+        this.consumer = consumer;
+        this.options = options;
+        this.listener = listener;
+        String name = "redis-stream-" + new String(consumer.getName(), StandardCharsets.UTF_8) + "-" + THREAD_INDEX.incrementAndGet();
+        this.workers = options.getConcurrency() > 1 ? Executors.newFixedThreadPool(options.getConcurrency(), r -> {
+            Thread t = new Thread(r, name + "-worker");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start(){
+        running = true;
+        thread.start();
+    }
+
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * 停止消费，最多等待一个阻塞读的时间
+     */
+    public void stop(){
+        if(!running){
+            return;
+        }
+        running = false;
+        client.unregister(this);
+        try{
+            thread.join(options.getBlockMillis() + 5000);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        if(workers != null){
+            workers.shutdown();
+        }
+    }
+
+    private void run(){
+        RedisConnection connection = null;
+        String recoverFrom = "0";
+        String claimCursor = "0-0";
+        long nextClaimAt = 0;
+        while(running){
+            try{
+                if(connection == null){
+                    connection = client.dedicatedFactory().getConnection();
+                }
+                RedisClusterAsyncCommands<byte[], byte[]> commands = RedisStreamClient.commands(connection);
+                if(recoverFrom != null){
+                    List<StreamRecord> records = client.readGroup(commands, keyBytes, consumer, recoverFrom, options.getBatchSize(), 0);
+                    if(records.isEmpty()){
+                        recoverFrom = null;
+                    }else{
+                        recoverFrom = records.get(records.size() - 1).getId();
+                        process(commands, records);
+                    }
+                    continue;
+                }
+                if(options.getClaimIdleMillis() > 0 && System.currentTimeMillis() >= nextClaimAt){
+                    RedisStreamClient.ClaimResult claimed = client.claim(commands, keyBytes, consumer, options.getClaimIdleMillis(), claimCursor, options.getBatchSize());
+                    claimCursor = claimed.next;
+                    process(commands, claimed.records);
+                    if("0-0".equals(claimCursor)){
+                        nextClaimAt = System.currentTimeMillis() + options.getClaimIntervalMillis();
+                    }
+                }
+                process(commands, client.readGroup(commands, keyBytes, consumer, ">", options.getBatchSize(), options.getBlockMillis()));
+            }catch(Exception e){
+                if(!running){
+                    break;
+                }
+                log.error("消费stream消息失败:" + e.getMessage(), e);
+                connection = closeQuietly(connection);
+                sleepQuietly(1000);
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    private void process(RedisClusterAsyncCommands<byte[], byte[]> commands, List<StreamRecord> records) throws InterruptedException{
+        if(records.isEmpty()){
+            return;
+        }
+        List<String> acks = new ArrayList<>(records.size());
+        if(workers == null){
+            for(StreamRecord record : records){
+                if(handle(record)){
+                    acks.add(record.getId());
+                }
+            }
+        }else{
+            List<Callable<Boolean>> tasks = new ArrayList<>(records.size());
+            for(StreamRecord record : records){
+                tasks.add(() -> handle(record));
+            }
+            List<Future<Boolean>> results = workers.invokeAll(tasks);
+            for(int i = 0; i < results.size(); i++){
+                if(Boolean.TRUE.equals(getQuietly(results.get(i)))){
+                    acks.add(records.get(i).getId());
+                }
+            }
+        }
+        client.ack(commands, keyBytes, consumer.getGroup(), acks);
+    }
+
+    private boolean handle(StreamRecord record){
+        try{
+            listener.onMessage(record);
+            return true;
+        }catch(Exception e){
+            log.error("处理stream消息" + record.getId() + "失败，等待重新投递:" + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static Boolean getQuietly(Future<Boolean> future){
+        try{
+            return future.get();
+        }catch(Exception e){
+            return false;
+        }
+    }
+
+    private static RedisConnection closeQuietly(RedisConnection connection){
+        if(connection != null){
+            try{
+                connection.close();
+            }catch(Exception e){
+                log.warn(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private static void sleepQuietly(long millis){
+        try{
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.key.KeyPrefix;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 带跟踪的连接
+ *
+ * 返回的连接是代理，每个命令执行完把命令名(方法名转成大写)、key的个数、参数和返回值交给{@link OperationTracer}，要记下来时才计算字节数。
+ * pipeline和事务里排队的命令累加起来，以closePipeline()和exec()/discard()为准记一次PIPELINE或者EXEC/DISCARD。
+ */
+final class TracingConnectionFactory implements RedisConnectionFactory {
+
+    /**
+     * 不访问redis的方法，直接调用
+     */
+    private static final Set<String> LOCAL_METHODS = new HashSet<>(Arrays.asList("close", "isClosed", "getNativeConnection",
+            "isQueueing", "isPipelined", "openPipeline", "isSubscribed", "getSubscription", "getSentinelConnection",
+            "equals", "hashCode", "toString"));
+    /**
+     * 第一个参数是目标key，后面的byte[][]是源key
+     */
+    private static final Set<String> STORE_METHODS = new HashSet<>(Arrays.asList("pfMerge", "sInterStore", "sUnionStore", "sDiffStore",
+            "zUnionStore", "zInterStore"));
+
+    private final OperationTracer tracer;
+    private final RedisConnectionFactory delegate;
+
+    TracingConnectionFactory(OperationTracer tracer, RedisConnectionFactory delegate) {
+        this.tracer = tracer;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return trace(delegate.getConnection());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return (RedisClusterConnection) trace(delegate.getClusterConnection());
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    private RedisConnection trace(RedisConnection target){
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, new Traced(target));
+    }
+
+    /**
+     * 按参数估算key的个数：第一个参数是key的算1个，是key数组或者map的算它的长度，EVAL按numKeys
+     */
+    static int keyCount(String name, Object[] args){
+        if(args == null || args.length == 0){
+            return 0;
+        }
+        if(("eval".equals(name) || "evalSha".equals(name)) && args.length > 2 && args[2] instanceof Integer){
+            return (Integer) args[2];
+        }
+        if("bitOp".equals(name) && args.length > 2 && args[2] instanceof byte[][]){
+            return 1 + ((byte[][]) args[2]).length;
+        }
+        Object first = args[0];
+        if(first instanceof byte[][]){
+            return ((byte[][]) first).length;
+        }
+        if(first instanceof Map){
+            return ((Map<?, ?>) first).size();
+        }
+        if(first instanceof byte[]){
+            return STORE_METHODS.contains(name) && args.length > 1 && args[1] instanceof byte[][] ? 1 + ((byte[][]) args[1]).length : 1;
+        }
+        return 0;
+    }
+
+    private final class Traced implements InvocationHandler {
+        private final RedisConnection target;
+        /**
+         * pipeline和事务里排队的命令
+         */
+        private KeyPrefix queuedPrefix;
+        private int queuedKeys;
+        /**
+         * 排队的命令的参数，记下来时才计算字节数；连接上的pipeline一个接一个，复用同一个list
+         */
+        private final List<Object[]> queuedArgs = new ArrayList<>();
+        private long queuedStart;
+        private boolean queuing;
+
+        private Traced(RedisConnection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if("equals".equals(name) && method.getParameterCount() == 1){
+                return proxy == args[0];
+            }
+            if("hashCode".equals(name) && method.getParameterCount() == 0){
+                return System.identityHashCode(proxy);
+            }
+            if(LOCAL_METHODS.contains(name) || (name.endsWith("Commands") && method.getParameterCount() == 0)){
+                return call(method, args);
+            }
+            boolean closing = "closePipeline".equals(name) || "exec".equals(name) || "discard".equals(name);
+            if(!closing && (target.isPipelined() || target.isQueueing())){
+                if(!queuing){
+                    queuing = true;
+                    queuedPrefix = tracer.current();
+                    queuedStart = System.nanoTime();
+                }
+                queuedKeys += keyCount(name, args);
+                queuedArgs.add(args);
+                return call(method, args);
+            }
+            String command;
+            KeyPrefix prefix;
+            int keys;
+            Object request;
+            long start;
+            if(closing){
+                command = "closePipeline".equals(name) ? "PIPELINE" : name.toUpperCase(Locale.ROOT);
+                prefix = queuing ? queuedPrefix : tracer.current();
+                keys = queuedKeys;
+                request = queuedArgs;
+                start = queuing ? queuedStart : System.nanoTime();
+                queuing = false;
+                queuedPrefix = null;
+                queuedKeys = 0;
+            }else{
+                command = name.toUpperCase(Locale.ROOT);
+                prefix = tracer.current();
+                keys = keyCount(name, args);
+                request = args;
+                start = System.nanoTime();
+            }
+            try{
+                Object ret = call(method, args);
+                tracer.record(prefix, command, keys, request, ret, start, null);
+                return ret;
+            }catch(Throwable e){
+                tracer.record(prefix, command, keys, request, null, start, e);
+                throw e;
+            }finally{
+                if(closing){
+                    queuedArgs.clear();
+                }
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try{
+                return method.invoke(target, args);
+            }catch(InvocationTargetException e){
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.xjs.redisclient;
+
+import com.github.xjs.redisclient.queue.WorkItem;
+import com.github.xjs.redisclient.queue.WorkListener;
+import com.github.xjs.redisclient.queue.WorkQueueOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 工作队列的一个消费者
+ *
+ * concurrency个线程各自独占一条连接，BRPOPLPUSH阻塞等到一条消息以后，再用lua脚本顺带取走最多batchSize-1条，
+ * 一起处理，处理成功的一次pipeline确认。另有一个定时任务负责心跳和把租约到期的消息放回队列。
+ */
+public class WorkQueueSubscription {
+
+    private static Logger log = LoggerFactory.getLogger(WorkQueueSubscription.class);
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final RedisWorkQueue queue;
+    private final RedisWorkQueue.Keys keys;
+    private final String consumer;
+    private final byte[] processing;
+    private final WorkQueueOptions options;
+    private final WorkListener listener;
+    private final List<Thread> threads = new ArrayList<>();
+    private final ScheduledExecutorService reaper;
+    private volatile boolean running;
+
+    WorkQueueSubscription(RedisWorkQueue queue, RedisWorkQueue.Keys keys, String consumer, WorkQueueOptions options, WorkListener listener) {
+        this.queue = queue;
+        this.keys = keys;
+        this.consumer = consumer;
+        this.processing = keys.processing(consumer);
+        this.options = options;
+        this.listener = listener;
+        String name = "redis-work-queue-" + consumer + "-" + THREAD_INDEX.incrementAndGet();
+        for(int i = 0; i < options.getConcurrency(); i++){
+            Thread thread = new Thread(this::run, name + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start(){
+        //先注册心跳，并接管自己上次没处理完的消息
+        reap(true);
+        running = true;
+        reaper.scheduleWithFixedDelay(this::reapQuietly, options.getReapIntervalMillis(), options.getReapIntervalMillis(), TimeUnit.MILLISECONDS);
+        for(Thread thread : threads){
+            thread.start();
+        }
+    }
+
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * 停止消费，最多等待一个阻塞读的时间，已经取到的消息会处理完
+     */
+    public void stop(){
+        if(!running){
+            return;
+        }
+        running = false;
+        queue.unregister(this);
+        reaper.shutdown();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.getBlockSeconds()) + 5000;
+        try{
+            for(Thread thread : threads){
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reapQuietly(){
+        try{
+            reap(false);
+        }catch(Exception e){
+            log.error("检查超时消息失败:" + e.getMessage(), e);
+        }
+    }
+
+    private void reap(boolean recover){
+        long requeued = queue.reap(keys, consumer, options.getVisibilityTimeoutMillis(),
+                Math.max(options.getVisibilityTimeoutMillis(), options.getReapIntervalMillis() * 3), recover);
+        if(requeued > 0){
+            log.warn("{}条未确认的消息被放回队列", requeued);
+        }
+    }
+
+    private void run(){
+        RedisConnection connection = null;
+        while(running){
+            try{
+                if(connection == null){
+                    connection = queue.dedicatedFactory().getConnection();
+                }
+                byte[] first = connection.bRPopLPush(options.getBlockSeconds(), keys.queue, processing);
+                if(first == null){
+                    continue;
+                }
+                process(queue.claim(keys, consumer, first, options.getBatchSize() - 1, options.getVisibilityTimeoutMillis()));
+            }catch(Exception e){
+                if(!running){
+                    break;
+                }
+                log.error("消费工作队列失败:" + e.getMessage(), e);
+                connection = closeQuietly(connection);
+                sleepQuietly(1000);
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    private void process(List<byte[]> items){
+        List<byte[]> acks = new ArrayList<>(items.size());
+        for(byte[] item : items){
+            WorkItem workItem = queue.toItem(keys, item);
+            try{
+                listener.onMessage(workItem);
+                acks.add(item);
+            }catch(Exception e){
+                log.error("处理消息" + workItem.getId() + "失败，超时以后重新投递:" + e.getMessage(), e);
+            }
+        }
+        queue.ack(keys, consumer, acks);
+    }
+
+    private static RedisConnection closeQuietly(RedisConnection connection){
+        if(connection != null){
+            try{
+                connection.close();
+            }catch(Exception e){
+                log.warn(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private static void sleepQuietly(long millis){
+        try{
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
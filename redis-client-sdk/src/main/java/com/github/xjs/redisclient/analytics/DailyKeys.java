@@ -0,0 +1,38 @@
+package com.github.xjs.redisclient.analytics;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 按天滚动的key，在key后面加上":yyyyMMdd"
+ *
+ * 集群模式下多天的key要合并(PFCOUNT/PFMERGE/BITOP)时，key里要带hash tag，比如"{uv}"，保证落在同一个slot上。
+ */
+public final class DailyKeys {
+
+    private DailyKeys() {
+    }
+
+    public static String key(String key, LocalDate day){
+        return key + ":" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    public static String today(String key){
+        return key(key, LocalDate.now(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @return 截止到lastDay(含)的最近days天的key，从lastDay往前排
+     */
+    public static String[] lastDays(String key, LocalDate lastDay, int days){
+        if(days <= 0){
+            throw new IllegalArgumentException("days必须大于0");
+        }
+        String[] keys = new String[days];
+        for(int i = 0; i < days; i++){
+            keys[i] = key(key, lastDay.minusDays(i));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.xjs.redisclient.breaker;
+
+/**
+ * 熔断器的指标快照
+ *
+ * calls、failureRate、slowCallRate是最近windowSeconds秒的统计，notPermittedCalls是熔断期间被直接拒绝的命令数，
+ * staleServed是redis不可用时返回本地旧值的次数。
+ */
+public class CircuitBreakerMetrics {
+
+    private final CircuitState state;
+    private final long calls;
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long notPermittedCalls;
+    private final long timesOpened;
+    private final long staleServed;
+
+    public CircuitBreakerMetrics(CircuitState state, long calls, double failureRate, double slowCallRate,
+                                 long notPermittedCalls, long timesOpened, long staleServed) {
+        this.state = state;
+        this.calls = calls;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.notPermittedCalls = notPermittedCalls;
+        this.timesOpened = timesOpened;
+        this.staleServed = staleServed;
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public double getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public long getNotPermittedCalls() {
+        return notPermittedCalls;
+    }
+
+    public long getTimesOpened() {
+        return timesOpened;
+    }
+
+    public long getStaleServed() {
+        return staleServed;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerMetrics{" +
+                "state=" + state +
+                ", calls=" + calls +
+                ", failureRate=" + failureRate +
+                ", slowCallRate=" + slowCallRate +
+                ", notPermittedCalls=" + notPermittedCalls +
+                ", timesOpened=" + timesOpened +
+                ", staleServed=" + staleServed +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.xjs.redisclient.breaker;
+
+/**
+ * 熔断器的状态
+ */
+public enum CircuitState {
+    /**
+     * 正常放行，统计失败率和慢调用率
+     */
+    CLOSED,
+    /**
+     * 熔断中，所有命令直接失败，不再等待超时
+     */
+    OPEN,
+    /**
+     * 熔断时间到了以后放行少量探测命令，都成功就恢复，有一个失败就重新熔断
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,59 @@
+package com.github.xjs.redisclient.cache;
+
+/**
+ * RedisClientCacheManager中一个cache的参数
+ */
+public class CacheOptions {
+
+    /**
+     * value的类型，不设置时String原样写入，其他的值带类型写入，读出来的类型和写入时一样
+     */
+    private Class<?> valueType;
+
+    /**
+     * 是否缓存null，缓存穿透时可以避免每次都回源
+     */
+    private boolean allowNullValues = true;
+
+    /**
+     * 本地一级缓存最多保存多少个key，0表示不开启
+     */
+    private int nearCacheMaxSize = 0;
+
+    /**
+     * 本地一级缓存的有效期，其他节点的更新最多延迟这么久可见
+     */
+    private long nearCacheExpireMillis = 5000;
+
+    public Class<?> getValueType() {
+        return valueType;
+    }
+
+    public void setValueType(Class<?> valueType) {
+        this.valueType = valueType;
+    }
+
+    public boolean isAllowNullValues() {
+        return allowNullValues;
+    }
+
+    public void setAllowNullValues(boolean allowNullValues) {
+        this.allowNullValues = allowNullValues;
+    }
+
+    public int getNearCacheMaxSize() {
+        return nearCacheMaxSize;
+    }
+
+    public void setNearCacheMaxSize(int nearCacheMaxSize) {
+        this.nearCacheMaxSize = nearCacheMaxSize;
+    }
+
+    public long getNearCacheExpireMillis() {
+        return nearCacheExpireMillis;
+    }
+
+    public void setNearCacheExpireMillis(long nearCacheExpireMillis) {
+        this.nearCacheExpireMillis = nearCacheExpireMillis;
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.xjs.redisclient.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接在byte[]上做数字和ASCII之间的转换，不经过String
+ *
+ * 输出的格式与{@link Long#toString(long)}、{@link Double#toString(double)}、{@link Boolean#toString(boolean)}完全一致，
+ * 跟之前写入的数据是兼容的
+ */
+public final class AsciiNumbers {
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] LONG_MIN = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 小数部分只要不超过15位有效数字和22位小数，mantissa / 10^n就是正确舍入的结果
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+
+    private AsciiNumbers(){
+    }
+
+    public static byte[] encodeLong(long value){
+        if(value == Long.MIN_VALUE){
+            return LONG_MIN.clone();
+        }
+        int size = stringSize(value);
+        byte[] buf = new byte[size];
+        writeLong(value, buf, size);
+        return buf;
+    }
+
+    public static byte[] encodeInt(int value){
+        return encodeLong(value);
+    }
+
+    public static byte[] encodeBoolean(boolean value){
+        return value ? TRUE.clone() : FALSE.clone();
+    }
+
+    /**
+     * [0, 10^7)之间的整数值直接按"123.0"的格式输出，其他的交给{@link Double#toString(double)}
+     */
+    public static byte[] encodeDouble(double value){
+        long l = (long)value;
+        if(l == value && l > -10000000L && l < 10000000L && (l != 0 || 1 / value > 0)){
+            int size = stringSize(l);
+            byte[] buf = new byte[size + 2];
+            writeLong(l, buf, size);
+            buf[size] = '.';
+            buf[size + 1] = '0';
+            return buf;
+        }
+        return Double.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static long parseLong(byte[] bytes){
+        int len = bytes.length;
+        if(len == 0){
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        int i = 0;
+        boolean negative = false;
+        long limit = -Long.MAX_VALUE;
+        byte first = bytes[0];
+        if(first == '-' || first == '+'){
+            if(len == 1){
+                throw numberFormat(bytes);
+            }
+            if(first == '-'){
+                negative = true;
+                limit = Long.MIN_VALUE;
+            }
+            i++;
+        }
+        long multmin = limit / 10;
+        long result = 0;
+        for(; i < len; i++){
+            int digit = bytes[i] - '0';
+            if(digit < 0 || digit > 9 || result < multmin){
+                throw numberFormat(bytes);
+            }
+            result *= 10;
+            if(result < limit + digit){
+                throw numberFormat(bytes);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    public static int parseInt(byte[] bytes){
+        long value = parseLong(bytes);
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+            throw numberFormat(bytes);
+        }
+        return (int)value;
+    }
+
+    /**
+     * 与{@link Boolean#parseBoolean(String)}一致，忽略大小写的"true"为true，其他都是false
+     */
+    public static boolean parseBoolean(byte[] bytes){
+        if(bytes.length != TRUE.length){
+            return false;
+        }
+        for(int i = 0; i < TRUE.length; i++){
+            if((bytes[i] | 0x20) != TRUE[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 普通的十进制小数走快速路径，带指数、特殊值或者有效位数过多的交给{@link Double#parseDouble(String)}，
+     * 另外和redis一样接受忽略大小写的inf、+inf、-inf和nan
+     */
+    public static double parseDouble(byte[] bytes){
+        return parseDouble(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 解析bytes[offset, offset + length)
+     */
+    public static double parseDouble(byte[] bytes, int offset, int length){
+        int len = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if(length > 0 && (bytes[offset] == '-' || bytes[offset] == '+')){
+            negative = bytes[offset] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        boolean fast = i < len;
+        for(; i < len && fast; i++){
+            byte b = bytes[i];
+            if(b >= '0' && b <= '9'){
+                if(mantissa != 0 || b != '0'){
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if(seenDot){
+                    fractionDigits++;
+                }
+                fast = digits <= MAX_FAST_DOUBLE_DIGITS && fractionDigits < POWERS_OF_TEN.length;
+            }else if(b == '.' && !seenDot){
+                seenDot = true;
+            }else{
+                fast = false;
+            }
+        }
+        if(!fast || (seenDot && length == (negative || bytes[offset] == '+' ? 2 : 1))){
+            String s = new String(bytes, offset, length, StandardCharsets.US_ASCII);
+            String unsigned = length > 0 && (bytes[offset] == '-' || bytes[offset] == '+') ? s.substring(1) : s;
+            if("inf".equalsIgnoreCase(unsigned)){
+                return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            if("nan".equalsIgnoreCase(s)){
+                return Double.NaN;
+            }
+            return Double.parseDouble(s);
+        }
+        double value = fractionDigits == 0 ? (double)mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static NumberFormatException numberFormat(byte[] bytes){
+        return new NumberFormatException("For input string: \"" + new String(bytes, StandardCharsets.US_ASCII) + "\"");
+    }
+
+    private static int stringSize(long value){
+        int size = value < 0 ? 2 : 1;
+        long v = value < 0 ? -value : value;
+        while(v >= 10){
+            v /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeLong(long value, byte[] buf, int end){
+        long v = value < 0 ? -value : value;
+        int pos = end;
+        do{
+            buf[--pos] = (byte)('0' + (v % 10));
+            v /= 10;
+        }while(v != 0);
+        if(value < 0){
+            buf[--pos] = '-';
+        }
+    }
+}
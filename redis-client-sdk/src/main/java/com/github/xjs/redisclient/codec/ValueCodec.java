@@ -0,0 +1,252 @@
+package com.github.xjs.redisclient.codec;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * value的编解码
+ *
+ * 基本类型和String直接写字符串，byte[]原样写入，其他对象有两种写法：
+ * 1.不带类型的{@link #encode(Object)}/{@link #decode(byte[], Class)}，沿用GenericJackson2JsonRedisSerializer，json里带@class
+ * 2.带类型的{@link #encode(Object, JavaType)}/{@link #decode(byte[], JavaType)}，json里不带类型信息，按调用方给的类型直接解码，
+ *   每个类型的ObjectReader/ObjectWriter只创建一次
+ * 两种写法都可以直接从{@link ByteBuffer}解码，json按流读取，不需要先复制成完整的byte[]
+ */
+public class ValueCodec {
+
+    private final GenericJackson2JsonRedisSerializer genericSerializer;
+    /**
+     * 和GenericJackson2JsonRedisSerializer一样按@class解码，用于从ByteBuffer读取
+     */
+    private final ObjectReader genericReader;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public ValueCodec() {
+        this(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    /**
+     * @param objectMapper 带类型编解码使用的ObjectMapper，不要开启default typing
+     */
+    public ValueCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        //RedisSerializer.json()每次都会new一个ObjectMapper，这里只创建一次
+        this.genericSerializer = new GenericJackson2JsonRedisSerializer();
+        this.genericReader = new ObjectMapper().enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY)
+                .readerFor(Object.class);
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public JavaType constructType(TypeReference<?> typeReference) {
+        return objectMapper.getTypeFactory().constructType(typeReference);
+    }
+
+    public JavaType constructType(Type type) {
+        return objectMapper.getTypeFactory().constructType(type);
+    }
+
+    public byte[] encode(Object value){
+        Class clazz = value.getClass();
+        if(clazz == String.class){
+            return ((String)value).getBytes(StandardCharsets.UTF_8);
+        }else if(clazz == Integer.class || clazz == Long.class || clazz == Short.class || clazz == Byte.class){
+            return AsciiNumbers.encodeLong(((Number)value).longValue());
+        }else if(clazz == Double.class){
+            return AsciiNumbers.encodeDouble((Double)value);
+        }else if(clazz == Boolean.class){
+            return AsciiNumbers.encodeBoolean((Boolean)value);
+        }else if(ClassUtils.isPrimitiveOrWrapper(clazz)){
+            return value.toString().getBytes(StandardCharsets.UTF_8);
+        }else if(clazz == byte[].class){
+            return (byte[])value;
+        }else{
+            return genericSerializer.serialize(value);
+        }
+    }
+
+    /**
+     * 编码成json，用{@link #decode(byte[], Class)}按Object.class读出来还是原来的类型。
+     * GenericJackson2JsonRedisSerializer不给final的类(包装类型、String、枚举、final的对象和它们的数组)写类型，
+     * 这些写成["类名",值]，其余的和{@link #encode(Object)}的json一样
+     */
+    public byte[] encodeWithType(Object value){
+        byte[] json = genericSerializer.serialize(value);
+        Class<?> component = value.getClass();
+        while(component.isArray()){
+            component = component.getComponentType();
+        }
+        if(!Modifier.isFinal(component.getModifiers())){
+            return json;
+        }
+        byte[] typeId;
+        try {
+            typeId = objectMapper.writeValueAsBytes(value.getClass().getName());
+        } catch (IOException e) {
+            throw new SerializationException("Could not write JSON: " + e.getMessage(), e);
+        }
+        byte[] ret = new byte[json.length + typeId.length + 3];
+        ret[0] = '[';
+        System.arraycopy(typeId, 0, ret, 1, typeId.length);
+        ret[typeId.length + 1] = ',';
+        System.arraycopy(json, 0, ret, typeId.length + 2, json.length);
+        ret[ret.length - 1] = ']';
+        return ret;
+    }
+
+    public <T> T decode(byte[] val, Class<T> valueClazz){
+        if(val == null){
+            return null;
+        }
+        if(ClassUtils.isPrimitiveOrWrapper(valueClazz) || valueClazz == String.class){
+            if(valueClazz == String.class){
+                return (T)new String(val, StandardCharsets.UTF_8);
+            }else if(valueClazz == int.class || valueClazz == Integer.class){
+                return (T)Integer.valueOf(AsciiNumbers.parseInt(val));
+            }else if(valueClazz == long.class || valueClazz == Long.class){
+                return (T)Long.valueOf(AsciiNumbers.parseLong(val));
+            }else if(valueClazz == boolean.class || valueClazz == Boolean.class){
+                return (T)Boolean.valueOf(AsciiNumbers.parseBoolean(val));
+            }else if(valueClazz == byte.class || valueClazz == Byte.class){
+                return (T)Byte.valueOf(new String(val, StandardCharsets.UTF_8));
+            }else if(valueClazz == short.class || valueClazz == Short.class){
+                return (T)Short.valueOf(new String(val, StandardCharsets.UTF_8));
+            }else if(valueClazz == float.class || valueClazz == Float.class){
+                return (T)Float.valueOf(new String(val, StandardCharsets.UTF_8));
+            }else if(valueClazz == double.class || valueClazz == Double.class){
+                return (T)Double.valueOf(AsciiNumbers.parseDouble(val));
+            }else if(valueClazz == char.class || valueClazz == Character.class){
+                return (T)Character.valueOf(new String(val, StandardCharsets.UTF_8).charAt(0));
+            }else{
+                return null;
+            }
+        }else if(valueClazz == byte[].class){
+            return (T)val;
+        } else if(valueClazz == TypeReference.class){
+            return (T)genericSerializer.deserialize(val, valueClazz);
+        } else{
+            return (T)genericSerializer.deserialize(val);
+        }
+    }
+
+    /**
+     * 按给定的类型编码，json中不带@class
+     */
+    public byte[] encode(Object value, JavaType type){
+        if(isSimpleType(type.getRawClass())){
+            return encode(value);
+        }
+        try {
+            return writers.computeIfAbsent(type, objectMapper::writerFor).writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按给定的类型解码，不依赖json中的@class
+     */
+    public <T> T decode(byte[] val, JavaType type){
+        if(val == null){
+            return null;
+        }
+        Class<?> rawClass = type.getRawClass();
+        if(isSimpleType(rawClass)){
+            return (T)decode(val, rawClass);
+        }
+        if(val.length == 0){
+            return null;
+        }
+        try {
+            return readers.computeIfAbsent(type, objectMapper::readerFor).readValue(val);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从ByteBuffer解码，结果和{@link #decode(byte[], Class)}一样。String直接从缓冲区解码，
+     * 数字和byte[]本来就要(或者只有几个字节)复制出来，json按流读取，最多只用jackson自己的读缓冲
+     */
+    public <T> T decode(ByteBuffer val, Class<T> valueClazz){
+        if(val == null){
+            return null;
+        }
+        if(valueClazz == String.class){
+            return (T)utf8(val);
+        }
+        if(isSimpleType(valueClazz) || valueClazz == TypeReference.class){
+            return decode(copy(val), valueClazz);
+        }
+        if(!val.hasRemaining()){
+            return null;
+        }
+        return read(genericReader, val);
+    }
+
+    /**
+     * 从ByteBuffer按给定的类型解码，结果和{@link #decode(byte[], JavaType)}一样
+     */
+    public <T> T decode(ByteBuffer val, JavaType type){
+        if(val == null){
+            return null;
+        }
+        Class<?> rawClass = type.getRawClass();
+        if(isSimpleType(rawClass)){
+            return (T)decode(val, rawClass);
+        }
+        if(!val.hasRemaining()){
+            return null;
+        }
+        return read(readers.computeIfAbsent(type, objectMapper::readerFor), val);
+    }
+
+    private static <T> T read(ObjectReader reader, ByteBuffer val){
+        try {
+            if(val.hasArray()){
+                return reader.readValue(val.array(), val.arrayOffset() + val.position(), val.remaining());
+            }
+            return reader.readValue(new ByteBufferBackedInputStream(val));
+        } catch (IOException e) {
+            throw new SerializationException("Could not read JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private static String utf8(ByteBuffer val){
+        if(val.hasArray()){
+            return new String(val.array(), val.arrayOffset() + val.position(), val.remaining(), StandardCharsets.UTF_8);
+        }
+        return StandardCharsets.UTF_8.decode(val).toString();
+    }
+
+    private static byte[] copy(ByteBuffer val){
+        byte[] bytes = new byte[val.remaining()];
+        val.get(bytes);
+        return bytes;
+    }
+
+    private static boolean isSimpleType(Class<?> clazz){
+        return ClassUtils.isPrimitiveOrWrapper(clazz) || clazz == String.class || clazz == byte[].class;
+    }
+}
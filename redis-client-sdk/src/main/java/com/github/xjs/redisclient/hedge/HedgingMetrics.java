@@ -0,0 +1,59 @@
+package com.github.xjs.redisclient.hedge;
+
+/**
+ * 对冲读的指标快照
+ *
+ * hedgeWins是对冲请求比主读先返回的次数，deadlineExceeded是超过读超时、返回本地旧值或者抛出QueryTimeoutException的次数，
+ * rejected是线程池满的次数，有读超时的直接返回旧值或者抛出QueryTimeoutException，没有的在调用线程上读。
+ */
+public class HedgingMetrics {
+
+    private final long hedgeDelayMicros;
+    private final long hedges;
+    private final long hedgeWins;
+    private final long deadlineExceeded;
+    private final long rejected;
+
+    public HedgingMetrics(long hedgeDelayMicros, long hedges, long hedgeWins, long deadlineExceeded) {
+        this(hedgeDelayMicros, hedges, hedgeWins, deadlineExceeded, 0);
+    }
+
+    public HedgingMetrics(long hedgeDelayMicros, long hedges, long hedgeWins, long deadlineExceeded, long rejected) {
+        this.hedgeDelayMicros = hedgeDelayMicros;
+        this.hedges = hedges;
+        this.hedgeWins = hedgeWins;
+        this.deadlineExceeded = deadlineExceeded;
+        this.rejected = rejected;
+    }
+
+    public long getHedgeDelayMicros() {
+        return hedgeDelayMicros;
+    }
+
+    public long getHedges() {
+        return hedges;
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins;
+    }
+
+    public long getDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingMetrics{" +
+                "hedgeDelayMicros=" + hedgeDelayMicros +
+                ", hedges=" + hedges +
+                ", hedgeWins=" + hedgeWins +
+                ", deadlineExceeded=" + deadlineExceeded +
+                ", rejected=" + rejected +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * 读命令需要限时返回的前缀继承这个基类
+ */
+public abstract class AbstractDeadlineKey extends AbstractKey implements DeadlineKeyPrefix {
+
+	private long deadlineMillis;
+
+	public AbstractDeadlineKey(String value, long deadlineMillis){
+		this(value, NEVER_EXPIRE, deadlineMillis);
+	}
+
+	public AbstractDeadlineKey(String value, int timeout, long deadlineMillis){
+		super(value, timeout);
+		if(deadlineMillis <= 0){
+			throw new IllegalArgumentException("deadlineMillis必须大于0");
+		}
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	@Override
+	public long getDeadlineMillis() {
+		return this.deadlineMillis;
+	}
+}
@@ -0,0 +1,28 @@
+package com.github.xjs.redisclient.key;
+
+import com.github.xjs.redisclient.lane.ConnectionLane;
+
+/**
+ * 需要固定走某个连接通道的前缀继承这个基类
+ */
+public abstract class AbstractLanedKey extends AbstractKey implements LanedKeyPrefix {
+
+	private ConnectionLane lane;
+
+	public AbstractLanedKey(String value, ConnectionLane lane){
+		this(value, NEVER_EXPIRE, lane);
+	}
+
+	public AbstractLanedKey(String value, int timeout, ConnectionLane lane){
+		super(value, timeout);
+		if(lane == null){
+			throw new IllegalArgumentException("连接通道不能为空");
+		}
+		this.lane = lane;
+	}
+
+	@Override
+	public ConnectionLane getLane() {
+		return this.lane;
+	}
+}
@@ -0,0 +1,28 @@
+package com.github.xjs.redisclient.key;
+
+import com.github.xjs.redisclient.replica.ReadPreference;
+
+/**
+ * 读命令可以发到副本的前缀继承这个基类
+ */
+public abstract class AbstractReplicaReadKey extends AbstractKey implements ReadPreferenceKeyPrefix {
+
+	private ReadPreference readPreference;
+
+	public AbstractReplicaReadKey(String value, ReadPreference readPreference){
+		this(value, NEVER_EXPIRE, readPreference);
+	}
+
+	public AbstractReplicaReadKey(String value, int timeout, ReadPreference readPreference){
+		super(value, timeout);
+		if(readPreference == null){
+			throw new IllegalArgumentException("读节点不能为空");
+		}
+		this.readPreference = readPreference;
+	}
+
+	@Override
+	public ReadPreference getReadPreference() {
+		return this.readPreference;
+	}
+}
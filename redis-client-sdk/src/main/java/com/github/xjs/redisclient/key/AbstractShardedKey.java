@@ -0,0 +1,26 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * 需要拆分的大key的前缀继承这个基类
+ */
+public abstract class AbstractShardedKey extends AbstractKey implements ShardedKeyPrefix {
+
+	private int shards;
+
+	public AbstractShardedKey(String value, int shards){
+		this(value, NEVER_EXPIRE, shards);
+	}
+
+	public AbstractShardedKey(String value, int timeout, int shards){
+		super(value, timeout);
+		if(shards <= 0){
+			throw new IllegalArgumentException("分片数必须大于0");
+		}
+		this.shards = shards;
+	}
+
+	@Override
+	public int getShards() {
+		return this.shards;
+	}
+}
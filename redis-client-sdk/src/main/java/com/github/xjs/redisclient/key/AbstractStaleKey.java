@@ -0,0 +1,15 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * redis不可用时可以返回旧值的前缀继承这个基类
+ */
+public abstract class AbstractStaleKey extends AbstractKey implements StaleKeyPrefix {
+
+	public AbstractStaleKey(String value){
+		super(value);
+	}
+
+	public AbstractStaleKey(String value, int timeout){
+		super(value, timeout);
+	}
+}
@@ -0,0 +1,9 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * 指定了读超时的前缀，get、mget、hget、zscore超过{@link #getDeadlineMillis()}没有返回时不再等待，
+ * 返回本地保存的上一次读到的值，没有的话抛出QueryTimeoutException。只有开启了spring.redis.hedging.enabled才生效
+ */
+public interface DeadlineKeyPrefix extends KeyPrefix {
+	public long getDeadlineMillis();
+}
@@ -0,0 +1,11 @@
+package com.github.xjs.redisclient.key;
+
+import com.github.xjs.redisclient.lane.ConnectionLane;
+
+/**
+ * 指定了连接通道的前缀，这个前缀下的所有命令都走{@link #getLane()}，不再按命令类型自动选择。
+ * 只有开启了spring.redis.lanes.enabled才生效
+ */
+public interface LanedKeyPrefix extends KeyPrefix {
+	public ConnectionLane getLane();
+}
@@ -0,0 +1,11 @@
+package com.github.xjs.redisclient.key;
+
+import com.github.xjs.redisclient.replica.ReadPreference;
+
+/**
+ * 指定了读节点的前缀，这个前缀下的读命令按{@link #getReadPreference()}路由，写命令和锁总是发到master。
+ * 只有开启了spring.redis.replica-reads.enabled才生效
+ */
+public interface ReadPreferenceKeyPrefix extends KeyPrefix {
+	public ReadPreference getReadPreference();
+}
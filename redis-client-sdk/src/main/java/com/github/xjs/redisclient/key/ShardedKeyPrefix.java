@@ -0,0 +1,12 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * 需要拆分的大key的前缀
+ *
+ * hash的field、set的member按hash值分散到{@link #getShards()}个子key中，子key为 原来的key#序号，
+ * 集群模式下子key会分布在不同的slot。读写整个集合的操作会用pipeline访问所有的子key再合并结果。
+ * 已经有数据的前缀改成分片以后读不到原来的数据，需要自己迁移；分片数确定以后也不能再修改。
+ */
+public interface ShardedKeyPrefix extends KeyPrefix {
+	public int getShards();
+}
@@ -0,0 +1,8 @@
+package com.github.xjs.redisclient.key;
+
+/**
+ * redis不可用(熔断、连接失败、超时)时，这个前缀的get、hget、zscore返回本地保存的上一次读到的值，而不是抛出异常。
+ * 只有开启了spring.redis.circuit-breaker.enabled才生效
+ */
+public interface StaleKeyPrefix extends KeyPrefix {
+}
@@ -0,0 +1,15 @@
+package com.github.xjs.redisclient.lane;
+
+/**
+ * 命令走哪一组连接
+ */
+public enum ConnectionLane {
+    /**
+     * lettuce共享的那一条多路复用连接，适合GET/SET这类很快、返回值很小的命令
+     */
+    FAST,
+    /**
+     * 连接池中独占的连接，适合返回整个集合的命令、大批量的pipeline和事务，不会堵住FAST上的小命令
+     */
+    BULK
+}
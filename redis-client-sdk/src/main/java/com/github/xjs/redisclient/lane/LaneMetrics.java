@@ -0,0 +1,107 @@
+package com.github.xjs.redisclient.lane;
+
+/**
+ * 一个连接通道的指标快照
+ *
+ * inFlight是已经拿到连接、还没有执行完的操作数，也就是排在这个通道上的操作；
+ * FAST通道只有一条共享连接，连接池相关的指标都是0。
+ */
+public class LaneMetrics {
+
+    private final ConnectionLane lane;
+    private final int inFlight;
+    private final int peakInFlight;
+    private final long completed;
+    private final double meanMicros;
+    private final int poolMaxTotal;
+    private final int poolActive;
+    private final int poolIdle;
+    private final int poolWaiters;
+    private final long meanBorrowWaitMillis;
+    private final long maxBorrowWaitMillis;
+
+    public LaneMetrics(ConnectionLane lane, int inFlight, int peakInFlight, long completed, double meanMicros,
+                       int poolMaxTotal, int poolActive, int poolIdle, int poolWaiters, long meanBorrowWaitMillis, long maxBorrowWaitMillis) {
+        this.lane = lane;
+        this.inFlight = inFlight;
+        this.peakInFlight = peakInFlight;
+        this.completed = completed;
+        this.meanMicros = meanMicros;
+        this.poolMaxTotal = poolMaxTotal;
+        this.poolActive = poolActive;
+        this.poolIdle = poolIdle;
+        this.poolWaiters = poolWaiters;
+        this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+        this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+    }
+
+    public ConnectionLane getLane() {
+        return lane;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 启动以来inFlight的最大值
+     */
+    public int getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * 每个操作占用连接的平均微秒数
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public int getPoolMaxTotal() {
+        return poolMaxTotal;
+    }
+
+    public int getPoolActive() {
+        return poolActive;
+    }
+
+    public int getPoolIdle() {
+        return poolIdle;
+    }
+
+    /**
+     * 正在等待借连接的线程数，持续大于0说明连接池不够用
+     */
+    public int getPoolWaiters() {
+        return poolWaiters;
+    }
+
+    public long getMeanBorrowWaitMillis() {
+        return meanBorrowWaitMillis;
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return maxBorrowWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneMetrics{" +
+                "lane=" + lane +
+                ", inFlight=" + inFlight +
+                ", peakInFlight=" + peakInFlight +
+                ", completed=" + completed +
+                ", meanMicros=" + String.format("%.1f", meanMicros) +
+                ", poolMaxTotal=" + poolMaxTotal +
+                ", poolActive=" + poolActive +
+                ", poolIdle=" + poolIdle +
+                ", poolWaiters=" + poolWaiters +
+                ", meanBorrowWaitMillis=" + meanBorrowWaitMillis +
+                ", maxBorrowWaitMillis=" + maxBorrowWaitMillis +
+                '}';
+    }
+}
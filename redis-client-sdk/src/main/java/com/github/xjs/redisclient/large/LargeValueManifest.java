@@ -0,0 +1,48 @@
+package com.github.xjs.redisclient.large;
+
+/**
+ * 一个大value当前版本的描述
+ */
+public class LargeValueManifest {
+
+    private final String version;
+    private final int chunks;
+    private final long size;
+    private final int chunkSize;
+
+    public LargeValueManifest(String version, int chunks, long size, int chunkSize) {
+        this.version = version;
+        this.chunks = chunks;
+        this.size = size;
+        this.chunkSize = chunkSize;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * 总字节数
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public String toString() {
+        return "LargeValueManifest{" +
+                "version='" + version + '\'' +
+                ", chunks=" + chunks +
+                ", size=" + size +
+                ", chunkSize=" + chunkSize +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.xjs.redisclient.large;
+
+/**
+ * 大value分片存储的参数
+ */
+public class LargeValueOptions {
+
+    /**
+     * 每个分片多少字节
+     */
+    private int chunkSize = 512 * 1024;
+
+    /**
+     * 读写时一次往返(pipeline或者MGET)多少个分片，占用的内存最多是chunkSize * pipelineChunks
+     */
+    private int pipelineChunks = 8;
+
+    /**
+     * 还没有写完的分片的过期秒数，写入中途失败的分片到时自动删除，写完以后按KeyPrefix的过期时间
+     */
+    private int pendingExpireSeconds = 3600;
+
+    /**
+     * 切换到新版本以后旧版本的分片再保留多少毫秒，正在读旧版本的可以读完
+     */
+    private long oldVersionRetainMillis = 30000;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getPipelineChunks() {
+        return pipelineChunks;
+    }
+
+    public void setPipelineChunks(int pipelineChunks) {
+        this.pipelineChunks = pipelineChunks;
+    }
+
+    public int getPendingExpireSeconds() {
+        return pendingExpireSeconds;
+    }
+
+    public void setPendingExpireSeconds(int pendingExpireSeconds) {
+        this.pendingExpireSeconds = pendingExpireSeconds;
+    }
+
+    public long getOldVersionRetainMillis() {
+        return oldVersionRetainMillis;
+    }
+
+    public void setOldVersionRetainMillis(long oldVersionRetainMillis) {
+        this.oldVersionRetainMillis = oldVersionRetainMillis;
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.xjs.redisclient.large;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 把大value写到分片的输出流里，正常返回以后才切换到新版本，抛出异常时不切换
+ */
+@FunctionalInterface
+public interface ValueWriter {
+
+    void writeTo(OutputStream out) throws IOException;
+}
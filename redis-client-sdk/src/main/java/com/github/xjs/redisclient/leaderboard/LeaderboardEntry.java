@@ -0,0 +1,38 @@
+package com.github.xjs.redisclient.leaderboard;
+
+/**
+ * 排行榜的一项，rank从1开始
+ */
+public class LeaderboardEntry<T> {
+
+    private final T member;
+    private final double score;
+    private final long rank;
+
+    public LeaderboardEntry(T member, double score, long rank) {
+        this.member = member;
+        this.score = score;
+        this.rank = rank;
+    }
+
+    public T getMember() {
+        return member;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public long getRank() {
+        return rank;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardEntry{" +
+                "member=" + member +
+                ", score=" + score +
+                ", rank=" + rank +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.xjs.redisclient.leaderboard;
+
+/**
+ * 排行榜的参数
+ */
+public class LeaderboardOptions {
+
+    /**
+     * true分数越高排名越靠前
+     */
+    private boolean descending = true;
+
+    /**
+     * 本地缓存前多少名，top(n)的n不超过这个数时从本地缓存取
+     */
+    private int topCacheSize = 100;
+
+    /**
+     * 前几名在本地缓存多少毫秒，0表示不缓存；本进程的更新会立即清除缓存，其他节点的更新最多延迟这么久可见
+     */
+    private long topCacheMillis = 0;
+
+    /**
+     * 最多缓存多少个排行榜的前几名
+     */
+    private int topCacheBoards = 1000;
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getTopCacheSize() {
+        return topCacheSize;
+    }
+
+    public void setTopCacheSize(int topCacheSize) {
+        this.topCacheSize = topCacheSize;
+    }
+
+    public long getTopCacheMillis() {
+        return topCacheMillis;
+    }
+
+    public void setTopCacheMillis(long topCacheMillis) {
+        this.topCacheMillis = topCacheMillis;
+    }
+
+    public int getTopCacheBoards() {
+        return topCacheBoards;
+    }
+
+    public void setTopCacheBoards(int topCacheBoards) {
+        this.topCacheBoards = topCacheBoards;
+    }
+}
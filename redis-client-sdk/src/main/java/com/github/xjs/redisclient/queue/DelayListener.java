@@ -0,0 +1,8 @@
+package com.github.xjs.redisclient.queue;
+
+/**
+ * 处理到期的延迟任务，抛异常的任务会在retryDelayMillis以后重新投递
+ */
+public interface DelayListener {
+    void onMessage(DelayedJob job) throws Exception;
+}
@@ -0,0 +1,23 @@
+package com.github.xjs.redisclient.queue;
+
+/**
+ * 延迟任务的优先级，同时到期的任务先处理优先级高的
+ */
+public enum DelayPriority {
+    HIGH(":high"),
+    /**
+     * 默认的优先级，直接使用队列的key，原来用zadd(时间戳作为score)写入的数据可以直接消费
+     */
+    NORMAL(""),
+    LOW(":low");
+
+    private final String suffix;
+
+    DelayPriority(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.xjs.redisclient.queue;
+
+/**
+ * 延迟队列消费者的参数
+ */
+public class DelayQueueOptions {
+
+    /**
+     * 每次最多取走多少个到期的任务
+     */
+    private int batchSize = 100;
+
+    /**
+     * 没有任务或者下一个任务还没到期时最多睡多少毫秒，其他节点新加入的更早到期的任务最多延迟这么久被发现
+     */
+    private long maxIdleMillis = 1000;
+
+    /**
+     * 并行处理一个批次的线程数
+     */
+    private int concurrency = 1;
+
+    /**
+     * 处理失败的任务多久以后重试，小于等于0表示不重试
+     */
+    private long retryDelayMillis = 5000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    public void setMaxIdleMillis(long maxIdleMillis) {
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+}
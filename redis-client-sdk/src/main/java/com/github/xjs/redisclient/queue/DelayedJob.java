@@ -0,0 +1,45 @@
+package com.github.xjs.redisclient.queue;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+
+/**
+ * 到期的延迟任务
+ */
+public class DelayedJob {
+
+    private final String queue;
+    private final DelayPriority priority;
+    private final byte[] value;
+    private final ValueCodec codec;
+
+    public DelayedJob(String queue, DelayPriority priority, byte[] value, ValueCodec codec) {
+        this.queue = queue;
+        this.priority = priority;
+        this.value = value;
+        this.codec = codec;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public DelayPriority getPriority() {
+        return priority;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public <T> T getValue(Class<T> valueClass) {
+        return codec.decode(value, valueClass);
+    }
+
+    @Override
+    public String toString() {
+        return "DelayedJob{" +
+                "queue='" + queue + '\'' +
+                ", priority=" + priority +
+                '}';
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.xjs.redisclient.queue;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+
+/**
+ * 工作队列中的一条消息
+ */
+public class WorkItem {
+
+    private final String queue;
+    private final String id;
+    private final byte[] value;
+    private final ValueCodec codec;
+
+    public WorkItem(String queue, String id, byte[] value, ValueCodec codec) {
+        this.queue = queue;
+        this.id = id;
+        this.value = value;
+        this.codec = codec;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    /**
+     * 入队时生成的随机id，重新投递的消息id不变
+     */
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public <T> T getValue(Class<T> valueClass) {
+        return codec.decode(value, valueClass);
+    }
+
+    @Override
+    public String toString() {
+        return "WorkItem{" +
+                "queue='" + queue + '\'' +
+                ", id='" + id + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.xjs.redisclient.queue;
+
+/**
+ * 处理工作队列的消息，正常返回的消息会被确认删除，抛异常的消息留在处理中列表里，
+ * 超过visibilityTimeoutMillis以后放回队列重新投递
+ */
+public interface WorkListener {
+    void onMessage(WorkItem item) throws Exception;
+}
@@ -0,0 +1,72 @@
+package com.github.xjs.redisclient.queue;
+
+/**
+ * 工作队列消费者的参数
+ */
+public class WorkQueueOptions {
+
+    /**
+     * 消费线程数，每个线程独占一条连接
+     */
+    private int concurrency = 1;
+
+    /**
+     * 阻塞拿到一条消息以后，最多再顺带拿多少条一起处理、一起确认
+     */
+    private int batchSize = 10;
+
+    /**
+     * BRPOPLPUSH最多阻塞多少秒
+     */
+    private int blockSeconds = 2;
+
+    /**
+     * 消息被取走以后超过这个时间还没有确认，会被放回队列
+     */
+    private long visibilityTimeoutMillis = 60000;
+
+    /**
+     * 多久检查一次超时的消息，同时也是消费者的心跳间隔
+     */
+    private long reapIntervalMillis = 10000;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBlockSeconds() {
+        return blockSeconds;
+    }
+
+    public void setBlockSeconds(int blockSeconds) {
+        this.blockSeconds = blockSeconds;
+    }
+
+    public long getVisibilityTimeoutMillis() {
+        return visibilityTimeoutMillis;
+    }
+
+    public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+        this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+    }
+
+    public long getReapIntervalMillis() {
+        return reapIntervalMillis;
+    }
+
+    public void setReapIntervalMillis(long reapIntervalMillis) {
+        this.reapIntervalMillis = reapIntervalMillis;
+    }
+}
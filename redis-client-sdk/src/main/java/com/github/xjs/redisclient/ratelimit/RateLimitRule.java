@@ -0,0 +1,95 @@
+package com.github.xjs.redisclient.ratelimit;
+
+/**
+ * 限流规则
+ */
+public class RateLimitRule {
+
+    public enum Algorithm {
+        /**
+         * 令牌桶，桶容量为limit，每windowMillis匀速补充limit个令牌，允许不超过桶容量的突发
+         */
+        TOKEN_BUCKET("tb"),
+        /**
+         * 滑动窗口日志，用zset记录每次请求的时间，任意windowMillis内最多limit次，精确但每次请求占用一个zset成员
+         */
+        SLIDING_WINDOW_LOG("swl"),
+        /**
+         * 滑动窗口计数，用上一个窗口的计数按时间加权估算，内存固定，精度略低于日志
+         */
+        SLIDING_WINDOW_COUNTER("swc");
+
+        private final String code;
+
+        Algorithm(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final int limit;
+    private final long windowMillis;
+
+    public RateLimitRule(Algorithm algorithm, int limit, long windowMillis) {
+        if(limit <= 0 || windowMillis <= 0){
+            throw new IllegalArgumentException("limit和windowMillis必须大于0");
+        }
+        this.algorithm = algorithm;
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+    }
+
+    public static RateLimitRule tokenBucket(int capacity, long refillMillis){
+        return new RateLimitRule(Algorithm.TOKEN_BUCKET, capacity, refillMillis);
+    }
+
+    public static RateLimitRule slidingWindowLog(int limit, long windowMillis){
+        return new RateLimitRule(Algorithm.SLIDING_WINDOW_LOG, limit, windowMillis);
+    }
+
+    public static RateLimitRule slidingWindowCounter(int limit, long windowMillis){
+        return new RateLimitRule(Algorithm.SLIDING_WINDOW_COUNTER, limit, windowMillis);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimitRule)) {
+            return false;
+        }
+        RateLimitRule that = (RateLimitRule) o;
+        return algorithm == that.algorithm && limit == that.limit && windowMillis == that.windowMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * algorithm.hashCode() + limit) + Long.hashCode(windowMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitRule{" +
+                "algorithm=" + algorithm +
+                ", limit=" + limit +
+                ", windowMillis=" + windowMillis +
+                '}';
+    }
+}
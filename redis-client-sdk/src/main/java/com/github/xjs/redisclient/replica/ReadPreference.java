@@ -0,0 +1,19 @@
+package com.github.xjs.redisclient.replica;
+
+/**
+ * 读命令发到哪个节点
+ */
+public enum ReadPreference {
+    /**
+     * 只读master，能读到自己刚写入的数据
+     */
+    MASTER,
+    /**
+     * 优先读副本，没有可用的副本时读master，副本有复制延迟，可能读到旧数据
+     */
+    REPLICA_PREFERRED,
+    /**
+     * 读延迟最低的节点，master和副本都有可能
+     */
+    NEAREST
+}
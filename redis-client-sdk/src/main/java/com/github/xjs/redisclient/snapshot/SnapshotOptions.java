@@ -0,0 +1,85 @@
+package com.github.xjs.redisclient.snapshot;
+
+/**
+ * 快照导出和导入的参数
+ */
+public class SnapshotOptions {
+
+    /**
+     * SCAN每次的COUNT
+     */
+    private int scanCount = 1000;
+
+    /**
+     * 一次pipeline多少个key的DUMP+PTTL或者RESTORE
+     */
+    private int batchSize = 500;
+
+    /**
+     * 导入时并行执行RESTORE的线程数
+     */
+    private int parallelism = 4;
+
+    /**
+     * 导入时覆盖已经存在的key，为false时已经存在的key算失败
+     */
+    private boolean replace = true;
+
+    /**
+     * 导入时每次内存映射多少字节的文件，单个key更大时按key的大小映射
+     */
+    private int mapWindowBytes = 64 * 1024 * 1024;
+
+    /**
+     * 导出时写文件的缓冲区大小
+     */
+    private int writeBufferBytes = 1024 * 1024;
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    public void setScanCount(int scanCount) {
+        this.scanCount = scanCount;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isReplace() {
+        return replace;
+    }
+
+    public void setReplace(boolean replace) {
+        this.replace = replace;
+    }
+
+    public int getMapWindowBytes() {
+        return mapWindowBytes;
+    }
+
+    public void setMapWindowBytes(int mapWindowBytes) {
+        this.mapWindowBytes = mapWindowBytes;
+    }
+
+    public int getWriteBufferBytes() {
+        return writeBufferBytes;
+    }
+
+    public void setWriteBufferBytes(int writeBufferBytes) {
+        this.writeBufferBytes = writeBufferBytes;
+    }
+}
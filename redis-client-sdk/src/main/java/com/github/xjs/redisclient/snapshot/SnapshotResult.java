@@ -0,0 +1,54 @@
+package com.github.xjs.redisclient.snapshot;
+
+/**
+ * 一次导出或者导入的结果
+ */
+public class SnapshotResult {
+
+    private final long keys;
+    private final long failedKeys;
+    private final long bytes;
+    private final long elapsedMillis;
+
+    public SnapshotResult(long keys, long failedKeys, long bytes, long elapsedMillis) {
+        this.keys = keys;
+        this.failedKeys = failedKeys;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * 成功导出或者导入的key数
+     */
+    public long getKeys() {
+        return keys;
+    }
+
+    /**
+     * 导入失败的key数，导出时是SCAN到了但是DUMP时已经不存在的key数
+     */
+    public long getFailedKeys() {
+        return failedKeys;
+    }
+
+    /**
+     * 文件的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotResult{" +
+                "keys=" + keys +
+                ", failedKeys=" + failedKeys +
+                ", bytes=" + bytes +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.xjs.redisclient.stream;
+
+/**
+ * 消费者组订阅的参数
+ */
+public class StreamConsumerOptions {
+
+    /**
+     * 每次XREADGROUP最多读多少条
+     */
+    private int batchSize = 100;
+
+    /**
+     * XREADGROUP最多阻塞多少毫秒
+     */
+    private long blockMillis = 2000;
+
+    /**
+     * 并行处理一个批次的线程数
+     */
+    private int concurrency = 1;
+
+    /**
+     * pending超过这个时间的消息会被XAUTOCLAIM认领过来重新处理，小于等于0表示不认领
+     */
+    private long claimIdleMillis = 60000;
+
+    /**
+     * 多久检查一次需要认领的消息
+     */
+    private long claimIntervalMillis = 30000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBlockMillis() {
+        return blockMillis;
+    }
+
+    public void setBlockMillis(long blockMillis) {
+        this.blockMillis = blockMillis;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getClaimIdleMillis() {
+        return claimIdleMillis;
+    }
+
+    public void setClaimIdleMillis(long claimIdleMillis) {
+        this.claimIdleMillis = claimIdleMillis;
+    }
+
+    public long getClaimIntervalMillis() {
+        return claimIntervalMillis;
+    }
+
+    public void setClaimIntervalMillis(long claimIntervalMillis) {
+        this.claimIntervalMillis = claimIntervalMillis;
+    }
+}
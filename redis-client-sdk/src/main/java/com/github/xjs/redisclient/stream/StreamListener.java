@@ -0,0 +1,9 @@
+package com.github.xjs.redisclient.stream;
+
+/**
+ * 消费stream消息，正常返回的消息会被XACK，抛异常的消息留在pending列表中，
+ * 超过claimIdleMillis以后会被重新认领再投递一次
+ */
+public interface StreamListener {
+    void onMessage(StreamRecord record) throws Exception;
+}
@@ -0,0 +1,48 @@
+package com.github.xjs.redisclient.stream;
+
+import com.github.xjs.redisclient.codec.ValueCodec;
+
+import java.util.Map;
+
+/**
+ * stream中的一条消息
+ */
+public class StreamRecord {
+
+    private final String stream;
+    private final String id;
+    private final Map<String, byte[]> fields;
+    private final ValueCodec codec;
+
+    public StreamRecord(String stream, String id, Map<String, byte[]> fields, ValueCodec codec) {
+        this.stream = stream;
+        this.id = id;
+        this.fields = fields;
+        this.codec = codec;
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, byte[]> getFields() {
+        return fields;
+    }
+
+    public <T> T getValue(String field, Class<T> valueClass) {
+        return codec.decode(fields.get(field), valueClass);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamRecord{" +
+                "stream='" + stream + '\'' +
+                ", id='" + id + '\'' +
+                ", fields=" + fields.keySet() +
+                '}';
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.xjs.redisclient.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次redis操作的记录，pipeline和事务整体算一次，命令名分别是PIPELINE和EXEC
+ *
+ * 字段可以直接转成OpenTelemetry的span：开始时间、耗时、{@link #getSpanName()}和{@link #attributes()}，
+ * 属性名沿用OpenTelemetry数据库语义约定里的db.system、db.operation，其余的放在redis.client下面。
+ */
+public class RedisOperation {
+
+    private final String command;
+    private final String prefixClass;
+    private final String prefix;
+    private final int keyCount;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long startTimeMillis;
+    private final long durationMicros;
+    private final Throwable error;
+    private final boolean slow;
+    private final String sdkMethod;
+    private final String caller;
+
+    public RedisOperation(String command, String prefixClass, String prefix, int keyCount, long requestBytes, long responseBytes,
+                          long startTimeMillis, long durationMicros, Throwable error, boolean slow, String sdkMethod, String caller) {
+        this.command = command;
+        this.prefixClass = prefixClass;
+        this.prefix = prefix;
+        this.keyCount = keyCount;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.startTimeMillis = startTimeMillis;
+        this.durationMicros = durationMicros;
+        this.error = error;
+        this.slow = slow;
+        this.sdkMethod = sdkMethod;
+        this.caller = caller;
+    }
+
+    /**
+     * redis命令，比如GET、HMGET、PIPELINE
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * KeyPrefix的类名，不是通过RedisClientService的方法发出的命令为null
+     */
+    public String getPrefixClass() {
+        return prefixClass;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * 按参数估算的key的个数
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * 参数里key和value的字节数，不含协议的开销
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * 返回值里bulk string的字节数，不含协议的开销
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /**
+     * 执行失败时的异常，成功时为null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSlow() {
+        return slow;
+    }
+
+    /**
+     * 发出命令的SDK方法，比如RedisClientService.hgetall，只有开启了capture-caller的慢操作才有
+     */
+    public String getSdkMethod() {
+        return sdkMethod;
+    }
+
+    /**
+     * 调用SDK的业务代码位置，只有开启了capture-caller的慢操作才有
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    public String getSpanName() {
+        return command;
+    }
+
+    public Map<String, Object> attributes(){
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("db.system", "redis");
+        ret.put("db.operation", command);
+        if(prefixClass != null){
+            ret.put("redis.client.prefix_class", prefixClass);
+            ret.put("redis.client.prefix", prefix);
+        }
+        ret.put("redis.client.key_count", keyCount);
+        ret.put("redis.client.request_bytes", requestBytes);
+        ret.put("redis.client.response_bytes", responseBytes);
+        if(sdkMethod != null){
+            ret.put("code.function", sdkMethod);
+        }
+        if(caller != null){
+            ret.put("redis.client.caller", caller);
+        }
+        if(error != null){
+            ret.put("error.type", error.getClass().getName());
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisOperation{" +
+                "command='" + command + '\'' +
+                ", prefixClass='" + prefixClass + '\'' +
+                ", prefix='" + prefix + '\'' +
+                ", keyCount=" + keyCount +
+                ", requestBytes=" + requestBytes +
+                ", responseBytes=" + responseBytes +
+                ", durationMicros=" + durationMicros +
+                ", error=" + (error == null ? null : error.getClass().getSimpleName() + ": " + error.getMessage()) +
+                ", sdkMethod='" + sdkMethod + '\'' +
+                ", caller='" + caller + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.xjs.redisclient.trace;
+
+/**
+ * redis操作结束以后的回调，开启了spring.redis.tracing.enabled才会调用
+ *
+ * 在发出命令的线程上同步调用，可以在这里用当前的上下文创建OpenTelemetry的span，
+ * 开始和结束时间用{@link RedisOperation#getStartTimeMillis()}和{@link RedisOperation#getDurationMicros()}。
+ * 回调要尽量快，抛出的异常只记日志，不会影响命令的结果。
+ */
+public interface RedisOperationListener {
+
+    void onOperation(RedisOperation operation);
+}
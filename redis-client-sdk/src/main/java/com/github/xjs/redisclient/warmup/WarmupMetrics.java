@@ -0,0 +1,61 @@
+package com.github.xjs.redisclient.warmup;
+
+/**
+ * 启动预热的结果
+ *
+ * durationMillis是整个预热的耗时，分成建立连接、编解码和预加载一级缓存三段；completed为false表示出错或者超时没有等到结束。
+ */
+public class WarmupMetrics {
+
+    private final long durationMillis;
+    private final long connectionMillis;
+    private final long codecMillis;
+    private final long preloadMillis;
+    private final long preloadedKeys;
+    private final boolean completed;
+
+    public WarmupMetrics(long durationMillis, long connectionMillis, long codecMillis, long preloadMillis, long preloadedKeys, boolean completed) {
+        this.durationMillis = durationMillis;
+        this.connectionMillis = connectionMillis;
+        this.codecMillis = codecMillis;
+        this.preloadMillis = preloadMillis;
+        this.preloadedKeys = preloadedKeys;
+        this.completed = completed;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getConnectionMillis() {
+        return connectionMillis;
+    }
+
+    public long getCodecMillis() {
+        return codecMillis;
+    }
+
+    public long getPreloadMillis() {
+        return preloadMillis;
+    }
+
+    public long getPreloadedKeys() {
+        return preloadedKeys;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmupMetrics{" +
+                "durationMillis=" + durationMillis +
+                ", connectionMillis=" + connectionMillis +
+                ", codecMillis=" + codecMillis +
+                ", preloadMillis=" + preloadMillis +
+                ", preloadedKeys=" + preloadedKeys +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.xjs.redisclient.zset;
+
+import java.util.Base64;
+
+/**
+ * 按分数分页的游标，记录上一页最后一个成员的分数和成员
+ *
+ * 下一页从这个位置之后开始，中间有插入和删除也不会重复或者跳过；encode()以后可以交给前端，下次请求再decode()。
+ */
+public class ScoreCursor {
+
+    private final double score;
+    private final byte[] member;
+
+    public ScoreCursor(double score, byte[] member) {
+        if(member == null){
+            throw new IllegalArgumentException("member不能为空");
+        }
+        this.score = score;
+        this.member = member;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * 编码以后的成员
+     */
+    public byte[] getMember() {
+        return member;
+    }
+
+    public String encode(){
+        return score + ":" + Base64.getUrlEncoder().withoutPadding().encodeToString(member);
+    }
+
+    public static ScoreCursor decode(String cursor){
+        int pos = cursor == null ? -1 : cursor.indexOf(':');
+        if(pos <= 0){
+            throw new IllegalArgumentException("游标的格式不正确:" + cursor);
+        }
+        try{
+            return new ScoreCursor(Double.parseDouble(cursor.substring(0, pos)), Base64.getUrlDecoder().decode(cursor.substring(pos + 1)));
+        }catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("游标的格式不正确:" + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
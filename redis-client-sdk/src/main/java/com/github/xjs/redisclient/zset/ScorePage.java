@@ -0,0 +1,33 @@
+package com.github.xjs.redisclient.zset;
+
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.List;
+
+/**
+ * 按分数分页的一页
+ *
+ * next是下一页的游标，没有下一页时为null。
+ */
+public class ScorePage<T> {
+
+    private final List<ZSetOperations.TypedTuple<T>> items;
+    private final ScoreCursor next;
+
+    public ScorePage(List<ZSetOperations.TypedTuple<T>> items, ScoreCursor next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<ZSetOperations.TypedTuple<T>> getItems() {
+        return items;
+    }
+
+    public ScoreCursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext(){
+        return next != null;
+    }
+}
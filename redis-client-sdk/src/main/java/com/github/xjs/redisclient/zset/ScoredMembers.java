@@ -0,0 +1,128 @@
+package com.github.xjs.redisclient.zset;
+
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * 带分数的有序集合范围，用平行的基本类型数组保存
+ *
+ * 所有成员编码以后的字节连续放在一个byte[]里，offsets记录每个成员的起止位置，分数是一个double[]，
+ * 不管范围多大都只有这几个数组，没有每个成员一个TypedTuple和装箱的Double。成员第一次用到时才解码，解码以后缓存起来。
+ * 只统计分数的场景可以直接遍历scores()，完全不解码成员。不是线程安全的。
+ */
+public class ScoredMembers<T> {
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final double[] scores;
+    private final int size;
+    private final Function<ByteBuffer, T> decoder;
+    private Object[] decoded;
+
+    /**
+     * @param data 成员编码以后的字节
+     * @param offsets 第i个成员是data[offsets[i], offsets[i + 1])，长度至少是size + 1
+     * @param scores 长度至少是size
+     * @param decoder 从ByteBuffer解码成员
+     */
+    public ScoredMembers(byte[] data, int[] offsets, double[] scores, int size, Function<ByteBuffer, T> decoder) {
+        if(offsets.length < size + 1 || scores.length < size){
+            throw new IllegalArgumentException("offsets和scores的长度不够");
+        }
+        this.data = data;
+        this.offsets = offsets;
+        this.scores = scores;
+        this.size = size;
+        this.decoder = decoder;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public double score(int index){
+        checkIndex(index);
+        return scores[index];
+    }
+
+    /**
+     * 第index个成员，第一次调用时解码
+     */
+    public T member(int index){
+        checkIndex(index);
+        if(decoded == null){
+            decoded = new Object[size];
+        }
+        Object member = decoded[index];
+        if(member == null){
+            member = decoder.apply(ByteBuffer.wrap(data, offsets[index], offsets[index + 1] - offsets[index]));
+            decoded[index] = member;
+        }
+        return (T) member;
+    }
+
+    /**
+     * 第index个成员编码以后的字节
+     */
+    public byte[] rawMember(int index){
+        checkIndex(index);
+        return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * 第index个成员编码以后的字节，不复制，每次返回新的只读ByteBuffer，多个线程可以同时调用
+     */
+    public ByteBuffer memberBuffer(int index){
+        checkIndex(index);
+        return ByteBuffer.wrap(data, offsets[index], offsets[index + 1] - offsets[index]).asReadOnlyBuffer();
+    }
+
+    /**
+     * 所有的分数，返回的是内部数组，长度可能大于size()，不要修改
+     */
+    public double[] scores(){
+        return scores;
+    }
+
+    public void forEach(ObjDoubleConsumer<? super T> action){
+        for(int i = 0; i < size; i++){
+            action.accept(member(i), scores[i]);
+        }
+    }
+
+    public double sum(){
+        double sum = 0;
+        for(int i = 0; i < size; i++){
+            sum += scores[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 转成TypedTuple的列表，兼容原来的返回值
+     */
+    public List<ZSetOperations.TypedTuple<T>> toTuples(){
+        List<ZSetOperations.TypedTuple<T>> ret = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            ret.add(new DefaultTypedTuple<>(member(i), scores[i]));
+        }
+        return ret;
+    }
+
+    private void checkIndex(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("index:" + index + ", size:" + size);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+-- 按优先级从高到低取走到期的任务
+-- KEYS: 各个优先级的zset，score是到期时间的毫秒数
+-- ARGV[1]: 最多取多少个
+-- 返回{离下一个到期任务的毫秒数(没有任务为-1), 任务所在key的序号, 任务, 任务所在key的序号, 任务...}
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local remaining = tonumber(ARGV[1])
+local ret = {-1}
+for i = 1, #KEYS do
+    if remaining <= 0 then
+        break
+    end
+    local items = redis.call('ZRANGEBYSCORE', KEYS[i], '-inf', now, 'LIMIT', 0, remaining)
+    if #items > 0 then
+        -- unpack的参数个数受lua栈大小限制，batchSize很大时分段删除
+        for from = 1, #items, 1000 do
+            redis.call('ZREM', KEYS[i], unpack(items, from, math.min(from + 999, #items)))
+        end
+        for _, item in ipairs(items) do
+            ret[#ret + 1] = i
+            ret[#ret + 1] = item
+        end
+        remaining = remaining - #items
+    end
+end
+local wait = -1
+for i = 1, #KEYS do
+    local first = redis.call('ZRANGE', KEYS[i], 0, 0, 'WITHSCORES')
+    if #first > 0 then
+        local w = math.max(0, tonumber(first[2]) - now)
+        if wait < 0 or w < wait then
+            wait = w
+        end
+    end
+end
+ret[1] = wait
+return ret
@@ -0,0 +1,10 @@
+-- 按redis服务端的时间加入延迟任务，和取任务的脚本用同一个时钟
+-- KEYS[1]: 优先级的zset
+-- ARGV[1]: 延迟的毫秒数，ARGV[2]: 任务
+-- 返回ZADD的结果，新加入为1，更新了到期时间为0
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+return redis.call('ZADD', KEYS[1], now + tonumber(ARGV[1]), ARGV[2])
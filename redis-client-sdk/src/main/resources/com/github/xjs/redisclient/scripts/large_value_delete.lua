@@ -0,0 +1,15 @@
+-- 删除manifest和当前版本的所有分片
+-- KEYS[1]: manifest；KEYS[2..]: 当前版本的分片
+-- ARGV[1]: 读manifest时的版本
+-- 返回1；不存在时返回0；manifest已经被别人切换过时返回-1，重新读manifest再删除
+local current = redis.call('HGET', KEYS[1], 'version')
+if not current then
+    return 0
+end
+if current ~= ARGV[1] then
+    return -1
+end
+for i = 1, #KEYS do
+    redis.call('DEL', KEYS[i])
+end
+return 1
@@ -0,0 +1,33 @@
+-- 所有分片写完以后原子地切换到新版本
+-- KEYS[1]: manifest，hash；KEYS[2]到KEYS[分片数+1]: 新版本的分片；后面是旧版本的分片
+-- ARGV: 新版本, 分片数, 总字节数, 分片大小, 过期秒数(小于等于0不过期), 旧版本保留的毫秒数, 读manifest时的版本(没有时为空)
+-- 返回1；有分片已经不存在(写得太慢过期了)时返回0，不切换；manifest已经被别人切换过时返回-1，重新读manifest再切换
+local version = ARGV[1]
+local chunks = tonumber(ARGV[2])
+local ttl = tonumber(ARGV[5])
+local current = redis.call('HGET', KEYS[1], 'version') or ''
+if current ~= ARGV[7] then
+    return -1
+end
+for i = 2, chunks + 1 do
+    if redis.call('EXISTS', KEYS[i]) == 0 then
+        return 0
+    end
+end
+redis.call('DEL', KEYS[1])
+redis.call('HMSET', KEYS[1], 'version', version, 'chunks', ARGV[2], 'size', ARGV[3], 'chunkSize', ARGV[4])
+for i = 2, chunks + 1 do
+    if ttl > 0 then
+        redis.call('EXPIRE', KEYS[i], ttl)
+    else
+        redis.call('PERSIST', KEYS[i])
+    end
+end
+if ttl > 0 then
+    redis.call('EXPIRE', KEYS[1], ttl)
+end
+-- 正在读旧版本的还能读完
+for i = chunks + 2, #KEYS do
+    redis.call('PEXPIRE', KEYS[i], ARGV[6])
+end
+return 1
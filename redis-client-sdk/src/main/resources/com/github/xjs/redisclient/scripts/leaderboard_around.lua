@@ -0,0 +1,15 @@
+-- 成员的排名和前后各n名
+-- KEYS[1]: 排行榜
+-- ARGV[1]: 1按分数从大到小，0从小到大 ARGV[2]: 成员 ARGV[3]: 前后各多少名
+-- 返回{第一个的排名(从0开始), {成员, 分数, 成员, 分数...}}，成员不存在时返回false
+local reverse = ARGV[1] == '1'
+local rank = redis.call(reverse and 'ZREVRANK' or 'ZRANK', KEYS[1], ARGV[2])
+if not rank then
+    return false
+end
+local n = tonumber(ARGV[3])
+local start = rank - n
+if start < 0 then
+    start = 0
+end
+return {start, redis.call(reverse and 'ZREVRANGE' or 'ZRANGE', KEYS[1], start, rank + n, 'WITHSCORES')}
@@ -0,0 +1,91 @@
+-- 多个key一起限流，要么全部通过一起扣减，要么一个都不扣
+-- KEYS: 限流的key
+-- ARGV[1]: 本次申请的数量，ARGV[2]: 客户端生成的唯一标识，后面每个key依次三个参数：算法(tb/swl/swc)、limit、windowMillis
+-- 返回{1, 0, 0}表示通过，{0, 被拒绝的key的序号, 至少还要等待的毫秒数}表示拒绝
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local permits = tonumber(ARGV[1])
+-- 滑动窗口日志的成员，直接拼TIME返回的字符串，不经过lua的浮点数，再加上客户端的唯一标识，同一微秒内的申请也不会相同
+local member = time[1] .. string.format('%06d', tonumber(time[2])) .. '-' .. ARGV[2] .. '-'
+
+local function rule(i)
+    local base = 3 + (i - 1) * 3
+    return ARGV[base], tonumber(ARGV[base + 1]), tonumber(ARGV[base + 2])
+end
+
+-- 第一遍只检查
+local tokens = {}
+for i = 1, #KEYS do
+    local key = KEYS[i]
+    local algorithm, limit, window = rule(i)
+    if permits > limit then
+        return {0, i, window}
+    end
+    if algorithm == 'tb' then
+        local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+        local available = tonumber(bucket[1])
+        local ts = tonumber(bucket[2])
+        if available == nil or ts == nil then
+            available = limit
+            ts = now
+        end
+        if now > ts then
+            available = math.min(limit, available + (now - ts) * limit / window)
+        end
+        if available < permits then
+            return {0, i, math.max(1, math.ceil((permits - available) * window / limit))}
+        end
+        tokens[i] = available
+    elseif algorithm == 'swl' then
+        redis.call('ZREMRANGEBYSCORE', key, '-inf', now - window)
+        local count = redis.call('ZCARD', key)
+        if count + permits > limit then
+            local oldest = redis.call('ZRANGE', key, 0, 0, 'WITHSCORES')
+            return {0, i, math.max(1, tonumber(oldest[2]) + window - now)}
+        end
+    else
+        local current = math.floor(now / window)
+        local counts = redis.call('HMGET', key, tostring(current), tostring(current - 1))
+        local cur = tonumber(counts[1]) or 0
+        local prev = tonumber(counts[2]) or 0
+        local elapsed = now - current * window
+        if prev * (window - elapsed) / window + cur + permits > limit then
+            local wait = window - elapsed
+            if cur + permits <= limit and prev > 0 then
+                wait = math.ceil(window - elapsed - (limit - cur - permits) * window / prev)
+            end
+            return {0, i, math.max(1, wait)}
+        end
+    end
+end
+
+-- 全部通过再扣减
+for i = 1, #KEYS do
+    local key = KEYS[i]
+    local algorithm, limit, window = rule(i)
+    if algorithm == 'tb' then
+        redis.call('HMSET', key, 'tokens', tostring(tokens[i] - permits), 'ts', now)
+        redis.call('PEXPIRE', key, window)
+    elseif algorithm == 'swl' then
+        for j = 1, permits do
+            redis.call('ZADD', key, now, member .. j)
+        end
+        redis.call('PEXPIRE', key, window)
+    else
+        local current = math.floor(now / window)
+        redis.call('HINCRBY', key, tostring(current), permits)
+        if redis.call('HLEN', key) > 2 then
+            for _, field in ipairs(redis.call('HKEYS', key)) do
+                local w = tonumber(field)
+                if w ~= current and w ~= current - 1 then
+                    redis.call('HDEL', key, field)
+                end
+            end
+        end
+        redis.call('PEXPIRE', key, window * 2)
+    end
+end
+return {1, 0, 0}
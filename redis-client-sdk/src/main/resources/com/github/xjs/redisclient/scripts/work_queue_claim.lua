@@ -0,0 +1,21 @@
+-- 从队列里再移动一批消息到消费者的处理中列表，并给每条消息加上租约
+-- KEYS[1]: 队列 KEYS[2]: 消费者的处理中列表 KEYS[3]: 消费者的租约zset
+-- ARGV[1]: 可见性超时毫秒数 ARGV[2]: 最多再移动多少条 ARGV[3]: 已经用BRPOPLPUSH移过来的消息(可选)
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local time = redis.call('TIME')
+local deadline = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) + tonumber(ARGV[1])
+if ARGV[3] then
+    redis.call('ZADD', KEYS[3], deadline, ARGV[3])
+end
+local items = {}
+for i = 1, tonumber(ARGV[2]) do
+    local item = redis.call('RPOPLPUSH', KEYS[1], KEYS[2])
+    if not item then
+        break
+    end
+    redis.call('ZADD', KEYS[3], deadline, item)
+    items[#items + 1] = item
+end
+return items
@@ -0,0 +1,38 @@
+-- 把一个消费者租约到期的消息放回队列
+-- KEYS[1]: 队列 KEYS[2]: 消费者的处理中列表 KEYS[3]: 消费者的租约zset KEYS[4]: 消费者注册表
+-- ARGV[1]: 可见性超时毫秒数 ARGV[2]: 消费者名字 ARGV[3]: 0表示别的消费者，1表示是自己，顺便更新心跳，2表示自己刚启动，处理中的消息全部放回队列 ARGV[4]: 心跳超过多少毫秒算失联
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local visibility = tonumber(ARGV[1])
+if ARGV[3] ~= '0' then
+    redis.call('ZADD', KEYS[4], now, ARGV[2])
+end
+if ARGV[3] == '2' then
+    redis.call('DEL', KEYS[3])
+    visibility = 0
+end
+-- BRPOPLPUSH以后还没来得及加租约就宕机的消息，补一个租约
+for _, item in ipairs(redis.call('LRANGE', KEYS[2], 0, -1)) do
+    redis.call('ZADD', KEYS[3], 'NX', now + visibility, item)
+end
+local requeued = 0
+for _, item in ipairs(redis.call('ZRANGEBYSCORE', KEYS[3], '-inf', now, 'LIMIT', 0, 1000)) do
+    if redis.call('LREM', KEYS[2], 1, item) > 0 then
+        -- 放到出队的一端，尽快被重新处理
+        redis.call('RPUSH', KEYS[1], item)
+        requeued = requeued + 1
+    end
+    redis.call('ZREM', KEYS[3], item)
+end
+-- 失联的消费者手里已经没有消息了，注销掉
+if ARGV[3] == '0' and redis.call('LLEN', KEYS[2]) == 0 then
+    local heartbeat = redis.call('ZSCORE', KEYS[4], ARGV[2])
+    if heartbeat and tonumber(heartbeat) < now - tonumber(ARGV[4]) then
+        redis.call('ZREM', KEYS[4], ARGV[2])
+        redis.call('DEL', KEYS[3])
+    end
+end
+return requeued
@@ -0,0 +1,134 @@
+package com.github.xjs.redisclient.codec;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsciiNumbersTest {
+
+    @Test
+    public void testLongRoundTrip(){
+        long[] values = {0, 1, -1, 9, -9, 10, -10, 1234567890L, -1234567890L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+        for(long value : values){
+            byte[] encoded = AsciiNumbers.encodeLong(value);
+            assertArrayEquals(bytes(Long.toString(value)), encoded);
+            assertEquals(value, AsciiNumbers.parseLong(encoded));
+        }
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++){
+            long value = random.nextLong();
+            assertEquals(value, AsciiNumbers.parseLong(AsciiNumbers.encodeLong(value)));
+        }
+    }
+
+    @Test
+    public void testParseLong(){
+        assertEquals(42, AsciiNumbers.parseLong(bytes("+42")));
+        assertEquals(-42, AsciiNumbers.parseLong(bytes("-42")));
+        assertEquals(7, AsciiNumbers.parseLong(bytes("007")));
+        assertEquals(Long.MIN_VALUE, AsciiNumbers.parseLong(bytes("-9223372036854775808")));
+        assertInvalidLong("");
+        assertInvalidLong("-");
+        assertInvalidLong("+");
+        assertInvalidLong("1.5");
+        assertInvalidLong("1e3");
+        assertInvalidLong(" 1");
+        assertInvalidLong("12a");
+        assertInvalidLong("9223372036854775808");
+        assertInvalidLong("-9223372036854775809");
+        assertInvalidLong("99999999999999999999");
+    }
+
+    @Test
+    public void testParseInt(){
+        assertEquals(Integer.MAX_VALUE, AsciiNumbers.parseInt(bytes("2147483647")));
+        assertEquals(Integer.MIN_VALUE, AsciiNumbers.parseInt(bytes("-2147483648")));
+        try{
+            AsciiNumbers.parseInt(bytes("2147483648"));
+            fail();
+        }catch(NumberFormatException e){
+            //溢出
+        }
+    }
+
+    @Test
+    public void testBoolean(){
+        assertArrayEquals(bytes("true"), AsciiNumbers.encodeBoolean(true));
+        assertArrayEquals(bytes("false"), AsciiNumbers.encodeBoolean(false));
+        assertTrue(AsciiNumbers.parseBoolean(bytes("TRUE")));
+        assertTrue(AsciiNumbers.parseBoolean(bytes("True")));
+        assertFalse(AsciiNumbers.parseBoolean(bytes("false")));
+        assertFalse(AsciiNumbers.parseBoolean(bytes("1")));
+        assertFalse(AsciiNumbers.parseBoolean(bytes("")));
+        assertFalse(AsciiNumbers.parseBoolean(bytes("truex")));
+    }
+
+    @Test
+    public void testDoubleRoundTrip(){
+        double[] values = {0.0, -0.0, 1.0, -1.0, 0.1, -0.1, 123.456, 9999999.0, 10000000.0, -9999999.0, 1e-10, 1e21, 1e22, 1e300,
+                Double.MAX_VALUE, Double.MIN_VALUE, Double.MIN_NORMAL, 3.141592653589793, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for(double value : values){
+            byte[] encoded = AsciiNumbers.encodeDouble(value);
+            assertArrayEquals(bytes(Double.toString(value)), encoded);
+            assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(AsciiNumbers.parseDouble(encoded)));
+        }
+        assertTrue(Double.isNaN(AsciiNumbers.parseDouble(AsciiNumbers.encodeDouble(Double.NaN))));
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++){
+            double value = Double.longBitsToDouble(random.nextLong());
+            if(Double.isNaN(value)){
+                continue;
+            }
+            assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(AsciiNumbers.parseDouble(AsciiNumbers.encodeDouble(value))));
+            double decimal = random.nextInt(2000000) / 1000.0 - 1000;
+            assertEquals(Double.doubleToLongBits(decimal), Double.doubleToLongBits(AsciiNumbers.parseDouble(AsciiNumbers.encodeDouble(decimal))));
+        }
+    }
+
+    @Test
+    public void testParseDouble(){
+        String[] inputs = {"0", "-0", "+1.5", "1.", ".5", "-.5", "007.25", "1e3", "1E3", "1.5e-3", "-2.5E+10", "0.1234567890123456789",
+                "123456789012345678901234567890", "0.000000000000000000000000001", "4.9e-324", "1.7976931348623157E308", "1e400", "Infinity", "-Infinity"};
+        for(String input : inputs){
+            assertEquals(input, Double.doubleToLongBits(Double.parseDouble(input)), Double.doubleToLongBits(AsciiNumbers.parseDouble(bytes(input))));
+        }
+        assertEquals(Double.POSITIVE_INFINITY, AsciiNumbers.parseDouble(bytes("inf")), 0);
+        assertEquals(Double.POSITIVE_INFINITY, AsciiNumbers.parseDouble(bytes("+inf")), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, AsciiNumbers.parseDouble(bytes("-inf")), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, AsciiNumbers.parseDouble(bytes("-INF")), 0);
+        assertTrue(Double.isNaN(AsciiNumbers.parseDouble(bytes("nan"))));
+        assertTrue(Double.isNaN(AsciiNumbers.parseDouble(bytes("NaN"))));
+        byte[] padded = bytes("xx-12.5yy");
+        assertEquals(-12.5, AsciiNumbers.parseDouble(padded, 2, 5), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, AsciiNumbers.parseDouble(bytes("x-inf"), 1, 4), 0);
+        for(String invalid : new String[]{"", "-", "+", ".", "-.", "1.2.3", "abc", "1e", "--1", "infinity1"}){
+            try{
+                AsciiNumbers.parseDouble(bytes(invalid));
+                fail(invalid);
+            }catch(NumberFormatException e){
+                //不是数字
+            }
+        }
+    }
+
+    private static void assertInvalidLong(String s){
+        try{
+            AsciiNumbers.parseLong(bytes(s));
+            fail(s);
+        }catch(NumberFormatException e){
+            //不是合法的long
+        }
+    }
+
+    private static byte[] bytes(String s){
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 命令参数的解析
+ */
+final class Args {
+
+    private Args() {
+    }
+
+    static String str(byte[] bytes){
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String upper(byte[] bytes){
+        return str(bytes).toUpperCase(Locale.ROOT);
+    }
+
+    static byte[] bytes(String s){
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] bytes(long value){
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 浮点数的字符串形式，整数不带小数点
+     */
+    static byte[] bytes(double value){
+        return format(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static String format(double value){
+        if(Double.isInfinite(value)){
+            return value > 0 ? "inf" : "-inf";
+        }
+        if(value == Math.rint(value) && Math.abs(value) < 1e17){
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static ByteKey key(byte[] bytes){
+        return new ByteKey(bytes);
+    }
+
+    static long toLong(byte[] bytes){
+        return parseLong(str(bytes));
+    }
+
+    static long parseLong(String s){
+        try{
+            return Long.parseLong(s);
+        }catch(NumberFormatException e){
+            throw new RespException(RespException.NOT_INTEGER);
+        }
+    }
+
+    static int toInt(byte[] bytes){
+        long value = toLong(bytes);
+        if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE){
+            throw new RespException(RespException.NOT_INTEGER);
+        }
+        return (int) value;
+    }
+
+    static double toDouble(byte[] bytes){
+        return parseDouble(str(bytes));
+    }
+
+    static double parseDouble(String s){
+        switch(s.toLowerCase(Locale.ROOT)){
+            case "inf":
+            case "+inf":
+            case "infinity":
+            case "+infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+            case "-infinity":
+                return Double.NEGATIVE_INFINITY;
+            default:
+        }
+        try{
+            double value = Double.parseDouble(s);
+            if(Double.isNaN(value) || s.isEmpty() || Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1))){
+                throw new RespException(RespException.NOT_FLOAT);
+            }
+            return value;
+        }catch(NumberFormatException e){
+            throw new RespException(RespException.NOT_FLOAT);
+        }
+    }
+
+    /**
+     * 超时时间，单位是秒，可以有小数，0表示一直等待
+     * @return 毫秒
+     */
+    static long timeoutMillis(byte[] bytes){
+        double seconds;
+        try{
+            seconds = toDouble(bytes);
+        }catch(RespException e){
+            throw new RespException("ERR timeout is not a float or out of range");
+        }
+        if(seconds < 0){
+            throw new RespException("ERR timeout is negative");
+        }
+        return (long) (seconds * 1000);
+    }
+
+    /**
+     * 把负数下标换算成正数
+     */
+    static long index(long index, long size){
+        return index < 0 ? size + index : index;
+    }
+
+    static boolean is(byte[] arg, String option){
+        return option.equalsIgnoreCase(str(arg));
+    }
+
+    static RespException wrongArity(List<byte[]> args){
+        return new RespException("ERR wrong number of arguments for '" + str(args.get(0)).toLowerCase(Locale.ROOT) + "' command");
+    }
+}
@@ -0,0 +1,263 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * bitmap相关的命令
+ *
+ * 和redis一样，bitmap就是string，第0位是第一个字节的最高位，写超过长度的位置时自动补0。
+ */
+final class BitCommands {
+
+    private static final long MAX_BIT_OFFSET = 4L * 1024 * 1024 * 1024 - 1;
+
+    private BitCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("SETBIT", 4, (s, args) -> {
+            long offset = bitOffset(args.get(2));
+            String bit = Args.str(args.get(3));
+            if(!"0".equals(bit) && !"1".equals(bit)){
+                throw new RespException("ERR bit is not an integer or out of range");
+            }
+            byte[] value = grow(StringCommands.get(s, args.get(1)), offset + 1);
+            long old = getBits(value, offset, 1);
+            setBits(value, offset, 1, "1".equals(bit) ? 1 : 0);
+            s.db().putKeepTtl(Args.key(args.get(1)), value);
+            return old;
+        });
+        t.add("GETBIT", 3, (s, args) -> {
+            long offset = bitOffset(args.get(2));
+            byte[] value = StringCommands.get(s, args.get(1));
+            return value == null ? 0L : getBits(value, offset, 1);
+        });
+        t.add("BITCOUNT", -2, (s, args) -> {
+            byte[] value = StringCommands.get(s, args.get(1));
+            if(args.size() != 2 && args.size() != 4){
+                throw new RespException(RespException.SYNTAX);
+            }
+            if(value == null){
+                return 0L;
+            }
+            long start = 0;
+            long end = value.length - 1;
+            if(args.size() == 4){
+                start = Math.max(0, Args.index(Args.toLong(args.get(2)), value.length));
+                end = Math.min(value.length - 1, Args.index(Args.toLong(args.get(3)), value.length));
+            }
+            long count = 0;
+            for(long i = start; i <= end; i++){
+                count += Integer.bitCount(value[(int) i] & 0xFF);
+            }
+            return count;
+        });
+        t.add("BITOP", -4, (s, args) -> {
+            String op = Args.upper(args.get(1));
+            if(!"AND".equals(op) && !"OR".equals(op) && !"XOR".equals(op) && !"NOT".equals(op)){
+                throw new RespException(RespException.SYNTAX);
+            }
+            if("NOT".equals(op) && args.size() != 4){
+                throw new RespException("ERR BITOP NOT must be called with a single source key.");
+            }
+            List<byte[]> sources = new ArrayList<>();
+            int length = 0;
+            for(int i = 3; i < args.size(); i++){
+                byte[] value = StringCommands.get(s, args.get(i));
+                sources.add(value == null ? new byte[0] : value);
+                length = Math.max(length, sources.get(sources.size() - 1).length);
+            }
+            byte[] ret = new byte[length];
+            for(int i = 0; i < length; i++){
+                int b = byteAt(sources.get(0), i);
+                for(int j = 1; j < sources.size(); j++){
+                    int other = byteAt(sources.get(j), i);
+                    b = "AND".equals(op) ? b & other : "OR".equals(op) ? b | other : b ^ other;
+                }
+                ret[i] = (byte) ("NOT".equals(op) ? ~b : b);
+            }
+            ByteKey dest = Args.key(args.get(2));
+            if(length == 0){
+                s.db().remove(dest);
+            }else{
+                s.db().put(dest, ret);
+            }
+            return (long) length;
+        });
+        t.add("BITFIELD", -2, BitCommands::bitfield);
+    }
+
+    /**
+     * BITFIELD key [GET type offset] [SET type offset value] [INCRBY type offset increment] [OVERFLOW WRAP|SAT|FAIL]
+     */
+    private static Object bitfield(Session s, List<byte[]> args){
+        byte[] value = StringCommands.get(s, args.get(1));
+        boolean changed = false;
+        String overflow = "WRAP";
+        List<Object> ret = new ArrayList<>();
+        for(int i = 2; i < args.size(); i++){
+            String sub = Args.upper(args.get(i));
+            if("OVERFLOW".equals(sub) && i + 1 < args.size()){
+                overflow = Args.upper(args.get(++i));
+                if(!"WRAP".equals(overflow) && !"SAT".equals(overflow) && !"FAIL".equals(overflow)){
+                    throw new RespException("ERR Invalid OVERFLOW type specified");
+                }
+                continue;
+            }
+            int argc = "GET".equals(sub) ? 2 : "SET".equals(sub) || "INCRBY".equals(sub) ? 3 : -1;
+            if(argc < 0 || i + argc >= args.size()){
+                throw new RespException(RespException.SYNTAX);
+            }
+            String type = Args.str(args.get(i + 1));
+            boolean signed = type.startsWith("i") || type.startsWith("I");
+            int bits = bitWidth(type, signed);
+            long offset = fieldOffset(Args.str(args.get(i + 2)), bits);
+            long old = value == null ? 0 : getBits(value, offset, bits);
+            if(signed && bits < 64){
+                old = (old << (64 - bits)) >> (64 - bits);
+            }
+            if("GET".equals(sub)){
+                ret.add(old);
+                i += argc;
+                continue;
+            }
+            long operand = Args.toLong(args.get(i + 3));
+            Long next = "SET".equals(sub) ? fit(operand, operand, 0, signed, bits, overflow)
+                    : fit(old + operand, old, operand, signed, bits, overflow);
+            if(next == null){
+                ret.add(null);
+            }else{
+                value = grow(value, offset + bits);
+                setBits(value, offset, bits, next);
+                changed = true;
+                ret.add("SET".equals(sub) ? old : next);
+            }
+            i += argc;
+        }
+        if(changed){
+            s.db().putKeepTtl(Args.key(args.get(1)), value);
+        }
+        return ret;
+    }
+
+    /**
+     * 按OVERFLOW的规则把结果截到bits位能表示的范围内，FAIL时返回null
+     * @param base SET时为要写入的值，INCRBY时为原来的值
+     */
+    private static Long fit(long result, long base, long increment, boolean signed, int bits, String overflow){
+        long min = signed ? (bits == 64 ? Long.MIN_VALUE : -(1L << (bits - 1))) : 0;
+        long max = signed ? (bits == 64 ? Long.MAX_VALUE : (1L << (bits - 1)) - 1) : (1L << bits) - 1;
+        boolean upward = increment == 0 ? base > max : increment > 0;
+        boolean overflowed;
+        if(increment == 0){
+            overflowed = result > max || result < min;
+        }else if(bits == 64){
+            overflowed = ((base ^ result) & (increment ^ result)) < 0;
+        }else{
+            overflowed = result > max || result < min || ((base ^ result) & (increment ^ result)) < 0;
+        }
+        if(!overflowed){
+            return result;
+        }
+        switch(overflow){
+            case "SAT":
+                return upward ? max : min;
+            case "FAIL":
+                return null;
+            default:
+                if(signed){
+                    return bits == 64 ? result : (result << (64 - bits)) >> (64 - bits);
+                }
+                return result & max;
+        }
+    }
+
+    private static int bitWidth(String type, boolean signed){
+        int bits;
+        try{
+            bits = Integer.parseInt(type.substring(1));
+        }catch(NumberFormatException | StringIndexOutOfBoundsException e){
+            bits = -1;
+        }
+        boolean unsigned = type.startsWith("u") || type.startsWith("U");
+        if((!signed && !unsigned) || bits < 1 || bits > (signed ? 64 : 63)){
+            throw new RespException("ERR Invalid bitfield type. Use something like i16 u8. Note that u64 is not supported but i64 is.");
+        }
+        return bits;
+    }
+
+    /**
+     * offset可以写成#N，表示第N个bits宽的整数
+     */
+    private static long fieldOffset(String s, int bits){
+        boolean multiply = s.startsWith("#");
+        long offset;
+        try{
+            offset = Long.parseLong(multiply ? s.substring(1) : s);
+        }catch(NumberFormatException e){
+            offset = -1;
+        }
+        if(multiply && offset >= 0){
+            offset *= bits;
+        }
+        if(offset < 0 || offset + bits - 1 > MAX_BIT_OFFSET){
+            throw new RespException("ERR bit offset is not an integer or out of range");
+        }
+        return offset;
+    }
+
+    private static long bitOffset(byte[] arg){
+        long offset;
+        try{
+            offset = Args.toLong(arg);
+        }catch(RespException e){
+            offset = -1;
+        }
+        if(offset < 0 || offset > MAX_BIT_OFFSET){
+            throw new RespException("ERR bit offset is not an integer or out of range");
+        }
+        return offset;
+    }
+
+    /**
+     * 复制一份，长度至少能放下bitLength位
+     */
+    private static byte[] grow(byte[] value, long bitLength){
+        int length = (int) ((bitLength + 7) / 8);
+        if(value == null){
+            return new byte[length];
+        }
+        return Arrays.copyOf(value, Math.max(value.length, length));
+    }
+
+    private static int byteAt(byte[] value, int index){
+        return index < value.length ? value[index] & 0xFF : 0;
+    }
+
+    /**
+     * 从offset开始读bits位，高位在前，超过长度的部分是0
+     */
+    private static long getBits(byte[] value, long offset, int bits){
+        long ret = 0;
+        for(int i = 0; i < bits; i++){
+            long pos = offset + i;
+            int bit = pos / 8 < value.length ? (value[(int) (pos / 8)] >> (7 - (int) (pos % 8))) & 1 : 0;
+            ret = (ret << 1) | bit;
+        }
+        return ret;
+    }
+
+    private static void setBits(byte[] value, long offset, int bits, long bitsValue){
+        for(int i = 0; i < bits; i++){
+            long pos = offset + i;
+            int mask = 1 << (7 - (int) (pos % 8));
+            if(((bitsValue >>> (bits - 1 - i)) & 1) != 0){
+                value[(int) (pos / 8)] |= mask;
+            }else{
+                value[(int) (pos / 8)] &= ~mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 按内容比较的byte[]，作为key、hash的field、set和zset的成员
+ */
+final class ByteKey implements Comparable<ByteKey> {
+
+    final byte[] bytes;
+    private final int hash;
+
+    ByteKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof ByteKey)){
+            return false;
+        }
+        ByteKey other = (ByteKey) o;
+        return hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    /**
+     * 和redis一样按无符号字节的字典序
+     */
+    @Override
+    public int compareTo(ByteKey o){
+        int len = Math.min(bytes.length, o.bytes.length);
+        for(int i = 0; i < len; i++){
+            int c = (bytes[i] & 0xFF) - (o.bytes[i] & 0xFF);
+            if(c != 0){
+                return c;
+            }
+        }
+        return bytes.length - o.bytes.length;
+    }
+
+    @Override
+    public String toString(){
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.List;
+
+/**
+ * 一个redis命令的实现，args[0]是命令名，返回值见{@link Reply}
+ */
+@FunctionalInterface
+interface Command {
+
+    Object execute(Session session, List<byte[]> args);
+}
@@ -0,0 +1,54 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 命令名到实现的映射
+ */
+final class CommandTable {
+
+    private final Map<String, Spec> commands = new HashMap<>();
+
+    private static final class Spec {
+        private final int arity;
+        private final Command command;
+
+        private Spec(int arity, Command command) {
+            this.arity = arity;
+            this.command = command;
+        }
+    }
+
+    /**
+     * @param arity 和redis一样包括命令名的参数个数，负数表示至少-arity个
+     */
+    void add(String name, int arity, Command command){
+        commands.put(name.toUpperCase(Locale.ROOT), new Spec(arity, command));
+    }
+
+    boolean contains(String name){
+        return commands.containsKey(name);
+    }
+
+    /**
+     * 执行一个命令，出错时返回{@link Reply.Error}
+     */
+    Object execute(Session session, List<byte[]> args){
+        String name = Args.upper(args.get(0));
+        Spec spec = commands.get(name);
+        if(spec == null){
+            return new Reply.Error("ERR unknown command '" + Args.str(args.get(0)) + "'");
+        }
+        if(spec.arity > 0 ? args.size() != spec.arity : args.size() < -spec.arity){
+            return new Reply.Error(Args.wrongArity(args).getMessage());
+        }
+        try{
+            return spec.command.execute(session, args);
+        }catch(RespException e){
+            return new Reply.Error(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 一个db的keyspace
+ *
+ * value的类型：byte[]是string，LinkedHashMap是hash，LinkedList是list，LinkedHashSet是set，ScoredSet是zset。
+ * 过期的key在访问时删除，另外定时清理一次设置了过期时间的key。
+ */
+final class Database {
+
+    private final Map<ByteKey, Entry> data = new HashMap<>();
+    private final Set<ByteKey> volatileKeys = new HashSet<>();
+
+    private static final class Entry{
+        private Object value;
+        /**
+         * 过期的时间戳，0表示不过期
+         */
+        private long expireAt;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+
+    private Entry entry(ByteKey key){
+        Entry entry = data.get(key);
+        if(entry != null && entry.expireAt != 0 && entry.expireAt <= System.currentTimeMillis()){
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    boolean exists(ByteKey key){
+        return entry(key) != null;
+    }
+
+    Object get(ByteKey key){
+        Entry entry = entry(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 取指定类型的value，不存在返回null，类型不对抛出WRONGTYPE
+     */
+    <T> T get(ByteKey key, Class<T> type){
+        Object value = get(key);
+        if(value == null){
+            return null;
+        }
+        if(!type.isInstance(value)){
+            throw new RespException(RespException.WRONG_TYPE);
+        }
+        return type.cast(value);
+    }
+
+    <T> T getOrCreate(ByteKey key, Class<T> type, Supplier<T> creator){
+        T value = get(key, type);
+        if(value == null){
+            value = creator.get();
+            data.put(key, new Entry(value));
+        }
+        return value;
+    }
+
+    /**
+     * 写入新的value，清除过期时间
+     */
+    void put(ByteKey key, Object value){
+        data.put(key, new Entry(value));
+        volatileKeys.remove(key);
+    }
+
+    /**
+     * 写入新的value，保留原来的过期时间
+     */
+    void putKeepTtl(ByteKey key, Object value){
+        Entry entry = entry(key);
+        if(entry == null){
+            put(key, value);
+        }else{
+            entry.value = value;
+        }
+    }
+
+    boolean remove(ByteKey key){
+        volatileKeys.remove(key);
+        return data.remove(key) != null;
+    }
+
+    /**
+     * 集合类型的元素删光以后删除key
+     */
+    void removeIfEmpty(ByteKey key, Object value){
+        boolean empty = value instanceof Map ? ((Map<?, ?>) value).isEmpty()
+                : value instanceof Collection ? ((Collection<?>) value).isEmpty()
+                : value instanceof ScoredSet && ((ScoredSet) value).size() == 0;
+        if(empty){
+            remove(key);
+        }
+    }
+
+    /**
+     * @param expireAt 过期的时间戳，0表示不过期
+     * @return key不存在返回false
+     */
+    boolean expireAt(ByteKey key, long expireAt){
+        Entry entry = entry(key);
+        if(entry == null){
+            return false;
+        }
+        if(expireAt != 0 && expireAt <= System.currentTimeMillis()){
+            remove(key);
+            return true;
+        }
+        entry.expireAt = expireAt;
+        if(expireAt == 0){
+            volatileKeys.remove(key);
+        }else{
+            volatileKeys.add(key);
+        }
+        return true;
+    }
+
+    /**
+     * @return 过期的时间戳，0表示不过期，-1表示key不存在
+     */
+    long getExpireAt(ByteKey key){
+        Entry entry = entry(key);
+        return entry == null ? -1 : entry.expireAt;
+    }
+
+    List<ByteKey> keys(){
+        List<ByteKey> keys = new ArrayList<>(data.size());
+        long now = System.currentTimeMillis();
+        for(Map.Entry<ByteKey, Entry> e : data.entrySet()){
+            if(e.getValue().expireAt == 0 || e.getValue().expireAt > now){
+                keys.add(e.getKey());
+            }
+        }
+        return keys;
+    }
+
+    int size(){
+        return data.size();
+    }
+
+    void clear(){
+        data.clear();
+        volatileKeys.clear();
+    }
+
+    /**
+     * 删除所有已经过期的key
+     */
+    void evictExpired(){
+        long now = System.currentTimeMillis();
+        for(Iterator<ByteKey> it = volatileKeys.iterator(); it.hasNext();){
+            ByteKey key = it.next();
+            Entry entry = data.get(key);
+            if(entry == null || entry.expireAt == 0){
+                it.remove();
+            }else if(entry.expireAt <= now){
+                data.remove(key);
+                it.remove();
+            }
+        }
+    }
+}
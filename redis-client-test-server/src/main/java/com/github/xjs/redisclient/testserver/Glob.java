@@ -0,0 +1,81 @@
+package com.github.xjs.redisclient.testserver;
+
+/**
+ * KEYS、SCAN MATCH、PSUBSCRIBE使用的glob匹配，支持* ? [abc] [^a] [a-z]和\转义
+ */
+final class Glob {
+
+    private Glob() {
+    }
+
+    static boolean match(byte[] pattern, byte[] text){
+        return match(pattern, 0, text, 0);
+    }
+
+    private static boolean match(byte[] p, int pi, byte[] s, int si){
+        while(pi < p.length){
+            byte c = p[pi];
+            if(c == '*'){
+                while(pi + 1 < p.length && p[pi + 1] == '*'){
+                    pi++;
+                }
+                if(pi + 1 == p.length){
+                    return true;
+                }
+                for(int i = si; i <= s.length; i++){
+                    if(match(p, pi + 1, s, i)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if(si >= s.length){
+                return false;
+            }
+            if(c == '?'){
+                pi++;
+                si++;
+                continue;
+            }
+            if(c == '['){
+                int end = pi + 1;
+                boolean not = end < p.length && p[end] == '^';
+                if(not){
+                    end++;
+                }
+                boolean matched = false;
+                while(end < p.length && p[end] != ']'){
+                    if(p[end] == '\\' && end + 1 < p.length){
+                        end++;
+                        matched |= p[end] == s[si];
+                    }else if(end + 2 < p.length && p[end + 1] == '-' && p[end + 2] != ']'){
+                        int lo = p[end] & 0xFF;
+                        int hi = p[end + 2] & 0xFF;
+                        int v = s[si] & 0xFF;
+                        matched |= v >= Math.min(lo, hi) && v <= Math.max(lo, hi);
+                        end += 2;
+                    }else{
+                        matched |= p[end] == s[si];
+                    }
+                    end++;
+                }
+                if(matched == not){
+                    return false;
+                }
+                pi = Math.min(end + 1, p.length);
+                si++;
+                continue;
+            }
+            if(c == '\\' && pi + 1 < p.length){
+                pi++;
+                c = p[pi];
+            }
+            if(c != s[si]){
+                return false;
+            }
+            pi++;
+            si++;
+        }
+        return si == s.length;
+    }
+}
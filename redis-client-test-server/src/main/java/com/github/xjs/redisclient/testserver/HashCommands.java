@@ -0,0 +1,167 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * hash相关的命令
+ */
+final class HashCommands {
+
+    private HashCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("HSET", -4, (s, args) -> {
+            if(args.size() % 2 != 0){
+                throw Args.wrongArity(args);
+            }
+            Map<ByteKey, byte[]> hash = getOrCreate(s, args.get(1));
+            long added = 0;
+            for(int i = 2; i < args.size(); i += 2){
+                if(hash.put(Args.key(args.get(i)), args.get(i + 1)) == null){
+                    added++;
+                }
+            }
+            return added;
+        });
+        t.add("HMSET", -4, (s, args) -> {
+            if(args.size() % 2 != 0){
+                throw Args.wrongArity(args);
+            }
+            Map<ByteKey, byte[]> hash = getOrCreate(s, args.get(1));
+            for(int i = 2; i < args.size(); i += 2){
+                hash.put(Args.key(args.get(i)), args.get(i + 1));
+            }
+            return Reply.OK;
+        });
+        t.add("HSETNX", 4, (s, args) -> {
+            Map<ByteKey, byte[]> hash = getOrCreate(s, args.get(1));
+            return hash.putIfAbsent(Args.key(args.get(2)), args.get(3)) == null ? 1L : 0L;
+        });
+        t.add("HGET", 3, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            return hash == null ? null : hash.get(Args.key(args.get(2)));
+        });
+        t.add("HMGET", -3, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>(args.size() - 2);
+            for(int i = 2; i < args.size(); i++){
+                ret.add(hash == null ? null : hash.get(Args.key(args.get(i))));
+            }
+            return ret;
+        });
+        t.add("HDEL", -3, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            if(hash == null){
+                return 0L;
+            }
+            long removed = 0;
+            for(int i = 2; i < args.size(); i++){
+                if(hash.remove(Args.key(args.get(i))) != null){
+                    removed++;
+                }
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), hash);
+            return removed;
+        });
+        t.add("HLEN", 2, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            return hash == null ? 0L : (long) hash.size();
+        });
+        t.add("HSTRLEN", 3, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            byte[] value = hash == null ? null : hash.get(Args.key(args.get(2)));
+            return value == null ? 0L : (long) value.length;
+        });
+        t.add("HEXISTS", 3, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            return hash != null && hash.containsKey(Args.key(args.get(2))) ? 1L : 0L;
+        });
+        t.add("HKEYS", 2, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            if(hash != null){
+                for(ByteKey field : hash.keySet()){
+                    ret.add(field.bytes);
+                }
+            }
+            return ret;
+        });
+        t.add("HVALS", 2, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            return hash == null ? new ArrayList<>() : new ArrayList<Object>(hash.values());
+        });
+        t.add("HGETALL", 2, (s, args) -> {
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            Map<Object, Object> ret = new LinkedHashMap<>();
+            if(hash != null){
+                for(Map.Entry<ByteKey, byte[]> e : hash.entrySet()){
+                    ret.put(e.getKey().bytes, e.getValue());
+                }
+            }
+            return ret;
+        });
+        t.add("HINCRBY", 4, (s, args) -> {
+            long delta = Args.toLong(args.get(3));
+            Map<ByteKey, byte[]> hash = getOrCreate(s, args.get(1));
+            ByteKey field = Args.key(args.get(2));
+            byte[] old = hash.get(field);
+            long value;
+            try{
+                value = Math.addExact(old == null ? 0 : parseLong(old), delta);
+            }catch(ArithmeticException e){
+                throw new RespException("ERR increment or decrement would overflow");
+            }
+            hash.put(field, Args.bytes(value));
+            return value;
+        });
+        t.add("HINCRBYFLOAT", 4, (s, args) -> {
+            double delta = Args.toDouble(args.get(3));
+            Map<ByteKey, byte[]> hash = getOrCreate(s, args.get(1));
+            ByteKey field = Args.key(args.get(2));
+            byte[] old = hash.get(field);
+            double value = (old == null ? 0 : Args.toDouble(old)) + delta;
+            if(Double.isNaN(value) || Double.isInfinite(value)){
+                throw new RespException("ERR increment would produce NaN or Infinity");
+            }
+            byte[] ret = Args.bytes(value);
+            hash.put(field, ret);
+            return ret;
+        });
+        t.add("HSCAN", -3, (s, args) -> {
+            KeyCommands.ScanOptions options = new KeyCommands.ScanOptions(args, 3);
+            Map<ByteKey, byte[]> hash = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            if(hash != null){
+                for(Map.Entry<ByteKey, byte[]> e : hash.entrySet()){
+                    if(options.matches(e.getKey().bytes)){
+                        ret.add(e.getKey().bytes);
+                        ret.add(e.getValue());
+                    }
+                }
+            }
+            return KeyCommands.scanReply(ret);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<ByteKey, byte[]> get(Session s, byte[] key){
+        return s.db().get(Args.key(key), LinkedHashMap.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<ByteKey, byte[]> getOrCreate(Session s, byte[] key){
+        return s.db().getOrCreate(Args.key(key), LinkedHashMap.class, LinkedHashMap::new);
+    }
+
+    private static long parseLong(byte[] value){
+        try{
+            return Args.toLong(value);
+        }catch(RespException e){
+            throw new RespException("ERR hash value is not an integer");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * HyperLogLog相关的命令
+ *
+ * 测试用的服务器不做估算，值是"HYLL"开头的string，后面是排好序、去过重的元素64位hash，
+ * 所以PFCOUNT是精确的，结果和redis的估算值会有1%左右的差别。不是这个格式的string和redis一样报WRONGTYPE。
+ */
+final class HyperLogLogCommands {
+
+    private static final byte[] MAGIC = "HYLL".getBytes(StandardCharsets.US_ASCII);
+    private static final String INVALID = "WRONGTYPE Key is not a valid HyperLogLog string value.";
+
+    private HyperLogLogCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("PFADD", -2, (s, args) -> {
+            byte[] old = StringCommands.get(s, args.get(1));
+            long[] hashes = decode(old);
+            long[] added = new long[args.size() - 2];
+            for(int i = 2; i < args.size(); i++){
+                added[i - 2] = hash(args.get(i));
+            }
+            long[] merged = union(hashes, added);
+            if(old != null && merged.length == hashes.length){
+                return 0L;
+            }
+            s.db().putKeepTtl(Args.key(args.get(1)), encode(merged));
+            return 1L;
+        });
+        t.add("PFCOUNT", -2, (s, args) -> {
+            long[] hashes = new long[0];
+            for(int i = 1; i < args.size(); i++){
+                hashes = union(hashes, decode(StringCommands.get(s, args.get(i))));
+            }
+            return (long) hashes.length;
+        });
+        t.add("PFMERGE", -2, (s, args) -> {
+            long[] hashes = new long[0];
+            for(int i = 1; i < args.size(); i++){
+                hashes = union(hashes, decode(StringCommands.get(s, args.get(i))));
+            }
+            s.db().putKeepTtl(Args.key(args.get(1)), encode(hashes));
+            return Reply.OK;
+        });
+    }
+
+    private static long[] decode(byte[] value){
+        if(value == null){
+            return new long[0];
+        }
+        if(value.length < MAGIC.length || (value.length - MAGIC.length) % 8 != 0
+                || !Arrays.equals(Arrays.copyOf(value, MAGIC.length), MAGIC)){
+            throw new RespException(INVALID);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value, MAGIC.length, value.length - MAGIC.length);
+        long[] ret = new long[buffer.remaining() / 8];
+        for(int i = 0; i < ret.length; i++){
+            ret[i] = buffer.getLong();
+        }
+        return ret;
+    }
+
+    private static byte[] encode(long[] hashes){
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + hashes.length * 8);
+        buffer.put(MAGIC);
+        for(long hash : hashes){
+            buffer.putLong(hash);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return 排好序、去过重的并集
+     */
+    private static long[] union(long[] a, long[] b){
+        long[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        Arrays.sort(all);
+        int n = 0;
+        for(int i = 0; i < all.length; i++){
+            if(n == 0 || all[i] != all[n - 1]){
+                all[n++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, n);
+    }
+
+    /**
+     * FNV-1a再做一次murmur3的finalizer，元素的个数远小于2^32，不考虑碰撞
+     */
+    private static long hash(byte[] element){
+        long h = 0xcbf29ce484222325L;
+        for(byte b : element){
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a7ed9ae63L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * key相关的命令
+ */
+final class KeyCommands {
+
+    private static final byte[] DUMP_TRAILER = {'R', 'S'};
+
+    private KeyCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("DEL", -2, KeyCommands::del);
+        t.add("UNLINK", -2, KeyCommands::del);
+        t.add("EXISTS", -2, (s, args) -> {
+            long count = 0;
+            for(int i = 1; i < args.size(); i++){
+                if(s.db().exists(Args.key(args.get(i)))){
+                    count++;
+                }
+            }
+            return count;
+        });
+        t.add("EXPIRE", 3, (s, args) -> expireAt(s, args.get(1), System.currentTimeMillis() + Args.toLong(args.get(2)) * 1000));
+        t.add("PEXPIRE", 3, (s, args) -> expireAt(s, args.get(1), System.currentTimeMillis() + Args.toLong(args.get(2))));
+        t.add("EXPIREAT", 3, (s, args) -> expireAt(s, args.get(1), Args.toLong(args.get(2)) * 1000));
+        t.add("PEXPIREAT", 3, (s, args) -> expireAt(s, args.get(1), Args.toLong(args.get(2))));
+        t.add("TTL", 2, (s, args) -> {
+            long ttl = ttl(s, args.get(1));
+            return ttl < 0 ? ttl : (ttl + 500) / 1000;
+        });
+        t.add("PTTL", 2, (s, args) -> ttl(s, args.get(1)));
+        t.add("PERSIST", 2, (s, args) -> {
+            ByteKey key = Args.key(args.get(1));
+            return s.db().getExpireAt(key) > 0 && s.db().expireAt(key, 0) ? 1L : 0L;
+        });
+        t.add("TYPE", 2, (s, args) -> new Reply.Status(type(s.db().get(Args.key(args.get(1))))));
+        t.add("KEYS", 2, (s, args) -> {
+            List<Object> ret = new ArrayList<>();
+            for(ByteKey key : s.db().keys()){
+                if(Glob.match(args.get(1), key.bytes)){
+                    ret.add(key.bytes);
+                }
+            }
+            return ret;
+        });
+        t.add("SCAN", -2, (s, args) -> {
+            ScanOptions options = new ScanOptions(args, 2);
+            List<Object> ret = new ArrayList<>();
+            for(ByteKey key : s.db().keys()){
+                if(options.matches(key.bytes) && (options.type == null || options.type.equalsIgnoreCase(type(s.db().get(key))))){
+                    ret.add(key.bytes);
+                }
+            }
+            return scanReply(ret);
+        });
+        t.add("RANDOMKEY", 1, (s, args) -> {
+            List<ByteKey> keys = s.db().keys();
+            return keys.isEmpty() ? null : keys.get((int) (Math.random() * keys.size())).bytes;
+        });
+        t.add("RENAME", 3, (s, args) -> {
+            rename(s, args, false);
+            return Reply.OK;
+        });
+        t.add("RENAMENX", 3, (s, args) -> rename(s, args, true) ? 1L : 0L);
+        t.add("DUMP", 2, (s, args) -> {
+            Object value = s.db().get(Args.key(args.get(1)));
+            return value == null ? null : dump(value);
+        });
+        t.add("RESTORE", -4, KeyCommands::restore);
+    }
+
+    private static Object del(Session s, List<byte[]> args){
+        long count = 0;
+        for(int i = 1; i < args.size(); i++){
+            if(s.db().remove(Args.key(args.get(i)))){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Object expireAt(Session s, byte[] key, long expireAt){
+        return s.db().expireAt(Args.key(key), expireAt) ? 1L : 0L;
+    }
+
+    /**
+     * @return 剩余的毫秒数，-1表示不过期，-2表示不存在
+     */
+    private static long ttl(Session s, byte[] key){
+        long expireAt = s.db().getExpireAt(Args.key(key));
+        if(expireAt < 0){
+            return -2;
+        }
+        return expireAt == 0 ? -1 : Math.max(0, expireAt - System.currentTimeMillis());
+    }
+
+    private static boolean rename(Session s, List<byte[]> args, boolean nx){
+        ByteKey from = Args.key(args.get(1));
+        ByteKey to = Args.key(args.get(2));
+        Object value = s.db().get(from);
+        if(value == null){
+            throw new RespException("ERR no such key");
+        }
+        if(nx && s.db().exists(to)){
+            return false;
+        }
+        long expireAt = s.db().getExpireAt(from);
+        s.db().remove(from);
+        s.db().put(to, value);
+        if(expireAt > 0){
+            s.db().expireAt(to, expireAt);
+        }
+        return true;
+    }
+
+    /**
+     * DUMP的格式只有本服务器认识：类型、元素个数、元素，最后是两个字节的标记，不是redis的RDB格式
+     */
+    @SuppressWarnings("unchecked")
+    private static byte[] dump(Object value){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)){
+            if(value instanceof byte[]){
+                out.writeByte(0);
+                write(out, (byte[]) value);
+            }else if(value instanceof LinkedList){
+                LinkedList<byte[]> list = (LinkedList<byte[]>) value;
+                out.writeByte(1);
+                out.writeInt(list.size());
+                for(byte[] item : list){
+                    write(out, item);
+                }
+            }else if(value instanceof LinkedHashSet){
+                LinkedHashSet<ByteKey> set = (LinkedHashSet<ByteKey>) value;
+                out.writeByte(2);
+                out.writeInt(set.size());
+                for(ByteKey member : set){
+                    write(out, member.bytes);
+                }
+            }else if(value instanceof ScoredSet){
+                List<ScoredSet.Member> members = ((ScoredSet) value).all();
+                out.writeByte(3);
+                out.writeInt(members.size());
+                for(ScoredSet.Member member : members){
+                    write(out, member.key.bytes);
+                    out.writeDouble(member.score);
+                }
+            }else{
+                Map<ByteKey, byte[]> hash = (Map<ByteKey, byte[]>) value;
+                out.writeByte(4);
+                out.writeInt(hash.size());
+                for(Map.Entry<ByteKey, byte[]> e : hash.entrySet()){
+                    write(out, e.getKey().bytes);
+                    write(out, e.getValue());
+                }
+            }
+            out.write(DUMP_TRAILER);
+        }catch(IOException e){
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * RESTORE key ttl serialized-value [REPLACE] [ABSTTL]
+     */
+    private static Object restore(Session s, List<byte[]> args){
+        ByteKey key = Args.key(args.get(1));
+        long ttl = Args.toLong(args.get(2));
+        boolean replace = false;
+        boolean absolute = false;
+        for(int i = 4; i < args.size(); i++){
+            if(Args.is(args.get(i), "REPLACE")){
+                replace = true;
+            }else if(Args.is(args.get(i), "ABSTTL")){
+                absolute = true;
+            }else{
+                throw new RespException(RespException.SYNTAX);
+            }
+        }
+        if(ttl < 0){
+            throw new RespException("ERR Invalid TTL value, must be >= 0");
+        }
+        Object value = undump(args.get(3));
+        if(!replace && s.db().exists(key)){
+            throw new RespException("BUSYKEY Target key name already exists.");
+        }
+        s.db().put(key, value);
+        if(ttl > 0){
+            s.db().expireAt(key, absolute ? ttl : System.currentTimeMillis() + ttl);
+        }
+        return Reply.OK;
+    }
+
+    private static Object undump(byte[] payload){
+        int length = payload.length - DUMP_TRAILER.length;
+        if(length < 1 || payload[length] != DUMP_TRAILER[0] || payload[length + 1] != DUMP_TRAILER[1]){
+            throw new RespException("ERR DUMP payload version or checksum are wrong");
+        }
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 0, length))){
+            int type = in.readByte();
+            if(type == 0){
+                return read(in);
+            }
+            int size = in.readInt();
+            if(type == 1){
+                LinkedList<byte[]> list = new LinkedList<>();
+                for(int i = 0; i < size; i++){
+                    list.add(read(in));
+                }
+                return list;
+            }
+            if(type == 2){
+                LinkedHashSet<ByteKey> set = new LinkedHashSet<>();
+                for(int i = 0; i < size; i++){
+                    set.add(new ByteKey(read(in)));
+                }
+                return set;
+            }
+            if(type == 3){
+                ScoredSet zset = new ScoredSet();
+                for(int i = 0; i < size; i++){
+                    zset.put(new ByteKey(read(in)), in.readDouble());
+                }
+                return zset;
+            }
+            LinkedHashMap<ByteKey, byte[]> hash = new LinkedHashMap<>();
+            for(int i = 0; i < size; i++){
+                hash.put(new ByteKey(read(in)), read(in));
+            }
+            return hash;
+        }catch(IOException e){
+            throw new RespException("ERR Bad data format");
+        }
+    }
+
+    private static void write(DataOutputStream out, byte[] bytes) throws IOException{
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] read(DataInputStream in) throws IOException{
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static String type(Object value){
+        if(value == null){
+            return "none";
+        }
+        if(value instanceof byte[]){
+            return "string";
+        }
+        if(value instanceof LinkedHashMap){
+            return "hash";
+        }
+        if(value instanceof LinkedList){
+            return "list";
+        }
+        if(value instanceof LinkedHashSet){
+            return "set";
+        }
+        return "zset";
+    }
+
+    /**
+     * SCAN一次返回全部结果，游标总是0，COUNT只是一个提示，客户端按游标迭代的逻辑不受影响
+     */
+    static List<Object> scanReply(List<Object> items){
+        return Arrays.asList(Args.bytes("0"), items);
+    }
+
+    /**
+     * SCAN系列命令的MATCH、COUNT、TYPE参数
+     */
+    static final class ScanOptions {
+        final byte[] pattern;
+        final String type;
+
+        ScanOptions(List<byte[]> args, int from) {
+            byte[] pattern = null;
+            String type = null;
+            for(int i = from; i < args.size(); i++){
+                if(i + 1 >= args.size()){
+                    throw new RespException(RespException.SYNTAX);
+                }
+                if(Args.is(args.get(i), "MATCH")){
+                    pattern = args.get(++i);
+                }else if(Args.is(args.get(i), "COUNT")){
+                    if(Args.toLong(args.get(++i)) < 1){
+                        throw new RespException(RespException.SYNTAX);
+                    }
+                }else if(Args.is(args.get(i), "TYPE")){
+                    type = Args.str(args.get(++i));
+                }else{
+                    throw new RespException(RespException.SYNTAX);
+                }
+            }
+            this.pattern = pattern;
+            this.type = type;
+        }
+
+        boolean matches(byte[] item){
+            return pattern == null || Glob.match(pattern, item);
+        }
+    }
+}
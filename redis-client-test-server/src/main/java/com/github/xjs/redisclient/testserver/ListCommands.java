@@ -0,0 +1,223 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * list相关的命令，包括阻塞的BLPOP、BRPOP、BRPOPLPUSH、BLMOVE
+ */
+final class ListCommands {
+
+    private ListCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("LPUSH", -3, (s, args) -> push(s, args, true, false));
+        t.add("RPUSH", -3, (s, args) -> push(s, args, false, false));
+        t.add("LPUSHX", -3, (s, args) -> push(s, args, true, true));
+        t.add("RPUSHX", -3, (s, args) -> push(s, args, false, true));
+        t.add("LPOP", -2, (s, args) -> pop(s, args, true));
+        t.add("RPOP", -2, (s, args) -> pop(s, args, false));
+        t.add("LLEN", 2, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            return list == null ? 0L : (long) list.size();
+        });
+        t.add("LINDEX", 3, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            if(list == null){
+                return null;
+            }
+            long index = Args.index(Args.toLong(args.get(2)), list.size());
+            return index < 0 || index >= list.size() ? null : list.get((int) index);
+        });
+        t.add("LSET", 4, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            if(list == null){
+                throw new RespException("ERR no such key");
+            }
+            long index = Args.index(Args.toLong(args.get(2)), list.size());
+            if(index < 0 || index >= list.size()){
+                throw new RespException("ERR index out of range");
+            }
+            list.set((int) index, args.get(3));
+            return Reply.OK;
+        });
+        t.add("LRANGE", 4, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            if(list == null){
+                return ret;
+            }
+            long start = Math.max(0, Args.index(Args.toLong(args.get(2)), list.size()));
+            long stop = Math.min(list.size() - 1, Args.index(Args.toLong(args.get(3)), list.size()));
+            if(start > stop){
+                return ret;
+            }
+            ListIterator<byte[]> it = list.listIterator((int) start);
+            for(long i = start; i <= stop; i++){
+                ret.add(it.next());
+            }
+            return ret;
+        });
+        t.add("LREM", 4, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            if(list == null){
+                return 0L;
+            }
+            long count = Args.toLong(args.get(2));
+            long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+            long removed = 0;
+            Iterator<byte[]> it = count < 0 ? list.descendingIterator() : list.iterator();
+            while(it.hasNext() && removed < limit){
+                if(Arrays.equals(it.next(), args.get(3))){
+                    it.remove();
+                    removed++;
+                }
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), list);
+            return removed;
+        });
+        t.add("LTRIM", 4, (s, args) -> {
+            LinkedList<byte[]> list = get(s, args.get(1));
+            if(list == null){
+                return Reply.OK;
+            }
+            long start = Math.max(0, Args.index(Args.toLong(args.get(2)), list.size()));
+            long stop = Math.min(list.size() - 1, Args.index(Args.toLong(args.get(3)), list.size()));
+            if(start > stop){
+                list.clear();
+            }else{
+                for(long i = stop + 1, size = list.size(); i < size; i++){
+                    list.removeLast();
+                }
+                for(long i = 0; i < start; i++){
+                    list.removeFirst();
+                }
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), list);
+            return Reply.OK;
+        });
+        t.add("RPOPLPUSH", 3, (s, args) -> move(s, args.get(1), args.get(2), false, true));
+        t.add("LMOVE", 5, (s, args) -> move(s, args.get(1), args.get(2), isLeft(args.get(3)), isLeft(args.get(4))));
+        t.add("BRPOPLPUSH", 4, (s, args) -> {
+            long timeout = Args.timeoutMillis(args.get(3));
+            Object ret = move(s, args.get(1), args.get(2), false, true);
+            return ret != null ? ret : s.block(args.subList(1, 2), timeout, null);
+        });
+        t.add("BLMOVE", 6, (s, args) -> {
+            long timeout = Args.timeoutMillis(args.get(5));
+            Object ret = move(s, args.get(1), args.get(2), isLeft(args.get(3)), isLeft(args.get(4)));
+            return ret != null ? ret : s.block(args.subList(1, 2), timeout, null);
+        });
+        t.add("BLPOP", -3, (s, args) -> blockingPop(s, args, true));
+        t.add("BRPOP", -3, (s, args) -> blockingPop(s, args, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LinkedList<byte[]> get(Session s, byte[] key){
+        return s.db().get(Args.key(key), LinkedList.class);
+    }
+
+    private static Object push(Session s, List<byte[]> args, boolean left, boolean onlyIfExists){
+        ByteKey key = Args.key(args.get(1));
+        LinkedList<byte[]> list = get(s, args.get(1));
+        if(list == null){
+            if(onlyIfExists){
+                return 0L;
+            }
+            list = new LinkedList<>();
+            s.db().put(key, list);
+        }
+        for(int i = 2; i < args.size(); i++){
+            if(left){
+                list.addFirst(args.get(i));
+            }else{
+                list.addLast(args.get(i));
+            }
+        }
+        s.server.signal(key);
+        return (long) list.size();
+    }
+
+    private static Object pop(Session s, List<byte[]> args, boolean left){
+        if(args.size() > 3){
+            throw new RespException(RespException.SYNTAX);
+        }
+        LinkedList<byte[]> list = get(s, args.get(1));
+        if(args.size() == 2){
+            if(list == null){
+                return null;
+            }
+            byte[] ret = left ? list.removeFirst() : list.removeLast();
+            s.db().removeIfEmpty(Args.key(args.get(1)), list);
+            return ret;
+        }
+        long count = Args.toLong(args.get(2));
+        if(count < 0){
+            throw new RespException("ERR value is out of range, must be positive");
+        }
+        if(list == null){
+            return Reply.NULL_ARRAY;
+        }
+        List<Object> ret = new ArrayList<>();
+        for(long i = 0; i < count && !list.isEmpty(); i++){
+            ret.add(left ? list.removeFirst() : list.removeLast());
+        }
+        s.db().removeIfEmpty(Args.key(args.get(1)), list);
+        return ret;
+    }
+
+    private static boolean isLeft(byte[] where){
+        if(Args.is(where, "LEFT")){
+            return true;
+        }
+        if(Args.is(where, "RIGHT")){
+            return false;
+        }
+        throw new RespException(RespException.SYNTAX);
+    }
+
+    /**
+     * 从source的一端移一个元素到destination的一端，source为空返回null
+     */
+    private static Object move(Session s, byte[] source, byte[] destination, boolean fromLeft, boolean toLeft){
+        LinkedList<byte[]> from = get(s, source);
+        if(from == null){
+            return null;
+        }
+        //先检查destination的类型，source和destination相同时删空以后要重新取
+        get(s, destination);
+        byte[] item = fromLeft ? from.removeFirst() : from.removeLast();
+        s.db().removeIfEmpty(Args.key(source), from);
+        LinkedList<byte[]> to = get(s, destination);
+        if(to == null){
+            to = new LinkedList<>();
+            s.db().put(Args.key(destination), to);
+        }
+        if(toLeft){
+            to.addFirst(item);
+        }else{
+            to.addLast(item);
+        }
+        s.server.signal(Args.key(destination));
+        return item;
+    }
+
+    private static Object blockingPop(Session s, List<byte[]> args, boolean left){
+        long timeout = Args.timeoutMillis(args.get(args.size() - 1));
+        List<byte[]> keys = args.subList(1, args.size() - 1);
+        for(byte[] key : keys){
+            LinkedList<byte[]> list = get(s, key);
+            if(list != null){
+                byte[] item = left ? list.removeFirst() : list.removeLast();
+                s.db().removeIfEmpty(Args.key(key), list);
+                return Arrays.asList(key, item);
+            }
+        }
+        return s.block(keys, timeout, Reply.NULL_ARRAY);
+    }
+}
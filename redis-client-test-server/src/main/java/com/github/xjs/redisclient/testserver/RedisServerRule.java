@@ -0,0 +1,67 @@
+package com.github.xjs.redisclient.testserver;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * JUnit4的rule，在测试类之前启动进程内的redis，并把spring.redis.host和spring.redis.port指向它
+ *
+ * 整个JVM共用一个服务器，每个测试类开始时清空数据。要连真实的redis跑测试，加上-Dredis.embedded=false。
+ * <pre>
+ * &#64;ClassRule
+ * public static RedisServerRule redis = new RedisServerRule();
+ * </pre>
+ */
+public class RedisServerRule extends ExternalResource {
+
+    public static final String ENABLED_PROPERTY = "redis.embedded";
+    private static RespServer shared;
+
+    private final long latencyMicros;
+
+    public RedisServerRule() {
+        this(0);
+    }
+
+    /**
+     * @param latencyMicros 注入的延迟，模拟网络往返
+     */
+    public RedisServerRule(long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+    }
+
+    public static boolean isEnabled(){
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    }
+
+    /**
+     * 共用的服务器，没有启用时返回null
+     */
+    public static synchronized RespServer getServer(){
+        if(!isEnabled()){
+            return null;
+        }
+        if(shared == null){
+            shared = new RespServer().start();
+            System.setProperty("spring.redis.host", shared.getHost());
+            System.setProperty("spring.redis.port", String.valueOf(shared.getPort()));
+        }
+        return shared;
+    }
+
+    @Override
+    protected void before(){
+        RespServer server = getServer();
+        if(server != null){
+            server.flushAll();
+            server.setLatencyMicros(latencyMicros);
+        }
+    }
+
+    @Override
+    protected void after(){
+        RespServer server = getServer();
+        if(server != null){
+            server.setLatencyMicros(0);
+        }
+    }
+}
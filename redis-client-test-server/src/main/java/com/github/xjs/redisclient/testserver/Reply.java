@@ -0,0 +1,69 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.List;
+
+/**
+ * 命令的返回值
+ *
+ * 除了这里的几种类型，byte[]是bulk string，Long是整数，Double是浮点数，List是数组，Map是RESP3的map，
+ * null是空值，各自按客户端协商的协议版本编码。
+ */
+final class Reply {
+
+    static final Status OK = new Status("OK");
+    static final Status PONG = new Status("PONG");
+    static final Status QUEUED = new Status("QUEUED");
+    /**
+     * RESP2里的空数组(*-1)，比如BLPOP超时
+     */
+    static final Object NULL_ARRAY = new Object();
+    /**
+     * 阻塞命令需要等待，不立即返回
+     */
+    static final Object BLOCKED = new Object();
+    /**
+     * 命令已经自己写回了响应，比如SUBSCRIBE每个频道一个响应
+     */
+    static final Object NONE = new Object();
+
+    private Reply() {
+    }
+
+    static final class Status {
+        final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+    }
+
+    static final class Error {
+        final String text;
+
+        Error(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * RESP3里编码为set，RESP2里是普通数组
+     */
+    static final class SetReply {
+        final List<?> items;
+
+        SetReply(List<?> items) {
+            this.items = items;
+        }
+    }
+
+    /**
+     * 订阅的消息，RESP3里编码为push
+     */
+    static final class Push {
+        final List<?> items;
+
+        Push(List<?> items) {
+            this.items = items;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.xjs.redisclient.testserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把请求解码成参数列表，支持multibulk(*n $len ...)和telnet式的内联命令
+ */
+class RespDecoder extends ByteToMessageDecoder {
+
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out){
+        while(in.isReadable()){
+            int start = in.readerIndex();
+            List<byte[]> args = in.getByte(start) == '*' ? decodeMultiBulk(in) : decodeInline(in);
+            if(args == null){
+                in.readerIndex(start);
+                return;
+            }
+            if(!args.isEmpty()){
+                out.add(args);
+            }
+        }
+    }
+
+    private static List<byte[]> decodeMultiBulk(ByteBuf in){
+        in.skipBytes(1);
+        long count = readNumber(in);
+        if(count < 0){
+            return count == -2 ? null : new ArrayList<>();
+        }
+        List<byte[]> args = new ArrayList<>((int) Math.min(count, 1024));
+        for(long i = 0; i < count; i++){
+            if(!in.isReadable()){
+                return null;
+            }
+            if(in.readByte() != '$'){
+                throw new DecoderException("Protocol error: expected '$'");
+            }
+            long length = readNumber(in);
+            if(length == -2){
+                return null;
+            }
+            if(length < 0 || length > MAX_BULK_LENGTH){
+                throw new DecoderException("Protocol error: invalid bulk length");
+            }
+            if(in.readableBytes() < length + 2){
+                return null;
+            }
+            byte[] arg = new byte[(int) length];
+            in.readBytes(arg);
+            in.skipBytes(2);
+            args.add(arg);
+        }
+        return args;
+    }
+
+    /**
+     * 读到\r\n为止的整数，数据还不完整时返回-2
+     */
+    private static long readNumber(ByteBuf in){
+        int eol = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+        if(eol < 0){
+            return -2;
+        }
+        long value = 0;
+        boolean negative = false;
+        for(int i = in.readerIndex(); i < eol; i++){
+            byte b = in.getByte(i);
+            if(b == '-'){
+                negative = true;
+            }else if(b >= '0' && b <= '9'){
+                value = value * 10 + (b - '0');
+            }else if(b != '\r'){
+                throw new DecoderException("Protocol error: invalid number");
+            }
+        }
+        in.readerIndex(eol + 1);
+        return negative ? -1 : value;
+    }
+
+    private static List<byte[]> decodeInline(ByteBuf in){
+        int eol = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+        if(eol < 0){
+            return null;
+        }
+        byte[] line = new byte[eol - in.readerIndex()];
+        in.readBytes(line);
+        in.skipBytes(1);
+        List<byte[]> args = new ArrayList<>();
+        int begin = -1;
+        for(int i = 0; i <= line.length; i++){
+            boolean blank = i == line.length || line[i] == ' ' || line[i] == '\r' || line[i] == '\t';
+            if(blank && begin >= 0){
+                byte[] arg = new byte[i - begin];
+                System.arraycopy(line, begin, arg, 0, arg.length);
+                args.add(arg);
+                begin = -1;
+            }else if(!blank && begin < 0){
+                begin = i;
+            }
+        }
+        return args;
+    }
+}
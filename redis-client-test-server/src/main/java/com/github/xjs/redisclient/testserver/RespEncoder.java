@@ -0,0 +1,85 @@
+package com.github.xjs.redisclient.testserver;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按RESP2或者RESP3编码{@link Reply}
+ */
+final class RespEncoder {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private RespEncoder() {
+    }
+
+    static void encode(Object reply, int protocol, ByteBuf out){
+        boolean resp3 = protocol >= 3;
+        if(reply == null){
+            out.writeBytes(resp3 ? "_\r\n".getBytes(StandardCharsets.US_ASCII) : "$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        }else if(reply == Reply.NULL_ARRAY){
+            out.writeBytes(resp3 ? "_\r\n".getBytes(StandardCharsets.US_ASCII) : "*-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        }else if(reply instanceof byte[]){
+            byte[] bytes = (byte[]) reply;
+            line(out, '$', bytes.length);
+            out.writeBytes(bytes);
+            out.writeBytes(CRLF);
+        }else if(reply instanceof Long || reply instanceof Integer){
+            line(out, ':', ((Number) reply).longValue());
+        }else if(reply instanceof Boolean){
+            if(resp3){
+                out.writeBytes(((Boolean) reply ? "#t\r\n" : "#f\r\n").getBytes(StandardCharsets.US_ASCII));
+            }else{
+                line(out, ':', (Boolean) reply ? 1 : 0);
+            }
+        }else if(reply instanceof Double){
+            String text = Args.format((Double) reply);
+            if(resp3){
+                out.writeByte(',');
+                out.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+                out.writeBytes(CRLF);
+            }else{
+                encode(text.getBytes(StandardCharsets.US_ASCII), protocol, out);
+            }
+        }else if(reply instanceof Reply.Status){
+            out.writeByte('+');
+            out.writeBytes(((Reply.Status) reply).text.getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(CRLF);
+        }else if(reply instanceof Reply.Error){
+            out.writeByte('-');
+            out.writeBytes(((Reply.Error) reply).text.replace('\r', ' ').replace('\n', ' ').getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(CRLF);
+        }else if(reply instanceof List){
+            array(out, '*', (List<?>) reply, protocol);
+        }else if(reply instanceof Reply.SetReply){
+            array(out, resp3 ? '~' : '*', ((Reply.SetReply) reply).items, protocol);
+        }else if(reply instanceof Reply.Push){
+            array(out, resp3 ? '>' : '*', ((Reply.Push) reply).items, protocol);
+        }else if(reply instanceof Map){
+            Map<?, ?> map = (Map<?, ?>) reply;
+            line(out, resp3 ? '%' : '*', resp3 ? map.size() : map.size() * 2L);
+            for(Map.Entry<?, ?> e : map.entrySet()){
+                encode(e.getKey(), protocol, out);
+                encode(e.getValue(), protocol, out);
+            }
+        }else{
+            throw new IllegalArgumentException("不支持的返回值类型:" + reply.getClass());
+        }
+    }
+
+    private static void array(ByteBuf out, char type, List<?> items, int protocol){
+        line(out, type, items.size());
+        for(Object item : items){
+            encode(item, protocol, out);
+        }
+    }
+
+    private static void line(ByteBuf out, char type, long value){
+        out.writeByte(type);
+        out.writeBytes(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(CRLF);
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.xjs.redisclient.testserver;
+
+/**
+ * 命令执行出错，message就是返回给客户端的错误，以错误类型开头，比如ERR、WRONGTYPE
+ */
+class RespException extends RuntimeException {
+
+    static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+    static final String NOT_INTEGER = "ERR value is not an integer or out of range";
+    static final String NOT_FLOAT = "ERR value is not a valid float";
+    static final String SYNTAX = "ERR syntax error";
+
+    RespException(String message) {
+        super(message, null, false, false);
+    }
+}
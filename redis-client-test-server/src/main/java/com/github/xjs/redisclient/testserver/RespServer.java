@@ -0,0 +1,618 @@
+package com.github.xjs.redisclient.testserver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的redis服务器，用于没有真实redis时的测试和压测
+ *
+ * 基于netty，支持RESP2和RESP3(HELLO 3)，实现了RedisClientService用到的命令：string、hash、list、set、zset、
+ * 过期、SCAN、发布订阅、事务、阻塞的BRPOPLPUSH/BLPOP/BRPOP，以及用luaj执行的EVAL/EVALSHA。
+ * 所有连接共用一个IO线程，命令一条一条地执行，和redis一样是原子的。
+ * 可以设置注入的延迟来模拟网络往返时间，每个响应都推迟这么久再写回，同一条连接上的响应保持顺序。
+ *
+ * {@link #newReplica()}可以再开一个端口作为只读副本，和master共用数据和IO线程，相当于没有复制延迟的副本，用来测试读写分离。
+ *
+ * 不支持stream、持久化、真正的复制和集群，SCAN一次返回全部结果。
+ */
+public class RespServer implements Closeable {
+
+    private static final int DATABASES = 16;
+    private static final long EXPIRE_INTERVAL_MILLIS = 100;
+    private static final Set<String> TX_COMMANDS = new HashSet<>(Arrays.asList("MULTI", "EXEC", "DISCARD", "WATCH", "UNWATCH"));
+    private static final Set<String> SUBSCRIBED_COMMANDS = new HashSet<>(Arrays.asList(
+            "SUBSCRIBE", "UNSUBSCRIBE", "PSUBSCRIBE", "PUNSUBSCRIBE", "PING", "QUIT", "RESET"));
+    private static final Set<String> WRITE_COMMANDS = new HashSet<>(Arrays.asList(
+            "SET", "SETNX", "SETEX", "PSETEX", "GETSET", "GETDEL", "MSET", "MSETNX", "INCR", "DECR", "INCRBY", "DECRBY", "INCRBYFLOAT", "APPEND",
+            "SETBIT", "BITOP", "BITFIELD", "PFADD", "PFMERGE",
+            "DEL", "UNLINK", "RESTORE", "EXPIRE", "PEXPIRE", "EXPIREAT", "PEXPIREAT", "PERSIST", "RENAME", "RENAMENX", "FLUSHDB", "FLUSHALL",
+            "HSET", "HMSET", "HSETNX", "HDEL", "HINCRBY", "HINCRBYFLOAT",
+            "LPUSH", "RPUSH", "LPUSHX", "RPUSHX", "LPOP", "RPOP", "LSET", "LREM", "LTRIM", "RPOPLPUSH", "LMOVE", "BRPOPLPUSH", "BLMOVE", "BLPOP", "BRPOP",
+            "SADD", "SREM", "SPOP", "SMOVE", "SINTERSTORE", "SUNIONSTORE", "SDIFFSTORE",
+            "ZADD", "ZINCRBY", "ZREM", "ZREMRANGEBYRANK", "ZREMRANGEBYSCORE", "ZPOPMIN", "ZPOPMAX", "ZUNIONSTORE", "ZINTERSTORE"));
+
+    private final String host;
+    private final int requestedPort;
+    /**
+     * 副本的master，master自己为null
+     */
+    private final RespServer master;
+    private final List<RespServer> replicas = new CopyOnWriteArrayList<>();
+    private final Database[] databases;
+    private final CommandTable commands = new CommandTable();
+    private final ScriptEngine scripts;
+    private final Map<ByteKey, Set<Session>> channelSubscribers = new HashMap<>();
+    private final Map<ByteKey, Set<Session>> patternSubscribers = new LinkedHashMap<>();
+    private final Map<ByteKey, Deque<Waiter>> blocked = new HashMap<>();
+    private final Set<ByteKey> readyKeys = new LinkedHashSet<>();
+    private volatile long latencyNanos;
+    private volatile long commandsProcessed;
+    private final Map<String, Long> commandCounts = new ConcurrentHashMap<>();
+    private final Map<String, String> commandErrors = new ConcurrentHashMap<>();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventLoop loop;
+    private Channel serverChannel;
+
+    public RespServer() {
+        this(0);
+    }
+
+    /**
+     * @param port 监听的端口，0表示随机选一个空闲端口
+     */
+    public RespServer(int port) {
+        this("127.0.0.1", port);
+    }
+
+    public RespServer(String host, int port) {
+        this(host, port, null);
+    }
+
+    private RespServer(String host, int port, RespServer master) {
+        this.host = host;
+        this.requestedPort = port;
+        this.master = master;
+        if(master != null){
+            this.databases = master.databases;
+        }else{
+            this.databases = new Database[DATABASES];
+            for(int i = 0; i < DATABASES; i++){
+                databases[i] = new Database();
+            }
+        }
+        KeyCommands.register(commands);
+        StringCommands.register(commands);
+        BitCommands.register(commands);
+        HyperLogLogCommands.register(commands);
+        HashCommands.register(commands);
+        ListCommands.register(commands);
+        SetCommands.register(commands);
+        SortedSetCommands.register(commands);
+        ServerCommands.register(commands);
+        this.scripts = new ScriptEngine(commands);
+        ScriptEngine.register(commands);
+    }
+
+    public synchronized RespServer start(){
+        if(serverChannel != null){
+            return this;
+        }
+        if(master != null && master.loop == null){
+            throw new IllegalStateException("master还没有启动");
+        }
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("resp-server-boss", true));
+        workerGroup = master != null ? master.loop : new NioEventLoopGroup(1, new DefaultThreadFactory("resp-server", true));
+        loop = workerGroup.next();
+        try{
+            serverChannel = new ServerBootstrap()
+                    .group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch){
+                            ch.pipeline().addLast(new RespDecoder(), new Handler());
+                        }
+                    })
+                    .bind(host, requestedPort).sync().channel();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("启动测试服务器被中断", e);
+        }
+        if(master == null){
+            loop.scheduleWithFixedDelay(this::evictExpired, EXPIRE_INTERVAL_MILLIS, EXPIRE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }else{
+            master.replicas.add(this);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void close(){
+        if(serverChannel != null){
+            serverChannel.close().syncUninterruptibly();
+            serverChannel = null;
+        }
+        for(RespServer replica : replicas){
+            replica.close();
+        }
+        if(master != null){
+            master.replicas.remove(this);
+        }
+        if(bossGroup != null){
+            bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+            if(master == null){
+                workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+            }
+            bossGroup = null;
+            workerGroup = null;
+            loop = null;
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        if(serverChannel == null){
+            throw new IllegalStateException("测试服务器还没有启动");
+        }
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public long getLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+    }
+
+    /**
+     * 每个响应推迟多少微秒写回，模拟网络往返，0表示不注入延迟，精度受netty定时任务的限制大约是1毫秒
+     */
+    public void setLatencyMicros(long latencyMicros) {
+        if(latencyMicros < 0){
+            throw new IllegalArgumentException("latencyMicros不能小于0");
+        }
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    /**
+     * 新建一个只读副本，和这个服务器共用数据和IO线程，写命令返回READONLY错误，要在这个服务器启动以后再start
+     */
+    public RespServer newReplica(){
+        if(master != null){
+            throw new IllegalStateException("副本不能再有副本");
+        }
+        return new RespServer(host, 0, this);
+    }
+
+    public boolean isReplica(){
+        return master != null;
+    }
+
+    /**
+     * 处理过的命令数，事务里的命令和阻塞命令被唤醒后的重试不重复计算，用于确认命令发到了哪个节点
+     */
+    public long getCommandsProcessed() {
+        return commandsProcessed;
+    }
+
+    /**
+     * 某个命令处理过的次数，命令名不区分大小写，用于确认客户端把请求合并成了几条命令
+     */
+    public long getCommandCount(String command) {
+        return commandCounts.getOrDefault(command.toUpperCase(Locale.ROOT), 0L);
+    }
+
+    /**
+     * 让这个命令直接返回错误，不执行，用来测试出错时的处理
+     *
+     * @param error 返回给客户端的错误，以错误类型开头，比如"ERR injected"，为null时恢复正常
+     */
+    public void setCommandError(String command, String error) {
+        if(error == null){
+            commandErrors.remove(command.toUpperCase(Locale.ROOT));
+        }else{
+            commandErrors.put(command.toUpperCase(Locale.ROOT), error);
+        }
+    }
+
+    /**
+     * 清空所有db
+     */
+    public void flushAll(){
+        onLoop(() -> {
+            for(Database db : databases){
+                db.clear();
+            }
+        });
+    }
+
+    /**
+     * 当前db0中key的个数
+     */
+    public int dbSize(){
+        int[] size = new int[1];
+        onLoop(() -> size[0] = databases[0].keys().size());
+        return size[0];
+    }
+
+    private void onLoop(Runnable task){
+        if(loop == null){
+            task.run();
+            return;
+        }
+        try{
+            loop.submit(task).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /***************************内部实现************************************/
+    Database database(int index){
+        return databases[index];
+    }
+
+    int databaseCount(){
+        return DATABASES;
+    }
+
+    ScriptEngine scripts(){
+        return scripts;
+    }
+
+    /**
+     * ROLE的返回值，master列出已经启动的副本
+     */
+    List<Object> role(){
+        if(master != null){
+            return Arrays.asList(Args.bytes("slave"), Args.bytes(master.host), (long) master.getPort(), Args.bytes("connected"), 0L);
+        }
+        List<Object> connected = new ArrayList<>();
+        for(RespServer replica : replicas){
+            connected.add(Arrays.asList(Args.bytes(replica.host), Args.bytes(String.valueOf(replica.getPort())), Args.bytes("0")));
+        }
+        return Arrays.asList(Args.bytes("master"), 0L, connected);
+    }
+
+    private void evictExpired(){
+        for(Database db : databases){
+            db.evictExpired();
+        }
+    }
+
+    private void dispatch(Session session, List<byte[]> args){
+        if(session.waiter != null){
+            session.pending.add(args);
+            return;
+        }
+        String name = Args.upper(args.get(0));
+        commandsProcessed++;
+        commandCounts.merge(name, 1L, Long::sum);
+        Object reply;
+        String injected = commandErrors.get(name);
+        if(injected != null){
+            reply = new Reply.Error(injected);
+        }else if(master != null && WRITE_COMMANDS.contains(name)){
+            reply = new Reply.Error("READONLY You can't write against a read only replica.");
+        }else if(session.multi != null && !TX_COMMANDS.contains(name)){
+            if(!commands.contains(name)){
+                session.multiFailed = true;
+                reply = commands.execute(session, args);
+            }else{
+                session.multi.add(args);
+                reply = Reply.QUEUED;
+            }
+        }else if(session.protocol < 3 && session.subscriptions() > 0 && !SUBSCRIBED_COMMANDS.contains(name)){
+            reply = new Reply.Error("ERR Can't execute '" + name.toLowerCase() + "': only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT / RESET are allowed in this context");
+        }else{
+            reply = commands.execute(session, args);
+        }
+        if(reply == Reply.BLOCKED){
+            block(session, args);
+        }else if(reply != Reply.NONE){
+            send(session, reply, false);
+        }
+        if("QUIT".equals(name)){
+            closeAfterReplies(session);
+        }
+        serveBlocked();
+    }
+
+    /**
+     * 把一个响应编码以后写回，注入了延迟时放进连接的延迟队列，到期以后一起写回
+     */
+    void send(Session session, Object reply, boolean flush){
+        Channel channel = session.channel;
+        if(channel == null || !channel.isActive()){
+            return;
+        }
+        ByteBuf buf = channel.alloc().buffer();
+        RespEncoder.encode(reply, session.protocol, buf);
+        long delay = latencyNanos;
+        if(delay <= 0 && session.delayed.isEmpty()){
+            if(flush){
+                channel.writeAndFlush(buf);
+            }else{
+                channel.write(buf);
+            }
+            return;
+        }
+        //延迟调小的时候不能让后面的响应超过前面的
+        long now = System.nanoTime();
+        long deadline = now + delay;
+        Session.DelayedReply last = session.delayed.peekLast();
+        if(last != null && last.deadline - deadline > 0){
+            deadline = last.deadline;
+        }
+        session.delayed.add(new Session.DelayedReply(deadline, buf));
+        if(last == null){
+            channel.eventLoop().schedule(() -> writeDelayed(session), deadline - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeDelayed(Session session){
+        Channel channel = session.channel;
+        long now = System.nanoTime();
+        Session.DelayedReply next;
+        while((next = session.delayed.peek()) != null && next.deadline - now <= 0){
+            session.delayed.poll();
+            channel.write(next.buf);
+        }
+        channel.flush();
+        if(next != null){
+            channel.eventLoop().schedule(() -> writeDelayed(session), next.deadline - now, TimeUnit.NANOSECONDS);
+        }else if(session.closing){
+            channel.close();
+        }
+    }
+
+    private void closeAfterReplies(Session session){
+        if(session.delayed.isEmpty()){
+            session.channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        }else{
+            session.closing = true;
+        }
+    }
+
+    /***************************发布订阅************************************/
+    /**
+     * @return 收到消息的订阅者个数
+     */
+    long publish(byte[] channel, byte[] message){
+        long receivers = 0;
+        Set<Session> subscribers = channelSubscribers.get(Args.key(channel));
+        if(subscribers != null){
+            for(Session subscriber : subscribers){
+                send(subscriber, new Reply.Push(Arrays.asList(Args.bytes("message"), channel, message)), true);
+                receivers++;
+            }
+        }
+        for(Map.Entry<ByteKey, Set<Session>> e : patternSubscribers.entrySet()){
+            if(!Glob.match(e.getKey().bytes, channel)){
+                continue;
+            }
+            for(Session subscriber : e.getValue()){
+                send(subscriber, new Reply.Push(Arrays.asList(Args.bytes("pmessage"), e.getKey().bytes, channel, message)), true);
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    void subscribe(Session session, ByteKey channel, boolean pattern){
+        Set<ByteKey> own = pattern ? session.patterns : session.channels;
+        if(own.add(channel)){
+            (pattern ? patternSubscribers : channelSubscribers).computeIfAbsent(channel, k -> new LinkedHashSet<>()).add(session);
+        }
+    }
+
+    void unsubscribe(Session session, ByteKey channel, boolean pattern){
+        Set<ByteKey> own = pattern ? session.patterns : session.channels;
+        if(!own.remove(channel)){
+            return;
+        }
+        Map<ByteKey, Set<Session>> all = pattern ? patternSubscribers : channelSubscribers;
+        Set<Session> subscribers = all.get(channel);
+        if(subscribers != null){
+            subscribers.remove(session);
+            if(subscribers.isEmpty()){
+                all.remove(channel);
+            }
+        }
+    }
+
+    /***************************阻塞命令************************************/
+    /**
+     * list有新元素时调用，唤醒等待这个key的阻塞命令
+     */
+    void signal(ByteKey key){
+        if(blocked.containsKey(key)){
+            readyKeys.add(key);
+        }
+    }
+
+    private void block(Session session, List<byte[]> args){
+        Waiter waiter = new Waiter(session, args, session.blockKeys, session.blockEmptyReply);
+        session.waiter = waiter;
+        for(ByteKey key : waiter.keys){
+            blocked.computeIfAbsent(key, k -> new ArrayDeque<>()).add(waiter);
+        }
+        if(session.blockTimeoutMillis > 0){
+            waiter.timeout = loop.schedule(() -> {
+                if(session.waiter == waiter){
+                    unblock(waiter);
+                    send(session, waiter.emptyReply, true);
+                    drainPending(session);
+                }
+            }, session.blockTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void unblock(Waiter waiter){
+        waiter.session.waiter = null;
+        if(waiter.timeout != null){
+            waiter.timeout.cancel(false);
+        }
+        for(ByteKey key : waiter.keys){
+            Deque<Waiter> waiters = blocked.get(key);
+            if(waiters != null){
+                waiters.remove(waiter);
+                if(waiters.isEmpty()){
+                    blocked.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按先来后到重新执行等待新数据的阻塞命令
+     */
+    private void serveBlocked(){
+        while(!readyKeys.isEmpty()){
+            Iterator<ByteKey> it = readyKeys.iterator();
+            ByteKey key = it.next();
+            it.remove();
+            Deque<Waiter> waiters = blocked.get(key);
+            if(waiters == null){
+                continue;
+            }
+            for(Waiter waiter : new ArrayList<>(waiters)){
+                if(waiter.session.waiter != waiter){
+                    continue;
+                }
+                Object reply = commands.execute(waiter.session, waiter.args);
+                if(reply == Reply.BLOCKED){
+                    continue;
+                }
+                unblock(waiter);
+                send(waiter.session, reply, true);
+                drainPending(waiter.session);
+            }
+        }
+    }
+
+    /**
+     * 阻塞期间收到的命令在解除阻塞以后依次执行
+     */
+    private void drainPending(Session session){
+        while(session.waiter == null && !session.pending.isEmpty()){
+            dispatch(session, session.pending.poll());
+        }
+        if(session.channel != null){
+            session.channel.flush();
+        }
+    }
+
+    private void disconnect(Session session){
+        Session.DelayedReply delayed;
+        while((delayed = session.delayed.poll()) != null){
+            delayed.buf.release();
+        }
+        if(session.waiter != null){
+            unblock(session.waiter);
+        }
+        session.pending.clear();
+        for(ByteKey channel : new ArrayList<>(session.channels)){
+            unsubscribe(session, channel, false);
+        }
+        for(ByteKey pattern : new ArrayList<>(session.patterns)){
+            unsubscribe(session, pattern, true);
+        }
+    }
+
+    static final class Waiter {
+        private final Session session;
+        private final List<byte[]> args;
+        private final List<ByteKey> keys;
+        private final Object emptyReply;
+        private ScheduledFuture<?> timeout;
+
+        private Waiter(Session session, List<byte[]> args, List<ByteKey> keys, Object emptyReply) {
+            this.session = session;
+            this.args = args;
+            this.keys = keys;
+            this.emptyReply = emptyReply;
+        }
+    }
+
+    private class Handler extends SimpleChannelInboundHandler<List<byte[]>> {
+
+        private Session session;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx){
+            session = new Session(RespServer.this, ctx.channel());
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, List<byte[]> args){
+            dispatch(session, args);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx){
+            ctx.flush();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx){
+            disconnect(session);
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause){
+            if(cause instanceof DecoderException && ctx.channel().isActive()){
+                ByteBuf buf = ctx.alloc().buffer();
+                RespEncoder.encode(new Reply.Error("ERR " + cause.getMessage()), session.protocol, buf);
+                ctx.writeAndFlush(buf).addListener(ChannelFutureListener.CLOSE);
+            }else{
+                ctx.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * zset，成员到分数的map加上按(分数, 成员)排序的TreeSet
+ */
+final class ScoredSet {
+
+    private final Map<ByteKey, Double> scores = new HashMap<>();
+    private final TreeSet<Member> sorted = new TreeSet<>();
+
+    static final class Member implements Comparable<Member> {
+        final ByteKey key;
+        final double score;
+
+        Member(ByteKey key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Member o) {
+            int c = Double.compare(score, o.score);
+            return c != 0 ? c : key.compareTo(o.key);
+        }
+    }
+
+    int size(){
+        return scores.size();
+    }
+
+    Double score(ByteKey key){
+        return scores.get(key);
+    }
+
+    /**
+     * @return 新加入的成员返回true
+     */
+    boolean put(ByteKey key, double score){
+        Double old = scores.put(key, score);
+        if(old != null){
+            sorted.remove(new Member(key, old));
+        }
+        sorted.add(new Member(key, score));
+        return old == null;
+    }
+
+    boolean remove(ByteKey key){
+        Double old = scores.remove(key);
+        if(old == null){
+            return false;
+        }
+        sorted.remove(new Member(key, old));
+        return true;
+    }
+
+    /**
+     * 从小到大的排名，不存在返回-1
+     */
+    long rank(ByteKey key){
+        Double score = scores.get(key);
+        if(score == null){
+            return -1;
+        }
+        return sorted.headSet(new Member(key, score), false).size();
+    }
+
+    /**
+     * 按排名取[start, stop]，已经处理好负数下标
+     */
+    List<Member> range(long start, long stop, boolean reverse){
+        List<Member> ret = new ArrayList<>();
+        if(start > stop || start >= sorted.size()){
+            return ret;
+        }
+        Iterator<Member> it = reverse ? sorted.descendingIterator() : sorted.iterator();
+        for(long i = 0; it.hasNext() && i <= stop; i++){
+            Member m = it.next();
+            if(i >= start){
+                ret.add(m);
+            }
+        }
+        return ret;
+    }
+
+    List<Member> rangeByScore(ScoreRange range, boolean reverse, long offset, long count){
+        List<Member> ret = new ArrayList<>();
+        Iterator<Member> it = reverse ? sorted.descendingIterator() : sorted.iterator();
+        long skipped = 0;
+        while(it.hasNext() && (count < 0 || ret.size() < count)){
+            Member m = it.next();
+            if(!range.contains(m.score)){
+                if(reverse ? range.belowMax(m.score) : range.aboveMin(m.score)){
+                    break;
+                }
+                continue;
+            }
+            if(skipped++ < offset){
+                continue;
+            }
+            ret.add(m);
+        }
+        return ret;
+    }
+
+    List<Member> all(){
+        return new ArrayList<>(sorted);
+    }
+
+    /**
+     * ZRANGEBYSCORE的分数区间，支持-inf、+inf和(开区间
+     */
+    static final class ScoreRange {
+        final double min;
+        final boolean minExclusive;
+        final double max;
+        final boolean maxExclusive;
+
+        ScoreRange(byte[] min, byte[] max) {
+            String lo = Args.str(min);
+            String hi = Args.str(max);
+            this.minExclusive = lo.startsWith("(");
+            this.maxExclusive = hi.startsWith("(");
+            this.min = parse(minExclusive ? lo.substring(1) : lo);
+            this.max = parse(maxExclusive ? hi.substring(1) : hi);
+        }
+
+        private static double parse(String s){
+            try{
+                return Args.parseDouble(s);
+            }catch(RespException e){
+                throw new RespException("ERR min or max is not a float");
+            }
+        }
+
+        boolean contains(double score){
+            return aboveMin(score) && belowMax(score);
+        }
+
+        /**
+         * 不小于下界
+         */
+        boolean aboveMin(double score){
+            return minExclusive ? score > min : score >= min;
+        }
+
+        /**
+         * 不大于上界
+         */
+        boolean belowMax(double score){
+            return maxExclusive ? score < max : score <= max;
+        }
+    }
+}
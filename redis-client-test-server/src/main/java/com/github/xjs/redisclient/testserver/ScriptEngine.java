@@ -0,0 +1,315 @@
+package com.github.xjs.redisclient.testserver;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用luaj执行EVAL、EVALSHA，redis.call和redis.pcall直接调用本服务器的命令
+ *
+ * 和redis一样，lua的数字转成整数时截掉小数部分，false转成空值，带err或者ok字段的table转成错误或者状态。
+ * 脚本在IO线程里执行，执行期间不会有其他命令插进来。
+ */
+final class ScriptEngine {
+
+    private final CommandTable commands;
+    private final Globals globals;
+    private final Map<String, LuaValue> compiled = new HashMap<>();
+    private Session current;
+
+    ScriptEngine(CommandTable commands) {
+        this.commands = commands;
+        this.globals = JsePlatform.standardGlobals();
+        //和redis一样不提供io、os和java互操作，lua 5.1的unpack在luaj里是table.unpack
+        globals.set("io", LuaValue.NIL);
+        globals.set("os", LuaValue.NIL);
+        globals.set("luajava", LuaValue.NIL);
+        globals.set("unpack", globals.get("table").get("unpack"));
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return redisCall(args, true);
+            }
+        });
+        redis.set("pcall", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return redisCall(args, false);
+            }
+        });
+        redis.set("error_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return table("err", args.checkjstring(1));
+            }
+        });
+        redis.set("status_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return table("ok", args.checkjstring(1));
+            }
+        });
+        redis.set("sha1hex", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return LuaValue.valueOf(sha1(bytes(args.checkstring(1))));
+            }
+        });
+        redis.set("replicate_commands", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return LuaValue.TRUE;
+            }
+        });
+        redis.set("set_repl", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return LuaValue.NIL;
+            }
+        });
+        redis.set("log", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args){
+                return LuaValue.NIL;
+            }
+        });
+        redis.set("LOG_DEBUG", 0);
+        redis.set("LOG_VERBOSE", 1);
+        redis.set("LOG_NOTICE", 2);
+        redis.set("LOG_WARNING", 3);
+        redis.set("REPL_NONE", 0);
+        redis.set("REPL_AOF", 1);
+        redis.set("REPL_SLAVE", 2);
+        redis.set("REPL_REPLICA", 2);
+        redis.set("REPL_ALL", 3);
+        globals.set("redis", redis);
+    }
+
+    static void register(CommandTable t){
+        t.add("EVAL", -3, (s, args) -> s.server.scripts().eval(s, args.get(1), args));
+        t.add("EVALSHA", -3, (s, args) -> {
+            LuaValue function = s.server.scripts().compiled.get(Args.str(args.get(1)).toLowerCase());
+            if(function == null){
+                throw new RespException("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            return s.server.scripts().run(s, function, args);
+        });
+        t.add("SCRIPT", -2, (s, args) -> {
+            ScriptEngine engine = s.server.scripts();
+            String sub = Args.upper(args.get(1));
+            if("LOAD".equals(sub) && args.size() == 3){
+                return Args.bytes(engine.load(args.get(2)));
+            }
+            if("EXISTS".equals(sub) && args.size() > 2){
+                List<Object> ret = new ArrayList<>();
+                for(int i = 2; i < args.size(); i++){
+                    ret.add(engine.compiled.containsKey(Args.str(args.get(i)).toLowerCase()) ? 1L : 0L);
+                }
+                return ret;
+            }
+            if("FLUSH".equals(sub)){
+                engine.compiled.clear();
+                return Reply.OK;
+            }
+            if("KILL".equals(sub)){
+                throw new RespException("NOTBUSY No scripts in execution right now.");
+            }
+            throw new RespException("ERR Unknown subcommand or wrong number of arguments for '" + Args.str(args.get(1)) + "'");
+        });
+    }
+
+    private Object eval(Session s, byte[] body, List<byte[]> args){
+        return run(s, compiled.get(load(body)), args);
+    }
+
+    /**
+     * 编译并缓存脚本
+     * @return 脚本的sha1
+     */
+    private String load(byte[] body){
+        String sha = sha1(body);
+        if(!compiled.containsKey(sha)){
+            try{
+                compiled.put(sha, globals.load(new ByteArrayInputStream(body), "@user_script", "t", globals));
+            }catch(LuaError e){
+                throw new RespException("ERR Error compiling script (new function): " + e.getMessage());
+            }
+        }
+        return sha;
+    }
+
+    /**
+     * EVAL/EVALSHA script numkeys key [key ...] arg [arg ...]
+     */
+    private Object run(Session s, LuaValue function, List<byte[]> args){
+        long numKeys = Args.toLong(args.get(2));
+        if(numKeys < 0){
+            throw new RespException("ERR Number of keys can't be negative");
+        }
+        if(numKeys > args.size() - 3){
+            throw new RespException("ERR Number of keys can't be greater than number of args");
+        }
+        globals.set("KEYS", array(args.subList(3, 3 + (int) numKeys)));
+        globals.set("ARGV", array(args.subList(3 + (int) numKeys, args.size())));
+        Session caller = current;
+        boolean inScript = s.inScript;
+        current = s;
+        s.inScript = true;
+        try{
+            return toReply(function.call());
+        }catch(LuaError e){
+            LuaValue error = e.getMessageObject();
+            if(error != null && error.istable() && error.get("err").isstring()){
+                return new Reply.Error(error.get("err").tojstring());
+            }
+            throw new RespException("ERR Error running script: " + e.getMessage());
+        }catch(StackOverflowError e){
+            throw new RespException("ERR Error running script: stack overflow");
+        }finally{
+            s.inScript = inScript;
+            current = caller;
+        }
+    }
+
+    private LuaValue redisCall(Varargs luaArgs, boolean raise){
+        if(luaArgs.narg() == 0){
+            throw new LuaError("Please specify at least one argument for redis.call()");
+        }
+        List<byte[]> args = new ArrayList<>(luaArgs.narg());
+        for(int i = 1; i <= luaArgs.narg(); i++){
+            LuaValue arg = luaArgs.arg(i);
+            if(arg.type() == LuaValue.TNUMBER){
+                args.add(Args.bytes(arg.isinttype() ? Long.toString(arg.tolong()) : Args.format(arg.todouble())));
+            }else if(arg.type() == LuaValue.TSTRING){
+                args.add(bytes(arg.checkstring()));
+            }else{
+                throw new LuaError("Lua redis() command arguments must be strings or integers");
+            }
+        }
+        Object reply = commands.execute(current, args);
+        if(reply == Reply.BLOCKED || reply == Reply.NONE){
+            reply = new Reply.Error("ERR This Redis command is not allowed from scripts");
+        }
+        if(reply instanceof Reply.Error && raise){
+            throw new LuaError(table("err", ((Reply.Error) reply).text));
+        }
+        return toLua(reply);
+    }
+
+    /***************************类型转换************************************/
+    private static LuaValue toLua(Object reply){
+        if(reply == null || reply == Reply.NULL_ARRAY){
+            return LuaValue.FALSE;
+        }
+        if(reply instanceof byte[]){
+            return LuaString.valueOf((byte[]) reply);
+        }
+        if(reply instanceof Long || reply instanceof Integer){
+            return LuaValue.valueOf(((Number) reply).longValue());
+        }
+        if(reply instanceof Boolean){
+            return (Boolean) reply ? LuaValue.valueOf(1) : LuaValue.FALSE;
+        }
+        if(reply instanceof Double){
+            return LuaValue.valueOf(Args.format((Double) reply));
+        }
+        if(reply instanceof Reply.Status){
+            return table("ok", ((Reply.Status) reply).text);
+        }
+        if(reply instanceof Reply.Error){
+            return table("err", ((Reply.Error) reply).text);
+        }
+        List<?> items;
+        if(reply instanceof Reply.SetReply){
+            items = ((Reply.SetReply) reply).items;
+        }else if(reply instanceof Map){
+            List<Object> flat = new ArrayList<>();
+            for(Map.Entry<?, ?> e : ((Map<?, ?>) reply).entrySet()){
+                flat.add(e.getKey());
+                flat.add(e.getValue());
+            }
+            items = flat;
+        }else{
+            items = (List<?>) reply;
+        }
+        LuaTable table = new LuaTable();
+        for(int i = 0; i < items.size(); i++){
+            table.set(i + 1, toLua(items.get(i)));
+        }
+        return table;
+    }
+
+    private static Object toReply(LuaValue value){
+        switch(value.type()){
+            case LuaValue.TNUMBER:
+                return value.isinttype() ? (long) value.toint() : (long) value.todouble();
+            case LuaValue.TSTRING:
+                return bytes(value.checkstring());
+            case LuaValue.TBOOLEAN:
+                return value.toboolean() ? 1L : null;
+            case LuaValue.TTABLE:
+                LuaValue err = value.get("err");
+                if(err.isstring()){
+                    return new Reply.Error(err.tojstring());
+                }
+                LuaValue ok = value.get("ok");
+                if(ok.isstring()){
+                    return new Reply.Status(ok.tojstring());
+                }
+                List<Object> ret = new ArrayList<>();
+                for(int i = 1; !value.get(i).isnil(); i++){
+                    ret.add(toReply(value.get(i)));
+                }
+                return ret;
+            default:
+                return null;
+        }
+    }
+
+    private static LuaTable array(List<byte[]> items){
+        LuaTable table = new LuaTable();
+        for(int i = 0; i < items.size(); i++){
+            table.set(i + 1, LuaString.valueOf(items.get(i)));
+        }
+        return table;
+    }
+
+    private static LuaTable table(String field, String text){
+        LuaTable table = new LuaTable();
+        table.set(field, text);
+        return table;
+    }
+
+    private static byte[] bytes(LuaString s){
+        byte[] ret = new byte[s.m_length];
+        s.copyInto(0, ret, 0, ret.length);
+        return ret;
+    }
+
+    private static String sha1(byte[] body){
+        try{
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder sb = new StringBuilder(40);
+            for(byte b : digest){
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 连接、服务器、事务和发布订阅相关的命令
+ */
+final class ServerCommands {
+
+    static final String VERSION = "6.2.0";
+
+    private ServerCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("PING", -1, (s, args) -> {
+            if(args.size() > 2){
+                throw Args.wrongArity(args);
+            }
+            if(s.protocol < 3 && s.subscriptions() > 0){
+                return Arrays.asList(Args.bytes("pong"), args.size() == 2 ? args.get(1) : new byte[0]);
+            }
+            return args.size() == 2 ? args.get(1) : Reply.PONG;
+        });
+        t.add("ECHO", 2, (s, args) -> args.get(1));
+        t.add("QUIT", 1, (s, args) -> Reply.OK);
+        t.add("AUTH", -2, (s, args) -> Reply.OK);
+        t.add("SELECT", 2, (s, args) -> {
+            int db = Args.toInt(args.get(1));
+            if(db < 0 || db >= s.server.databaseCount()){
+                throw new RespException("ERR DB index is out of range");
+            }
+            s.db = db;
+            return Reply.OK;
+        });
+        t.add("HELLO", -1, ServerCommands::hello);
+        t.add("TIME", 1, (s, args) -> {
+            Instant now = Instant.now();
+            return Arrays.asList(Args.bytes(now.getEpochSecond()), Args.bytes(now.getNano() / 1000));
+        });
+        t.add("DBSIZE", 1, (s, args) -> (long) s.db().keys().size());
+        t.add("FLUSHDB", -1, (s, args) -> {
+            s.db().clear();
+            return Reply.OK;
+        });
+        t.add("FLUSHALL", -1, (s, args) -> {
+            for(int i = 0; i < s.server.databaseCount(); i++){
+                s.server.database(i).clear();
+            }
+            return Reply.OK;
+        });
+        t.add("INFO", -1, (s, args) -> {
+            List<?> role = s.server.role();
+            String replication = "master".equals(Args.str((byte[]) role.get(0)))
+                    ? "role:master\r\nconnected_slaves:" + ((List<?>) role.get(2)).size() + "\r\n"
+                    : "role:slave\r\nmaster_host:" + Args.str((byte[]) role.get(1)) + "\r\nmaster_port:" + role.get(2) + "\r\nmaster_link_status:up\r\n";
+            return Args.bytes("# Server\r\nredis_version:" + VERSION + "\r\nredis_mode:standalone\r\n# Replication\r\n" + replication);
+        });
+        t.add("ROLE", 1, (s, args) -> s.server.role());
+        t.add("CONFIG", -2, (s, args) -> {
+            if(Args.is(args.get(1), "GET")){
+                return new LinkedHashMap<>();
+            }
+            return Reply.OK;
+        });
+        t.add("CLIENT", -2, (s, args) -> {
+            if(Args.is(args.get(1), "GETNAME")){
+                return null;
+            }
+            if(Args.is(args.get(1), "ID")){
+                return (long) System.identityHashCode(s);
+            }
+            return Reply.OK;
+        });
+        t.add("COMMAND", -1, (s, args) -> new ArrayList<>());
+
+        t.add("MULTI", 1, (s, args) -> {
+            if(s.multi != null){
+                throw new RespException("ERR MULTI calls can not be nested");
+            }
+            s.multi = new ArrayList<>();
+            s.multiFailed = false;
+            return Reply.OK;
+        });
+        t.add("EXEC", 1, (s, args) -> {
+            if(s.multi == null){
+                throw new RespException("ERR EXEC without MULTI");
+            }
+            List<List<byte[]>> queued = s.multi;
+            s.multi = null;
+            if(s.multiFailed){
+                s.multiFailed = false;
+                throw new RespException("EXECABORT Transaction discarded because of previous errors.");
+            }
+            List<Object> ret = new ArrayList<>(queued.size());
+            s.inExec = true;
+            try{
+                for(List<byte[]> command : queued){
+                    ret.add(t.execute(s, command));
+                }
+            }finally{
+                s.inExec = false;
+            }
+            return ret;
+        });
+        t.add("DISCARD", 1, (s, args) -> {
+            if(s.multi == null){
+                throw new RespException("ERR DISCARD without MULTI");
+            }
+            s.multi = null;
+            s.multiFailed = false;
+            return Reply.OK;
+        });
+        t.add("WATCH", -2, (s, args) -> {
+            if(s.multi != null){
+                throw new RespException("ERR WATCH inside MULTI is not allowed");
+            }
+            return Reply.OK;
+        });
+        t.add("UNWATCH", 1, (s, args) -> Reply.OK);
+
+        t.add("PUBLISH", 3, (s, args) -> s.server.publish(args.get(1), args.get(2)));
+        t.add("SUBSCRIBE", -2, (s, args) -> subscribe(s, args, false));
+        t.add("PSUBSCRIBE", -2, (s, args) -> subscribe(s, args, true));
+        t.add("UNSUBSCRIBE", -1, (s, args) -> unsubscribe(s, args, false));
+        t.add("PUNSUBSCRIBE", -1, (s, args) -> unsubscribe(s, args, true));
+    }
+
+    private static Object hello(Session s, List<byte[]> args){
+        int protocol = s.protocol;
+        if(args.size() > 1){
+            long version;
+            try{
+                version = Args.toLong(args.get(1));
+            }catch(RespException e){
+                throw new RespException("ERR Protocol version is not an integer or out of range");
+            }
+            if(version < 2 || version > 3){
+                throw new RespException("NOPROTO unsupported protocol version");
+            }
+            protocol = (int) version;
+        }
+        s.protocol = protocol;
+        Map<Object, Object> ret = new LinkedHashMap<>();
+        ret.put(Args.bytes("server"), Args.bytes("redis"));
+        ret.put(Args.bytes("version"), Args.bytes(VERSION));
+        ret.put(Args.bytes("proto"), (long) protocol);
+        ret.put(Args.bytes("id"), (long) System.identityHashCode(s));
+        ret.put(Args.bytes("mode"), Args.bytes("standalone"));
+        ret.put(Args.bytes("role"), Args.bytes(s.server.isReplica() ? "replica" : "master"));
+        ret.put(Args.bytes("modules"), new ArrayList<>());
+        return ret;
+    }
+
+    private static Object subscribe(Session s, List<byte[]> args, boolean pattern){
+        if(s.inScript || s.inExec){
+            throw new RespException("ERR " + Args.str(args.get(0)).toLowerCase() + " is not allowed in this context");
+        }
+        byte[] kind = Args.bytes(pattern ? "psubscribe" : "subscribe");
+        for(int i = 1; i < args.size(); i++){
+            s.server.subscribe(s, Args.key(args.get(i)), pattern);
+            s.server.send(s, new Reply.Push(Arrays.asList(kind, args.get(i), (long) s.subscriptions())), false);
+        }
+        return Reply.NONE;
+    }
+
+    private static Object unsubscribe(Session s, List<byte[]> args, boolean pattern){
+        byte[] kind = Args.bytes(pattern ? "punsubscribe" : "unsubscribe");
+        Set<ByteKey> own = pattern ? s.patterns : s.channels;
+        List<ByteKey> targets = new ArrayList<>();
+        if(args.size() == 1){
+            targets.addAll(own);
+        }else{
+            for(int i = 1; i < args.size(); i++){
+                targets.add(Args.key(args.get(i)));
+            }
+        }
+        if(targets.isEmpty()){
+            s.server.send(s, new Reply.Push(Arrays.asList(kind, null, (long) s.subscriptions())), false);
+        }
+        for(ByteKey target : targets){
+            s.server.unsubscribe(s, target, pattern);
+            s.server.send(s, new Reply.Push(Arrays.asList(kind, target.bytes, (long) s.subscriptions())), false);
+        }
+        return Reply.NONE;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.xjs.redisclient.testserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一条客户端连接的状态，lua脚本里的redis.call使用调用者的会话
+ */
+final class Session {
+
+    final RespServer server;
+    final Channel channel;
+    int db;
+    /**
+     * RESP协议的版本，HELLO 3以后切换到RESP3
+     */
+    int protocol = 2;
+    final Set<ByteKey> channels = new LinkedHashSet<>();
+    final Set<ByteKey> patterns = new LinkedHashSet<>();
+    /**
+     * MULTI以后排队的命令，不在事务中为null
+     */
+    List<List<byte[]>> multi;
+    boolean multiFailed;
+    /**
+     * 正在执行lua脚本或者EXEC，阻塞命令直接返回
+     */
+    boolean inScript;
+    boolean inExec;
+    /**
+     * 阻塞命令等待的key、超时和超时以后的返回值，超时为0表示一直等待
+     */
+    List<ByteKey> blockKeys;
+    long blockTimeoutMillis;
+    Object blockEmptyReply;
+    /**
+     * 正在阻塞的命令，阻塞期间收到的命令先排队
+     */
+    RespServer.Waiter waiter;
+    final Deque<List<byte[]>> pending = new ArrayDeque<>();
+    /**
+     * 注入了延迟时等待写回的响应，按写回的时间排序
+     */
+    final Deque<DelayedReply> delayed = new ArrayDeque<>();
+    /**
+     * QUIT以后等延迟的响应写完再关闭连接
+     */
+    boolean closing;
+
+    Session(RespServer server, Channel channel) {
+        this.server = server;
+        this.channel = channel;
+    }
+
+    Database db(){
+        return server.database(db);
+    }
+
+    int subscriptions(){
+        return channels.size() + patterns.size();
+    }
+
+    boolean canBlock(){
+        return !inScript && !inExec && channel != null;
+    }
+
+    /**
+     * 阻塞命令没有数据时调用，返回BLOCKED交给服务器挂起，脚本和事务中直接返回空值
+     */
+    Object block(List<byte[]> keys, long timeoutMillis, Object emptyReply){
+        if(!canBlock()){
+            return emptyReply;
+        }
+        blockKeys = new ArrayList<>(keys.size());
+        for(byte[] key : keys){
+            blockKeys.add(Args.key(key));
+        }
+        blockTimeoutMillis = timeoutMillis;
+        blockEmptyReply = emptyReply;
+        return Reply.BLOCKED;
+    }
+
+    static final class DelayedReply {
+        /**
+         * 写回的System.nanoTime()
+         */
+        final long deadline;
+        final ByteBuf buf;
+
+        DelayedReply(long deadline, ByteBuf buf) {
+            this.deadline = deadline;
+            this.buf = buf;
+        }
+    }
+}
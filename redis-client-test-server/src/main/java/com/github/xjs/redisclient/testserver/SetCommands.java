@@ -0,0 +1,200 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * set相关的命令
+ */
+final class SetCommands {
+
+    private SetCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("SADD", -3, (s, args) -> {
+            Set<ByteKey> set = getOrCreate(s, args.get(1));
+            long added = 0;
+            for(int i = 2; i < args.size(); i++){
+                if(set.add(Args.key(args.get(i)))){
+                    added++;
+                }
+            }
+            return added;
+        });
+        t.add("SREM", -3, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            if(set == null){
+                return 0L;
+            }
+            long removed = 0;
+            for(int i = 2; i < args.size(); i++){
+                if(set.remove(Args.key(args.get(i)))){
+                    removed++;
+                }
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), set);
+            return removed;
+        });
+        t.add("SMEMBERS", 2, (s, args) -> new Reply.SetReply(members(get(s, args.get(1)))));
+        t.add("SCARD", 2, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            return set == null ? 0L : (long) set.size();
+        });
+        t.add("SISMEMBER", 3, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            return set != null && set.contains(Args.key(args.get(2))) ? 1L : 0L;
+        });
+        t.add("SMISMEMBER", -3, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            for(int i = 2; i < args.size(); i++){
+                ret.add(set != null && set.contains(Args.key(args.get(i))) ? 1L : 0L);
+            }
+            return ret;
+        });
+        t.add("SRANDMEMBER", -2, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            if(args.size() == 2){
+                return set == null ? null : random(set, 1, false).get(0);
+            }
+            if(args.size() > 3){
+                throw new RespException(RespException.SYNTAX);
+            }
+            long count = Args.toLong(args.get(2));
+            if(set == null){
+                return new ArrayList<>();
+            }
+            return count < 0 ? random(set, -count, true) : random(set, count, false);
+        });
+        t.add("SPOP", -2, (s, args) -> {
+            Set<ByteKey> set = get(s, args.get(1));
+            if(args.size() > 3){
+                throw new RespException(RespException.SYNTAX);
+            }
+            long count = args.size() == 3 ? Args.toLong(args.get(2)) : 1;
+            if(count < 0){
+                throw new RespException("ERR value is out of range, must be positive");
+            }
+            if(set == null){
+                return args.size() == 2 ? null : new ArrayList<>();
+            }
+            List<Object> popped = random(set, count, false);
+            for(Object member : popped){
+                set.remove(Args.key((byte[]) member));
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), set);
+            return args.size() == 2 ? popped.get(0) : popped;
+        });
+        t.add("SMOVE", 4, (s, args) -> {
+            Set<ByteKey> from = get(s, args.get(1));
+            get(s, args.get(2));
+            ByteKey member = Args.key(args.get(3));
+            if(from == null || !from.remove(member)){
+                return 0L;
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), from);
+            getOrCreate(s, args.get(2)).add(member);
+            return 1L;
+        });
+        t.add("SINTER", -2, (s, args) -> new Reply.SetReply(members(combine(s, args, 1, 'i'))));
+        t.add("SUNION", -2, (s, args) -> new Reply.SetReply(members(combine(s, args, 1, 'u'))));
+        t.add("SDIFF", -2, (s, args) -> new Reply.SetReply(members(combine(s, args, 1, 'd'))));
+        t.add("SINTERSTORE", -3, (s, args) -> store(s, args.get(1), combine(s, args, 2, 'i')));
+        t.add("SUNIONSTORE", -3, (s, args) -> store(s, args.get(1), combine(s, args, 2, 'u')));
+        t.add("SDIFFSTORE", -3, (s, args) -> store(s, args.get(1), combine(s, args, 2, 'd')));
+        t.add("SSCAN", -3, (s, args) -> {
+            KeyCommands.ScanOptions options = new KeyCommands.ScanOptions(args, 3);
+            Set<ByteKey> set = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            if(set != null){
+                for(ByteKey member : set){
+                    if(options.matches(member.bytes)){
+                        ret.add(member.bytes);
+                    }
+                }
+            }
+            return KeyCommands.scanReply(ret);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<ByteKey> get(Session s, byte[] key){
+        return s.db().get(Args.key(key), LinkedHashSet.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<ByteKey> getOrCreate(Session s, byte[] key){
+        return s.db().getOrCreate(Args.key(key), LinkedHashSet.class, LinkedHashSet::new);
+    }
+
+    private static List<Object> members(Set<ByteKey> set){
+        List<Object> ret = new ArrayList<>();
+        if(set != null){
+            for(ByteKey member : set){
+                ret.add(member.bytes);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 随机取count个成员，repeat为true时可以重复
+     */
+    private static List<Object> random(Set<ByteKey> set, long count, boolean repeat){
+        List<ByteKey> all = new ArrayList<>(set);
+        List<Object> ret = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if(repeat){
+            for(long i = 0; i < count; i++){
+                ret.add(all.get(random.nextInt(all.size())).bytes);
+            }
+            return ret;
+        }
+        Collections.shuffle(all, random);
+        for(int i = 0; i < Math.min(count, all.size()); i++){
+            ret.add(all.get(i).bytes);
+        }
+        return ret;
+    }
+
+    /**
+     * @param op i是交集，u是并集，d是差集
+     */
+    private static Set<ByteKey> combine(Session s, List<byte[]> args, int from, char op){
+        Set<ByteKey> ret = null;
+        for(int i = from; i < args.size(); i++){
+            Set<ByteKey> set = get(s, args.get(i));
+            if(ret == null){
+                ret = set == null ? new LinkedHashSet<>() : new LinkedHashSet<>(set);
+            }else if(op == 'u'){
+                if(set != null){
+                    ret.addAll(set);
+                }
+            }else if(op == 'i'){
+                if(set == null){
+                    ret.clear();
+                }else{
+                    ret.retainAll(set);
+                }
+            }else if(set != null){
+                ret.removeAll(set);
+            }
+        }
+        return ret;
+    }
+
+    private static Object store(Session s, byte[] destination, Set<ByteKey> result){
+        ByteKey key = Args.key(destination);
+        if(result.isEmpty()){
+            s.db().remove(key);
+        }else{
+            s.db().put(key, result);
+        }
+        return (long) result.size();
+    }
+}
@@ -0,0 +1,382 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * zset相关的命令
+ */
+final class SortedSetCommands {
+
+    private SortedSetCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("ZADD", -4, SortedSetCommands::zadd);
+        t.add("ZINCRBY", 4, (s, args) -> {
+            double delta = Args.toDouble(args.get(2));
+            ScoredSet zset = getOrCreate(s, args.get(1));
+            ByteKey member = Args.key(args.get(3));
+            Double old = zset.score(member);
+            double score = (old == null ? 0 : old) + delta;
+            if(Double.isNaN(score)){
+                throw new RespException("ERR resulting score is not a number (NaN)");
+            }
+            zset.put(member, score);
+            return score;
+        });
+        t.add("ZSCORE", 3, (s, args) -> {
+            ScoredSet zset = get(s, args.get(1));
+            return zset == null ? null : zset.score(Args.key(args.get(2)));
+        });
+        t.add("ZMSCORE", -3, (s, args) -> {
+            ScoredSet zset = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            for(int i = 2; i < args.size(); i++){
+                ret.add(zset == null ? null : zset.score(Args.key(args.get(i))));
+            }
+            return ret;
+        });
+        t.add("ZCARD", 2, (s, args) -> {
+            ScoredSet zset = get(s, args.get(1));
+            return zset == null ? 0L : (long) zset.size();
+        });
+        t.add("ZCOUNT", 4, (s, args) -> {
+            ScoredSet.ScoreRange range = new ScoredSet.ScoreRange(args.get(2), args.get(3));
+            ScoredSet zset = get(s, args.get(1));
+            return zset == null ? 0L : (long) zset.rangeByScore(range, false, 0, -1).size();
+        });
+        t.add("ZRANK", 3, (s, args) -> rank(s, args, false));
+        t.add("ZREVRANK", 3, (s, args) -> rank(s, args, true));
+        t.add("ZRANGE", -4, (s, args) -> range(s, args, false));
+        t.add("ZREVRANGE", -4, (s, args) -> range(s, args, true));
+        t.add("ZRANGEBYSCORE", -4, (s, args) -> rangeByScore(s, args, args.get(2), args.get(3), false, 4));
+        t.add("ZREVRANGEBYSCORE", -4, (s, args) -> rangeByScore(s, args, args.get(3), args.get(2), true, 4));
+        t.add("ZREM", -3, (s, args) -> {
+            ScoredSet zset = get(s, args.get(1));
+            if(zset == null){
+                return 0L;
+            }
+            long removed = 0;
+            for(int i = 2; i < args.size(); i++){
+                if(zset.remove(Args.key(args.get(i)))){
+                    removed++;
+                }
+            }
+            s.db().removeIfEmpty(Args.key(args.get(1)), zset);
+            return removed;
+        });
+        t.add("ZREMRANGEBYRANK", 4, (s, args) -> {
+            long start = Args.toLong(args.get(2));
+            long stop = Args.toLong(args.get(3));
+            ScoredSet zset = get(s, args.get(1));
+            if(zset == null){
+                return 0L;
+            }
+            return remove(s, args.get(1), zset, rankRange(zset, start, stop, false));
+        });
+        t.add("ZREMRANGEBYSCORE", 4, (s, args) -> {
+            ScoredSet.ScoreRange range = new ScoredSet.ScoreRange(args.get(2), args.get(3));
+            ScoredSet zset = get(s, args.get(1));
+            if(zset == null){
+                return 0L;
+            }
+            return remove(s, args.get(1), zset, zset.rangeByScore(range, false, 0, -1));
+        });
+        t.add("ZPOPMIN", -2, (s, args) -> pop(s, args, false));
+        t.add("ZPOPMAX", -2, (s, args) -> pop(s, args, true));
+        t.add("ZUNIONSTORE", -4, (s, args) -> store(s, args, true));
+        t.add("ZINTERSTORE", -4, (s, args) -> store(s, args, false));
+        t.add("ZSCAN", -3, (s, args) -> {
+            KeyCommands.ScanOptions options = new KeyCommands.ScanOptions(args, 3);
+            ScoredSet zset = get(s, args.get(1));
+            List<Object> ret = new ArrayList<>();
+            if(zset != null){
+                for(ScoredSet.Member m : zset.all()){
+                    if(options.matches(m.key.bytes)){
+                        ret.add(m.key.bytes);
+                        ret.add(Args.bytes(m.score));
+                    }
+                }
+            }
+            return KeyCommands.scanReply(ret);
+        });
+    }
+
+    private static ScoredSet get(Session s, byte[] key){
+        return s.db().get(Args.key(key), ScoredSet.class);
+    }
+
+    private static ScoredSet getOrCreate(Session s, byte[] key){
+        return s.db().getOrCreate(Args.key(key), ScoredSet.class, ScoredSet::new);
+    }
+
+    private static Object zadd(Session s, List<byte[]> args){
+        boolean nx = false;
+        boolean xx = false;
+        boolean gt = false;
+        boolean lt = false;
+        boolean ch = false;
+        boolean incr = false;
+        int i = 2;
+        for(; i < args.size(); i++){
+            String option = Args.upper(args.get(i));
+            if("NX".equals(option)){
+                nx = true;
+            }else if("XX".equals(option)){
+                xx = true;
+            }else if("GT".equals(option)){
+                gt = true;
+            }else if("LT".equals(option)){
+                lt = true;
+            }else if("CH".equals(option)){
+                ch = true;
+            }else if("INCR".equals(option)){
+                incr = true;
+            }else{
+                break;
+            }
+        }
+        int pairs = args.size() - i;
+        if(pairs == 0 || pairs % 2 != 0 || (nx && xx) || (incr && pairs != 2) || ((gt || lt) && nx) || (gt && lt)){
+            throw new RespException(RespException.SYNTAX);
+        }
+        double[] scores = new double[pairs / 2];
+        for(int j = 0; j < scores.length; j++){
+            scores[j] = Args.toDouble(args.get(i + j * 2));
+        }
+        ScoredSet zset = getOrCreate(s, args.get(1));
+        long changed = 0;
+        Double incrResult = null;
+        for(int j = 0; j < scores.length; j++){
+            ByteKey member = Args.key(args.get(i + j * 2 + 1));
+            Double old = zset.score(member);
+            if((nx && old != null) || (xx && old == null)){
+                continue;
+            }
+            double score = incr ? (old == null ? 0 : old) + scores[j] : scores[j];
+            if(old != null && ((gt && score <= old) || (lt && score >= old))){
+                continue;
+            }
+            if(old == null || old != score){
+                zset.put(member, score);
+                if(old == null || ch){
+                    changed++;
+                }
+            }
+            incrResult = score;
+        }
+        s.db().removeIfEmpty(Args.key(args.get(1)), zset);
+        if(incr){
+            return incrResult;
+        }
+        return changed;
+    }
+
+    private static Object rank(Session s, List<byte[]> args, boolean reverse){
+        ScoredSet zset = get(s, args.get(1));
+        if(zset == null){
+            return null;
+        }
+        long rank = zset.rank(Args.key(args.get(2)));
+        if(rank < 0){
+            return null;
+        }
+        return reverse ? zset.size() - 1 - rank : rank;
+    }
+
+    private static List<ScoredSet.Member> rankRange(ScoredSet zset, long start, long stop, boolean reverse){
+        start = Math.max(0, Args.index(start, zset.size()));
+        stop = Math.min(zset.size() - 1, Args.index(stop, zset.size()));
+        return zset.range(start, stop, reverse);
+    }
+
+    private static Object range(Session s, List<byte[]> args, boolean reverse){
+        boolean withScores = false;
+        boolean byScore = false;
+        boolean rev = reverse;
+        long offset = 0;
+        long count = -1;
+        for(int i = 4; i < args.size(); i++){
+            String option = Args.upper(args.get(i));
+            if("WITHSCORES".equals(option)){
+                withScores = true;
+            }else if("BYSCORE".equals(option) && !reverse){
+                byScore = true;
+            }else if("REV".equals(option) && !reverse){
+                rev = true;
+            }else if("LIMIT".equals(option) && !reverse && i + 2 < args.size()){
+                offset = Args.toLong(args.get(++i));
+                count = Args.toLong(args.get(++i));
+            }else{
+                throw new RespException(RespException.SYNTAX);
+            }
+        }
+        if(byScore){
+            ScoredSet.ScoreRange range = rev ? new ScoredSet.ScoreRange(args.get(3), args.get(2))
+                    : new ScoredSet.ScoreRange(args.get(2), args.get(3));
+            ScoredSet zset = get(s, args.get(1));
+            return reply(zset == null ? new ArrayList<>() : zset.rangeByScore(range, rev, offset, count), withScores);
+        }
+        long start = Args.toLong(args.get(2));
+        long stop = Args.toLong(args.get(3));
+        ScoredSet zset = get(s, args.get(1));
+        return reply(zset == null ? new ArrayList<>() : rankRange(zset, start, stop, rev), withScores);
+    }
+
+    private static Object rangeByScore(Session s, List<byte[]> args, byte[] min, byte[] max, boolean reverse, int from){
+        ScoredSet.ScoreRange range = new ScoredSet.ScoreRange(min, max);
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        for(int i = from; i < args.size(); i++){
+            if(Args.is(args.get(i), "WITHSCORES")){
+                withScores = true;
+            }else if(Args.is(args.get(i), "LIMIT") && i + 2 < args.size()){
+                offset = Args.toLong(args.get(++i));
+                count = Args.toLong(args.get(++i));
+            }else{
+                throw new RespException(RespException.SYNTAX);
+            }
+        }
+        ScoredSet zset = get(s, args.get(1));
+        if(zset == null || offset < 0){
+            return new ArrayList<>();
+        }
+        return reply(zset.rangeByScore(range, reverse, offset, count), withScores);
+    }
+
+    private static List<Object> reply(List<ScoredSet.Member> members, boolean withScores){
+        List<Object> ret = new ArrayList<>(withScores ? members.size() * 2 : members.size());
+        for(ScoredSet.Member m : members){
+            ret.add(m.key.bytes);
+            if(withScores){
+                ret.add(m.score);
+            }
+        }
+        return ret;
+    }
+
+    private static long remove(Session s, byte[] key, ScoredSet zset, List<ScoredSet.Member> members){
+        for(ScoredSet.Member m : members){
+            zset.remove(m.key);
+        }
+        s.db().removeIfEmpty(Args.key(key), zset);
+        return members.size();
+    }
+
+    private static Object pop(Session s, List<byte[]> args, boolean max){
+        if(args.size() > 3){
+            throw new RespException(RespException.SYNTAX);
+        }
+        long count = args.size() == 3 ? Args.toLong(args.get(2)) : 1;
+        ScoredSet zset = get(s, args.get(1));
+        if(zset == null || count <= 0){
+            return new ArrayList<>();
+        }
+        List<ScoredSet.Member> members = zset.range(0, count - 1, max);
+        remove(s, args.get(1), zset, members);
+        return reply(members, true);
+    }
+
+    /**
+     * ZUNIONSTORE/ZINTERSTORE destination numkeys key [key ...] [WEIGHTS w ...] [AGGREGATE SUM|MIN|MAX]
+     */
+    private static Object store(Session s, List<byte[]> args, boolean union){
+        int numKeys = Args.toInt(args.get(2));
+        if(numKeys < 1){
+            throw new RespException("ERR at least 1 input key is needed for " + Args.str(args.get(0)).toLowerCase());
+        }
+        if(args.size() < 3 + numKeys){
+            throw new RespException(RespException.SYNTAX);
+        }
+        double[] weights = new double[numKeys];
+        Arrays.fill(weights, 1);
+        String aggregate = "SUM";
+        for(int i = 3 + numKeys; i < args.size(); i++){
+            if(Args.is(args.get(i), "WEIGHTS") && i + numKeys < args.size()){
+                for(int j = 0; j < numKeys; j++){
+                    weights[j] = Args.toDouble(args.get(++i));
+                }
+            }else if(Args.is(args.get(i), "AGGREGATE") && i + 1 < args.size()){
+                aggregate = Args.upper(args.get(++i));
+                if(!"SUM".equals(aggregate) && !"MIN".equals(aggregate) && !"MAX".equals(aggregate)){
+                    throw new RespException(RespException.SYNTAX);
+                }
+            }else{
+                throw new RespException(RespException.SYNTAX);
+            }
+        }
+        Map<ByteKey, Double> result = null;
+        for(int j = 0; j < numKeys; j++){
+            Map<ByteKey, Double> scores = scores(s, args.get(3 + j));
+            Map<ByteKey, Double> next = new HashMap<>();
+            for(Map.Entry<ByteKey, Double> e : scores.entrySet()){
+                double score = e.getValue() * weights[j];
+                if(result == null){
+                    next.put(e.getKey(), score);
+                }else{
+                    Double old = result.get(e.getKey());
+                    if(old != null){
+                        next.put(e.getKey(), aggregate(aggregate, old, score));
+                    }else if(union){
+                        next.put(e.getKey(), score);
+                    }
+                }
+            }
+            if(union && result != null){
+                for(Map.Entry<ByteKey, Double> e : result.entrySet()){
+                    next.putIfAbsent(e.getKey(), e.getValue());
+                }
+            }
+            result = next;
+        }
+        ScoredSet zset = new ScoredSet();
+        for(Map.Entry<ByteKey, Double> e : result.entrySet()){
+            zset.put(e.getKey(), e.getValue());
+        }
+        ByteKey destination = Args.key(args.get(1));
+        if(zset.size() == 0){
+            s.db().remove(destination);
+        }else{
+            s.db().put(destination, zset);
+        }
+        return (long) zset.size();
+    }
+
+    /**
+     * zset或者set(分数都是1)的成员和分数
+     */
+    private static Map<ByteKey, Double> scores(Session s, byte[] key){
+        Object value = s.db().get(Args.key(key));
+        Map<ByteKey, Double> ret = new HashMap<>();
+        if(value instanceof ScoredSet){
+            for(ScoredSet.Member m : ((ScoredSet) value).all()){
+                ret.put(m.key, m.score);
+            }
+        }else if(value instanceof Set){
+            for(Object member : (Set<?>) value){
+                ret.put((ByteKey) member, 1.0);
+            }
+        }else if(value != null){
+            throw new RespException(RespException.WRONG_TYPE);
+        }
+        return ret;
+    }
+
+    private static double aggregate(String aggregate, double a, double b){
+        switch(aggregate){
+            case "MIN":
+                return Math.min(a, b);
+            case "MAX":
+                return Math.max(a, b);
+            default:
+                double sum = a + b;
+                return Double.isNaN(sum) ? 0 : sum;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.xjs.redisclient.testserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * string相关的命令
+ */
+final class StringCommands {
+
+    private StringCommands() {
+    }
+
+    static void register(CommandTable t){
+        t.add("GET", 2, (s, args) -> get(s, args.get(1)));
+        t.add("SET", -3, StringCommands::set);
+        t.add("SETNX", 3, (s, args) -> {
+            ByteKey key = Args.key(args.get(1));
+            if(s.db().exists(key)){
+                return 0L;
+            }
+            s.db().put(key, args.get(2));
+            return 1L;
+        });
+        t.add("SETEX", 4, (s, args) -> setWithTtl(s, args, Args.toLong(args.get(2)) * 1000));
+        t.add("PSETEX", 4, (s, args) -> setWithTtl(s, args, Args.toLong(args.get(2))));
+        t.add("GETSET", 3, (s, args) -> {
+            byte[] old = get(s, args.get(1));
+            s.db().put(Args.key(args.get(1)), args.get(2));
+            return old;
+        });
+        t.add("GETDEL", 2, (s, args) -> {
+            byte[] old = get(s, args.get(1));
+            if(old != null){
+                s.db().remove(Args.key(args.get(1)));
+            }
+            return old;
+        });
+        t.add("MGET", -2, (s, args) -> {
+            List<Object> ret = new ArrayList<>(args.size() - 1);
+            for(int i = 1; i < args.size(); i++){
+                Object value = s.db().get(Args.key(args.get(i)));
+                ret.add(value instanceof byte[] ? value : null);
+            }
+            return ret;
+        });
+        t.add("MSET", -3, (s, args) -> {
+            if(args.size() % 2 == 0){
+                throw Args.wrongArity(args);
+            }
+            for(int i = 1; i < args.size(); i += 2){
+                s.db().put(Args.key(args.get(i)), args.get(i + 1));
+            }
+            return Reply.OK;
+        });
+        t.add("MSETNX", -3, (s, args) -> {
+            if(args.size() % 2 == 0){
+                throw Args.wrongArity(args);
+            }
+            for(int i = 1; i < args.size(); i += 2){
+                if(s.db().exists(Args.key(args.get(i)))){
+                    return 0L;
+                }
+            }
+            for(int i = 1; i < args.size(); i += 2){
+                s.db().put(Args.key(args.get(i)), args.get(i + 1));
+            }
+            return 1L;
+        });
+        t.add("INCR", 2, (s, args) -> incrBy(s, args.get(1), 1));
+        t.add("DECR", 2, (s, args) -> incrBy(s, args.get(1), -1));
+        t.add("INCRBY", 3, (s, args) -> incrBy(s, args.get(1), Args.toLong(args.get(2))));
+        t.add("DECRBY", 3, (s, args) -> incrBy(s, args.get(1), -Args.toLong(args.get(2))));
+        t.add("INCRBYFLOAT", 3, (s, args) -> {
+            byte[] old = get(s, args.get(1));
+            double value = (old == null ? 0 : Args.toDouble(old)) + Args.toDouble(args.get(2));
+            if(Double.isNaN(value) || Double.isInfinite(value)){
+                throw new RespException("ERR increment would produce NaN or Infinity");
+            }
+            byte[] ret = Args.bytes(value);
+            s.db().putKeepTtl(Args.key(args.get(1)), ret);
+            return ret;
+        });
+        t.add("APPEND", 3, (s, args) -> {
+            byte[] old = get(s, args.get(1));
+            byte[] value = concat(old == null ? new byte[0] : old, args.get(2));
+            s.db().putKeepTtl(Args.key(args.get(1)), value);
+            return (long) value.length;
+        });
+        t.add("STRLEN", 2, (s, args) -> {
+            byte[] value = get(s, args.get(1));
+            return value == null ? 0L : (long) value.length;
+        });
+        t.add("GETRANGE", 4, (s, args) -> {
+            byte[] value = get(s, args.get(1));
+            if(value == null){
+                return new byte[0];
+            }
+            long start = Math.max(0, Args.index(Args.toLong(args.get(2)), value.length));
+            long end = Math.min(value.length - 1, Args.index(Args.toLong(args.get(3)), value.length));
+            if(start > end){
+                return new byte[0];
+            }
+            byte[] ret = new byte[(int) (end - start + 1)];
+            System.arraycopy(value, (int) start, ret, 0, ret.length);
+            return ret;
+        });
+    }
+
+    static byte[] get(Session s, byte[] key){
+        return s.db().get(Args.key(key), byte[].class);
+    }
+
+    private static Object set(Session s, List<byte[]> args){
+        ByteKey key = Args.key(args.get(1));
+        long expireAt = 0;
+        boolean nx = false;
+        boolean xx = false;
+        boolean keepTtl = false;
+        boolean returnOld = false;
+        for(int i = 3; i < args.size(); i++){
+            String option = Args.upper(args.get(i));
+            switch(option){
+                case "NX":
+                    nx = true;
+                    break;
+                case "XX":
+                    xx = true;
+                    break;
+                case "KEEPTTL":
+                    keepTtl = true;
+                    break;
+                case "GET":
+                    returnOld = true;
+                    break;
+                case "EX":
+                case "PX":
+                case "EXAT":
+                case "PXAT":
+                    if(i + 1 >= args.size()){
+                        throw new RespException(RespException.SYNTAX);
+                    }
+                    long value = Args.toLong(args.get(++i));
+                    if(value <= 0){
+                        throw new RespException("ERR invalid expire time in 'set' command");
+                    }
+                    long now = System.currentTimeMillis();
+                    expireAt = "EX".equals(option) ? now + value * 1000 : "PX".equals(option) ? now + value
+                            : "EXAT".equals(option) ? value * 1000 : value;
+                    break;
+                default:
+                    throw new RespException(RespException.SYNTAX);
+            }
+        }
+        if(nx && xx){
+            throw new RespException(RespException.SYNTAX);
+        }
+        byte[] old = returnOld ? get(s, args.get(1)) : null;
+        boolean exists = s.db().exists(key);
+        if((nx && exists) || (xx && !exists)){
+            return returnOld ? old : null;
+        }
+        if(keepTtl){
+            s.db().putKeepTtl(key, args.get(2));
+        }else{
+            s.db().put(key, args.get(2));
+        }
+        if(expireAt != 0){
+            s.db().expireAt(key, expireAt);
+        }
+        return returnOld ? old : Reply.OK;
+    }
+
+    private static Object setWithTtl(Session s, List<byte[]> args, long ttlMillis){
+        if(ttlMillis <= 0){
+            throw new RespException("ERR invalid expire time in '" + Args.str(args.get(0)).toLowerCase() + "' command");
+        }
+        ByteKey key = Args.key(args.get(1));
+        s.db().put(key, args.get(3));
+        s.db().expireAt(key, System.currentTimeMillis() + ttlMillis);
+        return Reply.OK;
+    }
+
+    private static Object incrBy(Session s, byte[] key, long delta){
+        byte[] old = get(s, key);
+        long value = old == null ? 0 : Args.toLong(old);
+        try{
+            value = Math.addExact(value, delta);
+        }catch(ArithmeticException e){
+            throw new RespException("ERR increment or decrement would overflow");
+        }
+        s.db().putKeepTtl(Args.key(key), Args.bytes(value));
+        return value;
+    }
+
+    static byte[] concat(byte[] a, byte[] b){
+        byte[] ret = new byte[a.length + b.length];
+        System.arraycopy(a, 0, ret, 0, a.length);
+        System.arraycopy(b, 0, ret, a.length, b.length);
+        return ret;
+    }
+}
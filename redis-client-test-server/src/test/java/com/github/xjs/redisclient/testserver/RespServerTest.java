@@ -0,0 +1,248 @@
+package com.github.xjs.redisclient.testserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RespServerTest {
+
+    private RespServer server;
+    private Client client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RespServer().start();
+        client = new Client(server);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testStrings(){
+        assertEquals("PONG", client.call("PING"));
+        assertEquals("OK", client.call("SET", "k", "v"));
+        assertEquals("v", client.call("GET", "k"));
+        assertNull(client.call("GET", "missing"));
+        assertNull(client.call("SET", "k", "other", "NX"));
+        assertEquals(1L, client.call("INCR", "n"));
+        assertEquals(11L, client.call("INCRBY", "n", "10"));
+        assertError("ERR", client.call("INCR", "k"));
+        assertEquals(Arrays.asList("v", null, "11"), client.call("MGET", "k", "missing", "n"));
+        assertEquals(2, server.dbSize());
+    }
+
+    @Test
+    public void testWrongType(){
+        assertEquals(2L, client.call("RPUSH", "list", "a", "b"));
+        assertError("WRONGTYPE", client.call("GET", "list"));
+        assertError("WRONGTYPE", client.call("HSET", "list", "f", "v"));
+        assertEquals(Arrays.asList("a", "b"), client.call("LRANGE", "list", "0", "-1"));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        client.call("SET", "k", "v");
+        assertEquals(-1L, client.call("TTL", "k"));
+        assertEquals(1L, client.call("EXPIRE", "k", "100"));
+        long ttl = (Long) client.call("TTL", "k");
+        assertTrue(ttl > 0 && ttl <= 100);
+        assertEquals("OK", client.call("SET", "short", "v", "PX", "50"));
+        Thread.sleep(200);
+        assertNull(client.call("GET", "short"));
+        assertEquals(-2L, client.call("TTL", "short"));
+    }
+
+    @Test
+    public void testTransaction(){
+        assertEquals("OK", client.call("MULTI"));
+        assertEquals("QUEUED", client.call("SET", "k", "1"));
+        assertEquals("QUEUED", client.call("INCR", "k"));
+        assertEquals(Arrays.asList("OK", 2L), client.call("EXEC"));
+        assertEquals("OK", client.call("MULTI"));
+        client.call("SET", "k", "100");
+        assertEquals("OK", client.call("DISCARD"));
+        assertEquals("2", client.call("GET", "k"));
+    }
+
+    @Test
+    public void testEval(){
+        Object ret = client.call("EVAL", "redis.call('set', KEYS[1], ARGV[1]) return redis.call('incrby', KEYS[1], ARGV[2])", "1", "k", "10", "5");
+        assertEquals(15L, ret);
+        assertEquals("15", client.call("GET", "k"));
+    }
+
+    @Test
+    public void testReplica() throws IOException {
+        RespServer replica = server.newReplica().start();
+        try(Client replicaClient = new Client(replica)){
+            client.call("SET", "k", "v");
+            long before = replica.getCommandsProcessed();
+            //和master共用数据，没有复制延迟
+            assertEquals("v", replicaClient.call("GET", "k"));
+            assertEquals(before + 1, replica.getCommandsProcessed());
+            assertError("READONLY", replicaClient.call("SET", "k", "other"));
+            assertEquals("v", client.call("GET", "k"));
+        }finally{
+            replica.close();
+        }
+    }
+
+    @Test
+    public void testCommandCountAndError(){
+        client.call("SET", "k", "v");
+        client.call("GET", "k");
+        client.call("get", "k");
+        assertEquals(2, server.getCommandCount("GET"));
+        assertEquals(1, server.getCommandCount("set"));
+        //注入的错误直接返回，命令不执行
+        server.setCommandError("SET", "OOM injected");
+        assertError("OOM", client.call("SET", "k", "other"));
+        server.setCommandError("SET", null);
+        assertEquals("v", client.call("GET", "k"));
+        assertEquals("OK", client.call("SET", "k", "other"));
+    }
+
+    @Test
+    public void testLatency(){
+        client.call("PING");
+        server.setLatencyMicros(50000);
+        long start = System.nanoTime();
+        assertEquals("PONG", client.call("PING"));
+        assertTrue(System.nanoTime() - start >= 45000000L);
+        server.setLatencyMicros(0);
+    }
+
+    private static void assertError(String type, Object reply){
+        assertTrue(String.valueOf(reply), reply instanceof Error && ((Error) reply).message.startsWith(type));
+    }
+
+    /**
+     * 错误响应
+     */
+    private static final class Error {
+        private final String message;
+
+        private Error(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "-" + message;
+        }
+    }
+
+    /**
+     * 阻塞的RESP2客户端，bulk string按UTF-8转成String
+     */
+    private static final class Client implements Closeable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+
+        private Client(RespServer server) throws IOException {
+            this.socket = new Socket(server.getHost(), server.getPort());
+            this.socket.setSoTimeout(5000);
+            this.out = socket.getOutputStream();
+            this.in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        private Object call(String... args){
+            try{
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                buf.write(("*" + args.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for(String arg : args){
+                    byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                    buf.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    buf.write(bytes);
+                    buf.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(buf.toByteArray());
+                out.flush();
+                return read();
+            }catch(IOException e){
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private Object read() throws IOException {
+            int type = in.read();
+            String line = readLine();
+            switch(type){
+                case '+':
+                    return line;
+                case '-':
+                    return new Error(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$':{
+                    int length = Integer.parseInt(line);
+                    if(length < 0){
+                        return null;
+                    }
+                    byte[] bytes = new byte[length];
+                    for(int read = 0; read < length; ){
+                        int n = in.read(bytes, read, length - read);
+                        if(n < 0){
+                            throw new IOException("连接已关闭");
+                        }
+                        read += n;
+                    }
+                    readLine();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case '*':{
+                    int length = Integer.parseInt(line);
+                    if(length < 0){
+                        return null;
+                    }
+                    List<Object> items = new ArrayList<>(length);
+                    for(int i = 0; i < length; i++){
+                        items.add(read());
+                    }
+                    return items;
+                }
+                default:
+                    throw new IOException("不认识的响应类型:" + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while((b = in.read()) != '\r'){
+                if(b < 0){
+                    throw new IOException("连接已关闭");
+                }
+                sb.append((char) b);
+            }
+            in.read();
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}